@@ -0,0 +1,18 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * จุดเริ่มต้นของ REST API (Spring Boot + Jersey)
+ *
+ * สแกน component ใต้แพ็กเกจนี้ จึงพบ JerseyConfig และ resource ในแพ็กเกจ api
+ * ส่วน NEBWorkSheetService.main และ NEBWorkSheetBatch ยังใช้เป็นคำสั่งแบบ command line ได้ตามเดิม
+ */
+@SpringBootApplication
+public class NEBWorkSheetApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(NEBWorkSheetApplication.class, args);
+    }
+}
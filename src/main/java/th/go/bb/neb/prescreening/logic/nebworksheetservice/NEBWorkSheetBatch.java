@@ -0,0 +1,356 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice;
+
+import org.json.JSONObject;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelPlanCache;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ReadStatistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ตรวจสอบไฟล์ Excel ของหลายหน่วยงานพร้อมกันด้วยแผน (พารามิเตอร์) เดียวกัน
+ *
+ * แต่ละไฟล์ประมวลผลด้วย NEBWorkSheetService.processExcelToWssResult บน ForkJoinPool (work-stealing)
+ * ที่จำกัดจำนวน thread ตามจำนวน core และขนาด heap ผลลัพธ์ของแต่ละไฟล์เขียนเป็น NDJSON ทันทีที่ไฟล์นั้นเสร็จ
+ * (ลำดับตามเวลาที่เสร็จ ไม่ใช่ลำดับไฟล์) และสรุป files/s และ rows/s เมื่อจบงาน
+ *
+ * ใช้จาก command line:
+ * <pre>
+ * java ... NEBWorkSheetBatch --params plan.txt --out result.ndjson [--mode DOM|STREAMING] [--threads N]
+ *          &lt;โฟลเดอร์ | ไฟล์ | @รายชื่อไฟล์.txt&gt; ...
+ * </pre>
+ * plan.txt มีพารามิเตอร์บรรทัดละหนึ่งตัว (ข้ามบรรทัดว่างและบรรทัดที่ขึ้นต้นด้วย //) และ --out - คือเขียนออก stdout
+ */
+public final class NEBWorkSheetBatch {
+
+    /** หน่วยความจำโดยประมาณที่ต้องใช้ต่อหนึ่งไฟล์ที่กำลังประมวลผล (ไบต์) ใช้จำกัดจำนวน thread */
+    public static final String BYTES_PER_FILE_PROPERTY = "neb.batch.bytesPerFile";
+
+    private static final long DEFAULT_BYTES_PER_FILE = 256L * 1024 * 1024;
+
+    private NEBWorkSheetBatch() {
+    }
+
+    /**
+     * จำนวน thread เริ่มต้น: ไม่เกินจำนวน core และไม่เกิน heap สูงสุด / หน่วยความจำต่อไฟล์ (อย่างน้อย 1)
+     */
+    public static int defaultParallelism() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long bytesPerFile = Math.max(1L, Long.getLong(BYTES_PER_FILE_PROPERTY, DEFAULT_BYTES_PER_FILE));
+        long byHeap = Runtime.getRuntime().maxMemory() / bytesPerFile;
+        return (int) Math.max(1L, Math.min(cores, byHeap));
+    }
+
+    /**
+     * ประมวลผลทุกไฟล์และเขียนผลลัพธ์เป็น NDJSON (หนึ่งบรรทัดต่อไฟล์) ทันทีที่แต่ละไฟล์เสร็จ
+     *
+     * แต่ละบรรทัดมี file, rows (จำนวนแถวที่อ่านจากไฟล์), elapsedMs และ wssResult
+     * หรือ error ถ้าการประมวลผลไฟล์นั้นโยน exception (ไฟล์อื่นยังทำต่อ)
+     *
+     * @param fileNames   ไฟล์ Excel ที่ต้องการตรวจสอบ
+     * @param params      พารามิเตอร์ในรูปแบบเดียวกับ NEBWorkSheetService.processExcelToWssResult
+     * @param mode        โหมดการอ่านไฟล์
+     * @param parallelism จำนวน thread (0 หรือน้อยกว่า = defaultParallelism)
+     * @param out         ปลายทางของ NDJSON
+     * @return สรุปผลการประมวลผล
+     * @throws IOException หากเขียนผลลัพธ์ไม่ได้
+     */
+    public static Summary run(List<String> fileNames, String[] params, ExcelReadMode mode, int parallelism, Writer out)
+            throws IOException {
+        if (params.length < 1) {
+            throw new IllegalArgumentException("ต้องระบุพารามิเตอร์อย่างน้อย 1 ค่า: sheetName");
+        }
+        // คอมไพล์แผนครั้งเดียวก่อนเริ่ม ทุกไฟล์ใช้แผนเดียวกันจาก ExcelPlanCache
+        ExcelPlanCache.get(params);
+
+        int threads = parallelism > 0 ? parallelism : defaultParallelism();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long startNanos = System.nanoTime();
+        long rows = 0;
+        int errors = 0;
+
+        try {
+            CompletionService<FileResult> completion = new ExecutorCompletionService<>(pool);
+            for (String fileName : fileNames) {
+                completion.submit(() -> process(fileName, params, mode));
+            }
+
+            for (int i = 0; i < fileNames.size(); i++) {
+                FileResult result;
+                try {
+                    result = completion.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("การประมวลผลแบบ batch ถูกยกเลิก", e);
+                } catch (ExecutionException e) {
+                    // process จับ exception ของไฟล์ไว้แล้ว กรณีนี้จึงเป็นข้อผิดพลาดร้ายแรง (เช่น OutOfMemoryError)
+                    throw new IOException("การประมวลผลแบบ batch ล้มเหลว", e.getCause());
+                }
+
+                rows += result.rows;
+                if (result.error != null) {
+                    errors++;
+                }
+                out.write(result.toJson());
+                out.write('\n');
+                out.flush();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return new Summary(fileNames.size(), errors, rows, System.nanoTime() - startNanos, threads);
+    }
+
+    /**
+     * ประมวลผลไฟล์เดียว (ทำงานบน thread ของ pool)
+     */
+    private static FileResult process(String fileName, String[] params, ExcelReadMode mode) {
+        long rowsBefore = ReadStatistics.getRowsRead();
+        long startNanos = System.nanoTime();
+        String wssResult = null;
+        String error = null;
+        try {
+            wssResult = NEBWorkSheetService.processExcelToWssResult(fileName, params, mode);
+        } catch (RuntimeException e) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        return new FileResult(fileName, ReadStatistics.getRowsRead() - rowsBefore, elapsedMs, wssResult, error);
+    }
+
+    /**
+     * แปลงอาร์กิวเมนต์เป็นรายชื่อไฟล์ Excel
+     * โฟลเดอร์ = ไฟล์ .xlsx/.xls ในโฟลเดอร์นั้น (ไม่รวมโฟลเดอร์ย่อยและไฟล์ล็อก ~$) เรียงตามชื่อ
+     * "@ไฟล์" = ไฟล์ที่มีรายชื่อ path บรรทัดละหนึ่งรายการ
+     *
+     * @param paths โฟลเดอร์ ไฟล์ หรือ @รายชื่อไฟล์
+     * @return รายชื่อไฟล์ตามลำดับ
+     * @throws IOException หากอ่านรายชื่อไฟล์ไม่ได้
+     */
+    public static List<String> listExcelFiles(List<String> paths) throws IOException {
+        List<String> fileNames = new ArrayList<>();
+        for (String path : paths) {
+            if (path.startsWith("@")) {
+                List<String> listed = new ArrayList<>();
+                for (String line : Files.readAllLines(Paths.get(path.substring(1)), StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        listed.add(line.trim());
+                    }
+                }
+                fileNames.addAll(listExcelFiles(listed));
+                continue;
+            }
+
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] children = file.listFiles();
+                if (children == null) {
+                    throw new IOException("ไม่สามารถอ่านโฟลเดอร์: " + path);
+                }
+                Arrays.sort(children);
+                for (File child : children) {
+                    String name = child.getName();
+                    String lowerName = name.toLowerCase();
+                    if (child.isFile() && !name.startsWith("~$")
+                            && (lowerName.endsWith(".xlsx") || lowerName.endsWith(".xls"))) {
+                        fileNames.add(child.getPath());
+                    }
+                }
+            } else {
+                fileNames.add(path);
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * อ่านพารามิเตอร์จากไฟล์ บรรทัดละหนึ่งตัว (ข้ามบรรทัดว่างและบรรทัดที่ขึ้นต้นด้วย //)
+     */
+    public static String[] readParams(String fileName) throws IOException {
+        return parseParams(Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * แยกพารามิเตอร์จากข้อความ บรรทัดละหนึ่งตัว (ข้ามบรรทัดว่างและบรรทัดที่ขึ้นต้นด้วย //)
+     */
+    public static String[] parseParams(List<String> lines) {
+        List<String> params = new ArrayList<>();
+        for (String line : lines) {
+            String param = line.trim();
+            if (!param.isEmpty() && !param.startsWith("//")) {
+                params.add(param);
+            }
+        }
+        return params.toArray(new String[0]);
+    }
+
+    public static void main(String[] args) {
+        String paramsFile = null;
+        String outFile = null;
+        ExcelReadMode mode = ExcelReadMode.DOM;
+        int threads = 0;
+        List<String> paths = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if ("--params".equals(arg) && hasValue) {
+                paramsFile = args[++i];
+            } else if ("--out".equals(arg) && hasValue) {
+                outFile = args[++i];
+            } else if ("--mode".equals(arg) && hasValue) {
+                mode = ExcelReadMode.valueOf(args[++i].toUpperCase());
+            } else if ("--threads".equals(arg) && hasValue) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(arg);
+            }
+        }
+
+        if (paramsFile == null || outFile == null || paths.isEmpty()) {
+            System.err.println("usage: NEBWorkSheetBatch --params <plan.txt> --out <result.ndjson|-> "
+                    + "[--mode DOM|STREAMING] [--threads N] <dir|file|@list.txt>...");
+            System.exit(2);
+            return;
+        }
+
+        try {
+            String[] params = readParams(paramsFile);
+            List<String> fileNames = listExcelFiles(paths);
+
+            Summary summary;
+            if ("-".equals(outFile)) {
+                Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+                summary = run(fileNames, params, mode, threads, out);
+            } else {
+                try (Writer out = Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8)) {
+                    summary = run(fileNames, params, mode, threads, out);
+                }
+            }
+
+            // สรุปผลออก stderr เพื่อไม่ให้ปนกับ NDJSON
+            System.err.println(summary.toJson());
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * ผลลัพธ์ของไฟล์หนึ่งไฟล์
+     */
+    private static final class FileResult {
+        final String fileName;
+        final long rows;
+        final long elapsedMs;
+        final String wssResult;
+        final String error;
+
+        FileResult(String fileName, long rows, long elapsedMs, String wssResult, String error) {
+            this.fileName = fileName;
+            this.rows = rows;
+            this.elapsedMs = elapsedMs;
+            this.wssResult = wssResult;
+            this.error = error;
+        }
+
+        /**
+         * หนึ่งบรรทัดของ NDJSON (wssResult เป็น JSON อยู่แล้วจึงใส่ลงไปตรงๆ ไม่ต้องแปลงซ้ำ)
+         */
+        String toJson() {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"file\":").append(JSONObject.quote(fileName));
+            json.append(",\"rows\":").append(rows);
+            json.append(",\"elapsedMs\":").append(elapsedMs);
+            if (error != null) {
+                json.append(",\"error\":").append(JSONObject.quote(error));
+            } else {
+                json.append(",\"wssResult\":").append(wssResult);
+            }
+            return json.append('}').toString();
+        }
+    }
+
+    /**
+     * สรุปผลการประมวลผลแบบ batch
+     */
+    public static final class Summary {
+        private final int files;
+        private final int errors;
+        private final long rows;
+        private final long elapsedNanos;
+        private final int threads;
+
+        Summary(int files, int errors, long rows, long elapsedNanos, int threads) {
+            this.files = files;
+            this.errors = errors;
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+            this.threads = threads;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * จำนวนไฟล์ที่ประมวลผลไม่สำเร็จ (โยน exception)
+         */
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * จำนวนแถวที่อ่านจากไฟล์ทั้งหมด (ไม่รวมผลลัพธ์ที่ได้จากแคช)
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public double getFilesPerSecond() {
+            return perSecond(files);
+        }
+
+        public double getRowsPerSecond() {
+            return perSecond(rows);
+        }
+
+        private double perSecond(long count) {
+            return elapsedNanos > 0 ? count * 1_000_000_000.0 / elapsedNanos : 0.0;
+        }
+
+        public String toJson() {
+            JSONObject json = new JSONObject();
+            json.put("files", files);
+            json.put("errors", errors);
+            json.put("rows", rows);
+            json.put("elapsedMs", getElapsedMillis());
+            json.put("threads", threads);
+            json.put("filesPerSecond", getFilesPerSecond());
+            json.put("rowsPerSecond", getRowsPerSecond());
+            return json.toString();
+        }
+    }
+}
@@ -1,23 +1,43 @@
 package th.go.bb.neb.prescreening.logic.nebworksheetservice;
 
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.json.JSONObject;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.CrossFileCompare;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.CrossFileIndex;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.CrossSheetIndex;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelPlan;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelPlanCache;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
 import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReader;
 import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExtractParams;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.FileFingerprint;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ParallelTasks;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.PlanResult;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.StreamingExcelReader;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ValueCollector;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.WorkbookSession;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.WssResultCache;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.WssResultWriter;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 public class NEBWorkSheetService {
 
@@ -42,334 +62,119 @@ public class NEBWorkSheetService {
      * @return JSON string ในรูปแบบ wssResult
      */
     public static String processExcelToWssResult(String fileName, String[] params) {
-        try {
-            if (params.length < 1) {
-                throw new IllegalArgumentException("ต้องระบุพารามิเตอร์อย่างน้อย 1 ค่า: sheetName");
-            }
-            File file = new File(fileName);
-            Workbook workbook = createWorkbook(file, fileName);
-
-            // กำหนดค่าเริ่มต้น
-            String sheetName = "";
-            Map<String, Object> variables = new HashMap<>();
-            Set<Object> validates = new HashSet<>();
-
-            // แยกพารามิเตอร์แต่ละรายการ
-            for (String param : params) {
-                if (param.startsWith("SHEET(")) {
-                    // รูปแบบ SHEET("ชื่อชีท")
-                    sheetName = ExtractParams.extractStringParam(param, "SHEET");
-                } else if (param.startsWith("FIX(")) {
-                    // รูปแบบ FIX("KEY", "VALUE")
-                    String[] parts = ExtractParams.extractMultipleParams(param, "FIX");
-                    if (parts.length >= 2) {
-                        variables.put(parts[0], "FIX " + parts[1]);
-                    }
-                } else if (param.startsWith("COLUMN(")) {
-                    // รูปแบบ COLUMN("KEY", "CELL_REF", "SHEET_NAME")
-                    String[] parts = ExtractParams.extractMultipleParams(param, "COLUMN");
-                    if (parts.length >= 2) {
-                        Map<String, Object> columnConfig = new HashMap<>();
-                        columnConfig.put("type", "COLUMN");
-                        columnConfig.put("cellRef", parts[1]);
-
-                        // ตรวจสอบว่ามีการระบุชื่อชีทหรือไม่
-                        if (parts.length >= 3) {
-                            columnConfig.put("sheetName", parts[2]);
-                        }
-
-                        variables.put(parts[0], columnConfig);
-                    }
-                } else if (param.startsWith("COUNT(")) {
-                    // รูปแบบ COUNT("KEY", "RANGE", "SHEET_NAME")
-                    String[] parts = ExtractParams.extractMultipleParams(param, "COUNT");
-                    if (parts.length >= 2) {
-                        Map<String, Object> countConfig = new HashMap<>();
-                        countConfig.put("type", "COUNT");
-                        countConfig.put("rangeStr", parts[1]);
-
-                        // ตรวจสอบว่ามีการระบุชื่อชีทหรือไม่
-                        if (parts.length >= 3) {
-                            countConfig.put("sheetName", parts[2]);
-                        }
-
-                        variables.put(parts[0], countConfig);
-                    }
-                } else if (param.startsWith("ROWBY(")) {
-                    System.out.println("================[ROWBY]");
-                    String[] parts = ExtractParams.extractMultipleParams(param, "ROWBY");
-
-                    // รูปแบบใหม่: ROWBY(searchCondition, columnRefs, sheetName)
-                    // ตัวอย่าง: ROWBY(A EQUAL "รวมทั้งสิ้น", [COLUMN("AMOUNT", "C?",
-                    // "11.ปัจจัยพื้นฐาน"),COLUMN("AMOUNT", "F?", "11.ปัจจัยพื้นฐาน")],
-                    // "11.ปัจจัยพื้นฐาน")
-                    if (parts.length >= 3) {
-                        System.out.println("================[ROWBY 3]");
-                        // แยกเงื่อนไขการค้นหา (searchCondition)
-                        String searchConditionStr = parts[0];
-                        String[] searchConditionParts = searchConditionStr.split(" ", 3);
-
-                        if (searchConditionParts.length >= 3) {
-                            System.out.println("================[ROWBY 33]");
-                            String searchColumn = searchConditionParts[0];
-                            String searchCondition = searchConditionParts[1];
-                            String searchValue = searchConditionParts[2];
-
-                            // ถ้า searchValue อยู่ในเครื่องหมายคำพูด ให้ตัดออก
-                            if (searchValue.startsWith("\"") && searchValue.endsWith("\"")) {
-                                searchValue = searchValue.substring(1, searchValue.length() - 1);
-                            }
-
-                            // สร้าง config สำหรับ ROWBY
-                            Map<String, Object> rowByConfig = new HashMap<>();
-                            rowByConfig.put("type", "ROWBY");
-                            rowByConfig.put("searchSheetName", parts[2]); // ใช้ sheet เดียวกันสำหรับค้นหาและอ่านข้อมูล
-                            rowByConfig.put("readSheetName", parts[2]);
-                            rowByConfig.put("searchColumn", searchColumn);
-                            rowByConfig.put("searchCondition", searchCondition);
-                            rowByConfig.put("searchValue", searchValue);
-                            rowByConfig.put("columnRefs", parts[1]);
-                            System.out.println("=========================parts[1]" + parts[1]);
-                            // ใช้ชื่อตัวแปรเป็น "ROWBY" + ลำดับ
-                            String varName = "ROWBY";// + variables.size();
-                            variables.put(varName, rowByConfig);
-                        }
-                    }
-                } else if (param.startsWith("ROW(")) {
-                    // รูปแบบ ROW("KEY", "SHEET_NAME", "ROW_RANGE", "[COL1,COL2,COL3]",
-                    // "{COL1:VAR1,COL2:VAR2}")
-                    String[] parts = ExtractParams.extractMultipleParams(param, "ROW");
-                    if (parts.length >= 4) {
-                        Map<String, Object> rowConfig = new HashMap<>();
-                        rowConfig.put("type", "ROW");
-                        rowConfig.put("sheetName", parts[1]);
-                        rowConfig.put("rowRange", parts[2]);
-                        rowConfig.put("columns", parts[3]);
-
-                        // ตรวจสอบว่ามีการระบุ mapping หรือไม่
-                        if (parts.length >= 5) {
-                            rowConfig.put("mapping", parts[4]);
-                        }
-
-                        variables.put(parts[0], rowConfig);
-                    }
-                } else if (param.startsWith("CHKDUPLICATE(")) {
-                    // รูปแบบ CHKDUPLICATE("SHEET_NAME", RANGE, ["EXCEPT1", "EXCEPT2"])
-                    String[] parts = ExtractParams.extractMultipleParams(param, "CHKDUPLICATE");
-                    if (parts.length >= 2) {
-                        String targetSheetName = parts[0]; // ชื่อชีทที่ต้องการตรวจสอบ
-                        String rangeStr = parts[1]; // ช่วงของคอลัมน์ที่ต้องการตรวจสอบ
-
-                        Map<String, Object> checkDuplicate = new HashMap<>();
-                        checkDuplicate.put("sheetName", targetSheetName);
-                        checkDuplicate.put("condition", "CHKDUPLICATE " + rangeStr);
-
-                        // ตรวจสอบว่ามีการระบุค่ายกเว้นหรือไม่
-                        if (parts.length >= 3 && !parts[2].equals("NULL")) {
-                            Set<Object> exceptValues = new HashSet<>();
-                            String[] exceptList = ExtractParams.extractArrayParam(parts[2]);
-                            for (String except : exceptList) {
-                                exceptValues.add(except);
-                            }
-                            checkDuplicate.put("exceptValues", exceptValues);
-                        }
-
-                        validates.add(checkDuplicate);
-                    }
-                } else if (param.startsWith("CHKSHEETDUPLICATE(")) {
-                    // รูปแบบ CHKSHEETDUPLICATE([("SHEET1", RANGE1, ["EXCEPT1"]),("SHEET2", RANGE2,
-                    // [])])
-                    String content = param.substring("CHKSHEETDUPLICATE(".length(), param.length() - 1).trim();
-
-                    // ตรวจสอบว่าเป็นรูปแบบ array หรือไม่
-                    if (content.startsWith("[") && content.endsWith("]")) {
-                        // แยกแต่ละ tuple ในรูปแบบ ("SHEET", RANGE, [EXCEPTS])
-                        List<Map<String, Object>> sheetConfigs = ExtractParams.extractSheetConfigs(content);
-
-                        // สร้าง validate สำหรับการตรวจสอบข้ามชีท
-                        Map<String, Object> checkSheetDuplicate = new HashMap<>();
-                        checkSheetDuplicate.put("condition", "CHKSHEETDUPLICATE");
-                        checkSheetDuplicate.put("sheetConfigs", sheetConfigs);
-
-                        validates.add(checkSheetDuplicate);
-                    }
-                }
-            }
-
-            // เพิ่ม validates เข้าไปใน variables
-            if (!validates.isEmpty()) {
-                variables.put("VALIDATES", validates);
-            }
+        return processExcelToWssResult(fileName, params, ExcelReadMode.DOM);
+    }
 
-            // ตรวจสอบและดึงข้อมูลการตรวจสอบค่าซ้ำจาก variables
-            String rangeStr = null;
-            Set<Object> exceptValues = null;
-
-            // ดึงข้อมูลการตรวจสอบค่าซ้ำจาก variables
-            if (variables.containsKey("VALIDATES")) {
-                Object validateObj = variables.get("VALIDATES");
-                if (validateObj instanceof Set) {
-                    Set<?> validateSet = (Set<?>) validateObj;
-                    for (Object validate : validateSet) {
-                        if (validate instanceof Map) {
-                            Map<?, ?> condition = (Map<?, ?>) validate;
-                            if (condition.containsKey("condition") && condition.get("condition") instanceof String) {
-                                String conditionStr = (String) condition.get("condition");
-                                if (conditionStr.startsWith("CHKDUPLICATE ")) {
-                                    rangeStr = conditionStr.substring("CHKDUPLICATE ".length());
-                                }
-                            }
-                            if (condition.containsKey("exceptValues") && condition.get("exceptValues") instanceof Set) {
-                                exceptValues = (Set<Object>) condition.get("exceptValues");
-                            }
-                        }
-                    }
-                }
-            }
+    /**
+     * อ่านข้อมูลจากไฟล์ Excel และแปลงเป็นรูปแบบ wssResult โดยเลือกโหมดการอ่านได้
+     * โหมด STREAMING อ่านไฟล์ .xlsx แบบ SAX ชีทละรอบเดียวโดยไม่สร้าง Workbook
+     * และให้ผลลัพธ์เหมือนโหมด DOM ทุกประการ (ไฟล์ .xls ใช้โหมด DOM เสมอ)
+     *
+     * @param fileName ชื่อไฟล์ Excel
+     * @param params   พารามิเตอร์ (ดู processExcelToWssResult(String, String[]))
+     * @param mode     โหมดการอ่านไฟล์
+     * @return JSON string ในรูปแบบ wssResult
+     */
+    public static String processExcelToWssResult(String fileName, String[] params, ExcelReadMode mode) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeExcelToWssResult(fileName, params, mode, out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream ไม่โยน IOException
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
 
-            // ถ้าไม่มีการระบุช่วงเซลล์สำหรับตรวจสอบค่าซ้ำ ให้ใช้ค่าเริ่มต้น
-            if (rangeStr == null) {
-                rangeStr = "B15:EOF";
+    /**
+     * อ่านข้อมูลจากไฟล์ Excel แล้วเขียน wssResult ลง OutputStream โดยตรง (UTF-8)
+     * ผลลัพธ์เหมือน processExcelToWssResult แต่ไม่สร้าง JSONObject และ String ของผลลัพธ์ทั้งก้อน
+     * เหมาะกับคำสั่ง ROW ที่อ่านข้อมูลจำนวนมาก
+     *
+     * ทุกคำสั่งและเงื่อนไขตรวจสอบถูกประมวลผลเสร็จก่อนเขียน byte แรก เพราะอ่านพร้อมกันในรอบเดียว
+     * status ขึ้นกับผลการตรวจสอบ และลำดับ key ของ JSONObject เดิมต้องรู้ key ทั้งหมดก่อน
+     * ส่วนที่อ่านระหว่างเขียนมีเฉพาะแถวของ RowStream (อ่านทีละหน้า)
+     *
+     * ข้อผิดพลาดในการอ่านไฟล์ Excel (รวมถึงการโหลดชีทที่ล้มเหลวภายหลัง) ถูกเขียนเป็นผลลัพธ์ E001 เหมือนเดิม
+     *
+     * @param fileName ชื่อไฟล์ Excel
+     * @param params   พารามิเตอร์ (ดู processExcelToWssResult(String, String[]))
+     * @param mode     โหมดการอ่านไฟล์
+     * @param out      ปลายทาง (ไม่ถูกปิด)
+     * @throws IOException หากเขียนลง out ไม่ได้
+     */
+    public static void writeExcelToWssResult(String fileName, String[] params, ExcelReadMode mode, OutputStream out)
+            throws IOException {
+        if (params.length < 1) {
+            throw new IllegalArgumentException("ต้องระบุพารามิเตอร์อย่างน้อย 1 ค่า: sheetName");
+        }
+        boolean streaming = mode == ExcelReadMode.STREAMING && fileName.toLowerCase().endsWith(".xlsx");
+
+        WssResultCache.Key resultKey;
+        Map<String, Object> data;
+        // ตรวจสอบค่าซ้ำในแต่ละชีทที่กำหนด
+        Map<Object, List<String>> duplicates = new HashMap<>();
+        List<String> crossSheetDuplicates = new ArrayList<>();
+        Map<String, Map<String, List<String>>> crossSheetDuplicateLocations = new LinkedHashMap<>();
+        List<String> sheetNotFoundErrors = new ArrayList<>();
+        try {
+            // แผนการประมวลผลที่คอมไพล์แล้ว (ใช้ซ้ำจากแคชถ้าพารามิเตอร์เหมือนเดิม)
+            ExcelPlan plan = ExcelPlanCache.get(params);
+
+            // ไฟล์และแผนเดิมที่เคยประมวลผลแล้ว ใช้ผลลัพธ์เดิมโดยไม่ต้องเปิด Workbook
+            // SHA-256 ของไฟล์คำนวณครั้งเดียว ใช้ทั้งแคชผลลัพธ์และแคชชีท
+            FileFingerprint fingerprint = FileFingerprint.of(new File(fileName));
+            resultKey = WssResultCache.key(fingerprint, fileName, params, plan);
+            String cachedResult = WssResultCache.get(resultKey);
+            if (cachedResult != null) {
+                out.write(cachedResult.getBytes(StandardCharsets.UTF_8));
+                return;
             }
 
-            // อ่านข้อมูลจาก Excel
-            Map<String, Object> data = ExcelReader.readExcelVariables(workbook, fileName, sheetName, variables);
-
-            // ตรวจสอบค่าซ้ำในแต่ละชีทที่กำหนด
-            Map<Object, List<String>> duplicates = new HashMap<>();
-            List<String> crossSheetDuplicates = new ArrayList<>();
-            List<String> sheetNotFoundErrors = new ArrayList<>();
-
-            if (variables.containsKey("VALIDATES")) {
-                Object validateObj = variables.get("VALIDATES");
-                if (validateObj instanceof Set) {
-                    Set<?> validateSet = (Set<?>) validateObj;
-                    for (Object validate : validateSet) {
-                        if (validate instanceof Map) {
-                            Map<?, ?> condition = (Map<?, ?>) validate;
-
-                            // ตรวจสอบค่าซ้ำในชีทเดียว
-                            if (condition.containsKey("sheetName") && condition.containsKey("condition")) {
-                                String targetSheetName = (String) condition.get("sheetName");
-                                String conditionStr = (String) condition.get("condition");
-                                System.out.println("============================" + conditionStr);
-                                if (conditionStr.startsWith("CHKDUPLICATE ")) {
-                                    String targetRangeStr = conditionStr.substring("CHKDUPLICATE ".length());
-                                    Set<Object> targetExceptValues = null;
-                                    if (condition.containsKey("exceptValues")) {
-                                        targetExceptValues = (Set<Object>) condition.get("exceptValues");
-                                    }
-
-                                    try {
-                                        // ตรวจสอบค่าซ้ำในชีทที่กำหนด
-                                        Map<Object, List<String>> sheetDuplicates = ExcelReader
-                                                .checkDuplicateValuesInRange(workbook, targetSheetName, targetRangeStr,
-                                                        targetExceptValues);
-
-                                        // รวมผลลัพธ์
-                                        duplicates.putAll(sheetDuplicates);
-                                    } catch (IllegalArgumentException e) {
-                                        // กรณีไม่พบชีท
-                                        if (e.getMessage().contains("ไม่พบชีท")) {
-                                            sheetNotFoundErrors.add("ไม่พบชีท '" + targetSheetName + "' ในไฟล์");
-                                        } else {
-                                            throw e; // ส่งต่อข้อผิดพลาดอื่นๆ
-                                        }
-                                    }
-                                }
-                            }
-                            // ตรวจสอบค่าซ้ำระหว่างชีท
-                            else if (condition.containsKey("condition") && "CHKSHEETDUPLICATE".equals(condition.get("condition"))) {
-                                if (condition.containsKey("sheetConfigs")) {
-                                    List<Map<String, Object>> sheetConfigs = (List<Map<String, Object>>) condition.get("sheetConfigs");
-
-                                    // เก็บข้อมูลจากแต่ละชีท
-                                    Map<String, List<String>> allSheetValues = new LinkedHashMap<>();
-
-                                    // อ่านข้อมูลจากแต่ละชีท
-                                    for (Map<String, Object> sheetConfig : sheetConfigs) {
-                                        String targetSheetName = (String) sheetConfig.get("sheetName");
-                                        String targetRangeStr = (String) sheetConfig.get("rangeStr");
-                                        Set<Object> targetExceptValues = null;
-                                        if (sheetConfig.containsKey("exceptValues")) {
-                                            targetExceptValues = (Set<Object>) sheetConfig.get("exceptValues");
-                                        }
-
-                                        try {
-                                            // อ่านค่าจากชีท
-                                            List<String> sheetValues = ExcelReader.getAllValuesInRange(
-                                                    workbook, targetSheetName, targetRangeStr, targetExceptValues);
-                                            // เก็บข้อมูล
-                                            allSheetValues.put(targetSheetName, sheetValues);
-                                        } catch (IllegalArgumentException e) {
-                                            // กรณีไม่พบชีท
-                                            if (e.getMessage().contains("ไม่พบชีท")) {
-                                                sheetNotFoundErrors.add("ไม่พบชีท '" + targetSheetName + "' ในไฟล์");
-                                            } else {
-                                                throw e; // ส่งต่อข้อผิดพลาดอื่นๆ
-                                            }
-                                        }
-                                    }
-
-                                    // ตรวจสอบค่าซ้ำระหว่างชีท
-                                    if (allSheetValues.size() >= 2) {
-                                        // System.out.println(allSheetValues);
-                                        List<String> duplicateValues = new ArrayList<>();
-
-                                        Iterator<List<String>> it = allSheetValues.values().iterator();
-                                        if (it.hasNext()) {
-                                            List<String> list1 = it.next();
-                                            if (it.hasNext()) {
-                                                List<String> list2 = it.next();
-                                                Set<String> set1 = new HashSet<>(list1);
-                                                for (String value : list2) {
-                                                    if (set1.contains(value)) {
-                                                        duplicateValues.add(value);
-                                                    }
-                                                }
-                                            }
-                                        }
-
-                                        System.out.println("ค่าที่ซ้ำกันคือ: " + duplicateValues);
-                                        crossSheetDuplicates.addAll(duplicateValues);
-                                    }
-                                }
-                            }
-                        }
-                    }
+            // อ่านข้อมูลจาก Excel โดยเปิดไฟล์ครั้งเดียวและใช้ร่วมกันทุกคำสั่ง
+            // คำสั่งที่อ่านคอลัมน์เดียวกันและเงื่อนไขตรวจสอบจะถูกอ่านพร้อมกันในรอบเดียว
+            PlanResult evaluated;
+            if (streaming) {
+                evaluated = StreamingExcelReader.evaluate(fileName, plan);
+            } else {
+                // โหลดเฉพาะชีทที่แผนอ้างถึง
+                try (WorkbookSession session = WorkbookSession.open(fileName, fingerprint, plan.getSheetNames())) {
+                    evaluated = plan.evaluate(session, true);
                 }
             }
+            data = evaluated.getData();
+            checkValidates(plan, evaluated, duplicates, crossSheetDuplicates, crossSheetDuplicateLocations,
+                    sheetNotFoundErrors);
+        } catch (IOException | UncheckedIOException e) {
+            // กรณีเกิดข้อผิดพลาด
+            WssResultWriter.writeError(out, "E001", ioErrorMessage(e));
+            return;
+        }
 
-            // สร้าง JSON string ในรูปแบบ wssResult
-            JSONObject wssResult = new JSONObject();
-            JSONObject wssResultObj = new JSONObject();
-
+        // เขียน wssResult ลง out และเก็บสำเนาไว้ใส่แคชถ้าผลลัพธ์ไม่ใหญ่เกินไป
+        CopyingOutputStream copy = new CopyingOutputStream(out, WssResultCache.getMaxResultBytes());
+        try (WssResultWriter writer = new WssResultWriter(copy)) {
             // ส่วนของ data - ใส่ข้อมูลจาก readExcelVariables เสมอ
-            wssResultObj.put("data", new JSONObject(data));
+            writer.writeData(data);
+
+            // errorMessage สร้างด้วย put ทีละค่าเหมือน JSONObject เดิม
+            Map<String, Object> errorMessage = WssResultWriter.newObject();
+            String status;
 
             // ตรวจสอบว่ามีข้อผิดพลาดเกี่ยวกับชีทหรือไม่
             if (!sheetNotFoundErrors.isEmpty()) {
                 // กรณีไม่พบชีท
-                wssResultObj.put("status", "fail");
-
-                JSONObject errorMessage = new JSONObject();
+                status = "fail";
                 errorMessage.put("errorCode", "SHEET_NOT_FOUND");
                 errorMessage.put("errorMessage", String.join(", ", sheetNotFoundErrors));
-
-                wssResultObj.put("errorMessage", errorMessage);
             } else {
                 // ส่วนของ status
                 boolean isSuccess = duplicates.isEmpty() && crossSheetDuplicates.isEmpty();
-                wssResultObj.put("status", isSuccess ? "success" : "fail");
+                status = isSuccess ? "success" : "fail";
 
-                // ส่วนของ errorMessage
-                if (isSuccess) {
-                    // ไม่พบค่าซ้ำ
-                    wssResultObj.put("errorMessage", new JSONObject());
-                } else {
+                // ส่วนของ errorMessage (ว่างถ้าไม่พบค่าซ้ำ)
+                if (!isSuccess) {
                     // พบค่าซ้ำ - สร้าง errorMessage ที่มีข้อมูลเกี่ยวกับค่าซ้ำ
-                    JSONObject errorMessage = new JSONObject();
-
                     if (!duplicates.isEmpty() && !crossSheetDuplicates.isEmpty()) {
                         // พบค่าซ้ำทั้งในชีทเดียวและระหว่างชีท
                         errorMessage.put("errorCode", "DUPLICATE_AND_CROSS_SHEET_DUPLICATE");
@@ -384,9 +189,9 @@ public class NEBWorkSheetService {
                         errorMessage.put("errorMessage", "พบค่าซ้ำระหว่างชีท");
                     }
 
-                    // แปลง Map<Object, List<String>> เป็น JSONObject สำหรับค่าซ้ำในชีทเดียว
+                    // ค่าซ้ำในชีทเดียว (key ที่เป็น null เขียนเป็น "null")
                     if (!duplicates.isEmpty()) {
-                        JSONObject duplicateValues = new JSONObject();
+                        Map<String, Object> duplicateValues = WssResultWriter.newObject();
                         for (Map.Entry<Object, List<String>> entry : duplicates.entrySet()) {
                             String key = entry.getKey() != null ? entry.getKey().toString() : "null";
                             duplicateValues.put(key, entry.getValue());
@@ -394,33 +199,141 @@ public class NEBWorkSheetService {
                         errorMessage.put("duplicateValues", duplicateValues);
                     }
 
-                    // แปลง Map<Object, List<String>> เป็น JSONObject สำหรับค่าซ้ำระหว่างชีท
+                    // ค่าซ้ำระหว่างชีท: รูปแบบเดิมคือ new JSONObject(List) ซึ่ง org.json แปลง List แบบ bean
+                    // ได้ {"empty":false} จึงเขียนแบบเดิมไว้เพื่อไม่ให้ผู้ใช้ผลลัพธ์เดิมเสียหาย
                     if (!crossSheetDuplicates.isEmpty()) {
-                        errorMessage.put("crossSheetDuplicateValues", new JSONObject(crossSheetDuplicates));
+                        errorMessage.put("crossSheetDuplicateValues",
+                                Collections.singletonMap("empty", crossSheetDuplicates.isEmpty()));
                     }
 
-                    wssResultObj.put("errorMessage", errorMessage);
+                    // ค่าซ้ำระหว่างชีทพร้อมตำแหน่ง: ค่า -> ชื่อชีท -> ตำแหน่งเซลล์
+                    if (!crossSheetDuplicateLocations.isEmpty()) {
+                        errorMessage.put("crossSheetDuplicateLocations", crossSheetDuplicateLocations);
+                    }
                 }
             }
 
-            wssResult.put("wssResult", wssResultObj);
-            return wssResult.toString();
-        } catch (IOException e) {
-            // กรณีเกิดข้อผิดพลาด
-            JSONObject wssResult = new JSONObject();
-            JSONObject wssResultObj = new JSONObject();
+            // ลำดับ key ของ wssResult ใน JSONObject เดิมคือ data, errorMessage, status
+            writer.writeErrorMessage(errorMessage);
+            writer.writeStatus(status);
+        }
 
-            wssResultObj.put("data", new JSONObject());
-            wssResultObj.put("status", "fail");
+        String result = copy.getCopy();
+        if (result != null) {
+            WssResultCache.put(resultKey, result);
+        }
+    }
 
-            JSONObject errorMessage = new JSONObject();
-            errorMessage.put("errorCode", "E001");
-            errorMessage.put("errorMessage", e.getMessage());
+    /**
+     * ส่งข้อมูลต่อไปยัง OutputStream ปลายทาง และเก็บสำเนาไว้จนกว่าจะเกินขนาดที่กำหนด
+     */
+    private static final class CopyingOutputStream extends FilterOutputStream {
+        private final int maxBytes;
+        private ByteArrayOutputStream copy;
+
+        CopyingOutputStream(OutputStream out, int maxBytes) {
+            super(out);
+            this.maxBytes = maxBytes;
+            this.copy = maxBytes > 0 ? new ByteArrayOutputStream() : null;
+        }
 
-            wssResultObj.put("errorMessage", errorMessage);
-            wssResult.put("wssResult", wssResultObj);
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            keep(new byte[] {(byte) b}, 0, 1);
+        }
 
-            return wssResult.toString();
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            keep(b, off, len);
+        }
+
+        private void keep(byte[] b, int off, int len) {
+            if (copy == null) {
+                return;
+            }
+            if (copy.size() + len > maxBytes) {
+                // ใหญ่เกินไป ไม่เก็บในแคช
+                copy = null;
+                return;
+            }
+            copy.write(b, off, len);
+        }
+
+        /**
+         * สำเนาทั้งหมดที่เขียนไป หรือ null ถ้าใหญ่เกินขนาดที่กำหนด
+         */
+        String getCopy() {
+            return copy == null ? null : new String(copy.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * ข้อความของผลลัพธ์ E001 (UncheckedIOException จากการโหลดชีทภายหลังใช้ข้อความของ IOException ที่ห่อไว้)
+     */
+    private static String ioErrorMessage(Exception e) {
+        return e instanceof UncheckedIOException ? e.getCause().getMessage() : e.getMessage();
+    }
+
+    /**
+     * ตรวจสอบเงื่อนไขในแผน (CHKDUPLICATE, CHKSHEETDUPLICATE) แล้วรวมผลลัพธ์ลงใน
+     * duplicates, crossSheetDuplicates และ sheetNotFoundErrors
+     * จากผลการอ่านที่เตรียมไว้แล้ว (ทั้งโหมด DOM และ STREAMING)
+     */
+    private static void checkValidates(ExcelPlan plan, PlanResult evaluated, Map<Object, List<String>> duplicates,
+            List<String> crossSheetDuplicates, Map<String, Map<String, List<String>>> crossSheetDuplicateLocations,
+            List<String> sheetNotFoundErrors) {
+        for (ExcelPlan.Check check : plan.getChecks()) {
+            // ตรวจสอบค่าซ้ำในชีทเดียว
+            if (check instanceof ExcelPlan.DuplicateCheck) {
+                ExcelPlan.DuplicateCheck duplicateCheck = (ExcelPlan.DuplicateCheck) check;
+                String targetSheetName = duplicateCheck.getSheetName();
+
+                try {
+                    // ตรวจสอบค่าซ้ำในชีทที่กำหนด
+                    Map<Object, List<String>> sheetDuplicates = evaluated.checkDuplicateValuesInRange(duplicateCheck);
+
+                    // รวมผลลัพธ์
+                    duplicates.putAll(sheetDuplicates);
+                } catch (IllegalArgumentException e) {
+                    // กรณีไม่พบชีท
+                    if (e.getMessage().contains("ไม่พบชีท")) {
+                        sheetNotFoundErrors.add("ไม่พบชีท '" + targetSheetName + "' ในไฟล์");
+                    } else {
+                        throw e; // ส่งต่อข้อผิดพลาดอื่นๆ
+                    }
+                }
+            }
+            // ตรวจสอบค่าซ้ำระหว่างชีท (ทุกชีทในเงื่อนไข ไม่จำกัดแค่ 2 ชีท)
+            else if (check instanceof ExcelPlan.SheetDuplicateCheck) {
+                // ทุกช่วงของเงื่อนไขอ่านลงตารางเดียวกันไปแล้วในรอบอ่านชีท
+                CrossSheetIndex index = null;
+                int foundSheets = 0;
+
+                for (ExcelPlan.SheetRange sheetRange : ((ExcelPlan.SheetDuplicateCheck) check).getRanges()) {
+                    String targetSheetName = sheetRange.getSheetName();
+
+                    try {
+                        index = evaluated.getCrossSheetIndex(sheetRange);
+                        foundSheets++;
+                    } catch (IllegalArgumentException e) {
+                        // กรณีไม่พบชีท
+                        if (e.getMessage().contains("ไม่พบชีท")) {
+                            sheetNotFoundErrors.add("ไม่พบชีท '" + targetSheetName + "' ในไฟล์");
+                        } else {
+                            throw e; // ส่งต่อข้อผิดพลาดอื่นๆ
+                        }
+                    }
+                }
+
+                // ค่าที่พบในตั้งแต่ 2 ชีทขึ้นไป
+                if (foundSheets >= 2) {
+                    List<String> duplicateValues = index.getDuplicateValues();
+                    crossSheetDuplicates.addAll(duplicateValues);
+                    CrossSheetIndex.mergeLocations(crossSheetDuplicateLocations, index.getDuplicateLocations());
+                }
+            }
         }
     }
 
@@ -429,15 +342,8 @@ public class NEBWorkSheetService {
             if (params.length < 1) {
                 throw new IllegalArgumentException("ต้องระบุพารามิเตอร์อย่างน้อย 1 ค่า: sheetName");
             }
-            if (fileNameList.size() != 2) {
-                throw new IllegalArgumentException("ต้องระบุ 2 ไฟล์สำหรับเปรียบเทียบ");
-            }
-
-            List<Workbook> workbooks = new ArrayList<>();
-            for (String fileName : fileNameList) {
-                File file = new File(fileName);
-                Workbook workbook = createWorkbook(file, fileName);
-                workbooks.add(workbook);
+            if (fileNameList.size() < 2) {
+                throw new IllegalArgumentException("ต้องระบุอย่างน้อย 2 ไฟล์สำหรับเปรียบเทียบ");
             }
 
             // กำหนดค่าเริ่มต้น
@@ -455,6 +361,8 @@ public class NEBWorkSheetService {
                 }else if (param.startsWith("CROSSFILECOMPARE(")) {
                     String type = "CROSSFILECOMPARE";
                     Map<String, Object> sheetConfigs = ExtractParams.extractCrossFileCompare(param , type);
+                    // ตรวจเงื่อนไขก่อนโหลดไฟล์ เงื่อนไขที่ไม่รู้จักจึงไม่ถูกข้ามไปเงียบ ๆ
+                    compareMode(sheetConfigs);
                     Map<String, Object> checkSheetDuplicate = new HashMap<>();
                     checkSheetDuplicate.put("type", type);
                     checkSheetDuplicate.put("detail", sheetConfigs);
@@ -465,50 +373,68 @@ public class NEBWorkSheetService {
             if (!validates.isEmpty()) {
                 variables.put("VALIDATES", validates);
             }
-            
-            if (variables.containsKey("VALIDATES")) {
-                Object validateObj = variables.get("VALIDATES");
-                if (validateObj instanceof Set) {
-                    Set<?> validateSet = (Set<?>) validateObj;
-                    for (Object validate : validateSet) {
-                        if (validate instanceof Map) {
-                            Map<?, ?> condition = (Map<?, ?>) validate;
-
-                            if (condition.containsKey("type") && "CROSSFILEDUPLICATED".equals(condition.get("type"))) {
-                                Object detailObj = condition.get("detail");
-                                if (detailObj instanceof Map) {
-                                    Map<?, ?> detail = (Map<?, ?>) detailObj;
-                            
-                                    // if ("EQUAL".equals(detail.get("condition"))) {
-                                        Object sheetConfigObj = detail.get("sheetConfigs");
-                                        if (sheetConfigObj instanceof List) {
-                                            @SuppressWarnings("unchecked")
-                                            List<Map<String, Object>> sheetConfigs = (List<Map<String, Object>>) sheetConfigObj;
-                                            List<String> mismatchedValues = checkCrossFileEqualCondition(fileNameList, workbooks, sheetConfigs);
 
-                                            if (!mismatchedValues.isEmpty()) {
-                                                String errorCode = "CROSS_FILE_DUPLICATED";
-                                                String errorMessage = "ข้อมูลในสองไฟล์มีข้อมูลซ้ำ";
-                                                return createWssResult(mismatchedValues ,errorCode , errorMessage);
+            // โหลดทุกไฟล์พร้อมกัน (เฉพาะชีทที่เงื่อนไขอ้างถึง) ผ่าน SheetSnapshotCache
+            // ไฟล์ที่เคยตรวจแล้วจึงไม่ต้องแปลงใหม่ และเวลารวมใกล้เคียงกับไฟล์ที่แปลงนานที่สุด
+            int threads = Math.min(fileNameList.size(), NEBWorkSheetBatch.defaultParallelism());
+            ExecutorService pool = ParallelTasks.newPool(threads, "neb-crossfile");
+            List<WorkbookSession> sessions = Collections.emptyList();
+            try {
+                sessions = WorkbookSession.openAll(fileNameList, requiredSheets(fileNameList, validates), pool);
+
+                if (variables.containsKey("VALIDATES")) {
+                    Object validateObj = variables.get("VALIDATES");
+                    if (validateObj instanceof Set) {
+                        Set<?> validateSet = (Set<?>) validateObj;
+                        for (Object validate : validateSet) {
+                            if (validate instanceof Map) {
+                                Map<?, ?> condition = (Map<?, ?>) validate;
+
+                                if (condition.containsKey("type") && "CROSSFILEDUPLICATED".equals(condition.get("type"))) {
+                                    Object detailObj = condition.get("detail");
+                                    if (detailObj instanceof Map) {
+                                        Map<?, ?> detail = (Map<?, ?>) detailObj;
+                            
+                                        // if ("EQUAL".equals(detail.get("condition"))) {
+                                            Object sheetConfigObj = detail.get("sheetConfigs");
+                                            if (sheetConfigObj instanceof List) {
+                                                @SuppressWarnings("unchecked")
+                                                List<Map<String, Object>> sheetConfigs = (List<Map<String, Object>>) sheetConfigObj;
+                                                List<String> mismatchedValues = checkCrossFileEqualCondition(fileNameList, sessions, sheetConfigs, pool, threads);
+
+                                                if (!mismatchedValues.isEmpty()) {
+                                                    String errorCode = "CROSS_FILE_DUPLICATED";
+                                                    String errorMessage = crossFileMessage(sheetConfigs, "มีข้อมูลซ้ำ");
+                                                    return createWssResult(mismatchedValues ,errorCode , errorMessage);
+                                                }
                                             }
-                                        }
-                                    // }
-                                }
-                            }else if (condition.containsKey("type") && "CROSSFILECOMPARE".equals(condition.get("type"))) { 
-                                Object detailObj = condition.get("detail");
-                                if (detailObj instanceof Map) {
-                                    Map<?, ?> detail = (Map<?, ?>) detailObj;
+                                        // }
+                                    }
+                                }else if (condition.containsKey("type") && "CROSSFILECOMPARE".equals(condition.get("type"))) { 
+                                    Object detailObj = condition.get("detail");
+                                    if (detailObj instanceof Map) {
+                                        Map<?, ?> detail = (Map<?, ?>) detailObj;
 
-                                    if ("EQUAL".equals(detail.get("condition"))) {
+                                        String compareMode = compareMode(detail);
                                         Object sheetConfigObj = detail.get("sheetConfigs");
                                         if (sheetConfigObj instanceof List) {
                                             @SuppressWarnings("unchecked")
                                             List<Map<String, Object>> sheetConfigs = (List<Map<String, Object>>) sheetConfigObj;
-                                            List<String> mismatchedValues = checkCrossCompare(fileNameList, workbooks, sheetConfigs);
+                                            List<String> mismatchedValues;
+                                            if ("EQUAL".equals(compareMode)) {
+                                                // ผลรวมของค่าตัวเลขในแต่ละชุดข้อมูล
+                                                mismatchedValues = checkCrossCompare(fileNameList, sessions, sheetConfigs, pool);
+                                            } else if ("ROW".equals(compareMode) || "KEY".equals(compareMode)) {
+                                                // เทียบทีละแถว (ตามลำดับแถว หรือตาม key ในคอลัมน์แรกของช่วง)
+                                                mismatchedValues = checkCrossCompareRows(fileNameList, sessions, sheetConfigs,
+                                                        "KEY".equals(compareMode));
+                                            } else {
+                                                throw new IllegalArgumentException(unknownCompareMode(compareMode));
+                                            }
 
                                             if (!mismatchedValues.isEmpty()) {
                                                 String errorCode = "CROSS_FILE_COMPARE";
-                                                String errorMessage = "ข้อมูลในสองไฟล์มีค่าไม่เท่ากัน";
+                                                String errorMessage = crossFileMessage(sheetConfigs, "มีค่าไม่เท่ากัน");
                                                 return createWssResult(mismatchedValues ,errorCode , errorMessage);
                                             }
                                         }
@@ -518,12 +444,15 @@ public class NEBWorkSheetService {
                         }
                     }
                 }
+            } finally {
+                pool.shutdownNow();
+                WorkbookSession.closeAll(sessions);
             }
 
             JSONObject wssResult = new JSONObject();
 
             return wssResult.toString();
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             // กรณีเกิดข้อผิดพลาด
             JSONObject wssResult = new JSONObject();
             JSONObject wssResultObj = new JSONObject();
@@ -533,7 +462,7 @@ public class NEBWorkSheetService {
 
             JSONObject errorMessage = new JSONObject();
             errorMessage.put("errorCode", "E001");
-            errorMessage.put("errorMessage", e.getMessage());
+            errorMessage.put("errorMessage", ioErrorMessage(e));
 
             wssResultObj.put("errorMessage", errorMessage);
             wssResult.put("wssResult", wssResultObj);
@@ -542,6 +471,35 @@ public class NEBWorkSheetService {
         }
     }
 
+    /**
+     * เงื่อนไขของ CROSSFILECOMPARE (EQUAL, ROW หรือ KEY)
+     *
+     * @throws IllegalArgumentException หากเป็นเงื่อนไขที่ไม่รองรับ
+     */
+    private static String compareMode(Map<?, ?> detail) {
+        String compareMode = String.valueOf(detail.get("condition")).replace("\"", "").trim();
+        if (!"EQUAL".equals(compareMode) && !"ROW".equals(compareMode) && !"KEY".equals(compareMode)) {
+            throw new IllegalArgumentException(unknownCompareMode(compareMode));
+        }
+        return compareMode;
+    }
+
+    private static String unknownCompareMode(String compareMode) {
+        return "CROSSFILECOMPARE ไม่รองรับเงื่อนไข: " + compareMode + " (ใช้ได้เฉพาะ EQUAL, ROW หรือ KEY)";
+    }
+
+    /**
+     * ข้อความผิดพลาดของเงื่อนไขข้ามไฟล์ โดยระบุชื่อไฟล์ทุกไฟล์ในเงื่อนไข (ไม่ซ้ำ ตามลำดับในเงื่อนไข)
+     * เช่น "ข้อมูลในไฟล์ a.xlsx, b.xlsx, c.xlsx มีข้อมูลซ้ำ"
+     */
+    private static String crossFileMessage(List<Map<String, Object>> sheetConfigs, String problem) {
+        Set<String> files = new LinkedHashSet<>();
+        for (Map<String, Object> cfg : sheetConfigs) {
+            files.add(String.valueOf(cfg.get("fileName")));
+        }
+        return "ข้อมูลในไฟล์ " + String.join(", ", files) + " " + problem;
+    }
+
     private static String createWssResult(List<String> mismatchedValues, String errorCode, String errorMessage) {
         JSONObject wssResultObj = new JSONObject();
         wssResultObj.put("status", "fail");
@@ -557,125 +515,165 @@ public class NEBWorkSheetService {
         return wssResult.toString();
     }
 
+    /**
+     * สร้าง Workbook ใหม่จากไฟล์ (ผู้เรียกต้องปิดเอง)
+     * Workbook ของ POI แก้ไขได้และต้องปิด จึงไม่ใช้ร่วมจาก SheetSnapshotCache
+     * การอ่านค่าภายในบริการนี้ใช้ WorkbookSession.open ซึ่งอ่านผ่านแคชแทน
+     */
     public static Workbook createWorkbook(File file, String fileName) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            // ตรวจสอบประเภทไฟล์และสร้าง Workbook
-            Workbook workbook;
-            if (fileName.toLowerCase().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else if (fileName.toLowerCase().endsWith(".xls")) {
-                workbook = new HSSFWorkbook(fis);
-            } else {
-                throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
-            }
-            return workbook;
-        }
+        return WorkbookSession.createWorkbook(file, fileName);
     }
 
-    private static List<String> checkCrossCompare(List<String> fileNames, List<Workbook> workbooks,
-        List<Map<String, Object>> sheetConfigs) throws IOException {
-            if (sheetConfigs.size() != 2) {
-                throw new IllegalArgumentException("CROSSFILEDUPLICATED ต้องมี 2 ชุดข้อมูล");
-            }
-
-            Map<String, Workbook> fileWorkbookMap = new HashMap<>();
-            for (int i = 0; i < fileNames.size(); i++) {
-                fileWorkbookMap.put(new File(fileNames.get(i)).getName(), workbooks.get(i));
+    /**
+     * CROSSFILECOMPARE: ผลรวมของค่าตัวเลข (ไม่ซ้ำ) ในแต่ละชุดข้อมูลต้องเท่ากับชุดแรก
+     *
+     * @return ข้อความของชุดข้อมูลที่ผลรวมไม่เท่ากับชุดแรก (ว่าง = เท่ากันทุกชุด)
+     */
+    private static List<String> checkCrossCompare(List<String> fileNames, List<WorkbookSession> sessions,
+        List<Map<String, Object>> sheetConfigs, ExecutorService pool) throws IOException {
+            if (sheetConfigs.size() < 2) {
+                throw new IllegalArgumentException("CROSSFILECOMPARE ต้องมีอย่างน้อย 2 ชุดข้อมูล");
             }
 
-            Set<String> values1 = new HashSet<>();
-            Set<String> values2 = new HashSet<>();
-
-            for (int i = 0; i < 2; i++) {
-                Map<String, Object> cfg = sheetConfigs.get(i);
-                String fileName = (String) cfg.get("fileName");
-                String sheetName = (String) cfg.get("sheetName");
-                String rangeStr = (String) cfg.get("rangeStr");
-
-                Workbook wb = fileWorkbookMap.get(fileName);
-                if (wb == null) {
-                    throw new IllegalArgumentException("ไม่พบ Workbook สำหรับไฟล์: " + fileName);
-                }
+            // ผลรวมที่แม่นยำ (BigDecimal) จึงเทียบได้ตรงโดยไม่คลาดเคลื่อนจากการบวก double
+            List<BigDecimal> sums = readCrossFileRanges(fileNames, sessions, sheetConfigs, pool,
+                    ExcelReader::sumDistinctNumbersInRange);
 
-                List<String> values = ExcelReader.getAllValuesInRange(wb, sheetName, rangeStr, null);
-                if (i == 0) {
-                    values1.addAll(values);
-                } else {
-                    values2.addAll(values);
+            List<String> notEq = new ArrayList<>();
+            BigDecimal firstSum = sums.get(0);
+            for (int i = 1; i < sums.size(); i++) {
+                BigDecimal sum = sums.get(i);
+                if (firstSum.compareTo(sum) != 0) {
+                    notEq.add(firstSum.toPlainString() + " ผลรวมไม่เท่ากับ " + sum.toPlainString());
                 }
             }
 
-            double sumValues1 = 0.0;
-            double sumValues2 = 0.0;
-
+            return notEq; // ถ้าว่าง = เท่ากัน, ถ้าไม่ว่าง = มีความต่าง
+    }
 
-            List<String> notEq = new ArrayList<>();
-            for (String v : values1) {
-                if (v != null && v.trim().matches("^-?\\d+(\\.\\d+)?$")) {
-                    sumValues1 += Double.parseDouble(v.trim());
-                }
-            }
-            for (String v : values2) {
-                if (v != null && v.trim().matches("^-?\\d+(\\.\\d+)?$")) {
-                    sumValues2 += Double.parseDouble(v.trim());
-                }
-            }
+    /**
+     * CROSSFILECOMPARE แบบ ROW หรือ KEY: เทียบทีละแถวของแต่ละชุดข้อมูลกับชุดแรก (ดู CrossFileCompare)
+     *
+     * @param byKey true = จับคู่แถวตาม key ในคอลัมน์แรกของช่วง, false = จับคู่ตามลำดับแถว
+     * @return ตำแหน่งและค่าของเซลล์ที่ไม่ตรงกัน (ว่าง = ตรงกันทุกแถว)
+     */
+    private static List<String> checkCrossCompareRows(List<String> fileNames, List<WorkbookSession> sessions,
+            List<Map<String, Object>> sheetConfigs, boolean byKey) {
+        if (sheetConfigs.size() < 2) {
+            throw new IllegalArgumentException("CROSSFILECOMPARE ต้องมีอย่างน้อย 2 ชุดข้อมูล");
+        }
 
+        Map<String, WorkbookSession> fileSessionMap = new HashMap<>();
+        for (int i = 0; i < fileNames.size(); i++) {
+            fileSessionMap.put(new File(fileNames.get(i)).getName(), sessions.get(i));
+        }
 
-            if (Double.compare(sumValues1, sumValues2) != 0) {
-                notEq.add(sumValues1 + " ผลรวมไม่เท่ากับ " + sumValues2);
+        List<CrossFileCompare.Side> sides = new ArrayList<>();
+        for (Map<String, Object> cfg : sheetConfigs) {
+            String fileName = (String) cfg.get("fileName");
+            WorkbookSession session = fileSessionMap.get(fileName);
+            if (session == null) {
+                throw new IllegalArgumentException("ไม่พบ Workbook สำหรับไฟล์: " + fileName);
             }
+            sides.add(new CrossFileCompare.Side(session, fileName, (String) cfg.get("sheetName"),
+                    (String) cfg.get("rangeStr")));
+        }
 
-            return notEq; // ถ้าว่าง = เท่ากัน, ถ้าไม่ว่าง = มีความต่าง
+        return byKey ? CrossFileCompare.compareByKey(sides) : CrossFileCompare.compareRows(sides);
     }
 
+    /**
+     * CROSSFILEDUPLICATED: ค่าที่พบในตั้งแต่ 2 ชุดข้อมูลขึ้นไป (จากไฟล์ใดก็ได้)
+     * รวมค่าของทุกชุดข้อมูลผ่าน CrossFileIndex ที่สร้างแต่ละ partition พร้อมกัน
+     */
     private static List<String> checkCrossFileEqualCondition(
                 List<String> fileNames,
-                List<Workbook> workbooks,
-                List<Map<String, Object>> sheetConfigs
+                List<WorkbookSession> sessions,
+                List<Map<String, Object>> sheetConfigs,
+                ExecutorService pool,
+                int threads
         ) throws IOException {
-            if (sheetConfigs.size() != 2) {
-                throw new IllegalArgumentException("CROSSFILEDUPLICATED ต้องมี 2 ชุดข้อมูล");
+            if (sheetConfigs.size() < 2) {
+                throw new IllegalArgumentException("CROSSFILEDUPLICATED ต้องมีอย่างน้อย 2 ชุดข้อมูล");
             }
 
-            Map<String, Workbook> fileWorkbookMap = new HashMap<>();
-            for (int i = 0; i < fileNames.size(); i++) {
-                fileWorkbookMap.put(new File(fileNames.get(i)).getName(), workbooks.get(i));
-            }
+            List<ValueCollector> values = collectCrossFileValues(fileNames, sessions, sheetConfigs, pool);
 
-            Set<String> values1 = new HashSet<>();
-            Set<String> values2 = new HashSet<>();
+            // หาค่าที่ซ้ำกัน
+            return CrossFileIndex.findDuplicates(values, pool, threads);
+        }
 
-            for (int i = 0; i < 2; i++) {
-                Map<String, Object> cfg = sheetConfigs.get(i);
-                String fileName = (String) cfg.get("fileName");
-                String sheetName = (String) cfg.get("sheetName");
-                String rangeStr = (String) cfg.get("rangeStr");
+    /**
+     * อ่านค่า (ไม่ซ้ำ เรียงตามลำดับที่พบ) ของทุกชุดข้อมูลพร้อมกัน ลำดับเดียวกับ sheetConfigs
+     */
+    private static List<ValueCollector> collectCrossFileValues(List<String> fileNames, List<WorkbookSession> sessions,
+            List<Map<String, Object>> sheetConfigs, ExecutorService pool) throws IOException {
+        return readCrossFileRanges(fileNames, sessions, sheetConfigs, pool,
+                (session, sheetName, rangeStr) -> ExcelReader.collectValuesInRange(session, sheetName, rangeStr, null, false));
+    }
 
-                Workbook wb = fileWorkbookMap.get(fileName);
-                if (wb == null) {
-                    throw new IllegalArgumentException("ไม่พบ Workbook สำหรับไฟล์: " + fileName);
-                }
+    /**
+     * การอ่านช่วงเซลล์หนึ่งชุดข้อมูล
+     */
+    private interface RangeReader<T> {
+        T read(WorkbookSession session, String sheetName, String rangeStr);
+    }
 
-                List<String> values = ExcelReader.getAllValuesInRange(wb, sheetName, rangeStr, null);
-                if (i == 0) {
-                    values1.addAll(values);
-                } else {
-                    values2.addAll(values);
-                }
+    /**
+     * อ่านทุกชุดข้อมูลพร้อมกันด้วย reader ลำดับเดียวกับ sheetConfigs
+     */
+    private static <T> List<T> readCrossFileRanges(List<String> fileNames, List<WorkbookSession> sessions,
+            List<Map<String, Object>> sheetConfigs, ExecutorService pool, RangeReader<T> reader) throws IOException {
+        Map<String, WorkbookSession> fileSessionMap = new HashMap<>();
+        for (int i = 0; i < fileNames.size(); i++) {
+            fileSessionMap.put(new File(fileNames.get(i)).getName(), sessions.get(i));
+        }
+
+        List<Callable<T>> tasks = new ArrayList<>();
+        for (Map<String, Object> cfg : sheetConfigs) {
+            String fileName = (String) cfg.get("fileName");
+            String sheetName = (String) cfg.get("sheetName");
+            String rangeStr = (String) cfg.get("rangeStr");
+
+            WorkbookSession session = fileSessionMap.get(fileName);
+            if (session == null) {
+                throw new IllegalArgumentException("ไม่พบ Workbook สำหรับไฟล์: " + fileName);
             }
 
-            // หาค่าที่ซ้ำกัน
-            List<String> notMatched = new ArrayList<>();
-            for (String v : values1) {
-                if (values2.contains(v)) {
-                    notMatched.add(v);
+            tasks.add(() -> reader.read(session, sheetName, rangeStr));
+        }
+        return ParallelTasks.invokeAll(pool, tasks);
+    }
+
+    /**
+     * ชื่อชีทที่เงื่อนไข CROSSFILEDUPLICATED และ CROSSFILECOMPARE อ้างถึงในแต่ละไฟล์ (ลำดับเดียวกับ fileNames)
+     */
+    private static List<Set<String>> requiredSheets(List<String> fileNames, Set<Object> validates) {
+        Map<String, Set<String>> sheetsByFile = new HashMap<>();
+        for (Object validate : validates) {
+            Object detail = ((Map<?, ?>) validate).get("detail");
+            Object sheetConfigs = detail instanceof Map ? ((Map<?, ?>) detail).get("sheetConfigs") : null;
+            if (!(sheetConfigs instanceof List)) {
+                continue;
+            }
+            for (Object cfg : (List<?>) sheetConfigs) {
+                if (cfg instanceof Map) {
+                    Object fileName = ((Map<?, ?>) cfg).get("fileName");
+                    Object sheetName = ((Map<?, ?>) cfg).get("sheetName");
+                    if (sheetName != null) {
+                        sheetsByFile.computeIfAbsent(String.valueOf(fileName), k -> new HashSet<>())
+                                .add(sheetName.toString());
+                    }
                 }
             }
-
-            return notMatched;
         }
 
+        List<Set<String>> result = new ArrayList<>();
+        for (String fileName : fileNames) {
+            result.add(sheetsByFile.getOrDefault(new File(fileName).getName(), new HashSet<>()));
+        }
+        return result;
+    }
 
     /**
      * ตัวอย่างการใช้งาน
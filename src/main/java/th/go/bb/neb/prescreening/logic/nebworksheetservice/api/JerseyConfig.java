@@ -0,0 +1,18 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.springframework.stereotype.Component;
+
+/**
+ * ลงทะเบียน resource ของ JAX-RS กับ spring-boot-starter-jersey
+ */
+@Component
+public class JerseyConfig extends ResourceConfig {
+
+    public JerseyConfig() {
+        register(MultiPartFeature.class);
+        register(NEBWorkSheetResource.class);
+        register(ValidationJobResource.class);
+    }
+}
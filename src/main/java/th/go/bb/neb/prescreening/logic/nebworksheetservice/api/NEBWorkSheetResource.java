@@ -0,0 +1,117 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
+import org.glassfish.jersey.media.multipart.FormDataParam;
+import org.springframework.stereotype.Component;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.NEBWorkSheetBatch;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.NEBWorkSheetService;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * REST API สำหรับตรวจสอบไฟล์ Excel ที่อัปโหลด
+ *
+ * POST /worksheet/validate (multipart/form-data)
+ * - file   : ไฟล์ Excel (.xlsx หรือ .xls) ชื่อไฟล์ใช้เป็น agency code เหมือน processExcelToWssResult
+ * - params : พารามิเตอร์ (ส่งได้หลายส่วน หรือส่วนเดียวบรรทัดละหนึ่งตัว)
+ * - mode   : DOM (ค่าเริ่มต้น) หรือ STREAMING
+ * ตอบกลับเป็น wssResult
+ *
+ * การคัดลอกไฟล์ลงไฟล์ชั่วคราวและการประมวลผลทำบน thread แยก (virtual thread เมื่อรันบน Java 21 ขึ้นไป)
+ * โดยไม่ค้าง thread ของ container จำนวนไฟล์ที่ประมวลผลพร้อมกันจำกัดตาม NEBWorkSheetBatch.defaultParallelism
+ */
+@Component
+@Path("/worksheet")
+public class NEBWorkSheetResource {
+
+    private final int parallelism = NEBWorkSheetBatch.defaultParallelism();
+    private final ExecutorService executor = ValidationThreads.newExecutor(parallelism);
+    private final Semaphore permits = new Semaphore(parallelism);
+
+    @POST
+    @Path("/validate")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void validate(@FormDataParam("file") InputStream file,
+                         @FormDataParam("file") FormDataContentDisposition fileDetail,
+                         @FormDataParam("params") List<FormDataBodyPart> paramParts,
+                         @FormDataParam("mode") String modeName,
+                         @Suspended AsyncResponse response) {
+        String[] params;
+        ExcelReadMode mode;
+        try {
+            params = Uploads.params(paramParts);
+            mode = Uploads.mode(modeName);
+        } catch (IllegalArgumentException e) {
+            response.resume(json(Response.Status.BAD_REQUEST, Uploads.errorResult("E400", e.getMessage())));
+            return;
+        }
+
+        String fileName = fileDetail != null ? fileDetail.getFileName() : null;
+        try {
+            executor.execute(() -> response.resume(process(file, fileName, params, mode)));
+        } catch (RejectedExecutionException e) {
+            response.resume(json(Response.Status.SERVICE_UNAVAILABLE,
+                    Uploads.errorResult("E503", "ระบบกำลังปิดให้บริการ")));
+        }
+    }
+
+    /**
+     * บันทึกไฟล์ที่อัปโหลดลงไฟล์ชั่วคราว ประมวลผล แล้วลบไฟล์ชั่วคราว
+     */
+    private Response process(InputStream file, String fileName, String[] params, ExcelReadMode mode) {
+        java.nio.file.Path upload;
+        try {
+            upload = Uploads.save(file, fileName);
+        } catch (IllegalArgumentException e) {
+            return json(Response.Status.BAD_REQUEST, Uploads.errorResult("E400", e.getMessage()));
+        } catch (IOException e) {
+            return json(Response.Status.INTERNAL_SERVER_ERROR, Uploads.errorResult("E001", e.getMessage()));
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Uploads.delete(upload);
+            return json(Response.Status.SERVICE_UNAVAILABLE, Uploads.errorResult("E503", "การตรวจสอบถูกยกเลิก"));
+        }
+
+        try {
+            String wssResult = NEBWorkSheetService.processExcelToWssResult(upload.toString(), params, mode);
+            return json(Response.Status.OK, wssResult);
+        } catch (IllegalArgumentException e) {
+            return json(Response.Status.BAD_REQUEST, Uploads.errorResult("E400", e.getMessage()));
+        } catch (RuntimeException e) {
+            return json(Response.Status.INTERNAL_SERVER_ERROR, Uploads.errorResult("E500", e.getMessage()));
+        } finally {
+            permits.release();
+            Uploads.delete(upload);
+        }
+    }
+
+    static Response json(Response.Status status, String body) {
+        return Response.status(status).entity(body).type(MediaType.APPLICATION_JSON + ";charset=UTF-8").build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
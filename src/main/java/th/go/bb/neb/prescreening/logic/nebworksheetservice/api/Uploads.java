@@ -0,0 +1,140 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import org.json.JSONObject;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.NEBWorkSheetBatch;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * จัดการไฟล์และพารามิเตอร์ที่อัปโหลดผ่าน multipart
+ *
+ * ไฟล์ถูกคัดลอกแบบ stream ลงไฟล์ชั่วคราว (ไม่สร้างสำเนาทั้งไฟล์ในหน่วยความจำ) โดยใช้ชื่อไฟล์เดิม
+ * เพราะ agency code ได้จากชื่อไฟล์ (5 ตัวอักษรแรก)
+ */
+final class Uploads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Uploads.class);
+
+    /** โฟลเดอร์สำหรับไฟล์ชั่วคราว (ค่าเริ่มต้นคือ java.io.tmpdir) */
+    static final String UPLOAD_DIR_PROPERTY = "neb.upload.dir";
+
+    private Uploads() {
+    }
+
+    /**
+     * บันทึกไฟล์ที่อัปโหลดลงโฟลเดอร์ชั่วคราวของตัวเอง
+     *
+     * @param in           ข้อมูลไฟล์
+     * @param originalName ชื่อไฟล์ตามที่อัปโหลด
+     * @return path ของไฟล์ชั่วคราว (ลบด้วย delete)
+     * @throws IOException หากเขียนไฟล์ไม่ได้
+     */
+    static Path save(InputStream in, String originalName) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("ต้องแนบไฟล์ Excel ในส่วน file");
+        }
+        String uploadDir = System.getProperty(UPLOAD_DIR_PROPERTY);
+        Path dir = uploadDir == null
+                ? Files.createTempDirectory("neb-upload-")
+                : Files.createTempDirectory(Files.createDirectories(Paths.get(uploadDir)), "neb-upload-");
+        Path file = dir.resolve(safeFileName(originalName));
+        try {
+            Files.copy(in, file);
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * ลบไฟล์ชั่วคราวและโฟลเดอร์ของไฟล์
+     */
+    static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.getParent());
+        } catch (IOException e) {
+            LOG.warn("ไม่สามารถลบไฟล์ชั่วคราว: {} ({})", file, e.getMessage());
+        }
+    }
+
+    /**
+     * ชื่อไฟล์อย่างเดียว (ตัด path ที่ส่งมาทิ้ง)
+     */
+    static String safeFileName(String originalName) {
+        if (originalName == null) {
+            return "upload.xlsx";
+        }
+        String name = originalName.replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1).trim();
+        if (name.isEmpty() || ".".equals(name) || "..".equals(name)) {
+            return "upload.xlsx";
+        }
+        return name;
+    }
+
+    /**
+     * พารามิเตอร์จากส่วน params (ส่งได้หลายส่วน และแต่ละส่วนมีได้หลายบรรทัด)
+     */
+    static String[] params(List<FormDataBodyPart> parts) {
+        List<String> lines = new ArrayList<>();
+        if (parts != null) {
+            for (FormDataBodyPart part : parts) {
+                String value = part.getValue();
+                if (value != null) {
+                    lines.addAll(Arrays.asList(value.split("\\r?\\n")));
+                }
+            }
+        }
+        String[] params = NEBWorkSheetBatch.parseParams(lines);
+        if (params.length < 1) {
+            throw new IllegalArgumentException("ต้องระบุพารามิเตอร์อย่างน้อย 1 ค่า: sheetName");
+        }
+        return params;
+    }
+
+    /**
+     * โหมดการอ่านไฟล์ (ค่าว่าง = DOM)
+     */
+    static ExcelReadMode mode(String mode) {
+        if (mode == null || mode.trim().isEmpty()) {
+            return ExcelReadMode.DOM;
+        }
+        try {
+            return ExcelReadMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("โหมดการอ่านไฟล์ไม่ถูกต้อง: " + mode);
+        }
+    }
+
+    /**
+     * ผลลัพธ์กรณีผิดพลาด ในรูปแบบเดียวกับ wssResult ของ NEBWorkSheetService
+     */
+    static String errorResult(String errorCode, String message) {
+        JSONObject wssResult = new JSONObject();
+        JSONObject wssResultObj = new JSONObject();
+
+        wssResultObj.put("data", new JSONObject());
+        wssResultObj.put("status", "fail");
+
+        JSONObject errorMessage = new JSONObject();
+        errorMessage.put("errorCode", errorCode);
+        errorMessage.put("errorMessage", message);
+
+        wssResultObj.put("errorMessage", errorMessage);
+        wssResult.put("wssResult", wssResultObj);
+        return wssResult.toString();
+    }
+}
@@ -0,0 +1,215 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.NEBWorkSheetBatch;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.NEBWorkSheetService;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * คิวงานตรวจสอบไฟล์แบบ asynchronous
+ *
+ * งานที่ส่งเข้ามาได้ job id ทันที แล้วรอในคิวที่จำกัดขนาด ({@value #QUEUE_CAPACITY_PROPERTY} ค่าเริ่มต้น 100)
+ * worker จำนวน {@value #WORKERS_PROPERTY} (ค่าเริ่มต้น NEBWorkSheetBatch.defaultParallelism) ดึงงานไปประมวลผล
+ * เมื่อคิวเต็ม submit จะโยน RejectedExecutionException แทนการรับงานเพิ่มไม่จำกัด
+ * ผลลัพธ์ของงานที่เสร็จแล้วเก็บไว้ {@value #RETENTION_PROPERTY} มิลลิวินาที (ค่าเริ่มต้น 1 ชั่วโมง)
+ *
+ * เป็น bean ของ Spring (ใช้ constructor แบบไม่มีพารามิเตอร์) และปิด worker เมื่อปิด context
+ */
+@Component
+public final class ValidationJobQueue {
+
+    public static final String WORKERS_PROPERTY = "neb.jobs.workers";
+    public static final String QUEUE_CAPACITY_PROPERTY = "neb.jobs.queueCapacity";
+    public static final String RETENTION_PROPERTY = "neb.jobs.retentionMillis";
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * การประมวลผลไฟล์หนึ่งไฟล์ (ค่าเริ่มต้นคือ NEBWorkSheetService.processExcelToWssResult)
+     */
+    @FunctionalInterface
+    interface Processor {
+        String process(String fileName, String[] params, ExcelReadMode mode);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Processor processor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final long retentionMillis;
+
+    public ValidationJobQueue() {
+        this(Integer.getInteger(WORKERS_PROPERTY, NEBWorkSheetBatch.defaultParallelism()),
+                Integer.getInteger(QUEUE_CAPACITY_PROPERTY, 100),
+                Long.getLong(RETENTION_PROPERTY, TimeUnit.HOURS.toMillis(1)));
+    }
+
+    public ValidationJobQueue(int workers, int queueCapacity, long retentionMillis) {
+        this(workers, queueCapacity, retentionMillis, NEBWorkSheetService::processExcelToWssResult);
+    }
+
+    ValidationJobQueue(int workers, int queueCapacity, long retentionMillis, Processor processor) {
+        int threads = Math.max(1, workers);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "neb-validation-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.retentionMillis = retentionMillis;
+        this.processor = processor;
+    }
+
+    /**
+     * true ถ้าคิวเต็ม (ใช้ตรวจก่อนรับไฟล์ เพื่อไม่ต้องบันทึกไฟล์ที่จะถูกปฏิเสธ)
+     */
+    public boolean isFull() {
+        return executor.getQueue().remainingCapacity() == 0;
+    }
+
+    /**
+     * ส่งไฟล์เข้าคิว ไฟล์จะถูกลบหลังประมวลผลเสร็จ
+     *
+     * @param upload ไฟล์ชั่วคราว (ดู Uploads.save)
+     * @param params พารามิเตอร์ในรูปแบบเดียวกับ NEBWorkSheetService.processExcelToWssResult
+     * @param mode   โหมดการอ่านไฟล์
+     * @return งานที่อยู่ในคิว
+     * @throws RejectedExecutionException หากคิวเต็ม (ไฟล์ไม่ถูกลบ ผู้เรียกต้องลบเอง)
+     */
+    public Job submit(Path upload, String[] params, ExcelReadMode mode) {
+        purgeExpired();
+
+        Job job = new Job(UUID.randomUUID().toString());
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, upload, params, mode));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * งานตาม id หรือ null ถ้าไม่พบ (หรือหมดอายุแล้ว)
+     */
+    public Job get(String id) {
+        return id == null ? null : jobs.get(id);
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getRunningCount() {
+        return executor.getActiveCount();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * ประมวลผลงาน ทุกข้อผิดพลาด (รวมถึง Error เช่น OutOfMemoryError) ทำให้งานเป็น FAILED
+     * แทนที่จะค้างสถานะ RUNNING ตลอดไป ส่วน Error ยังถูกโยนต่อให้ worker เหมือนเดิม
+     * สถานะถูกตั้งหลังสุด ผู้ที่เห็น DONE หรือ FAILED จึงเห็น finishedAt และผลลัพธ์ด้วย
+     */
+    private void run(Job job, Path upload, String[] params, ExcelReadMode mode) {
+        job.startedAt = System.currentTimeMillis();
+        job.status = Status.RUNNING;
+        Throwable failure = null;
+        try {
+            job.wssResult = processor.process(upload.toString(), params, mode);
+        } catch (Throwable e) {
+            failure = e;
+            job.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        } finally {
+            Uploads.delete(upload);
+            job.finishedAt = System.currentTimeMillis();
+            job.status = failure == null ? Status.DONE : Status.FAILED;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * ลบงานที่เสร็จแล้วเกินเวลาที่เก็บไว้
+     */
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            if (job.finishedAt > 0 && now - job.finishedAt > retentionMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * งานตรวจสอบหนึ่งไฟล์
+     */
+    public static final class Job {
+        private final String id;
+        private final long submittedAt = System.currentTimeMillis();
+        private volatile Status status = Status.QUEUED;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+        private volatile String wssResult;
+        private volatile String error;
+
+        Job(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getSubmittedAt() {
+            return submittedAt;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+
+        /**
+         * wssResult เมื่อสถานะเป็น DONE
+         */
+        public String getWssResult() {
+            return wssResult;
+        }
+
+        /**
+         * ข้อความผิดพลาดเมื่อสถานะเป็น FAILED
+         */
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
+import org.glassfish.jersey.media.multipart.FormDataParam;
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * REST API สำหรับตรวจสอบไฟล์ขนาดใหญ่แบบ asynchronous
+ *
+ * POST /worksheet/jobs (multipart/form-data เหมือน /worksheet/validate)
+ *   ตอบ 202 พร้อม jobId ทันที หรือ 429 เมื่อคิวเต็ม (ให้ลองใหม่ตาม Retry-After)
+ * GET /worksheet/jobs/{jobId}
+ *   ตอบสถานะงาน (QUEUED, RUNNING, DONE, FAILED) และ wssResult เมื่อเสร็จ หรือ 404 ถ้าไม่พบงาน
+ */
+@Component
+@Path("/worksheet/jobs")
+public class ValidationJobResource {
+
+    /** เวลาที่แนะนำให้รอก่อนส่งใหม่เมื่อคิวเต็ม (วินาที) */
+    private static final int RETRY_AFTER_SECONDS = 5;
+
+    private final ValidationJobQueue queue;
+
+    public ValidationJobResource(ValidationJobQueue queue) {
+        this.queue = queue;
+    }
+
+    @POST
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response submit(@FormDataParam("file") InputStream file,
+                           @FormDataParam("file") FormDataContentDisposition fileDetail,
+                           @FormDataParam("params") List<FormDataBodyPart> paramParts,
+                           @FormDataParam("mode") String modeName) {
+        // ปฏิเสธก่อนบันทึกไฟล์ถ้าคิวเต็มอยู่แล้ว
+        if (queue.isFull()) {
+            return tooManyRequests();
+        }
+
+        java.nio.file.Path upload;
+        String[] params;
+        ExcelReadMode mode;
+        try {
+            params = Uploads.params(paramParts);
+            mode = Uploads.mode(modeName);
+            upload = Uploads.save(file, fileDetail != null ? fileDetail.getFileName() : null);
+        } catch (IllegalArgumentException e) {
+            return NEBWorkSheetResource.json(Response.Status.BAD_REQUEST, Uploads.errorResult("E400", e.getMessage()));
+        } catch (IOException e) {
+            return NEBWorkSheetResource.json(Response.Status.INTERNAL_SERVER_ERROR, Uploads.errorResult("E001", e.getMessage()));
+        }
+
+        ValidationJobQueue.Job job;
+        try {
+            job = queue.submit(upload, params, mode);
+        } catch (RejectedExecutionException e) {
+            Uploads.delete(upload);
+            return tooManyRequests();
+        }
+
+        return Response.status(Response.Status.ACCEPTED)
+                .location(URI.create("worksheet/jobs/" + job.getId()))
+                .entity(toJson(job))
+                .type(MediaType.APPLICATION_JSON + ";charset=UTF-8")
+                .build();
+    }
+
+    @GET
+    @Path("/{jobId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response status(@PathParam("jobId") String jobId) {
+        ValidationJobQueue.Job job = queue.get(jobId);
+        if (job == null) {
+            return NEBWorkSheetResource.json(Response.Status.NOT_FOUND,
+                    Uploads.errorResult("E404", "ไม่พบงาน: " + jobId));
+        }
+        return NEBWorkSheetResource.json(Response.Status.OK, toJson(job));
+    }
+
+    private Response tooManyRequests() {
+        return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .entity(Uploads.errorResult("E429", "คิวการตรวจสอบเต็ม กรุณาลองใหม่ภายหลัง"))
+                .type(MediaType.APPLICATION_JSON + ";charset=UTF-8")
+                .build();
+    }
+
+    /**
+     * สถานะของงาน (wssResult เป็น JSON อยู่แล้วจึงใส่ลงไปตรงๆ)
+     */
+    static String toJson(ValidationJobQueue.Job job) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"jobId\":").append(JSONObject.quote(job.getId()));
+        json.append(",\"status\":").append(JSONObject.quote(job.getStatus().name()));
+        json.append(",\"submittedAt\":").append(job.getSubmittedAt());
+        if (job.getStartedAt() > 0) {
+            json.append(",\"startedAt\":").append(job.getStartedAt());
+        }
+        if (job.getFinishedAt() > 0) {
+            json.append(",\"finishedAt\":").append(job.getFinishedAt());
+        }
+        if (job.getStatus() == ValidationJobQueue.Status.DONE) {
+            json.append(",\"wssResult\":").append(job.getWssResult());
+        } else if (job.getStatus() == ValidationJobQueue.Status.FAILED) {
+            json.append(",\"error\":").append(JSONObject.quote(String.valueOf(job.getError())));
+        }
+        return json.append('}').toString();
+    }
+}
@@ -0,0 +1,29 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * สร้าง ExecutorService สำหรับงานตรวจสอบไฟล์ที่มาจาก HTTP
+ *
+ * ถ้า JVM รองรับ virtual thread (Java 21 ขึ้นไป) ใช้หนึ่ง virtual thread ต่องาน
+ * ไม่เช่นนั้น (โปรเจกต์คอมไพล์ด้วย Java 17) ใช้ pool ของ platform thread ตามจำนวนที่กำหนด
+ */
+final class ValidationThreads {
+
+    private ValidationThreads() {
+    }
+
+    /**
+     * @param platformThreads จำนวน thread เมื่อไม่มี virtual thread
+     */
+    static ExecutorService newExecutor(int platformThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(1, platformThreads));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick automaton สำหรับหาคำค้นหลายคำในข้อความเดียวด้วยการอ่านข้อความรอบเดียว
+ *
+ * trie เก็บใน int[] (ลูกคนแรก, พี่น้องถัดไป, อักขระ) จึงไม่ต้องสร้าง object ต่อ node
+ * failure link และ output link (node ถัดไปตาม failure ที่เป็นจุดจบของคำค้น) คำนวณแบบ BFS ตอนสร้าง
+ * คำค้นว่างไม่ถูกเก็บ (ผู้เรียกต้องจัดการเอง) ใช้ร่วมกันระหว่าง thread ได้หลังสร้างเสร็จ
+ */
+final class AhoCorasick {
+
+    private static final int NONE = -1;
+
+    /** ผู้รับผลการค้นหา */
+    interface MatchListener {
+        /**
+         * พบคำค้นลำดับ pattern สิ้นสุดที่ตำแหน่ง end (รวม)
+         *
+         * @return false = หยุดค้นหา
+         */
+        boolean onMatch(int pattern, int end);
+    }
+
+    private int[] firstChild = new int[16];
+    private int[] nextSibling = new int[16];
+    private char[] label = new char[16];
+    private int[] fail;
+    /** คำค้นแรกที่จบที่ node นี้ (NONE = ไม่มี) คำค้นที่เหมือนกันต่อกันด้วย nextSamePattern */
+    private int[] patternAt = new int[16];
+    /** node ถัดไปตาม failure link ที่มีคำค้นจบ */
+    private int[] outputLink;
+    private final int[] nextSamePattern;
+    private final int[] lengths;
+    private int nodeCount = 1;
+
+    /**
+     * @param patterns คำค้น (ลำดับในอาร์เรย์คือหมายเลขคำค้นที่ส่งให้ MatchListener)
+     */
+    AhoCorasick(String[] patterns) {
+        firstChild[0] = NONE;
+        nextSibling[0] = NONE;
+        patternAt[0] = NONE;
+        nextSamePattern = new int[patterns.length];
+        lengths = new int[patterns.length];
+
+        for (int p = 0; p < patterns.length; p++) {
+            String pattern = patterns[p];
+            lengths[p] = pattern.length();
+            nextSamePattern[p] = NONE;
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int child = child(node, c);
+                if (child == NONE) {
+                    child = newNode(c);
+                    nextSibling[child] = firstChild[node];
+                    firstChild[node] = child;
+                }
+                node = child;
+            }
+            nextSamePattern[p] = patternAt[node];
+            patternAt[node] = p;
+        }
+        buildLinks();
+    }
+
+    /**
+     * ความยาวของคำค้น
+     */
+    int length(int pattern) {
+        return lengths[pattern];
+    }
+
+    /**
+     * หาคำค้นทั้งหมดในข้อความ (รายงานตามตำแหน่งที่คำค้นจบ)
+     */
+    void match(String text, MatchListener listener) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int child = child(node, c);
+            while (child == NONE && node != 0) {
+                node = fail[node];
+                child = child(node, c);
+            }
+            node = child == NONE ? 0 : child;
+
+            for (int out = patternAt[node] != NONE ? node : outputLink[node]; out != NONE; out = outputLink[out]) {
+                for (int p = patternAt[out]; p != NONE; p = nextSamePattern[p]) {
+                    if (!listener.onMatch(p, i)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private int child(int node, char c) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (label[child] == c) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private int newNode(char c) {
+        if (nodeCount == label.length) {
+            int capacity = nodeCount * 2;
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            label = Arrays.copyOf(label, capacity);
+            patternAt = Arrays.copyOf(patternAt, capacity);
+        }
+        int node = nodeCount++;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        label[node] = c;
+        patternAt[node] = NONE;
+        return node;
+    }
+
+    /**
+     * คำนวณ failure link และ output link ตามลำดับความลึก (BFS)
+     */
+    private void buildLinks() {
+        fail = new int[nodeCount];
+        outputLink = new int[nodeCount];
+        outputLink[0] = NONE;
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int child = firstChild[0]; child != NONE; child = nextSibling[child]) {
+            fail[child] = 0;
+            outputLink[child] = NONE;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                char c = label[child];
+                int f = fail[node];
+                int target = child(f, c);
+                while (target == NONE && f != 0) {
+                    f = fail[f];
+                    target = child(f, c);
+                }
+                fail[child] = target == NONE ? 0 : target;
+                int failNode = fail[child];
+                outputLink[child] = patternAt[failNode] != NONE ? failNode : outputLink[failNode];
+                queue[tail++] = child;
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.util.CellReference;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * เปรียบเทียบข้อมูลระหว่างไฟล์ทีละแถว สำหรับ CROSSFILECOMPARE แบบ ROW และ KEY
+ *
+ * ROW: แถวที่ k ของแต่ละช่วงต้องมีค่าเท่ากันทุกคอลัมน์ (เทียบตามตำแหน่งคอลัมน์ในช่วง)
+ * KEY: คอลัมน์แรกของช่วงเป็น key จับคู่แถวด้วย sorted merge join แล้วเทียบคอลัมน์ที่เหลือ
+ *      (key ที่ซ้ำกันจับคู่ตามลำดับที่พบ key ที่ไม่มีคู่ถูกรายงาน)
+ *
+ * ช่วงแบบ EOF (เช่น "B15:EOF") ใช้ตั้งแต่คอลัมน์เริ่มต้นถึงคอลัมน์สุดท้ายของชีทที่มีข้อมูลตั้งแต่แถวเริ่มต้น
+ * และถึงแถวสุดท้ายที่มีข้อมูลในคอลัมน์เหล่านั้น ช่วงที่กว้างไม่เท่ากันเทียบถึงคอลัมน์ของช่วงที่กว้างกว่า
+ * (คอลัมน์ที่เกินช่วงของอีกฝั่งถือเป็นค่าว่าง)
+ *
+ * ค่าที่เป็นตัวเลขทั้งสองฝั่งเทียบด้วย BigDecimal (100 เท่ากับ 100.00) ค่าอื่นเทียบเป็นข้อความที่ตัดช่องว่างหัวท้าย
+ *
+ * ทั้งสองแบบเดินเฉพาะแถวที่มีเซลล์ไม่ว่างตาม bitmap ของคอลัมน์ใน snapshot แถวที่ว่างทั้งสองฝั่งจึงไม่ถูกอ่าน
+ *
+ * หน่วยความจำ: ทุกช่วงอ่านจาก SheetSnapshot ของทั้งชีท ซึ่งอยู่ในหน่วยความจำอยู่แล้ว (ใช้ร่วมกับคำสั่งอื่น
+ * ผ่าน SheetSnapshotCache) จึงไม่จำกัดตามขนาดไฟล์ ส่วนที่ใช้เพิ่มคือ แบบ ROW ไม่ใช้เพิ่มตามจำนวนแถว
+ * แบบ KEY ใช้เพิ่มต่อช่วงประมาณ 16-24 ไบต์ต่อแถวที่มี key (ลำดับแถว อ้างอิง key และอาร์เรย์ชั่วคราวของการเรียง)
+ * บวกข้อความ key ของเซลล์ที่ไม่ใช่ข้อความ (เซลล์ข้อความใช้ข้อความเดิมใน snapshot) key ถูกสร้างครั้งเดียว
+ * ตอนเรียงและใช้ซ้ำตอนจับคู่ จึงเก็บลำดับแถวและอ้างอิง key (ประมาณ 8-12 ไบต์ต่อแถว) ของช่วงแรกและช่วงที่กำลังเทียบ
+ * รายการที่ไม่ตรงกันเก็บไม่เกิน {@value #MAX_MISMATCHES_PROPERTY} รายการ
+ * (ค่าเริ่มต้น 1000 รายการ ส่วนที่เกินนับจำนวนอย่างเดียว)
+ */
+public final class CrossFileCompare {
+
+    public static final String MAX_MISMATCHES_PROPERTY = "neb.crossFileCompare.maxMismatches";
+
+    private CrossFileCompare() {
+    }
+
+    /**
+     * ช่วงข้อมูลหนึ่งชุด (ไฟล์, ชีท, ช่วง)
+     */
+    public static final class Side {
+        private final String label;
+        private final SheetSnapshot sheet;
+        /** คอลัมน์ของช่วง (startCol ถึง endCol) */
+        private final SheetSnapshot.Column[] columns;
+        private final int startRow;
+        private final int startCol;
+        private final int endCol;
+        private final int lastRow;
+
+        /**
+         * @param session   session ของไฟล์
+         * @param label     ชื่อที่ใช้ในข้อความ (เช่น ชื่อไฟล์)
+         * @param sheetName ชื่อชีท
+         * @param rangeStr  ช่วงเซลล์ (เช่น "B15:EOF" หรือ "A5:C100")
+         * @throws IllegalArgumentException หากไม่พบชีทหรือช่วงไม่ถูกต้อง
+         */
+        public Side(WorkbookSession session, String label, String sheetName, String rangeStr) {
+            this.label = label + "!" + sheetName;
+            this.sheet = session.sheet(sheetName);
+            RangeSpec range = RangeSpec.parse(rangeStr);
+            this.startRow = range.startRow;
+            this.startCol = range.startCol;
+            if (range.eof) {
+                this.endCol = lastDataColumn(sheet, range.startCol, range.startRow);
+                int last = sheet.getLastNonEmptyRow(startCol, endCol);
+                this.lastRow = last >= startRow ? last : startRow - 1; // ไม่พบข้อมูลเลย
+            } else {
+                this.endCol = range.endCol;
+                this.lastRow = range.endRow;
+            }
+            this.columns = ExcelReader.columnsOf(sheet, startCol, endCol);
+        }
+
+        /**
+         * คอลัมน์สุดท้าย (ไม่น้อยกว่า startCol) ที่มีข้อมูลตั้งแต่แถว startRow
+         */
+        private static int lastDataColumn(SheetSnapshot sheet, int startCol, int startRow) {
+            for (int colIdx = sheet.getColumnCount() - 1; colIdx > startCol; colIdx--) {
+                if (sheet.getLastNonEmptyRow(colIdx) >= startRow) {
+                    return colIdx;
+                }
+            }
+            return startCol;
+        }
+
+        /**
+         * แถวแรกตั้งแต่ fromRow (ไม่เกินแถวสุดท้ายของช่วง) ที่มีเซลล์ไม่ว่างในช่วง หรือ -1
+         */
+        int nextRow(int fromRow) {
+            int rowIdx = SheetSnapshot.nextNonEmptyRow(columns, fromRow);
+            return rowIdx <= lastRow ? rowIdx : -1;
+        }
+
+        /**
+         * แถวแรกตั้งแต่ fromRow (ไม่เกินแถวสุดท้ายของช่วง) ที่ key ไม่ว่าง หรือ -1
+         */
+        int nextKeyRow(int fromRow) {
+            int rowIdx = columns[0].nextNonEmptyRow(fromRow);
+            return rowIdx <= lastRow ? rowIdx : -1;
+        }
+
+        int rowCount() {
+            return Math.max(lastRow - startRow + 1, 0);
+        }
+
+        int width() {
+            return endCol - startCol + 1;
+        }
+
+        /**
+         * ค่าของเซลล์ (null ถ้าว่างหรือ offset เกินความกว้างของช่วง)
+         */
+        Object value(int rowIdx, int offset) {
+            if (offset >= columns.length) {
+                return null;
+            }
+            SheetSnapshot.Column column = columns[offset];
+            return column.isEmpty(rowIdx) ? null : column.getValue(rowIdx, sheet);
+        }
+
+        String key(int rowIdx) {
+            return text(value(rowIdx, 0));
+        }
+
+        String position(int rowIdx, int offset) {
+            return label + "!" + CellReference.convertNumToColString(startCol + offset) + (rowIdx + 1);
+        }
+    }
+
+    /**
+     * เทียบแถวที่ k ของทุกช่วงกับช่วงแรก
+     *
+     * @return ข้อความของเซลล์ที่ไม่ตรงกัน (ว่าง = ตรงกันทุกแถว)
+     */
+    public static List<String> compareRows(List<Side> sides) {
+        Mismatches mismatches = new Mismatches();
+        Side first = sides.get(0);
+        for (int i = 1; i < sides.size(); i++) {
+            Side other = sides.get(i);
+            int width = Math.max(first.width(), other.width());
+            // แถวที่ k ว่างทั้งสองฝั่งตรงกันเสมอ จึงข้ามไปยัง k ถัดไปที่ฝั่งใดฝั่งหนึ่งมีข้อมูล
+            for (int k = nextOffset(first, other, 0); k >= 0; k = nextOffset(first, other, k + 1)) {
+                int firstRow = first.startRow + k;
+                int otherRow = other.startRow + k;
+                for (int offset = 0; offset < width; offset++) {
+                    Object a = k < first.rowCount() ? first.value(firstRow, offset) : null;
+                    Object b = k < other.rowCount() ? other.value(otherRow, offset) : null;
+                    if (!same(a, b)) {
+                        mismatches.add(first.position(firstRow, offset) + " = " + text(a)
+                                + " ไม่เท่ากับ " + other.position(otherRow, offset) + " = " + text(b));
+                    }
+                }
+            }
+        }
+        return mismatches.toList();
+    }
+
+    /**
+     * ลำดับแถว k แรก (นับจากแถวเริ่มต้นของแต่ละช่วง) ตั้งแต่ fromOffset ที่ช่วงใดช่วงหนึ่งมีข้อมูล หรือ -1
+     */
+    private static int nextOffset(Side first, Side other, int fromOffset) {
+        int a = first.nextRow(first.startRow + fromOffset);
+        int b = other.nextRow(other.startRow + fromOffset);
+        if (a < 0) {
+            return b < 0 ? -1 : b - other.startRow;
+        }
+        return b < 0 ? a - first.startRow : Math.min(a - first.startRow, b - other.startRow);
+    }
+
+    /**
+     * จับคู่แถวของทุกช่วงกับช่วงแรกตาม key (คอลัมน์แรกของช่วง) แล้วเทียบคอลัมน์ที่เหลือ
+     *
+     * @return ข้อความของ key ที่ไม่มีคู่และเซลล์ที่ไม่ตรงกัน (ว่าง = ตรงกันทุกแถว)
+     */
+    public static List<String> compareByKey(List<Side> sides) {
+        Mismatches mismatches = new Mismatches();
+        Side first = sides.get(0);
+        SortedRows firstSorted = sortedRows(first);
+        int[] firstOrder = firstSorted.rows;
+        for (int i = 1; i < sides.size(); i++) {
+            Side other = sides.get(i);
+            SortedRows otherSorted = sortedRows(other);
+            int[] otherOrder = otherSorted.rows;
+            int width = Math.max(first.width(), other.width());
+
+            int a = 0;
+            int b = 0;
+            while (a < firstOrder.length || b < otherOrder.length) {
+                String keyA = a < firstOrder.length ? firstSorted.keys[a] : null;
+                String keyB = b < otherOrder.length ? otherSorted.keys[b] : null;
+                int cmp = keyA == null ? 1 : keyB == null ? -1 : keyA.compareTo(keyB);
+                if (cmp < 0) {
+                    mismatches.add("KEY '" + keyA + "' (" + first.position(firstOrder[a], 0) + ") ไม่พบใน " + other.label);
+                    a++;
+                } else if (cmp > 0) {
+                    mismatches.add("KEY '" + keyB + "' (" + other.position(otherOrder[b], 0) + ") ไม่พบใน " + first.label);
+                    b++;
+                } else {
+                    for (int offset = 1; offset < width; offset++) {
+                        Object valueA = first.value(firstOrder[a], offset);
+                        Object valueB = other.value(otherOrder[b], offset);
+                        if (!same(valueA, valueB)) {
+                            mismatches.add("KEY '" + keyA + "': " + first.position(firstOrder[a], offset) + " = " + text(valueA)
+                                    + " ไม่เท่ากับ " + other.position(otherOrder[b], offset) + " = " + text(valueB));
+                        }
+                    }
+                    a++;
+                    b++;
+                }
+            }
+        }
+        return mismatches.toList();
+    }
+
+    /**
+     * แถวที่มี key ของช่วง เรียงตาม key พร้อม key ของแต่ละแถว (ตำแหน่งเดียวกัน)
+     */
+    private static final class SortedRows {
+        final int[] rows;
+        final String[] keys;
+
+        SortedRows(int[] rows, String[] keys) {
+            this.rows = rows;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * แถวที่มี key เรียงตาม key (แถวที่ key ว่างถูกข้าม โดยเดินเฉพาะแถวที่ไม่ว่างตาม bitmap ของคอลัมน์ key)
+     * ถ้า key ในช่วงเรียงอยู่แล้วไม่ต้องเรียงใหม่
+     */
+    private static SortedRows sortedRows(Side side) {
+        int capacity = side.rowCount() == 0 ? 0
+                : side.columns[0].countNonEmpty(side.startRow, side.startRow + side.rowCount() - 1);
+        int[] rows = new int[capacity];
+        String[] keys = new String[capacity];
+        int count = 0;
+        boolean sorted = true;
+        for (int rowIdx = side.nextKeyRow(side.startRow); rowIdx >= 0 && count < capacity;
+             rowIdx = side.nextKeyRow(rowIdx + 1)) {
+            String key = side.key(rowIdx);
+            if (key.isEmpty()) {
+                continue;
+            }
+            if (count > 0 && keys[count - 1].compareTo(key) > 0) {
+                sorted = false;
+            }
+            keys[count] = key;
+            rows[count++] = rowIdx;
+        }
+
+        if (count < capacity) {
+            rows = Arrays.copyOf(rows, count);
+            keys = Arrays.copyOf(keys, count);
+        }
+        if (!sorted) {
+            mergeSort(rows, keys);
+        }
+        return new SortedRows(rows, keys);
+    }
+
+    /**
+     * เรียง rows ตาม keys (ตำแหน่งเดียวกัน ใช้ rows.length ตัวแรกของ keys) แบบ merge sort จากล่างขึ้นบน
+     * บน int[] และ String[] โดยไม่ boxing เป็นแบบ stable key ที่ซ้ำกันจึงคงลำดับแถวเดิม
+     */
+    private static void mergeSort(int[] rows, String[] keys) {
+        int n = rows.length;
+        int[] rowBuffer = new int[n];
+        String[] keyBuffer = new String[n];
+        for (int size = 1; size < n; size *= 2) {
+            for (int lo = 0; lo < n - size; lo += size * 2) {
+                int mid = lo + size;
+                int hi = Math.min(lo + size * 2, n);
+                int a = lo;
+                int b = mid;
+                int out = lo;
+                while (a < mid && b < hi) {
+                    if (keys[b].compareTo(keys[a]) < 0) {
+                        rowBuffer[out] = rows[b];
+                        keyBuffer[out++] = keys[b++];
+                    } else {
+                        rowBuffer[out] = rows[a];
+                        keyBuffer[out++] = keys[a++];
+                    }
+                }
+                while (a < mid) {
+                    rowBuffer[out] = rows[a];
+                    keyBuffer[out++] = keys[a++];
+                }
+                while (b < hi) {
+                    rowBuffer[out] = rows[b];
+                    keyBuffer[out++] = keys[b++];
+                }
+                System.arraycopy(rowBuffer, lo, rows, lo, hi - lo);
+                System.arraycopy(keyBuffer, lo, keys, lo, hi - lo);
+            }
+        }
+    }
+
+    /**
+     * true ถ้าค่าเท่ากัน (ตัวเลขเทียบด้วย BigDecimal, ค่าว่างเท่ากับค่าว่างเท่านั้น)
+     */
+    static boolean same(Object a, Object b) {
+        String textA = text(a);
+        String textB = text(b);
+        if (textA.equals(textB)) {
+            return true;
+        }
+        BigDecimal numberA = number(a, textA);
+        BigDecimal numberB = numberA == null ? null : number(b, textB);
+        return numberB != null && numberA.compareTo(numberB) == 0;
+    }
+
+    private static String text(Object value) {
+        return value == null ? "" : value.toString().trim();
+    }
+
+    /**
+     * ค่าตัวเลขแบบ BigDecimal หรือ null ถ้าไม่ใช่ตัวเลข
+     */
+    private static BigDecimal number(Object value, String text) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            return Double.isFinite(d) ? BigDecimal.valueOf(d) : null;
+        }
+        if (value instanceof Number) {
+            return new BigDecimal(value.toString());
+        }
+        if (text.isEmpty()) {
+            return null;
+        }
+        char c = text.charAt(0);
+        if (!(c >= '0' && c <= '9') && c != '-' && c != '+' && c != '.') {
+            return null;
+        }
+        try {
+            return new BigDecimal(text.replace(",", ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * รายการที่ไม่ตรงกัน เก็บไม่เกินจำนวนที่กำหนด ส่วนที่เกินนับจำนวนอย่างเดียว
+     */
+    private static final class Mismatches {
+        private final int max = Math.max(Integer.getInteger(MAX_MISMATCHES_PROPERTY, 1000), 1);
+        private final List<String> items = new ArrayList<>();
+        private long total;
+
+        void add(String item) {
+            total++;
+            if (items.size() < max) {
+                items.add(item);
+            }
+        }
+
+        List<String> toList() {
+            if (total > items.size()) {
+                items.add("พบรายการที่ไม่ตรงกันทั้งหมด " + total + " รายการ (แสดง " + max + " รายการแรก)");
+            }
+            return items;
+        }
+    }
+}
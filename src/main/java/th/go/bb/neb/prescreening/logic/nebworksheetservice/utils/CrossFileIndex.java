@@ -0,0 +1,139 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * ดัชนี hash แบบแบ่ง partition สำหรับหาค่าที่พบในหลายชุดข้อมูล (CROSSFILEDUPLICATED หลายไฟล์)
+ *
+ * ค่าแต่ละค่าถูกส่งไปยัง partition ตาม hash จึงสร้างแต่ละ partition พร้อมกันได้โดยไม่ต้อง lock
+ * แต่ละ partition นับจำนวนชุดข้อมูลที่พบค่านั้น ค่าที่พบในตั้งแต่ 2 ชุดขึ้นไปถือว่าซ้ำ
+ * เวลาที่ใช้เป็นเชิงเส้นตามจำนวนค่าทั้งหมด
+ */
+public final class CrossFileIndex {
+
+    /** จำนวน partition ต่อ thread (แบ่งละเอียดกว่าจำนวน thread เพื่อให้งานกระจายสม่ำเสมอ) */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private CrossFileIndex() {
+    }
+
+    /**
+     * หาค่าที่พบในตั้งแต่ 2 ชุดข้อมูลขึ้นไป
+     *
+     * @param tuples      ค่าที่ไม่ซ้ำของแต่ละชุดข้อมูล (sheet, range ของแต่ละไฟล์)
+     * @param pool        thread pool ที่ใช้สร้าง partition
+     * @param parallelism จำนวน thread ของ pool
+     * @return ค่าที่ซ้ำ เรียงตามชุดข้อมูลและลำดับที่พบในชุดข้อมูลแรกที่มีค่านั้น
+     * @throws IOException หาก thread ถูกขัดจังหวะ
+     */
+    public static List<String> findDuplicates(List<ValueCollector> tuples, ExecutorService pool, int parallelism)
+            throws IOException {
+        int partitions = Integer.highestOneBit(Math.max(parallelism, 1) * PARTITIONS_PER_THREAD - 1) << 1;
+        int shift = 32 - Integer.numberOfTrailingZeros(partitions);
+
+        // แยกลำดับของค่าในแต่ละชุดข้อมูลตาม partition
+        List<Callable<int[][]>> bucketTasks = new ArrayList<>();
+        for (ValueCollector tuple : tuples) {
+            bucketTasks.add(() -> buckets(tuple, partitions, shift));
+        }
+        List<int[][]> buckets = ParallelTasks.invokeAll(pool, bucketTasks);
+
+        // สร้างแต่ละ partition พร้อมกัน (ชุดข้อมูลตามลำดับภายใน partition)
+        List<Callable<Partition>> partitionTasks = new ArrayList<>();
+        for (int p = 0; p < partitions; p++) {
+            int partition = p;
+            partitionTasks.add(() -> {
+                Partition result = new Partition();
+                for (int t = 0; t < tuples.size(); t++) {
+                    ValueCollector tuple = tuples.get(t);
+                    for (int ordinal : buckets.get(t)[partition]) {
+                        result.add(tuple.get(ordinal), t);
+                    }
+                }
+                return result;
+            });
+        }
+        List<Partition> index = ParallelTasks.invokeAll(pool, partitionTasks);
+
+        // เรียงผลลัพธ์ตามลำดับของชุดข้อมูล
+        List<String> duplicates = new ArrayList<>();
+        for (ValueCollector tuple : tuples) {
+            for (int ordinal = 0; ordinal < tuple.size(); ordinal++) {
+                String value = tuple.get(ordinal);
+                if (index.get(partitionOf(value, shift)).takeDuplicate(value)) {
+                    duplicates.add(value);
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    private static int[][] buckets(ValueCollector tuple, int partitions, int shift) {
+        int[] counts = new int[partitions];
+        int[] partitionOfOrdinal = new int[tuple.size()];
+        for (int ordinal = 0; ordinal < tuple.size(); ordinal++) {
+            int partition = partitionOf(tuple.get(ordinal), shift);
+            partitionOfOrdinal[ordinal] = partition;
+            counts[partition]++;
+        }
+
+        int[][] buckets = new int[partitions][];
+        for (int p = 0; p < partitions; p++) {
+            buckets[p] = new int[counts[p]];
+        }
+        int[] filled = new int[partitions];
+        for (int ordinal = 0; ordinal < partitionOfOrdinal.length; ordinal++) {
+            int partition = partitionOfOrdinal[ordinal];
+            buckets[partition][filled[partition]++] = ordinal;
+        }
+        return buckets;
+    }
+
+    /**
+     * partition ของค่า จากบิตบนของ hash (ValueCollector ใช้บิตล่าง จึงไม่ขึ้นต่อกัน)
+     */
+    private static int partitionOf(String value, int shift) {
+        int h = value.hashCode() * 0x85EBCA6B;
+        return shift == 32 ? 0 : h >>> shift;
+    }
+
+    /**
+     * ค่าใน partition พร้อมจำนวนชุดข้อมูลที่พบ
+     */
+    private static final class Partition {
+        private final ValueCollector values = new ValueCollector(false);
+        private int[] tupleCounts = new int[16];
+        private int[] lastTuple = new int[16];
+        private boolean[] reported = new boolean[16];
+
+        void add(String value, int tuple) {
+            int ordinal = values.add(value);
+            if (ordinal == tupleCounts.length) {
+                tupleCounts = Arrays.copyOf(tupleCounts, ordinal * 2);
+                lastTuple = Arrays.copyOf(lastTuple, ordinal * 2);
+                reported = Arrays.copyOf(reported, ordinal * 2);
+            }
+            if (tupleCounts[ordinal] == 0 || lastTuple[ordinal] != tuple) {
+                tupleCounts[ordinal]++;
+                lastTuple[ordinal] = tuple;
+            }
+        }
+
+        /**
+         * true ถ้าค่าพบในตั้งแต่ 2 ชุดข้อมูลและยังไม่เคยรายงาน
+         */
+        boolean takeDuplicate(String value) {
+            int ordinal = values.indexOf(value);
+            if (ordinal < 0 || tupleCounts[ordinal] < 2 || reported[ordinal]) {
+                return false;
+            }
+            reported[ordinal] = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.util.CellReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ตารางค่าของ CHKSHEETDUPLICATE ที่ใช้ร่วมกันทุกช่วง (sheet, range, except) ของเงื่อนไขเดียว
+ *
+ * แต่ละค่า (ตัดช่องว่างหัวท้ายแล้ว) ถูกเก็บครั้งเดียวใน ValueCollector พร้อม bitset ของช่วงที่พบค่านั้น
+ * และตำแหน่งเซลล์ทั้งหมด ค่าที่พบในตั้งแต่ 2 ช่วงขึ้นไปถือว่าซ้ำระหว่างชีท
+ * จึงตรวจได้ทุกชีทในรอบเดียวโดยใช้เวลาตามจำนวนเซลล์ทั้งหมด
+ */
+public final class CrossSheetIndex {
+
+    /** ชื่อชีทของแต่ละช่วง ตามลำดับในเงื่อนไข */
+    private final List<String> sheetNames = new ArrayList<>();
+    /** ค่าที่พบ เรียงตามลำดับที่พบค่าครั้งแรก */
+    private final ValueCollector values = new ValueCollector(false);
+    /** ช่วงและตำแหน่งที่พบ ตามลำดับของค่าใน values */
+    private final List<Occurrences> occurrences = new ArrayList<>();
+
+    /**
+     * เพิ่มช่วงของชีท
+     *
+     * @return ลำดับของช่วง (ใช้กับ add)
+     */
+    int addSheet(String sheetName) {
+        sheetNames.add(sheetName);
+        return sheetNames.size() - 1;
+    }
+
+    /**
+     * บันทึกค่าที่พบในช่วงหนึ่ง
+     */
+    void add(int sheetIdx, String value, int rowIdx, int colIdx) {
+        int ordinal = values.add(value);
+        if (ordinal == occurrences.size()) {
+            occurrences.add(new Occurrences());
+        }
+        occurrences.get(ordinal).add(sheetIdx, rowIdx, colIdx);
+    }
+
+    /**
+     * ค่าที่พบในตั้งแต่ 2 ช่วงขึ้นไป ตามลำดับที่พบครั้งแรก
+     */
+    public List<String> getDuplicateValues() {
+        List<String> duplicates = new ArrayList<>();
+        for (int ordinal = 0; ordinal < values.size(); ordinal++) {
+            if (occurrences.get(ordinal).sheetCount > 1) {
+                duplicates.add(values.get(ordinal));
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * ตำแหน่งของค่าที่ซ้ำระหว่างชีท: ค่า -> ชื่อชีท -> ตำแหน่งเซลล์ (เช่น "B15")
+     */
+    public Map<String, Map<String, List<String>>> getDuplicateLocations() {
+        Map<String, Map<String, List<String>>> locations = new LinkedHashMap<>();
+        for (int ordinal = 0; ordinal < values.size(); ordinal++) {
+            Occurrences found = occurrences.get(ordinal);
+            if (found.sheetCount < 2) {
+                continue;
+            }
+            Map<String, List<String>> bySheet = new LinkedHashMap<>();
+            for (int i = 0; i < found.size; i += 3) {
+                String sheetName = sheetNames.get(found.cells[i]);
+                String cellPosition = CellReference.convertNumToColString(found.cells[i + 2]) + (found.cells[i + 1] + 1);
+                bySheet.computeIfAbsent(sheetName, k -> new ArrayList<>()).add(cellPosition);
+            }
+            locations.put(values.get(ordinal), bySheet);
+        }
+        return locations;
+    }
+
+    /**
+     * รวมตำแหน่งของค่าซ้ำจากหลายเงื่อนไข (ชีทเดียวกันต่อท้ายกัน)
+     */
+    public static void mergeLocations(Map<String, Map<String, List<String>>> target,
+                                      Map<String, Map<String, List<String>>> source) {
+        for (Map.Entry<String, Map<String, List<String>>> entry : source.entrySet()) {
+            Map<String, List<String>> bySheet = target.computeIfAbsent(entry.getKey(), k -> new LinkedHashMap<>());
+            for (Map.Entry<String, List<String>> sheet : entry.getValue().entrySet()) {
+                bySheet.computeIfAbsent(sheet.getKey(), k -> new ArrayList<>()).addAll(sheet.getValue());
+            }
+        }
+    }
+
+    /**
+     * ช่วงที่พบค่า (bitset) และตำแหน่งเซลล์แบบ (ช่วง, แถว, คอลัมน์) ต่อกันใน int[]
+     */
+    private static final class Occurrences {
+        private long[] sheets = new long[1];
+        private int sheetCount;
+        private int[] cells = new int[3];
+        private int size;
+
+        void add(int sheetIdx, int rowIdx, int colIdx) {
+            int word = sheetIdx >>> 6;
+            if (word >= sheets.length) {
+                sheets = Arrays.copyOf(sheets, word + 1);
+            }
+            long bit = 1L << sheetIdx;
+            if ((sheets[word] & bit) == 0) {
+                sheets[word] |= bit;
+                sheetCount++;
+            }
+
+            if (size + 3 > cells.length) {
+                cells = Arrays.copyOf(cells, cells.length * 2);
+            }
+            cells[size++] = sheetIdx;
+            cells[size++] = rowIdx;
+            cells[size++] = colIdx;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * ผลรวมของค่าตัวเลขที่ไม่ซ้ำ สำหรับ CROSSFILECOMPARE แบบ EQUAL
+ *
+ * ค่าที่ถือว่าซ้ำคือค่าที่ข้อความ (ตัดช่องว่างหัวท้าย) เหมือนกัน เช่นเดียวกับ ValueCollector
+ * เซลล์ตัวเลขรับค่า double จากคอลัมน์ของ snapshot โดยตรง (ไม่แปลงเป็นข้อความ) และตรวจค่าซ้ำด้วยบิตของ double
+ * ในตาราง hash แบบ open addressing บน long[] ส่วนเซลล์ข้อความนับเฉพาะที่เป็นเลขฐานสิบ (เช่น "-12.50")
+ * ข้อความที่ตรงกับข้อความของเซลล์ตัวเลข (เช่น "10" กับตัวเลข 10) นับเป็นค่าเดียวกัน
+ *
+ * ผลรวมเป็น BigDecimal ที่แม่นยำ: จำนวนเต็มรวมใน long (ย้ายไป BigDecimal เมื่อล้น) ทศนิยมรวมด้วย BigDecimal
+ * ของข้อความของค่านั้น จึงไม่มีความคลาดเคลื่อนจากการบวก double และลำดับการบวกไม่มีผลต่อผลรวม
+ * ไม่ thread-safe
+ */
+public final class DistinctSum {
+
+    /** 2^63 ขอบเขตของ double ที่แปลงเป็น long ได้พอดี */
+    private static final double LONG_LIMIT = 0x1p63;
+
+    /** ช่องว่างของตาราง (NaN ไม่ถูกเพิ่มในตาราง จึงไม่ชนกับค่าจริง) */
+    private static final long EMPTY = Double.doubleToLongBits(Double.NaN);
+
+    /** บิตของ double ที่พบแล้ว */
+    private long[] slots = new long[32];
+    private int size;
+
+    /** ข้อความตัวเลขที่ไม่ตรงกับข้อความของเซลล์ตัวเลขใด (เช่น "10.50", "007") */
+    private final ValueCollector texts = new ValueCollector(false);
+
+    private long longSum;
+    private BigDecimal decimalSum = BigDecimal.ZERO;
+
+    public DistinctSum() {
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * เพิ่มค่าของเซลล์ตัวเลข (นับครั้งเดียวต่อค่า)
+     */
+    public void add(double number) {
+        if (!Double.isFinite(number)) {
+            return;
+        }
+        if (number == 0) {
+            number = 0.0; // -0.0 มีข้อความ "0" เหมือน 0
+        }
+        if (!insert(Double.doubleToLongBits(number))) {
+            return;
+        }
+        if (isWhole(number)) {
+            long value = (long) number;
+            long sum = longSum + value;
+            if (((longSum ^ sum) & (value ^ sum)) < 0) {
+                // ล้น: ย้ายผลรวมเดิมไป BigDecimal
+                decimalSum = decimalSum.add(BigDecimal.valueOf(longSum));
+                longSum = value;
+            } else {
+                longSum = sum;
+            }
+        } else {
+            decimalSum = decimalSum.add(BigDecimal.valueOf(number));
+        }
+    }
+
+    /**
+     * เพิ่มค่าของเซลล์ข้อความ (ตัดช่องว่างหัวท้ายแล้ว) นับเฉพาะเลขฐานสิบ ครั้งเดียวต่อข้อความ
+     */
+    public void add(String text) {
+        if (!isDecimal(text)) {
+            return;
+        }
+        BigDecimal value = new BigDecimal(text);
+        double number = value.doubleValue();
+        if (text.equals(canonicalText(number))) {
+            add(number);
+            return;
+        }
+        int before = texts.size();
+        texts.add(text);
+        if (texts.size() > before) {
+            decimalSum = decimalSum.add(value);
+        }
+    }
+
+    public BigDecimal sum() {
+        return decimalSum.add(BigDecimal.valueOf(longSum));
+    }
+
+    /**
+     * ข้อความของเซลล์ตัวเลขที่มีค่านี้ (ตาม SheetSnapshot.Column.getValue + toString)
+     */
+    private static String canonicalText(double number) {
+        return isWhole(number) ? Long.toString((long) number) : Double.toString(number);
+    }
+
+    private static boolean isWhole(double number) {
+        return number == Math.floor(number) && number >= -LONG_LIMIT && number < LONG_LIMIT;
+    }
+
+    /**
+     * true ถ้าเป็น -?ตัวเลข(.ตัวเลข)? เหมือนรูปแบบที่ใช้ตรวจผลรวมเดิม
+     */
+    static boolean isDecimal(String text) {
+        int i = text.startsWith("-") ? 1 : 0;
+        int digits = 0;
+        while (i < text.length() && isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i == text.length()) {
+            return true;
+        }
+        if (text.charAt(i++) != '.') {
+            return false;
+        }
+        int fraction = 0;
+        while (i < text.length() && isDigit(text.charAt(i))) {
+            i++;
+            fraction++;
+        }
+        return fraction > 0 && i == text.length();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return true ถ้าเป็นค่าใหม่
+     */
+    private boolean insert(long bits) {
+        int mask = slots.length - 1;
+        int slot = hash(bits) & mask;
+        while (slots[slot] != EMPTY) {
+            if (slots[slot] == bits) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = bits;
+        size++;
+        // ขยายตารางเมื่อใช้เกินครึ่ง
+        if (size * 2 > slots.length) {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            Arrays.fill(slots, EMPTY);
+            int newMask = slots.length - 1;
+            for (long value : old) {
+                if (value != EMPTY) {
+                    int s = hash(value) & newMask;
+                    while (slots[s] != EMPTY) {
+                        s = (s + 1) & newMask;
+                    }
+                    slots[s] = value;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int hash(long bits) {
+        long h = bits * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,363 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * หาค่าซ้ำพร้อมตำแหน่งเซลล์ (CHKDUPLICATE) ภายใต้งบหน่วยความจำที่กำหนด
+ *
+ * ปกติเก็บตำแหน่งเซลล์ไว้ใน FingerprintIndex (อาร์เรย์ primitive) เมื่อขนาดโดยประมาณเกินงบ
+ * จะแบ่งค่าตาม hash ลงไฟล์ชั่วคราว {@value #PARTITIONS} ไฟล์ (ค่าเดียวกันอยู่ไฟล์เดียวกันเสมอ)
+ * แล้วหาค่าซ้ำทีละไฟล์ ไฟล์ที่ยังเกินงบจะถูกแบ่งต่ออีก {@value #PARTITIONS} ไฟล์ด้วยบิตถัดไปของ fingerprint
+ * (สูงสุด {@value #MAX_DEPTH} ชั้น) จึงใช้หน่วยความจำไม่เกินงบ ยกเว้นค่าเดียวที่มีตำแหน่งเกินงบด้วยตัวเอง
+ * ผลลัพธ์เหมือนกันทั้งสองแบบ (ค่าซ้ำ -> ตำแหน่งเซลล์ตามลำดับที่พบ)
+ *
+ * งบหน่วยความจำกำหนดด้วย {@value #MAX_BYTES_PROPERTY} (ค่าเริ่มต้น 1/8 ของ heap สูงสุด)
+ * และโฟลเดอร์ของไฟล์ชั่วคราวด้วย {@value #SPILL_DIR_PROPERTY} (ค่าเริ่มต้น java.io.tmpdir)
+ * ใช้กับ try-with-resources เพื่อให้ไฟล์ชั่วคราวถูกลบแม้ไม่ได้เรียก duplicates() ไม่ thread-safe
+ */
+final class DuplicateFinder implements AutoCloseable {
+
+    static final String MAX_BYTES_PROPERTY = "neb.duplicateCheck.maxBytes";
+    static final String SPILL_DIR_PROPERTY = "neb.duplicateCheck.spillDir";
+
+    private static final int PARTITIONS = 64;
+    /** จำนวนบิตของ fingerprint ที่ใช้เลือก partition ในแต่ละชั้น */
+    private static final int PARTITION_BITS = 6;
+    /** ชั้นสุดท้ายที่ยังมีบิตของ fingerprint เหลือให้แบ่ง (64 / 6 - 1) */
+    private static final int MAX_DEPTH = 9;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte DATE = 6;
+
+    private final RangeSpec range;
+    private final long maxBytes;
+    private FingerprintIndex index;
+
+    /** ไฟล์ของแต่ละ partition (null = ยังไม่เกินงบ) */
+    private Path spillDir;
+    private DataOutputStream[] spillOut;
+
+    /**
+     * @param range ช่วงที่ตรวจ (ทุกเซลล์ที่ add ต้องอยู่ในช่วงนี้)
+     */
+    DuplicateFinder(RangeSpec range) {
+        this(range, Long.getLong(MAX_BYTES_PROPERTY, Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    DuplicateFinder(RangeSpec range, long maxBytes) {
+        this.range = range;
+        this.maxBytes = maxBytes;
+        this.index = newIndex();
+    }
+
+    /**
+     * บันทึกค่าของเซลล์จากคอลัมน์ของ SheetSnapshot (ทุกคอลัมน์ต้องมาจากชีทเดียวกัน และไม่ใช้ปนกับ add(Object))
+     * ค่าถูกเก็บเป็น primitive ใน FingerprintIndex และสร้างเป็น object เฉพาะเมื่อต้องเขียนลงไฟล์ชั่วคราว
+     *
+     * @throws UncheckedIOException หากเขียนไฟล์ชั่วคราวไม่ได้
+     */
+    void add(SheetSnapshot sheet, SheetSnapshot.Column column, int rowIdx, int colIdx) {
+        try {
+            if (spillOut != null) {
+                write(column.getValue(rowIdx, sheet), rowIdx, colIdx);
+                return;
+            }
+            index.add(sheet, column, rowIdx, colIdx);
+            if (index.estimatedBytes() > maxBytes) {
+                spill();
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * บันทึกค่าที่พบในเซลล์
+     *
+     * @throws UncheckedIOException หากเขียนไฟล์ชั่วคราวไม่ได้
+     */
+    void add(Object value, int rowIdx, int colIdx) {
+        try {
+            if (spillOut != null) {
+                write(value, rowIdx, colIdx);
+                return;
+            }
+
+            index.add(value, rowIdx, colIdx);
+            if (index.estimatedBytes() > maxBytes) {
+                spill();
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * ค่าที่พบมากกว่า 1 ครั้ง -> ตำแหน่งเซลล์ (เช่น "B15") ตามลำดับที่พบ
+     * ลบไฟล์ชั่วคราวทั้งหมดหลังอ่านเสร็จ
+     *
+     * @throws UncheckedIOException หากอ่านไฟล์ชั่วคราวไม่ได้
+     */
+    Map<Object, List<String>> duplicates() {
+        if (spillOut == null) {
+            Map<Object, List<String>> duplicates = index.duplicates();
+            index = newIndex();
+            return duplicates;
+        }
+
+        Map<Object, List<String>> duplicates = new HashMap<>();
+
+        try {
+            for (DataOutputStream out : spillOut) {
+                out.close();
+            }
+            // อ่านทีละ partition ค่าเดียวกันอยู่ใน partition เดียวกันเสมอ
+            for (int p = 0; p < PARTITIONS; p++) {
+                collect(partitionFile(Integer.toString(p)), 0, duplicates);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            close();
+        }
+        return duplicates;
+    }
+
+    /**
+     * หาค่าซ้ำในไฟล์ของ partition หนึ่ง หากเกินงบระหว่างอ่านจะแบ่งไฟล์ต่อด้วยบิตถัดไปของ fingerprint
+     * แล้วหาค่าซ้ำทีละไฟล์ย่อยแทน
+     */
+    private void collect(Path file, int depth, Map<Object, List<String>> duplicates) throws IOException {
+        FingerprintIndex partition = newIndex();
+        boolean fits = true;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                Object value;
+                try {
+                    value = read(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                partition.add(value, in.readInt(), in.readInt());
+
+                // แบ่งต่อได้เฉพาะเมื่อมีมากกว่าหนึ่งค่า (ค่าเดียวกันอยู่ไฟล์ย่อยเดียวกันเสมอ)
+                if (depth < MAX_DEPTH && partition.groupCount() > 1
+                        && partition.estimatedBytes() > maxBytes) {
+                    fits = false;
+                    break;
+                }
+            }
+        }
+
+        if (fits) {
+            Files.delete(file);
+            duplicates.putAll(partition.duplicates());
+            return;
+        }
+
+        // ปล่อยตำแหน่งที่อ่านไว้ก่อนแบ่งไฟล์
+        partition = null;
+        List<Path> parts = split(file, depth + 1);
+        Files.delete(file);
+        for (Path part : parts) {
+            collect(part, depth + 1, duplicates);
+        }
+    }
+
+    /**
+     * แบ่งไฟล์ของ partition ตามบิตของ fingerprint ในชั้น depth โดยคงลำดับที่พบไว้
+     *
+     * @return ไฟล์ย่อยที่มีข้อมูล
+     */
+    private List<Path> split(Path file, int depth) throws IOException {
+        String name = file.getFileName().toString();
+        // "p12.bin" -> ไฟล์ย่อย "p12_0.bin" .. "p12_63.bin"
+        String prefix = name.substring("p".length(), name.length() - ".bin".length()) + "_";
+        Path[] files = new Path[PARTITIONS];
+        DataOutputStream[] outs = new DataOutputStream[PARTITIONS];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                Object value;
+                try {
+                    value = read(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                int p = partitionOf(value, depth);
+                if (outs[p] == null) {
+                    files[p] = partitionFile(prefix + p);
+                    outs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[p]), 16 * 1024));
+                }
+                writeValue(outs[p], value);
+                outs[p].writeInt(in.readInt());
+                outs[p].writeInt(in.readInt());
+            }
+        } finally {
+            for (DataOutputStream out : outs) {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+
+        List<Path> parts = new ArrayList<>();
+        for (Path part : files) {
+            if (part != null) {
+                parts.add(part);
+            }
+        }
+        return parts;
+    }
+
+    private FingerprintIndex newIndex() {
+        return new FingerprintIndex(range.startRow, range.startCol, range.endCol - range.startCol + 1);
+    }
+
+    /**
+     * ย้ายค่าทั้งหมดในหน่วยความจำลงไฟล์ของแต่ละ partition ค่าที่พบหลังจากนี้เขียนลงไฟล์โดยตรง
+     */
+    private void spill() throws IOException {
+        String dir = System.getProperty(SPILL_DIR_PROPERTY, System.getProperty("java.io.tmpdir"));
+        Path parent = Paths.get(dir);
+        Files.createDirectories(parent);
+        spillDir = Files.createTempDirectory(parent, "neb-duplicates-");
+        spillOut = new DataOutputStream[PARTITIONS];
+        for (int p = 0; p < PARTITIONS; p++) {
+            spillOut[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partitionFile(Integer.toString(p))), 16 * 1024));
+        }
+
+        for (int group = 0; group < index.groupCount(); group++) {
+            Object value = index.value(group);
+            for (int cell = index.firstCell(group); cell >= 0; cell = index.nextCell(cell)) {
+                write(value, index.rowOf(cell), index.colOf(cell));
+            }
+        }
+        index = newIndex();
+    }
+
+    /**
+     * @param partition ลำดับ partition ของแต่ละชั้นคั่นด้วย "_" (เช่น "12_5")
+     */
+    private Path partitionFile(String partition) {
+        return spillDir.resolve("p" + partition + ".bin");
+    }
+
+    /**
+     * partition ของค่าในชั้น depth (ชั้น 0 ใช้ 6 บิตบนสุดของ fingerprint ชั้นถัดไปใช้ 6 บิตถัดลงมา)
+     */
+    private static int partitionOf(Object value, int depth) {
+        long h = FingerprintIndex.fingerprint(value);
+        return (int) (h >>> (Long.SIZE - PARTITION_BITS * (depth + 1))) & (PARTITIONS - 1);
+    }
+
+    private void write(Object value, int rowIdx, int colIdx) throws IOException {
+        DataOutputStream out = spillOut[partitionOf(value, 0)];
+        writeValue(out, value);
+        out.writeInt(rowIdx);
+        out.writeInt(colIdx);
+    }
+
+    /**
+     * เขียนค่าพร้อมชนิด (ค่าที่อ่านกลับได้ต้อง equals กับค่าเดิม)
+     */
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else {
+            throw new IllegalStateException("ไม่รองรับค่าชนิด " + value.getClass().getName());
+        }
+    }
+
+    private static Object read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DATE:
+                return new Date(in.readLong());
+            default:
+                throw new IOException("ไฟล์ชั่วคราวเสียหาย: ชนิดค่า " + type);
+        }
+    }
+
+    /**
+     * ปิดและลบไฟล์ชั่วคราวทั้งหมด (เรียกซ้ำได้)
+     */
+    @Override
+    public void close() {
+        if (spillOut != null) {
+            for (DataOutputStream out : spillOut) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // ลบไฟล์ต่อ
+                }
+            }
+            spillOut = null;
+        }
+        if (spillDir != null) {
+            try (Stream<Path> files = Files.list(spillDir)) {
+                files.forEach(file -> file.toFile().delete());
+            } catch (IOException ignored) {
+                // ไม่มีไฟล์ให้ลบ
+            }
+            spillDir.toFile().delete();
+            spillDir = null;
+        }
+    }
+}
@@ -0,0 +1,1139 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.util.CellReference;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * แผนการประมวลผลคำสั่ง SHEET, FIX, COLUMN, COUNT, ROWBY, ROW, CHKDUPLICATE และ CHKSHEETDUPLICATE
+ * ที่แยกพารามิเตอร์ แปลงตำแหน่งเซลล์/ช่วง และตรวจรูปแบบไว้แล้วตั้งแต่ตอนคอมไพล์
+ *
+ * การประมวลผลแผน (evaluate) ไม่ต้องแยกสตริง ค้นหา Map หรือใช้ regex อีก
+ * แผนไม่เปลี่ยนแปลงหลังสร้าง จึงเก็บแคชและใช้ร่วมกันระหว่าง thread ได้ (ดู ExcelPlanCache)
+ *
+ * ผลลัพธ์และข้อความผิดพลาดตรงกับ ExcelReader.readExcelVariables แบบเดิมทุกประการ
+ * ข้อผิดพลาดด้านรูปแบบที่พบตอนคอมไพล์จะถูกเก็บไว้ และโยนตอนประมวลผลในลำดับเดียวกับแบบเดิม
+ */
+public final class ExcelPlan {
+
+    private static final Pattern CELL_PATTERN = Pattern.compile("([A-Za-z]+)([0-9]+)");
+    private static final Pattern RELATIVE_CELL_PATTERN = Pattern.compile("([A-Za-z]+)\\?");
+
+    private final String sheetName;
+    private final String templateId;
+    private final List<Step> steps;
+    private final List<Check> checks;
+    private final Set<String> sheetNames;
+
+    private ExcelPlan(String sheetName, String templateId, List<Step> steps, List<Check> checks) {
+        this.sheetName = sheetName;
+        this.templateId = templateId;
+        this.steps = Collections.unmodifiableList(steps);
+        this.checks = Collections.unmodifiableList(checks);
+        this.sheetNames = Collections.unmodifiableSet(referencedSheets(sheetName, steps, checks));
+    }
+
+    /**
+     * ชื่อชีทหลักจาก SHEET("...") (ค่าว่างถ้าไม่ได้ระบุ)
+     */
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    /**
+     * ค่าของ FIX("TEMPLATE_ID", "...") หรือ null ถ้าไม่ได้ระบุ
+     */
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    /**
+     * เงื่อนไขตรวจสอบ (CHKDUPLICATE, CHKSHEETDUPLICATE) ตามลำดับเดียวกับ VALIDATES แบบเดิม
+     */
+    public List<Check> getChecks() {
+        return checks;
+    }
+
+    /**
+     * ชื่อชีททั้งหมดที่แผนอ้างถึง (ชีทหลัก ชีทของแต่ละคำสั่ง และชีทในเงื่อนไขตรวจสอบ)
+     * ใช้เลือกโหลดเฉพาะชีทที่จำเป็น (ดู WorkbookSession.open(String, Set))
+     */
+    public Set<String> getSheetNames() {
+        return sheetNames;
+    }
+
+    List<Step> getSteps() {
+        return steps;
+    }
+
+    private static Set<String> referencedSheets(String sheetName, List<Step> steps, List<Check> checks) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(sheetName);
+        for (Step step : steps) {
+            if (step instanceof CellStep) {
+                names.add(((CellStep) step).sheetName);
+            } else if (step instanceof CountStep) {
+                names.add(((CountStep) step).sheetName);
+            } else if (step instanceof RowByStep) {
+                names.add(((RowByStep) step).searchSheetName);
+                names.add(((RowByStep) step).readSheetName);
+            } else if (step instanceof RowStep) {
+                names.add(((RowStep) step).sheetName);
+            }
+        }
+        for (Check check : checks) {
+            if (check instanceof DuplicateCheck) {
+                names.add(((DuplicateCheck) check).getSheetName());
+            } else if (check instanceof SheetDuplicateCheck) {
+                for (SheetRange sheetRange : ((SheetDuplicateCheck) check).getRanges()) {
+                    names.add(sheetRange.getSheetName());
+                }
+            }
+        }
+        names.remove(null);
+        names.remove("");
+        return names;
+    }
+
+    /**
+     * คอมไพล์พารามิเตอร์เป็นแผนการประมวลผล
+     *
+     * @param params พารามิเตอร์ในรูปแบบเดียวกับ NEBWorkSheetService.processExcelToWssResult
+     * @return แผนการประมวลผล
+     */
+    public static ExcelPlan compile(String[] params) {
+        // กำหนดค่าเริ่มต้น
+        String sheetName = "";
+        Map<String, Object> variables = new HashMap<>();
+        int unnamedRowBy = 0;
+        Set<Object> validates = new HashSet<>();
+
+        // แยกพารามิเตอร์แต่ละรายการ
+        for (String param : params) {
+            if (param.startsWith("SHEET(")) {
+                // รูปแบบ SHEET("ชื่อชีท")
+                sheetName = ExtractParams.extractStringParam(param, "SHEET");
+            } else if (param.startsWith("FIX(")) {
+                // รูปแบบ FIX("KEY", "VALUE")
+                String[] parts = ExtractParams.extractMultipleParams(param, "FIX");
+                if (parts.length >= 2) {
+                    variables.put(parts[0], "FIX " + parts[1]);
+                }
+            } else if (param.startsWith("COLUMN(")) {
+                // รูปแบบ COLUMN("KEY", "CELL_REF", "SHEET_NAME")
+                String[] parts = ExtractParams.extractMultipleParams(param, "COLUMN");
+                if (parts.length >= 2) {
+                    Map<String, Object> columnConfig = new HashMap<>();
+                    columnConfig.put("type", "COLUMN");
+                    columnConfig.put("cellRef", parts[1]);
+
+                    // ตรวจสอบว่ามีการระบุชื่อชีทหรือไม่
+                    if (parts.length >= 3) {
+                        columnConfig.put("sheetName", parts[2]);
+                    }
+
+                    variables.put(parts[0], columnConfig);
+                }
+            } else if (param.startsWith("COUNT(")) {
+                // รูปแบบ COUNT("KEY", "RANGE", "SHEET_NAME")
+                String[] parts = ExtractParams.extractMultipleParams(param, "COUNT");
+                if (parts.length >= 2) {
+                    Map<String, Object> countConfig = new HashMap<>();
+                    countConfig.put("type", "COUNT");
+                    countConfig.put("rangeStr", parts[1]);
+
+                    // ตรวจสอบว่ามีการระบุชื่อชีทหรือไม่
+                    if (parts.length >= 3) {
+                        countConfig.put("sheetName", parts[2]);
+                    }
+
+                    variables.put(parts[0], countConfig);
+                }
+            } else if (param.startsWith("ROWBY(")) {
+                String[] parts = ExtractParams.extractMultipleParams(param, "ROWBY");
+
+                // รูปแบบ: ROWBY(searchCondition, columnRefs, sheetName)
+                // หรือระบุชื่อตัวแปร: ROWBY("KEY", searchCondition, columnRefs, sheetName)
+                // ตัวอย่าง: ROWBY(A EQUAL "รวมทั้งสิ้น", [COLUMN("AMOUNT", "C?",
+                // "11.ปัจจัยพื้นฐาน"),COLUMN("AMOUNT", "F?", "11.ปัจจัยพื้นฐาน")],
+                // "11.ปัจจัยพื้นฐาน")
+                String varName = null;
+                if (parts.length >= 4) {
+                    varName = parts[0];
+                    parts = Arrays.copyOfRange(parts, 1, parts.length);
+                }
+                if (parts.length >= 3) {
+                    // แยกเงื่อนไขการค้นหา (searchCondition)
+                    String searchConditionStr = parts[0];
+                    String[] searchConditionParts = searchConditionStr.split(" ", 3);
+
+                    if (searchConditionParts.length >= 3) {
+                        String searchColumn = searchConditionParts[0];
+                        String searchCondition = searchConditionParts[1];
+                        String searchValue = searchConditionParts[2];
+
+                        // ถ้า searchValue อยู่ในเครื่องหมายคำพูด ให้ตัดออก
+                        if (searchValue.startsWith("\"") && searchValue.endsWith("\"")) {
+                            searchValue = searchValue.substring(1, searchValue.length() - 1);
+                        }
+
+                        // สร้าง config สำหรับ ROWBY
+                        Map<String, Object> rowByConfig = new HashMap<>();
+                        rowByConfig.put("type", "ROWBY");
+                        rowByConfig.put("searchSheetName", parts[2]); // ใช้ sheet เดียวกันสำหรับค้นหาและอ่านข้อมูล
+                        rowByConfig.put("readSheetName", parts[2]);
+                        rowByConfig.put("searchColumn", searchColumn);
+                        rowByConfig.put("searchCondition", searchCondition);
+                        rowByConfig.put("searchValue", searchValue);
+                        rowByConfig.put("columnRefs", parts[1]);
+
+                        // ROWBY ที่ไม่ระบุชื่อ: ตัวแรกชื่อ "ROWBY" ตัวถัดไปชื่อ "ROWBY_2", "ROWBY_3", ...
+                        if (varName == null) {
+                            unnamedRowBy++;
+                            varName = unnamedRowBy == 1 ? "ROWBY" : "ROWBY_" + unnamedRowBy;
+                        }
+                        variables.put(varName, rowByConfig);
+                    }
+                }
+            } else if (param.startsWith("ROW(")) {
+                // รูปแบบ ROW("KEY", "SHEET_NAME", "ROW_RANGE", "[COL1,COL2,COL3]",
+                // "{COL1:VAR1,COL2:VAR2}", OFFSET, LIMIT) โดย ROW_RANGE เป็น "5:9" หรือ "5:EOF"
+                // mapping, OFFSET และ LIMIT ไม่บังคับ (mapping เป็น NULL ได้ถ้าต้องการระบุ OFFSET/LIMIT)
+                String[] parts = ExtractParams.extractMultipleParams(param, "ROW");
+                if (parts.length >= 4) {
+                    Map<String, Object> rowConfig = new HashMap<>();
+                    rowConfig.put("type", "ROW");
+                    rowConfig.put("sheetName", parts[1]);
+                    rowConfig.put("rowRange", parts[2]);
+                    rowConfig.put("columns", parts[3]);
+
+                    // ตรวจสอบว่ามีการระบุ mapping หรือไม่
+                    if (parts.length >= 5 && !parts[4].equals("NULL")) {
+                        rowConfig.put("mapping", parts[4]);
+                    }
+                    if (parts.length >= 6) {
+                        rowConfig.put("offset", parts[5]);
+                    }
+                    if (parts.length >= 7) {
+                        rowConfig.put("limit", parts[6]);
+                    }
+
+                    variables.put(parts[0], rowConfig);
+                }
+            } else if (param.startsWith("CHKDUPLICATE(")) {
+                // รูปแบบ CHKDUPLICATE("SHEET_NAME", RANGE, ["EXCEPT1", "EXCEPT2"])
+                String[] parts = ExtractParams.extractMultipleParams(param, "CHKDUPLICATE");
+                if (parts.length >= 2) {
+                    String targetSheetName = parts[0]; // ชื่อชีทที่ต้องการตรวจสอบ
+                    String rangeStr = parts[1]; // ช่วงของคอลัมน์ที่ต้องการตรวจสอบ
+
+                    Map<String, Object> checkDuplicate = new HashMap<>();
+                    checkDuplicate.put("sheetName", targetSheetName);
+                    checkDuplicate.put("condition", "CHKDUPLICATE " + rangeStr);
+
+                    // ตรวจสอบว่ามีการระบุค่ายกเว้นหรือไม่
+                    if (parts.length >= 3 && !parts[2].equals("NULL")) {
+                        Set<Object> exceptValues = new HashSet<>();
+                        String[] exceptList = ExtractParams.extractArrayParam(parts[2]);
+                        for (String except : exceptList) {
+                            exceptValues.add(except);
+                        }
+                        checkDuplicate.put("exceptValues", exceptValues);
+                    }
+
+                    validates.add(checkDuplicate);
+                }
+            } else if (param.startsWith("CHKSHEETDUPLICATE(")) {
+                // รูปแบบ CHKSHEETDUPLICATE([("SHEET1", RANGE1, ["EXCEPT1"]),("SHEET2", RANGE2,
+                // [])])
+                String content = param.substring("CHKSHEETDUPLICATE(".length(), param.length() - 1).trim();
+
+                // ตรวจสอบว่าเป็นรูปแบบ array หรือไม่
+                if (content.startsWith("[") && content.endsWith("]")) {
+                    // แยกแต่ละ tuple ในรูปแบบ ("SHEET", RANGE, [EXCEPTS])
+                    List<Map<String, Object>> sheetConfigs = ExtractParams.extractSheetConfigs(content);
+
+                    // สร้าง validate สำหรับการตรวจสอบข้ามชีท
+                    Map<String, Object> checkSheetDuplicate = new HashMap<>();
+                    checkSheetDuplicate.put("condition", "CHKSHEETDUPLICATE");
+                    checkSheetDuplicate.put("sheetConfigs", sheetConfigs);
+
+                    validates.add(checkSheetDuplicate);
+                }
+            }
+        }
+
+        // เพิ่ม validates เข้าไปใน variables
+        if (!validates.isEmpty()) {
+            variables.put("VALIDATES", validates);
+        }
+
+        return compile(sheetName, variables);
+    }
+
+    /**
+     * คอมไพล์ Map ของตัวแปรและคำสั่ง (รูปแบบเดียวกับ ExcelReader.readExcelVariables) เป็นแผนการประมวลผล
+     *
+     * @param sheetName ชื่อชีทหลัก (ค่าว่างถ้าไม่ได้ระบุ)
+     * @param variables Map ของตัวแปรและคำสั่ง เช่น {"AMOUNT": "Z4", "QTY": "COUNT B15:EOF"}
+     * @return แผนการประมวลผล
+     */
+    @SuppressWarnings("unchecked")
+    public static ExcelPlan compile(String sheetName, Map<String, Object> variables) {
+        List<Step> steps = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : variables.entrySet()) {
+            String varName = entry.getKey().toLowerCase();
+
+            // ข้ามการประมวลผลสำหรับตัวแปร VALIDATES
+            if ("validates".equals(varName)) {
+                continue;
+            }
+
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                steps.add(compileInstruction(varName, ((String) value).trim()));
+            } else if (value instanceof Map && ((Map<?, ?>) value).containsKey("type")) {
+                Map<String, Object> config = (Map<String, Object>) value;
+                Object type = config.get("type");
+                if ("COUNT".equals(type)) {
+                    steps.add(compileRange(varName, (String) config.get("sheetName"), (String) config.get("rangeStr"), true));
+                } else if ("COLUMN".equals(type)) {
+                    steps.add(compileCell(varName, (String) config.get("sheetName"), (String) config.get("cellRef"), true));
+                } else if ("ROWBY".equals(type)) {
+                    steps.add(compileRowBy(varName, config));
+                } else if ("ROW".equals(type)) {
+                    steps.add(compileRow(varName, config));
+                } else {
+                    steps.add(new ConstantStep(varName, value));
+                }
+            } else {
+                // กรณีที่ค่าไม่ใช่ String ให้เก็บค่าเดิม
+                steps.add(new ConstantStep(varName, value));
+            }
+        }
+
+        List<Check> checks = new ArrayList<>();
+        Object validateObj = variables.get("VALIDATES");
+        if (validateObj instanceof Set) {
+            for (Object validate : (Set<?>) validateObj) {
+                if (validate instanceof Map) {
+                    compileCheck((Map<?, ?>) validate, checks);
+                }
+            }
+        }
+
+        String templateId = null;
+        Object templateValue = variables.get("TEMPLATE_ID");
+        if (templateValue instanceof String && ((String) templateValue).trim().startsWith("FIX ")) {
+            templateId = ((String) templateValue).trim().substring(4).trim();
+        }
+
+        return new ExcelPlan(sheetName, templateId, steps, checks);
+    }
+
+    /**
+     * ประมวลผลแผนกับ Workbook ใน session
+     *
+     * @param session WorkbookSession ที่เปิดไว้แล้ว (ไม่ถูกปิด)
+     * @return Map ของผลลัพธ์ในรูปแบบเดียวกับ ExcelReader.readExcelVariables
+     */
+    public Map<String, Object> execute(WorkbookSession session) {
+        return evaluate(session, false).getData();
+    }
+
+    /**
+     * ประมวลผลแผนกับ Workbook ใน session โดยคำสั่งที่อ่านชีทและคอลัมน์เดียวกัน
+     * (COUNT, CHKDUPLICATE, CHKSHEETDUPLICATE) จะถูกรวมให้อ่านในรอบเดียว (ดู FusedScan)
+     * ส่วน ROWBY ค้นหาจากดัชนีของคอลัมน์ที่ใช้ร่วมกันใน session (ดู RowLookupIndex)
+     *
+     * @param session    WorkbookSession ที่เปิดไว้แล้ว (ไม่ถูกปิด)
+     * @param withChecks true = อ่านเงื่อนไขตรวจสอบในแผนในรอบเดียวกันด้วย
+     * @return ผลลัพธ์การอ่าน
+     */
+    public PlanResult evaluate(WorkbookSession session, boolean withChecks) {
+        FusedScan scan = new FusedScan();
+
+        // เลือกชีท (ถ้ามีการระบุชื่อชีท)
+        SheetSnapshot mainSheet = sheetName.isEmpty() ? null : session.sheet(sheetName);
+
+        // เตรียมตัวแปรตามลำดับของแผน
+        SessionPreparer preparer = new SessionPreparer(session, mainSheet, scan);
+        List<PlanResult.Pending> pendings = new ArrayList<>();
+        for (Step step : steps) {
+            pendings.add(step.guarded ? PlanResult.guard(() -> step.accept(preparer)) : step.accept(preparer));
+        }
+
+        // เตรียมเงื่อนไขตรวจสอบ
+        Map<Object, PlanResult.Pending> validations = new IdentityHashMap<>();
+        if (withChecks) {
+            for (Check check : checks) {
+                if (check instanceof DuplicateCheck) {
+                    DuplicateCheck duplicateCheck = (DuplicateCheck) check;
+                    validations.put(duplicateCheck, PlanResult.deferred(() -> {
+                        SheetSnapshot sheet = session.sheet(duplicateCheck.getSheetName());
+                        if (duplicateCheck.error != null) {
+                            throw new IllegalArgumentException(duplicateCheck.error);
+                        }
+                        return scan.register(sheet,
+                                new ScanConsumers.DuplicateConsumer(duplicateCheck.range, duplicateCheck.exceptValues));
+                    }));
+                } else if (check instanceof SheetDuplicateCheck) {
+                    // ทุกช่วงของเงื่อนไขบันทึกลงตารางเดียวกัน
+                    CrossSheetIndex index = new CrossSheetIndex();
+                    for (SheetRange sheetRange : ((SheetDuplicateCheck) check).getRanges()) {
+                        int sheetIdx = index.addSheet(sheetRange.getSheetName());
+                        validations.put(sheetRange, PlanResult.deferred(() -> {
+                            SheetSnapshot sheet = session.sheet(sheetRange.getSheetName());
+                            if (sheetRange.error != null) {
+                                throw new IllegalArgumentException(sheetRange.error);
+                            }
+                            return scan.register(sheet,
+                                    new ScanConsumers.CrossSheetConsumer(sheetRange.range, sheetRange.exceptValues, index, sheetIdx));
+                        }));
+                    }
+                }
+            }
+        }
+
+        scan.run();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("agencyCode", agencyCode(session.getFileName()));
+        for (int i = 0; i < steps.size(); i++) {
+            result.put(steps.get(i).name, pendings.get(i).get());
+        }
+
+        return new PlanResult(result, validations);
+    }
+
+    /**
+     * เตรียมแต่ละขั้นตอนกับ Workbook: เซลล์เดียวและ ROW อ่านทันที (เข้าถึงแถวโดยตรง)
+     * ส่วน COUNT ลงทะเบียนไว้ใน FusedScan เพื่ออ่านพร้อมคำสั่งอื่นในคอลัมน์เดียวกัน
+     * และ ROWBY ค้นหาจากดัชนีของคอลัมน์ (RowLookupIndex) ที่สร้างครั้งเดียวต่อ session
+     */
+    private static final class SessionPreparer implements StepVisitor<PlanResult.Pending> {
+        private final WorkbookSession session;
+        private final SheetSnapshot mainSheet;
+        private final FusedScan scan;
+        /** ชุดคำค้น ROWBY ของแต่ละดัชนี (คอลัมน์) ในแผนนี้ */
+        private final Map<RowLookupIndex, RowLookupIndex.Batch> rowLookupBatches = new IdentityHashMap<>();
+
+        SessionPreparer(WorkbookSession session, SheetSnapshot mainSheet, FusedScan scan) {
+            this.session = session;
+            this.mainSheet = mainSheet;
+            this.scan = scan;
+        }
+
+        @Override
+        public PlanResult.Pending visitConstant(ConstantStep step) {
+            Object value = step.value;
+            return () -> value;
+        }
+
+        @Override
+        public PlanResult.Pending visitCell(CellStep step) {
+            SheetSnapshot sheet = targetSheet(step.sheetName, step.error);
+            Object value = ExcelReader.readCellValue(sheet, step.row, step.col);
+            return () -> value;
+        }
+
+        @Override
+        public PlanResult.Pending visitCount(CountStep step) {
+            SheetSnapshot sheet = targetSheet(step.sheetName, step.error);
+            return scan.register(sheet, new ScanConsumers.CountConsumer(step.range));
+        }
+
+        @Override
+        public PlanResult.Pending visitRowBy(RowByStep step) {
+            if (step.refsError != null) {
+                throw new IllegalArgumentException(step.refsError);
+            }
+            session.sheet(step.searchSheetName);
+            SheetSnapshot readSheet = session.sheet(step.readSheetName);
+            if (step.searchColumnError != null) {
+                throw new IllegalArgumentException(step.searchColumnError);
+            }
+
+            // ROWBY ทุกตัวในคอลัมน์เดียวกันใช้ดัชนีเดียวกันของ session และค้นพร้อมกันเป็นชุดเดียว
+            RowLookupIndex index = session.rowLookup(step.searchSheetName, step.searchColIdx);
+            RowLookupIndex.Batch.Query query = rowLookupBatches.computeIfAbsent(index, RowLookupIndex::newBatch)
+                    .add(step.condition, step.conditionName, step.searchValue);
+
+            return () -> {
+                List<Object> result = new ArrayList<>();
+                int foundRowIdx = query.row();
+                if (foundRowIdx == -1) {
+                    // ไม่พบแถวที่ตรงตามเงื่อนไข
+                    return result;
+                }
+
+                // อ่านค่าจากคอลัมน์ที่กำหนด
+                for (ColumnRef columnRef : step.columnRefs) {
+                    int[] cell = columnRef.resolve(foundRowIdx);
+                    result.add(ExcelReader.readCellValue(readSheet, cell[0], cell[1]));
+                }
+                return result;
+            };
+        }
+
+        @Override
+        public PlanResult.Pending visitRow(RowStep step) {
+            SheetSnapshot sheet = session.sheet(step.sheetName);
+            if (step.error != null) {
+                throw new IllegalArgumentException(step.error);
+            }
+            // อ่านแถวเมื่อเขียนผลลัพธ์ (ดู RowStream)
+            List<Map<String, Object>> rows = new RowStream(sheet, step.startRow, step.endRow, step.columnIndices, step.keys,
+                    step.offset, step.limit);
+            return () -> rows;
+        }
+
+        /**
+         * ชีทที่ระบุ หรือชีทหลัก (ตรวจข้อผิดพลาดด้านรูปแบบหลังตรวจชีทที่ระบุ)
+         */
+        private SheetSnapshot targetSheet(String sheetName, String error) {
+            SheetSnapshot sheet = sheetName != null ? session.sheet(sheetName) : mainSheet;
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+            if (sheet == null) {
+                throw new IllegalArgumentException("ไม่ได้ระบุชีทหลัก (SHEET)");
+            }
+            return sheet;
+        }
+    }
+
+    /**
+     * ดึง agency code จากชื่อไฟล์ (5 ตัวอักษรแรก)
+     */
+    static String agencyCode(String fileName) {
+        String baseName = new File(fileName).getName();
+        if (baseName.length() >= 5) {
+            return baseName.substring(0, 5);
+        }
+        return "";
+    }
+
+    // ------------------------------------------------------------------
+    // การคอมไพล์คำสั่ง
+    // ------------------------------------------------------------------
+
+    /**
+     * คำสั่งที่เป็น String (FIX, เซลล์เดียว, COUNT) ใช้ชีทหลัก และไม่ดักข้อผิดพลาด
+     */
+    private static Step compileInstruction(String varName, String instruction) {
+        if (instruction.startsWith("FIX ")) {
+            return new ConstantStep(varName, instruction.substring(4).trim()); // ตัด "FIX " ออก
+        } else if (ExcelReader.isSingleCellReference(instruction)) {
+            return compileCell(varName, null, instruction, false);
+        } else if (instruction.toUpperCase().startsWith("COUNT ")) {
+            return compileRange(varName, null, instruction.substring(6).trim(), false); // ตัด "COUNT " ออก
+        }
+        return new ConstantStep(varName, "คำสั่งไม่รองรับ: " + instruction);
+    }
+
+    private static Step compileCell(String varName, String sheetName, String cellRef, boolean guarded) {
+        try {
+            CellReference ref = new CellReference(cellRef);
+            return new CellStep(varName, sheetName, ref.getRow(), ref.getCol(), null, guarded);
+        } catch (IllegalArgumentException e) {
+            return new CellStep(varName, sheetName, -1, -1, e.getMessage(), guarded);
+        }
+    }
+
+    private static Step compileRange(String varName, String sheetName, String rangeStr, boolean guarded) {
+        try {
+            return new CountStep(varName, sheetName, RangeSpec.parse(rangeStr), null, guarded);
+        } catch (IllegalArgumentException e) {
+            return new CountStep(varName, sheetName, null, e.getMessage(), guarded);
+        }
+    }
+
+    private static Step compileRowBy(String varName, Map<String, Object> config) {
+        String searchSheetName = (String) config.get("searchSheetName");
+        String readSheetName = (String) config.get("readSheetName");
+        String searchColumn = (String) config.get("searchColumn");
+        String searchCondition = (String) config.get("searchCondition");
+        String searchValue = (String) config.get("searchValue");
+        String columnRefsStr = (String) config.get("columnRefs");
+
+        // แยกคอลัมน์ที่ต้องการอ่านจากสตริง (เช่น "[COLUMN(\"AMOUNT\", \"C?\"),COLUMN(\"AMOUNT\", \"F?\")]")
+        String refsError = null;
+        List<ColumnRef> columnRefs = new ArrayList<>();
+        if (!columnRefsStr.startsWith("[") || !columnRefsStr.endsWith("]")) {
+            refsError = "รูปแบบคอลัมน์ไม่ถูกต้อง: " + columnRefsStr;
+        } else {
+            for (String columnRef : splitColumnRefs(columnRefsStr.substring(1, columnRefsStr.length() - 1))) {
+                columnRefs.add(ColumnRef.compile(columnRef));
+            }
+        }
+
+        // แปลงชื่อคอลัมน์ที่ค้นหาเป็น index
+        int searchColIdx = -1;
+        String searchColumnError = null;
+        try {
+            searchColIdx = new CellReference(searchColumn + "1").getCol();
+        } catch (IllegalArgumentException e) {
+            searchColumnError = e.getMessage();
+        }
+
+        return new RowByStep(varName, searchSheetName, readSheetName, searchColIdx,
+                Condition.of(searchCondition), searchCondition, searchValue,
+                columnRefs.toArray(new ColumnRef[0]), refsError, searchColumnError);
+    }
+
+    /**
+     * แยกแต่ละ COLUMN (ไม่รวมวงเล็บ [ ]) โดยไม่ตัดที่ comma ในเครื่องหมายคำพูดหรือวงเล็บ
+     */
+    static List<String> splitColumnRefs(String columnRefsContent) {
+        List<String> columnRefs = new ArrayList<>();
+        StringBuilder currentColumnRef = new StringBuilder();
+        boolean inQuotes = false;
+        int parenthesisCount = 0;
+
+        for (int i = 0; i < columnRefsContent.length(); i++) {
+            char c = columnRefsContent.charAt(i);
+
+            if (c == '"') {
+                inQuotes = !inQuotes;
+                currentColumnRef.append(c);
+            } else if (c == '(') {
+                parenthesisCount++;
+                currentColumnRef.append(c);
+            } else if (c == ')') {
+                parenthesisCount--;
+                currentColumnRef.append(c);
+            } else if (c == ',' && !inQuotes && parenthesisCount == 0) {
+                // พบตัวคั่น COLUMN
+                columnRefs.add(currentColumnRef.toString().trim());
+                currentColumnRef = new StringBuilder();
+            } else {
+                currentColumnRef.append(c);
+            }
+        }
+
+        // เพิ่ม COLUMN สุดท้าย
+        if (currentColumnRef.length() > 0) {
+            columnRefs.add(currentColumnRef.toString().trim());
+        }
+        return columnRefs;
+    }
+
+    /**
+     * แยกช่วงแถว คอลัมน์ และ mapping ตามลำดับเดียวกับ readRowsAndColumns / readRowsAndColumnsWithMapping
+     * ช่วงแถวระบุถึง EOF ได้ (เช่น "5:EOF") และแบ่งหน้าด้วย offset / limit (ไม่บังคับ)
+     */
+    private static Step compileRow(String varName, Map<String, Object> config) {
+        String targetSheetName = (String) config.get("sheetName");
+        String rowRangeStr = (String) config.get("rowRange");
+        String columnsStr = (String) config.get("columns");
+        String mappingStr = (String) config.get("mapping");
+
+        try {
+            // แยกช่วงแถวจากสตริง (เช่น "5:9" หรือ "5:EOF")
+            int[] rowRange = ExcelReader.parseRowRange(rowRangeStr);
+            int startRow = rowRange[0];
+            int endRow = rowRange[1];
+            int offset = parseRowCount(config.get("offset"), "offset", 0);
+            int limit = parseRowCount(config.get("limit"), "limit", -1);
+
+            // แยกคอลัมน์จากสตริง (เช่น "[A,F,I]")
+            if (!columnsStr.startsWith("[") || !columnsStr.endsWith("]")) {
+                throw new IllegalArgumentException("รูปแบบคอลัมน์ไม่ถูกต้อง: " + columnsStr);
+            }
+
+            String columnsContent = columnsStr.substring(1, columnsStr.length() - 1);
+            String[] columnParts = columnsContent.split(",");
+
+            String[] mappingParts = null;
+            if (mappingStr != null) {
+                // แยก mapping จากสตริง (เช่น "[\"ITEM\",\"QTY\",\"AMOUNT\"]")
+                if (!mappingStr.startsWith("[") || !mappingStr.endsWith("]")) {
+                    throw new IllegalArgumentException("รูปแบบ mapping ไม่ถูกต้อง: " + mappingStr);
+                }
+
+                String mappingContent = mappingStr.substring(1, mappingStr.length() - 1);
+                mappingParts = mappingContent.split(",");
+
+                // ตรวจสอบว่าจำนวนคอลัมน์และ mapping ตรงกัน
+                if (columnParts.length != mappingParts.length) {
+                    throw new IllegalArgumentException("จำนวนคอลัมน์และ mapping ไม่ตรงกัน: " + columnParts.length + " vs " + mappingParts.length);
+                }
+            }
+
+            // แปลงชื่อคอลัมน์เป็น index
+            int[] columnIndices = new int[columnParts.length];
+            for (int i = 0; i < columnParts.length; i++) {
+                String colName = columnParts[i].trim();
+                columnIndices[i] = new CellReference(colName + "1").getCol();
+            }
+
+            // ชื่อ key ของแต่ละคอลัมน์ (ชื่อคอลัมน์ หรือชื่อตัวแปรจาก mapping)
+            String[] keys = new String[columnParts.length];
+            for (int i = 0; i < columnParts.length; i++) {
+                if (mappingParts == null) {
+                    keys[i] = columnParts[i].trim();
+                } else {
+                    String key = mappingParts[i].trim();
+                    if (key.startsWith("\"") && key.endsWith("\"")) {
+                        key = key.substring(1, key.length() - 1);
+                    }
+                    keys[i] = key;
+                }
+            }
+
+            return new RowStep(varName, targetSheetName, startRow, endRow, columnIndices, keys, offset, limit, null);
+        } catch (IllegalArgumentException e) {
+            return new RowStep(varName, targetSheetName, 0, -1, null, null, 0, -1, e.getMessage());
+        }
+    }
+
+    /**
+     * จำนวนแถวของ offset / limit (ตัวเลขหรือข้อความตัวเลขที่ไม่ติดลบ)
+     */
+    private static int parseRowCount(Object value, String name, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        int count;
+        try {
+            count = value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("รูปแบบ " + name + " ไม่ถูกต้อง: " + value);
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void compileCheck(Map<?, ?> condition, List<Check> checks) {
+        // ตรวจสอบค่าซ้ำในชีทเดียว
+        if (condition.containsKey("sheetName") && condition.containsKey("condition")) {
+            String conditionStr = (String) condition.get("condition");
+            if (conditionStr.startsWith("CHKDUPLICATE ")) {
+                String targetSheetName = (String) condition.get("sheetName");
+                String rangeStr = conditionStr.substring("CHKDUPLICATE ".length());
+                Set<Object> exceptValues = (Set<Object>) condition.get("exceptValues");
+                checks.add(new DuplicateCheck(targetSheetName, rangeStr, exceptValues));
+            }
+        }
+        // ตรวจสอบค่าซ้ำระหว่างชีท
+        else if (condition.containsKey("condition") && "CHKSHEETDUPLICATE".equals(condition.get("condition"))) {
+            if (condition.containsKey("sheetConfigs")) {
+                List<Map<String, Object>> sheetConfigs = (List<Map<String, Object>>) condition.get("sheetConfigs");
+                List<SheetRange> ranges = new ArrayList<>();
+                for (Map<String, Object> sheetConfig : sheetConfigs) {
+                    ranges.add(new SheetRange((String) sheetConfig.get("sheetName"), (String) sheetConfig.get("rangeStr"),
+                            (Set<Object>) sheetConfig.get("exceptValues")));
+                }
+                checks.add(new SheetDuplicateCheck(ranges));
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // ขั้นตอนการอ่านตัวแปร
+    // ------------------------------------------------------------------
+
+    /**
+     * ตัวเลือกการประมวลผลแต่ละชนิดของขั้นตอน (แบบ DOM ใน evaluate และแบบ streaming)
+     */
+    interface StepVisitor<R> {
+        R visitConstant(ConstantStep step);
+
+        R visitCell(CellStep step);
+
+        R visitCount(CountStep step);
+
+        R visitRowBy(RowByStep step);
+
+        R visitRow(RowStep step);
+    }
+
+    /**
+     * ขั้นตอนการอ่านตัวแปรหนึ่งตัว
+     */
+    abstract static class Step {
+        final String name;
+        /** true = ถ้าเกิด IllegalArgumentException ให้ผลลัพธ์เป็น "ข้อผิดพลาด: ..." */
+        final boolean guarded;
+
+        Step(String name, boolean guarded) {
+            this.name = name;
+            this.guarded = guarded;
+        }
+
+        abstract <R> R accept(StepVisitor<R> visitor);
+    }
+
+    /**
+     * ค่าคงที่ (FIX, คำสั่งที่ไม่รองรับ หรือค่าที่ไม่ใช่คำสั่ง)
+     */
+    static final class ConstantStep extends Step {
+        final Object value;
+
+        ConstantStep(String name, Object value) {
+            super(name, false);
+            this.value = value;
+        }
+
+        @Override
+        <R> R accept(StepVisitor<R> visitor) {
+            return visitor.visitConstant(this);
+        }
+    }
+
+    /**
+     * อ่านค่าเซลล์เดียว (COLUMN หรือ "Z4")
+     */
+    static final class CellStep extends Step {
+        /** ชื่อชีท หรือ null ถ้าใช้ชีทหลัก */
+        final String sheetName;
+        final int row;
+        final int col;
+        final String error;
+
+        CellStep(String name, String sheetName, int row, int col, String error, boolean guarded) {
+            super(name, guarded);
+            this.sheetName = sheetName;
+            this.row = row;
+            this.col = col;
+            this.error = error;
+        }
+
+        @Override
+        <R> R accept(StepVisitor<R> visitor) {
+            return visitor.visitCell(this);
+        }
+    }
+
+    /**
+     * นับจำนวนเซลล์ที่ไม่ว่าง (COUNT)
+     */
+    static final class CountStep extends Step {
+        /** ชื่อชีท หรือ null ถ้าใช้ชีทหลัก */
+        final String sheetName;
+        final RangeSpec range;
+        final String error;
+
+        CountStep(String name, String sheetName, RangeSpec range, String error, boolean guarded) {
+            super(name, guarded);
+            this.sheetName = sheetName;
+            this.range = range;
+            this.error = error;
+        }
+
+        @Override
+        <R> R accept(StepVisitor<R> visitor) {
+            return visitor.visitCount(this);
+        }
+    }
+
+    /**
+     * ค้นหาแถวแรกที่ตรงตามเงื่อนไข แล้วอ่านค่าจากคอลัมน์ที่กำหนดในแถวนั้น (ROWBY)
+     */
+    static final class RowByStep extends Step {
+        final String searchSheetName;
+        final String readSheetName;
+        final int searchColIdx;
+        /** null ถ้าเงื่อนไขไม่ถูกต้อง (โยนข้อผิดพลาดเมื่อพบเซลล์แรกที่ไม่ว่าง) */
+        final Condition condition;
+        final String conditionName;
+        final String searchValue;
+        /** คำค้นสำหรับ condition.matches (ดู Condition.pattern) */
+        final String searchPattern;
+        final ColumnRef[] columnRefs;
+        final String refsError;
+        final String searchColumnError;
+
+        RowByStep(String name, String searchSheetName, String readSheetName, int searchColIdx,
+                  Condition condition, String conditionName, String searchValue, ColumnRef[] columnRefs,
+                  String refsError, String searchColumnError) {
+            super(name, true);
+            this.searchSheetName = searchSheetName;
+            this.readSheetName = readSheetName;
+            this.searchColIdx = searchColIdx;
+            this.condition = condition;
+            this.conditionName = conditionName;
+            this.searchValue = searchValue;
+            this.searchPattern = condition != null ? condition.pattern(searchValue) : null;
+            this.columnRefs = columnRefs;
+            this.refsError = refsError;
+            this.searchColumnError = searchColumnError;
+        }
+
+        @Override
+        <R> R accept(StepVisitor<R> visitor) {
+            return visitor.visitRowBy(this);
+        }
+    }
+
+    /**
+     * อ่านแถวในช่วงที่กำหนด (ROW)
+     */
+    static final class RowStep extends Step {
+        final String sheetName;
+        final int startRow;
+        final int endRow;
+        final int[] columnIndices;
+        final String[] keys;
+        /** จำนวนแถวที่ข้ามจากต้นช่วง */
+        final int offset;
+        /** จำนวนแถวสูงสุด (-1 = ไม่จำกัด) */
+        final int limit;
+        final String error;
+
+        RowStep(String name, String sheetName, int startRow, int endRow, int[] columnIndices, String[] keys,
+                int offset, int limit, String error) {
+            super(name, true);
+            this.sheetName = sheetName;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.columnIndices = columnIndices;
+            this.keys = keys;
+            this.offset = offset;
+            this.limit = limit;
+            this.error = error;
+        }
+
+        @Override
+        <R> R accept(StepVisitor<R> visitor) {
+            return visitor.visitRow(this);
+        }
+    }
+
+    /**
+     * เงื่อนไขการค้นหาของ ROWBY
+     */
+    enum Condition {
+        EQUAL, STARTWITH, ENDWITH, CONTENT;
+
+        /**
+         * คำค้นในรูปที่ใช้กับ matches: EQUAL ใช้ค่าเดิม เงื่อนไขอื่นปรับรูปแบบด้วย ThaiText.normalize
+         * (เหมือน RowLookupIndex) เรียกครั้งเดียวตอนสร้างขั้นตอน ไม่ต้องปรับคำค้นทุกเซลล์
+         */
+        String pattern(String searchValue) {
+            return this == EQUAL || searchValue == null ? searchValue : ThaiText.normalize(searchValue);
+        }
+
+        /**
+         * EQUAL เทียบค่าตรงตัว เงื่อนไขอื่นเทียบหลังปรับรูปแบบค่าเซลล์ด้วย ThaiText.normalize
+         *
+         * @param pattern คำค้นจาก pattern(searchValue)
+         */
+        boolean matches(String cellValue, String pattern) {
+            if (this == EQUAL) {
+                return cellValue.equals(pattern);
+            }
+            String text = ThaiText.normalize(cellValue);
+            switch (this) {
+                case STARTWITH:
+                    return text.startsWith(pattern);
+                case ENDWITH:
+                    return text.endsWith(pattern);
+                default:
+                    return text.contains(pattern);
+            }
+        }
+
+        /**
+         * แปลงชื่อเงื่อนไข (ไม่สนตัวพิมพ์เล็ก/ใหญ่) หรือ null ถ้าไม่รองรับ
+         */
+        static Condition of(String name) {
+            if (name == null) {
+                return null;
+            }
+            for (Condition condition : values()) {
+                if (condition.name().equals(name.toUpperCase())) {
+                    return condition;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * ตำแหน่งเซลล์ใน ROWBY เช่น COLUMN("AMOUNT", "C?") โดย ? คือเลขแถวที่พบ
+     */
+    static final class ColumnRef {
+        /** ตำแหน่งเซลล์จาก COLUMN(...) เช่น "C?" (อาจเป็น null ถ้ารูปแบบไม่ครบ) */
+        final String template;
+        /** true = แปลงตำแหน่งไว้แล้ว */
+        final boolean compiled;
+        /** true = ใช้แถวที่พบ, false = ใช้ row */
+        final boolean relative;
+        final int row;
+        final int col;
+
+        private ColumnRef(String template, boolean compiled, boolean relative, int row, int col) {
+            this.template = template;
+            this.compiled = compiled;
+            this.relative = relative;
+            this.row = row;
+            this.col = col;
+        }
+
+        static ColumnRef compile(String columnRef) {
+            String template = ExcelReader.extractColumnRef(columnRef.trim());
+            if (template != null) {
+                try {
+                    Matcher relativeMatcher = RELATIVE_CELL_PATTERN.matcher(template);
+                    if (relativeMatcher.matches()) {
+                        int col = new CellReference(relativeMatcher.group(1) + "1").getCol();
+                        return new ColumnRef(template, true, true, -1, col);
+                    }
+                    Matcher matcher = CELL_PATTERN.matcher(template);
+                    if (matcher.matches()) {
+                        int row = Integer.parseInt(matcher.group(2)) - 1; // แปลงเป็น 0-based
+                        int col = new CellReference(template).getCol();
+                        return new ColumnRef(template, true, false, row, col);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // รูปแบบอื่นๆ แปลงตอนอ่าน เพื่อให้ข้อผิดพลาดเหมือนเดิม
+                }
+            }
+            return new ColumnRef(template, false, false, -1, -1);
+        }
+
+        /**
+         * หาตำแหน่ง {แถว, คอลัมน์} (0-based) ของเซลล์ เมื่อพบแถว foundRowIdx
+         */
+        int[] resolve(int foundRowIdx) {
+            if (compiled) {
+                return new int[]{relative ? foundRowIdx : row, col};
+            }
+
+            // แทนที่ ? ด้วยเลขแถวที่พบ
+            String actualColumnRef = template.replace("?", String.valueOf(foundRowIdx + 1));
+
+            // แยกชื่อคอลัมน์และเลขแถว
+            Matcher matcher = CELL_PATTERN.matcher(actualColumnRef);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("รูปแบบคอลัมน์ไม่ถูกต้อง: " + actualColumnRef);
+            }
+
+            int rowNum = Integer.parseInt(matcher.group(2)) - 1; // แปลงเป็น 0-based
+            return new int[]{rowNum, new CellReference(actualColumnRef).getCol()};
+        }
+
+        /**
+         * คอลัมน์ที่เซลล์นี้อ้างถึง หรือ -1 ถ้าไม่ทราบ
+         */
+        int column() {
+            if (compiled) {
+                return col;
+            }
+            if (template == null) {
+                return -1;
+            }
+            int end = 0;
+            while (end < template.length() && Character.isLetter(template.charAt(end))) {
+                end++;
+            }
+            return end > 0 ? CellReference.convertColStringToIndex(template.substring(0, end)) : -1;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // เงื่อนไขตรวจสอบ
+    // ------------------------------------------------------------------
+
+    /**
+     * เงื่อนไขตรวจสอบใน VALIDATES
+     */
+    public abstract static class Check {
+        Check() {
+        }
+    }
+
+    /**
+     * ตรวจสอบค่าซ้ำในชีทเดียว (CHKDUPLICATE)
+     */
+    public static final class DuplicateCheck extends Check {
+        private final String sheetName;
+        private final String rangeStr;
+        final RangeSpec range;
+        final String error;
+        final Set<Object> exceptValues;
+
+        DuplicateCheck(String sheetName, String rangeStr, Set<Object> exceptValues) {
+            this.sheetName = sheetName;
+            this.rangeStr = rangeStr;
+            this.exceptValues = exceptValues;
+            RangeSpec parsed = null;
+            String parseError = null;
+            try {
+                parsed = RangeSpec.parse(rangeStr);
+            } catch (IllegalArgumentException e) {
+                parseError = e.getMessage();
+            }
+            this.range = parsed;
+            this.error = parseError;
+        }
+
+        public String getSheetName() {
+            return sheetName;
+        }
+
+        public String getRangeStr() {
+            return rangeStr;
+        }
+    }
+
+    /**
+     * ตรวจสอบค่าซ้ำระหว่างชีท (CHKSHEETDUPLICATE)
+     */
+    public static final class SheetDuplicateCheck extends Check {
+        private final List<SheetRange> ranges;
+
+        SheetDuplicateCheck(List<SheetRange> ranges) {
+            this.ranges = Collections.unmodifiableList(ranges);
+        }
+
+        public List<SheetRange> getRanges() {
+            return ranges;
+        }
+    }
+
+    /**
+     * ช่วงของชีทหนึ่งใน CHKSHEETDUPLICATE
+     */
+    public static final class SheetRange {
+        private final String sheetName;
+        final RangeSpec range;
+        final String error;
+        final Set<Object> exceptValues;
+
+        SheetRange(String sheetName, String rangeStr, Set<Object> exceptValues) {
+            this.sheetName = sheetName;
+            this.exceptValues = exceptValues;
+            RangeSpec parsed = null;
+            String parseError = null;
+            try {
+                parsed = RangeSpec.parse(rangeStr);
+            } catch (IllegalArgumentException e) {
+                parseError = e.getMessage();
+            }
+            this.range = parsed;
+            this.error = parseError;
+        }
+
+        public String getSheetName() {
+            return sheetName;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * แคชของ ExcelPlan ที่คอมไพล์แล้ว เพื่อไม่ต้องแยกพารามิเตอร์ใหม่ทุกครั้งที่เรียก
+ *
+ * key คืออาร์เรย์ของพารามิเตอร์ทั้งชุด (Arrays.hashCode/equals) จึงไม่ต้องแยกพารามิเตอร์ใดเพื่อสร้าง key
+ * template เดียวกันที่ส่งพารามิเตอร์ต่างกันได้แผนแยกกันคนละช่อง ไม่แทนที่กันเอง
+ * จำนวนแผนจำกัดด้วย LRU (MAX_PLANS) แผนของ template ที่ถูกแก้ไขจึงถูกลบออกเองเมื่อไม่มีการเรียกใช้
+ */
+public final class ExcelPlanCache {
+
+    /** จำนวนแผนสูงสุดที่เก็บไว้ (ลบแผนที่ไม่ได้ใช้นานที่สุดออกก่อน) */
+    private static final int MAX_PLANS = 256;
+
+    private static final Map<ParamsKey, ExcelPlan> PLANS = new LinkedHashMap<ParamsKey, ExcelPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ParamsKey, ExcelPlan> eldest) {
+            return size() > MAX_PLANS;
+        }
+    };
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private ExcelPlanCache() {
+    }
+
+    /**
+     * ดึงแผนจากแคช หรือคอมไพล์ใหม่ถ้ายังไม่มี
+     *
+     * @param params พารามิเตอร์ในรูปแบบเดียวกับ NEBWorkSheetService.processExcelToWssResult
+     * @return แผนการประมวลผล
+     */
+    public static ExcelPlan get(String[] params) {
+        ParamsKey lookup = new ParamsKey(params);
+        synchronized (PLANS) {
+            ExcelPlan plan = PLANS.get(lookup);
+            if (plan != null) {
+                HITS.incrementAndGet();
+                return plan;
+            }
+        }
+
+        MISSES.incrementAndGet();
+        // เก็บสำเนาของพารามิเตอร์ ผู้เรียกแก้ไขอาร์เรย์เดิมภายหลังได้โดยไม่กระทบแคช
+        ParamsKey key = new ParamsKey(params.clone());
+        ExcelPlan plan = ExcelPlan.compile(key.params);
+        synchronized (PLANS) {
+            PLANS.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * ล้างแผนทั้งหมดในแคช
+     */
+    public static void clear() {
+        synchronized (PLANS) {
+            PLANS.clear();
+        }
+    }
+
+    public static int size() {
+        synchronized (PLANS) {
+            return PLANS.size();
+        }
+    }
+
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    public static long getMissCount() {
+        return MISSES.get();
+    }
+
+    /**
+     * key ของแคชจากพารามิเตอร์ทั้งชุด (คำนวณ hash ครั้งเดียวตอนสร้าง)
+     */
+    private static final class ParamsKey {
+        final String[] params;
+        private final int hash;
+
+        ParamsKey(String[] params) {
+            this.params = params;
+            this.hash = Arrays.hashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ParamsKey && hash == ((ParamsKey) other).hash
+                    && Arrays.equals(params, ((ParamsKey) other).params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+/**
+ * โหมดการอ่านไฟล์ Excel สำหรับ processExcelToWssResult
+ */
+public enum ExcelReadMode {
+
+    /**
+     * สร้าง Workbook (XSSFWorkbook / HSSFWorkbook) ทั้งไฟล์ในหน่วยความจำ
+     */
+    DOM,
+
+    /**
+     * อ่านไฟล์ .xlsx แบบ SAX ทีละชีท ไม่สร้าง Workbook ทั้งไฟล์
+     * (ไฟล์ .xls จะกลับไปใช้โหมด DOM)
+     */
+    STREAMING
+}
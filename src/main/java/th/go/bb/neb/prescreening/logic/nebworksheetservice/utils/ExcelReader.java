@@ -8,14 +8,15 @@ import org.apache.poi.ss.util.CellReference;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * คลาสสำหรับเก็บพารามิเตอร์ในรูปแบบต่างๆ
@@ -32,6 +33,13 @@ abstract class ExcelParameter {
     }
     
     public abstract Object process(ExcelReader reader, String fileName, String sheetName) throws IOException;
+
+    /**
+     * ประมวลผลโดยใช้ Workbook ที่เปิดไว้แล้วใน session (ไม่เปิดไฟล์ซ้ำ)
+     */
+    public Object process(WorkbookSession session, String sheetName) throws IOException {
+        return process(null, session.getFileName(), sheetName);
+    }
 }
 
 /**
@@ -68,24 +76,18 @@ class ColumnParameter extends ExcelParameter {
     
     @Override
     public Object process(ExcelReader reader, String fileName, String sheetName) throws IOException {
-        File file = new File(fileName);
-        Workbook workbook = createWorkbook(file , fileName);
-        return ExcelReader.readCellValue(workbook, sheetName, cellReference);
+        try (WorkbookSession session = WorkbookSession.open(fileName)) {
+            return process(session, sheetName);
+        }
+    }
+
+    @Override
+    public Object process(WorkbookSession session, String sheetName) {
+        return ExcelReader.readCellValue(session, sheetName, cellReference);
     }
 
     public static Workbook createWorkbook(File file , String fileName) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            // ตรวจสอบประเภทไฟล์และสร้าง Workbook
-            Workbook workbook;
-            if (fileName.toLowerCase().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else if (fileName.toLowerCase().endsWith(".xls")) {
-                workbook = new HSSFWorkbook(fis);
-            } else {
-                throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
-            }
-            return workbook;
-        }
+        return WorkbookSession.createWorkbook(file, fileName);
     }
     
     public static ColumnParameter parse(String name, String cellReference) {
@@ -108,6 +110,11 @@ class CountParameter extends ExcelParameter {
     public Object process(ExcelReader reader, String fileName, String sheetName) throws IOException {
         return ExcelReader.countCells(fileName, sheetName, rangeStr);
     }
+
+    @Override
+    public Object process(WorkbookSession session, String sheetName) {
+        return ExcelReader.countCells(session, sheetName, rangeStr);
+    }
     
     public static CountParameter parse(String name, String rangeStr) {
         return new CountParameter(name, rangeStr);
@@ -161,6 +168,7 @@ public class ExcelReader {
     /**
      * อ่านข้อมูลจากไฟล์ Excel ตามพารามิเตอร์ที่ระบุ
      * 
+     * @param workbook Workbook ที่เปิดไว้แล้ว (จะถูกปิดเมื่ออ่านเสร็จ)
      * @param fileName ชื่อไฟล์ Excel
      * @param sheetName ชื่อชีทที่ต้องการอ่าน
      * @param variables Map ของตัวแปรและคำสั่งที่ใช้ในการอ่าน เช่น {"AMOUNT": "Z4", "QTY": "COUNT B15:EOF"}
@@ -169,213 +177,25 @@ public class ExcelReader {
      */
     public static Map<String, Object> readExcelVariables( Workbook workbook,String fileName, String sheetName, 
                                                         Map<String, Object> variables) throws IOException {
-        Map<String, Object> result = new HashMap<>();
-        
-        // ดึง agency code จากชื่อไฟล์ (5 ตัวอักษรแรก)
-        File file = new File(fileName);
-        String baseName = file.getName();
-        String agencyCode = "";
-        if (baseName.length() >= 5) {
-            agencyCode = baseName.substring(0, 5);
+        try {
+            return readExcelVariables(new WorkbookSession(fileName, workbook), sheetName, variables);
+        } finally {
+            workbook.close();
         }
-        result.put("agencyCode", agencyCode);
+    }
 
-            try {
-                // เลือกชีท (ถ้ามีการระบุชื่อชีท)
-                Sheet sheet = null;
-                if (!sheetName.isEmpty()) {
-                    sheet = workbook.getSheet(sheetName);
-                    if (sheet == null) {
-                        throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
-                    }
-                }
-                
-                // ประมวลผลแต่ละตัวแปร
-                for (Map.Entry<String, Object> entry : variables.entrySet()) {
-                    String varName = entry.getKey().toLowerCase();
-                    
-                    // ข้ามการประมวลผลสำหรับตัวแปร VALIDATES
-                    if ("validates".equals(varName)) {
-                        continue;
-                    }
-                    
-                    Object value = entry.getValue();
-                    
-                    // กรณีที่ค่าเป็น String
-                    if (value instanceof String) {
-                        String instruction = ((String) value).trim();
-                        
-                        // กรณีที่เป็นค่าคงที่ (FIX)
-                        if (instruction.startsWith("FIX ")) {
-                            String fixedValue = instruction.substring(4).trim(); // ตัด "FIX " ออก
-                            result.put(varName, fixedValue);
-                        }
-                        // กรณีที่เป็นการอ่านเซลล์เดียว (เช่น Z4)
-                        else if (isSingleCellReference(instruction)) {
-                            Object cellValue = readCellValue(sheet, instruction);
-                            result.put(varName, cellValue);
-                        }
-                        // กรณีที่เป็นการนับจำนวน (COUNT B15:EOF หรือ COUNT B15:B100000)
-                        else if (instruction.toUpperCase().startsWith("COUNT ")) {
-                            String rangeStr = instruction.substring(6).trim(); // ตัด "COUNT " ออก
-                            int count = countNonEmptyCells(sheet, rangeStr);
-                            result.put(varName, count);
-                        }
-                        // กรณีอื่นๆ
-                        else {
-                            result.put(varName, "คำสั่งไม่รองรับ: " + instruction);
-                        }
-                    }
-                    // กรณีที่ค่าเป็น Map และเป็นการนับจำนวน (COUNT)
-                    else if (value instanceof Map && ((Map<?, ?>) value).containsKey("type") && "COUNT".equals(((Map<?, ?>) value).get("type"))) {
-                        Map<String, Object> countConfig = (Map<String, Object>) value;
-                        String rangeStr = (String) countConfig.get("rangeStr");
-                        
-                        try {
-                            int count;
-                            
-                            // ตรวจสอบว่ามีการระบุชื่อชีทหรือไม่
-                            if (countConfig.containsKey("sheetName")) {
-                                String targetSheetName = (String) countConfig.get("sheetName");
-                                count = countCells(fileName, targetSheetName, rangeStr);
-                            } else {
-                                // ใช้ชีทหลัก
-                                count = countNonEmptyCells(sheet, rangeStr);
-                            }
-                            
-                            // เก็บผลลัพธ์
-                            result.put(varName, count);
-                        } catch (IllegalArgumentException e) {
-                            // กรณีไม่พบชีทหรือข้อผิดพลาดอื่นๆ
-                            result.put(varName, "ข้อผิดพลาด: " + e.getMessage());
-                        }
-                    }
-                    // กรณีที่ค่าเป็น Map และเป็นการอ่านเซลล์เดียวจากชีทที่กำหนด (COLUMN)
-                    else if (value instanceof Map && ((Map<?, ?>) value).containsKey("type") && "COLUMN".equals(((Map<?, ?>) value).get("type"))) {
-                        Map<String, Object> columnConfig = (Map<String, Object>) value;
-                        String cellRef = (String) columnConfig.get("cellRef");
-                        
-                        try {
-                            Object cellValue;
-                            
-                            // ตรวจสอบว่ามีการระบุชื่อชีทหรือไม่
-                            if (columnConfig.containsKey("sheetName")) {
-                                String targetSheetName = (String) columnConfig.get("sheetName");
-                                cellValue = readCellValue(workbook , targetSheetName, cellRef);
-                            } else {
-                                // ใช้ชีทหลัก
-                                cellValue = readCellValue(sheet, cellRef);
-                            }
-                            
-                            // เก็บผลลัพธ์
-                            result.put(varName, cellValue);
-                        } catch (IllegalArgumentException e) {
-                            // กรณีไม่พบชีทหรือข้อผิดพลาดอื่นๆ
-                            result.put(varName, "ข้อผิดพลาด: " + e.getMessage());
-                        }
-                    }
-                    // กรณีที่ค่าเป็น Map และเป็นการค้นหาแถวตามเงื่อนไข (ROWBY)
-                    else if (value instanceof Map && ((Map<?, ?>) value).containsKey("type") && "ROWBY".equals(((Map<?, ?>) value).get("type"))) {
-                        Map<String, Object> rowByConfig = (Map<String, Object>) value;
-                        String searchSheetName = (String) rowByConfig.get("searchSheetName");
-                        String readSheetName = (String) rowByConfig.get("readSheetName");
-                        String searchColumn = (String) rowByConfig.get("searchColumn");
-                        String searchCondition = (String) rowByConfig.get("searchCondition");
-                        String searchValue = (String) rowByConfig.get("searchValue");
-                        String columnRefsStr = (String) rowByConfig.get("columnRefs");
-                        
-                        try {
-                            // แยกคอลัมน์ที่ต้องการอ่านจากสตริง (เช่น "[COLUMN(\"AMOUNT\", \"C?\"),COLUMN(\"AMOUNT\", \"F?\")]")
-                            if (!columnRefsStr.startsWith("[") || !columnRefsStr.endsWith("]")) {
-                                throw new IllegalArgumentException("รูปแบบคอลัมน์ไม่ถูกต้อง: " + columnRefsStr);
-                            }
-                            
-                            String columnRefsContent = columnRefsStr.substring(1, columnRefsStr.length() - 1);
-                            
-                            // แยกแต่ละ COLUMN
-                            List<String> columnRefs = new ArrayList<>();
-                            StringBuilder currentColumnRef = new StringBuilder();
-                            boolean inQuotes = false;
-                            int parenthesisCount = 0;
-                            
-                            for (int i = 0; i < columnRefsContent.length(); i++) {
-                                char c = columnRefsContent.charAt(i);
-                                
-                                if (c == '"') {
-                                    inQuotes = !inQuotes;
-                                    currentColumnRef.append(c);
-                                } else if (c == '(') {
-                                    parenthesisCount++;
-                                    currentColumnRef.append(c);
-                                } else if (c == ')') {
-                                    parenthesisCount--;
-                                    currentColumnRef.append(c);
-                                } else if (c == ',' && !inQuotes && parenthesisCount == 0) {
-                                    // พบตัวคั่น COLUMN
-                                    // String columnRef = extractColumnRef(currentColumnRef.toString().trim());
-                                    // if (columnRef != null) {
-                                        columnRefs.add(currentColumnRef.toString().trim());
-                                        // columnRefs.add(columnRef);
-                                    // }
-                                    currentColumnRef = new StringBuilder();
-                                } else {
-                                    currentColumnRef.append(c);
-                                }
-                            }
-                            
-                            // เพิ่ม COLUMN สุดท้าย
-                            if (currentColumnRef.length() > 0) {
-                                // String columnRef = extractColumnRef(currentColumnRef.toString().trim());
-                                // if (columnRef != null) {
-                                    columnRefs.add(currentColumnRef.toString().trim());
-                                // }
-                            }
-                            
-                            // ค้นหาแถวและอ่านค่า
-                            List<Object> rowValues = findRowByConditionAndReadColumns(fileName, searchSheetName, readSheetName,
-                                                                                   searchColumn, searchCondition, searchValue, columnRefs);
-                            
-                            // เก็บผลลัพธ์
-                            result.put(varName, rowValues);
-                        } catch (IllegalArgumentException e) {
-                            // กรณีไม่พบชีทหรือข้อผิดพลาดอื่นๆ
-                            result.put(varName, "ข้อผิดพลาด: " + e.getMessage());
-                        }
-                    }
-                    // กรณีที่ค่าเป็น Map และเป็นการอ่านแถว (ROW)
-                    else if (value instanceof Map && ((Map<?, ?>) value).containsKey("type") && "ROW".equals(((Map<?, ?>) value).get("type"))) {
-                        Map<String, Object> rowConfig = (Map<String, Object>) value;
-                        String targetSheetName = (String) rowConfig.get("sheetName");
-                        String rowRangeStr = (String) rowConfig.get("rowRange");
-                        String columnsStr = (String) rowConfig.get("columns");
-                        String mappingStr = (String) rowConfig.get("mapping");
-                        
-                        try {
-                            // อ่านข้อมูลจากแถวและคอลัมน์ที่กำหนด
-                            List<Map<String, Object>> rowsData;
-                            if (mappingStr != null) {
-                                rowsData = readRowsAndColumnsWithMapping(fileName, targetSheetName, rowRangeStr, columnsStr, mappingStr);
-                            } else {
-                                rowsData = readRowsAndColumns(fileName, targetSheetName, rowRangeStr, columnsStr);
-                            }
-                            
-                            // เก็บผลลัพธ์
-                            result.put(varName, rowsData);
-                        } catch (IllegalArgumentException e) {
-                            // กรณีไม่พบชีทหรือข้อผิดพลาดอื่นๆ
-                            result.put(varName, "ข้อผิดพลาด: " + e.getMessage());
-                        }
-                    }
-                    else {
-                        // กรณีที่ค่าไม่ใช่ String ให้เก็บค่าเดิม
-                        result.put(varName, value);
-                    }
-                }
-            } finally {
-                workbook.close();
-            }
-        
-        return result;
+    /**
+     * อ่านข้อมูลจาก Workbook ใน session ตามพารามิเตอร์ที่ระบุ
+     * ทุกคำสั่งใช้ Workbook เดียวกันใน session โดยไม่เปิดไฟล์ซ้ำ และไม่ปิด session
+     * 
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการอ่าน
+     * @param variables Map ของตัวแปรและคำสั่งที่ใช้ในการอ่าน เช่น {"AMOUNT": "Z4", "QTY": "COUNT B15:EOF"}
+     * @return Map ของผลลัพธ์การอ่าน เช่น {"amount": 999, "qty": 99, "agencyCode": "01007"}
+     */
+    public static Map<String, Object> readExcelVariables(WorkbookSession session, String sheetName,
+                                                        Map<String, Object> variables) {
+        return ExcelPlan.compile(sheetName, variables).execute(session);
     }
 
     
@@ -390,30 +210,26 @@ public class ExcelReader {
      * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
      */
     public static Object readCellValue(Workbook workbook, String sheetName, String cellReference) throws IOException {
-        // File file = new File(fileName);
-        // try (FileInputStream fis = new FileInputStream(file)) {
-        //     // ตรวจสอบประเภทไฟล์และสร้าง Workbook
-        //     Workbook workbook;
-        //     if (fileName.toLowerCase().endsWith(".xlsx")) {
-        //         workbook = new XSSFWorkbook(fis);
-        //     } else if (fileName.toLowerCase().endsWith(".xls")) {
-        //         workbook = new HSSFWorkbook(fis);
-        //     } else {
-        //         throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
-        //     }
-            
-            try {
-                // เลือกชีท
-                Sheet sheet = workbook.getSheet(sheetName);
-                if (sheet == null) {
-                    throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
-                }
-                
-                return readCellValue(sheet, cellReference);
-            } finally {
-                workbook.close();
-            }
-        // }
+        try {
+            return readCellValue(new WorkbookSession(null, workbook), sheetName, cellReference);
+        } finally {
+            workbook.close();
+        }
+    }
+    
+    /**
+     * อ่านค่าจากเซลล์ที่ระบุ จาก Workbook ใน session
+     * 
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการอ่าน
+     * @param cellReference ตำแหน่งเซลล์ (เช่น A1, B5, Z4)
+     * @return ค่าในเซลล์
+     */
+    public static Object readCellValue(WorkbookSession session, String sheetName, String cellReference) {
+        // เลือกชีท
+        SheetSnapshot sheet = session.sheet(sheetName);
+        
+        return readCellValue(sheet, cellReference);
     }
     
     /**
@@ -426,61 +242,52 @@ public class ExcelReader {
      * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
      */
     public static int countCells(String fileName, String sheetName, String rangeStr) throws IOException {
-        File file = new File(fileName);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            // ตรวจสอบประเภทไฟล์และสร้าง Workbook
-            Workbook workbook;
-            if (fileName.toLowerCase().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else if (fileName.toLowerCase().endsWith(".xls")) {
-                workbook = new HSSFWorkbook(fis);
-            } else {
-                throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
-            }
-            
-            try {
-                // เลือกชีท
-                Sheet sheet = workbook.getSheet(sheetName);
-                if (sheet == null) {
-                    throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
-                }
-                
-                return countNonEmptyCells(sheet, rangeStr);
-            } finally {
-                workbook.close();
-            }
+        try (WorkbookSession session = WorkbookSession.open(fileName, Collections.singleton(sheetName))) {
+            return countCells(session, sheetName, rangeStr);
         }
     }
     
+    /**
+     * นับจำนวนเซลล์ที่ไม่ว่างในช่วงที่กำหนด จาก Workbook ใน session
+     * 
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการอ่าน
+     * @param rangeStr ช่วงเซลล์ที่ต้องการนับ (เช่น B15:EOF)
+     * @return จำนวนเซลล์ที่ไม่ว่าง
+     */
+    public static int countCells(WorkbookSession session, String sheetName, String rangeStr) {
+        // เลือกชีท
+        SheetSnapshot sheet = session.sheet(sheetName);
+        
+        return countNonEmptyCells(sheet, rangeStr);
+    }
+    
     /**
      * ตรวจสอบว่าเป็นการอ้างอิงเซลล์เดียวหรือไม่ (เช่น A1, B2, Z4)
      */
-    private static boolean isSingleCellReference(String reference) {
+    static boolean isSingleCellReference(String reference) {
         return reference.matches("[A-Za-z]+[0-9]+");
     }
     
     /**
      * อ่านค่าจากเซลล์ที่ระบุ
      */
-    private static Object readCellValue(Sheet sheet, String cellReference) {
+    static Object readCellValue(SheetSnapshot sheet, String cellReference) {
         CellReference ref = new CellReference(cellReference);
-        Row row = sheet.getRow(ref.getRow());
-        if (row == null) {
-            return null;
-        }
-        
-        Cell cell = row.getCell(ref.getCol());
-        if (cell == null) {
-            return null;
-        }
-        
-        return getCellValue(cell);
+        return readCellValue(sheet, ref.getRow(), ref.getCol());
+    }
+    
+    /**
+     * อ่านค่าจากเซลล์ตามตำแหน่งแถวและคอลัมน์ (0-based)
+     */
+    static Object readCellValue(SheetSnapshot sheet, int rowIdx, int colIdx) {
+        return sheet.getValue(rowIdx, colIdx);
     }
     
     /**
      * ดึงค่าจากเซลล์ตามประเภทข้อมูล
      */
-    private static Object getCellValue(Cell cell) {
+    static Object getCellValue(Cell cell) {
         if (cell == null) {
             return null;
         }
@@ -492,16 +299,7 @@ public class ExcelReader {
                 if (DateUtil.isCellDateFormatted(cell)) {
                     return cell.getDateCellValue();
                 } else {
-                    double numValue = cell.getNumericCellValue();
-                    // ถ้าเป็นจำนวนเต็ม ส่งกลับเป็น Integer/Long
-                    if (numValue == Math.floor(numValue)) {
-                        if (numValue <= Integer.MAX_VALUE && numValue >= Integer.MIN_VALUE) {
-                            return (int) numValue;
-                        } else {
-                            return (long) numValue;
-                        }
-                    }
-                    return numValue;
+                    return toCellNumber(cell.getNumericCellValue());
                 }
             case BOOLEAN:
                 return cell.getBooleanCellValue();
@@ -521,79 +319,57 @@ public class ExcelReader {
                 return null;
         }
     }
-    
+
     /**
-     * นับจำนวนเซลล์ที่ไม่ว่างในช่วงที่กำหนด
+     * แปลงค่าตัวเลขของเซลล์ ถ้าเป็นจำนวนเต็ม ส่งกลับเป็น Integer/Long
      */
-    private static int countNonEmptyCells(Sheet sheet, String rangeStr) {
-        // แยกช่วงจากสตริง (เช่น "B15:B100000" หรือ "B15:EOF")
-        String[] rangeParts = rangeStr.split(":");
-        if (rangeParts.length != 2) {
-            throw new IllegalArgumentException("รูปแบบช่วงไม่ถูกต้อง: " + rangeStr);
-        }
-        
-        String startCellRef = rangeParts[0].trim();
-        String endCellRef = rangeParts[1].trim();
-        
-        // แยกคอลัมน์และแถวจากเซลล์เริ่มต้น
-        Matcher startMatcher = Pattern.compile("([A-Za-z]+)([0-9]+)").matcher(startCellRef);
-        if (!startMatcher.matches()) {
-            throw new IllegalArgumentException("รูปแบบเซลล์เริ่มต้นไม่ถูกต้อง: " + startCellRef);
-        }
-        
-        String startColStr = startMatcher.group(1);
-        int startRow = Integer.parseInt(startMatcher.group(2)) - 1; // แปลงเป็น 0-based
-        CellReference startCellReference = new CellReference(startCellRef);
-        int startColIdx = startCellReference.getCol();
-        
-        int endRow;
-        if ("EOF".equalsIgnoreCase(endCellRef)) {
-            // หาแถวสุดท้ายที่มีข้อมูลในคอลัมน์ที่กำหนด
-            endRow = sheet.getLastRowNum();
-            boolean foundData = false;
-            for (int r = endRow; r >= startRow; r--) {
-                Row row = sheet.getRow(r);
-                if (row != null) {
-                    Cell cell = row.getCell(startColIdx);
-                    if (cell != null && !isEmpty(cell)) {
-                        endRow = r;
-                        foundData = true;
-                        break;
-                    }
-                }
-            }
-            
-            if (!foundData) {
-                return 0; // ไม่พบข้อมูลเลย
-            }
-        } else {
-            // ใช้ค่าที่ระบุ
-            Matcher endMatcher = Pattern.compile("([A-Za-z]+)([0-9]+)").matcher(endCellRef);
-            if (!endMatcher.matches()) {
-                throw new IllegalArgumentException("รูปแบบเซลล์สิ้นสุดไม่ถูกต้อง: " + endCellRef);
+    static Object toCellNumber(double numValue) {
+        if (numValue == Math.floor(numValue)) {
+            if (numValue <= Integer.MAX_VALUE && numValue >= Integer.MIN_VALUE) {
+                return (int) numValue;
+            } else {
+                return (long) numValue;
             }
-            endRow = Integer.parseInt(endMatcher.group(2)) - 1; // แปลงเป็น 0-based
         }
+        return numValue;
+    }
+
+    /**
+     * นับจำนวนเซลล์ที่ไม่ว่างในช่วงที่กำหนด
+     */
+    private static int countNonEmptyCells(SheetSnapshot sheet, String rangeStr) {
+        // แยกช่วงจากสตริง (เช่น "B15:B100000" หรือ "B15:EOF")
+        return countNonEmptyCells(sheet, RangeSpec.parse(rangeStr));
+    }
+    
+    /**
+     * นับจำนวนเซลล์ที่ไม่ว่างในคอลัมน์เริ่มต้นของช่วงที่แยกแล้ว
+     */
+    static int countNonEmptyCells(SheetSnapshot sheet, RangeSpec range) {
+        int endRow = lastRowOf(sheet, range);
         
-        // นับจำนวนเซลล์ที่ไม่ว่าง
-        int count = 0;
-        for (int r = startRow; r <= endRow; r++) {
-            Row row = sheet.getRow(r);
-            if (row != null) {
-                Cell cell = row.getCell(startColIdx);
-                if (cell != null && !isEmpty(cell)) {
-                    count++;
-                }
-            }
+        // นับจำนวนเซลล์ที่ไม่ว่างจาก bitmap ของคอลัมน์ (ไม่ต้องตรวจทีละแถว)
+        return sheet.getColumn(range.startCol).countNonEmpty(range.startRow, endRow);
+    }
+    
+    /**
+     * หาแถวสุดท้าย (0-based) ของช่วง
+     * กรณี EOF คือแถวสุดท้ายที่มีข้อมูลในคอลัมน์เริ่มต้น ถ้าไม่พบข้อมูลเลยจะได้ startRow - 1
+     * (อ่านจากแถวสุดท้ายที่ไม่ว่างที่ snapshot คำนวณไว้ ไม่ต้องวนหาย้อนจากแถวสุดท้ายของชีท)
+     */
+    static int lastRowOf(SheetSnapshot sheet, RangeSpec range) {
+        if (!range.eof) {
+            return range.endRow;
         }
         
-        return count;
+        int lastRow = sheet.getLastNonEmptyRow(range.startCol);
+        return lastRow >= range.startRow ? lastRow : range.startRow - 1; // ไม่พบข้อมูลเลย
     }
     
     /**
      * ตรวจสอบว่าเซลล์ว่างหรือไม่
      */
-    private static boolean isEmpty(Cell cell) {
+    static boolean isEmpty(Cell cell) {
         if (cell == null) {
             return true;
         }
@@ -624,129 +400,63 @@ public class ExcelReader {
     public static List<Object> findRowByConditionAndReadColumns(String fileName, String searchSheetName, String readSheetName,
                                                               String searchColumn, String searchCondition, String searchValue,
                                                               List<String> columnRefs) throws IOException {
-        System.out.println("findRowByConditionAndReadColumns Start : "+readSheetName);
-        File file = new File(fileName);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            // ตรวจสอบประเภทไฟล์และสร้าง Workbook
-            Workbook workbook;
-            if (fileName.toLowerCase().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else if (fileName.toLowerCase().endsWith(".xls")) {
-                workbook = new HSSFWorkbook(fis);
-            } else {
-                throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
-            }
+        Set<String> sheetNames = new LinkedHashSet<>(Arrays.asList(searchSheetName, readSheetName));
+        try (WorkbookSession session = WorkbookSession.open(fileName, sheetNames)) {
+            return findRowByConditionAndReadColumns(session, searchSheetName, readSheetName,
+                                                    searchColumn, searchCondition, searchValue, columnRefs);
+        }
+    }
+    
+    /**
+     * ค้นหาแถวที่มีค่าตรงตามเงื่อนไข จาก Workbook ใน session และอ่านค่าจากคอลัมน์อื่นๆ ในแถวนั้น
+     * 
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param searchSheetName ชื่อชีทที่ต้องการค้นหา
+     * @param readSheetName ชื่อชีทที่ต้องการอ่านข้อมูล
+     * @param searchColumn คอลัมน์ที่ต้องการค้นหา (เช่น "A")
+     * @param searchCondition เงื่อนไขการค้นหา (EQUAL, STARTWITH, ENDWITH, CONTENT)
+     * @param searchValue ค่าที่ต้องการค้นหา
+     * @param columnRefs รายการคอลัมน์ที่ต้องการอ่านค่า (เช่น ["C?", "F?"])
+     * @return List ของค่าที่อ่านได้จากคอลัมน์ที่กำหนด โดยแทนที่ ? ด้วยเลขแถวที่พบ
+     */
+    public static List<Object> findRowByConditionAndReadColumns(WorkbookSession session, String searchSheetName, String readSheetName,
+                                                              String searchColumn, String searchCondition, String searchValue,
+                                                              List<String> columnRefs) {
+        // เลือกชีทสำหรับค้นหาและชีทสำหรับอ่านข้อมูล
+        session.sheet(searchSheetName);
+        SheetSnapshot readSheet = session.sheet(readSheetName);
+        
+        // แปลงชื่อคอลัมน์เป็น index
+        CellReference searchColRef = new CellReference(searchColumn + "1");
+        int searchColIdx = searchColRef.getCol();
+        
+        // ค้นหาแถวแรกที่ตรงตามเงื่อนไขจากดัชนีของคอลัมน์ (สร้างครั้งเดียวต่อ session)
+        RowLookupIndex index = session.rowLookup(searchSheetName, searchColIdx);
+        int foundRowIdx = index.find(ExcelPlan.Condition.of(searchCondition), searchCondition, searchValue);
+        
+        if (foundRowIdx == -1) {
+            // ไม่พบแถวที่ตรงตามเงื่อนไข
+            return new ArrayList<>();
+        }
+        
+        // อ่านค่าจากคอลัมน์ที่กำหนด
+        List<Object> result = new ArrayList<>();
+        
+        for (String columnRef : columnRefs) {
+            // แปลงตำแหน่งด้วย ColumnRef แบบเดียวกับแผน (แทนที่ ? ด้วยเลขแถวที่พบ)
+            int[] cell = ExcelPlan.ColumnRef.compile(columnRef).resolve(foundRowIdx);
             
-            try {
-                // เลือกชีทสำหรับค้นหา
-                Sheet searchSheet = workbook.getSheet(searchSheetName);
-                if (searchSheet == null) {
-                    throw new IllegalArgumentException("ไม่พบชีท '" + searchSheetName + "' ในไฟล์");
-                }
-                
-                // เลือกชีทสำหรับอ่านข้อมูล
-                Sheet readSheet = workbook.getSheet(readSheetName);
-                if (readSheet == null) {
-                    throw new IllegalArgumentException("ไม่พบชีท '" + readSheetName + "' ในไฟล์");
-                }
-                
-                System.out.println("searchColumn ::"+searchColumn + "1");
-                // แปลงชื่อคอลัมน์เป็น index
-                CellReference searchColRef = new CellReference(searchColumn + "1");
-                int searchColIdx = searchColRef.getCol();
-                
-                // ค้นหาแถวที่ตรงตามเงื่อนไข
-                int foundRowIdx = -1;
-                int foundRowNum = -1;
-                
-                for (int rowIdx = 0; rowIdx <= searchSheet.getLastRowNum(); rowIdx++) {
-                    System.out.println("Loop search data :: Row = "+rowIdx+" valus "+searchValue);
-                    Row row = searchSheet.getRow(rowIdx);
-                    if (row == null) continue;
-                    
-                    Cell cell = row.getCell(searchColIdx);
-                    if (cell == null || isEmpty(cell)) continue;
-                    
-                    Object cellValue = getCellValue(cell);
-                    String cellStrValue = cellValue != null ? cellValue.toString().trim() : "";
-                    
-                    boolean match = false;
-                    
-                    // ตรวจสอบเงื่อนไข
-                    switch (searchCondition.toUpperCase()) {
-                        case "EQUAL":
-                            match = cellStrValue.equals(searchValue);
-                            break;
-                        case "STARTWITH":
-                            match = cellStrValue.startsWith(searchValue);
-                            break;
-                        case "ENDWITH":
-                            match = cellStrValue.endsWith(searchValue);
-                            break;
-                        case "CONTENT":
-                            match = cellStrValue.contains(searchValue);
-                            break;
-                        default:
-                            throw new IllegalArgumentException("เงื่อนไขไม่ถูกต้อง: " + searchCondition);
-                    }
-                    
-                    if (match) {
-                        foundRowIdx = rowIdx;
-                        foundRowNum = rowIdx + 1; // แปลงเป็น 1-based
-                        break;
-                    }
-                }
-                
-                if (foundRowIdx == -1) {
-                    // ไม่พบแถวที่ตรงตามเงื่อนไข
-                    return new ArrayList<>();
-                }
-                System.out.println("====================== foundRowNum:"+foundRowNum);
-                // อ่านค่าจากคอลัมน์ที่กำหนด
-                List<Object> result = new ArrayList<>();
-                
-                for (String columnRef : columnRefs) {
-                    String columnRefNameStr = extractColumnRef(columnRef.toString().trim());
-                    // if (columnRefRead != null) {
-                        // columnRefs.add(currentColumnRef.toString().trim());
-                    // }
-                    System.out.println("=================columnRef::"+columnRef);
-                    System.out.println("=================columnRef::"+extractFirstPart(columnRef));
-                    System.out.println("=================columnRefNameStr::"+columnRefNameStr);
-                    // แทนที่ ? ด้วยเลขแถวที่พบ
-                    String actualColumnRef = columnRefNameStr.replace("?", String.valueOf(foundRowNum));
-                    System.out.println("====================== actualColumnRef:"+actualColumnRef);
-                
-                    // แยกชื่อคอลัมน์และเลขแถว
-                    Matcher matcher = Pattern.compile("([A-Za-z]+)([0-9]+)").matcher(actualColumnRef);
-                    if (!matcher.matches()) {
-                        throw new IllegalArgumentException("รูปแบบคอลัมน์ไม่ถูกต้อง: " + actualColumnRef);
-                    }
-                    
-                    String colName = matcher.group(1);
-                    int rowNum = Integer.parseInt(matcher.group(2)) - 1; // แปลงเป็น 0-based
-                    
-                    CellReference cellRef = new CellReference(actualColumnRef);
-                    int colIdx = cellRef.getCol();
-                    
-                    // อ่านค่าจากเซลล์
-                    Row row = readSheet.getRow(rowNum);
-                    Object value = null;
-                    
-                    if (row != null) {
-                        Cell cell = row.getCell(colIdx);
-                        value = getCellValue(cell);
-                        System.out.println("Read value :: "+value);
-                    }
-                    
-                    result.add(value);
-                }
-                
-                return result;
-            } finally {
-                workbook.close();
+            // อ่านค่าจากเซลล์
+            Object value = null;
+            
+            if (readSheet.hasRow(cell[0])) {
+                value = readCellValue(readSheet, cell[0], cell[1]);
             }
+            
+            result.add(value);
         }
+        
+        return result;
     }
     
     /**
@@ -778,89 +488,61 @@ public class ExcelReader {
      * 
      * @param fileName ชื่อไฟล์ Excel
      * @param sheetName ชื่อชีทที่ต้องการอ่าน
-     * @param rowRangeStr ช่วงแถวที่ต้องการอ่าน (เช่น "5:9")
+     * @param rowRangeStr ช่วงแถวที่ต้องการอ่าน (เช่น "5:9" หรือ "5:EOF")
      * @param columnsStr คอลัมน์ที่ต้องการอ่าน (เช่น "[A,F,I]")
      * @return List ของ Map ที่เก็บข้อมูลแต่ละแถว โดยแต่ละ Map มี key เป็นชื่อคอลัมน์ และ value เป็นค่าในเซลล์
      * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
      */
     public static List<Map<String, Object>> readRowsAndColumns(String fileName, String sheetName, 
                                                              String rowRangeStr, String columnsStr) throws IOException {
-        File file = new File(fileName);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            // ตรวจสอบประเภทไฟล์และสร้าง Workbook
-            Workbook workbook;
-            if (fileName.toLowerCase().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else if (fileName.toLowerCase().endsWith(".xls")) {
-                workbook = new HSSFWorkbook(fis);
-            } else {
-                throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
-            }
-            
-            try {
-                // เลือกชีท
-                Sheet sheet = workbook.getSheet(sheetName);
-                if (sheet == null) {
-                    throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
-                }
-                
-                // แยกช่วงแถวจากสตริง (เช่น "5:9")
-                String[] rowRangeParts = rowRangeStr.split(":");
-                if (rowRangeParts.length != 2) {
-                    throw new IllegalArgumentException("รูปแบบช่วงแถวไม่ถูกต้อง: " + rowRangeStr);
-                }
-                
-                int startRow = Integer.parseInt(rowRangeParts[0]) - 1; // แปลงเป็น 0-based
-                int endRow = Integer.parseInt(rowRangeParts[1]) - 1; // แปลงเป็น 0-based
-                
-                // แยกคอลัมน์จากสตริง (เช่น "[A,F,I]")
-                if (!columnsStr.startsWith("[") || !columnsStr.endsWith("]")) {
-                    throw new IllegalArgumentException("รูปแบบคอลัมน์ไม่ถูกต้อง: " + columnsStr);
-                }
-                
-                String columnsContent = columnsStr.substring(1, columnsStr.length() - 1);
-                String[] columnParts = columnsContent.split(",");
-                
-                // แปลงชื่อคอลัมน์เป็น index
-                int[] columnIndices = new int[columnParts.length];
-                for (int i = 0; i < columnParts.length; i++) {
-                    String colName = columnParts[i].trim();
-                    CellReference cellReference = new CellReference(colName + "1");
-                    columnIndices[i] = cellReference.getCol();
-                }
-                
-                // อ่านข้อมูลจากแถวและคอลัมน์ที่กำหนด
-                List<Map<String, Object>> result = new ArrayList<>();
-                
-                for (int rowIdx = startRow; rowIdx <= endRow; rowIdx++) {
-                    Row row = sheet.getRow(rowIdx);
-                    if (row == null) continue;
-                    
-                    Map<String, Object> rowData = new HashMap<>();
-                    
-                    for (int i = 0; i < columnIndices.length; i++) {
-                        int colIdx = columnIndices[i];
-                        Cell cell = row.getCell(colIdx);
-                        
-                        // ใช้ชื่อคอลัมน์เป็น key
-                        String colName = columnParts[i].trim();
-                        
-                        // อ่านค่าจากเซลล์
-                        Object cellValue = getCellValue(cell);
-                        
-                        // เก็บค่าลงใน Map
-                        rowData.put(colName, cellValue);
-                    }
-                    
-                    // เพิ่ม Map ของแถวนี้เข้าไปใน List ผลลัพธ์
-                    result.add(rowData);
-                }
-                
-                return result;
-            } finally {
-                workbook.close();
-            }
+        try (WorkbookSession session = WorkbookSession.open(fileName, Collections.singleton(sheetName))) {
+            return readRowsAndColumns(session, sheetName, rowRangeStr, columnsStr);
+        }
+    }
+    
+    /**
+     * อ่านข้อมูลจากแถวและคอลัมน์ที่กำหนด จาก Workbook ใน session
+     * 
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการอ่าน
+     * @param rowRangeStr ช่วงแถวที่ต้องการอ่าน (เช่น "5:9" หรือ "5:EOF")
+     * @param columnsStr คอลัมน์ที่ต้องการอ่าน (เช่น "[A,F,I]")
+     * @return List ของ Map ที่เก็บข้อมูลแต่ละแถว โดยแต่ละ Map มี key เป็นชื่อคอลัมน์ และ value เป็นค่าในเซลล์
+     */
+    public static List<Map<String, Object>> readRowsAndColumns(WorkbookSession session, String sheetName, 
+                                                             String rowRangeStr, String columnsStr) {
+        // เลือกชีท
+        SheetSnapshot sheet = session.sheet(sheetName);
+        
+        // แยกช่วงแถวจากสตริง (เช่น "5:9" หรือ "5:EOF")
+        int[] rowRange = parseRowRange(rowRangeStr);
+        int startRow = rowRange[0];
+        int endRow = rowRange[1];
+        
+        // แยกคอลัมน์จากสตริง (เช่น "[A,F,I]")
+        if (!columnsStr.startsWith("[") || !columnsStr.endsWith("]")) {
+            throw new IllegalArgumentException("รูปแบบคอลัมน์ไม่ถูกต้อง: " + columnsStr);
         }
+        
+        String columnsContent = columnsStr.substring(1, columnsStr.length() - 1);
+        String[] columnParts = columnsContent.split(",");
+        
+        // แปลงชื่อคอลัมน์เป็น index
+        int[] columnIndices = new int[columnParts.length];
+        for (int i = 0; i < columnParts.length; i++) {
+            String colName = columnParts[i].trim();
+            CellReference cellReference = new CellReference(colName + "1");
+            columnIndices[i] = cellReference.getCol();
+        }
+        
+        // ใช้ชื่อคอลัมน์เป็น key
+        String[] keys = new String[columnParts.length];
+        for (int i = 0; i < columnParts.length; i++) {
+            keys[i] = columnParts[i].trim();
+        }
+        
+        // อ่านข้อมูลจากแถวและคอลัมน์ที่กำหนด
+        return readRows(sheet, startRow, endRow, columnIndices, keys);
     }
     
     /**
@@ -868,7 +550,7 @@ public class ExcelReader {
      * 
      * @param fileName ชื่อไฟล์ Excel
      * @param sheetName ชื่อชีทที่ต้องการอ่าน
-     * @param rowRangeStr ช่วงแถวที่ต้องการอ่าน (เช่น "5:9")
+     * @param rowRangeStr ช่วงแถวที่ต้องการอ่าน (เช่น "5:9" หรือ "5:EOF")
      * @param columnsStr คอลัมน์ที่ต้องการอ่าน (เช่น "[A,F,I]")
      * @param mappingStr การแปลงชื่อคอลัมน์เป็นชื่อตัวแปร (เช่น "[\"ITEM\",\"QTY\",\"AMOUNT\"]")
      * @return List ของ Map ที่เก็บข้อมูลแต่ละแถว โดยแต่ละ Map มี key เป็นชื่อตัวแปรตาม mapping และ value เป็นค่าในเซลล์
@@ -876,105 +558,157 @@ public class ExcelReader {
      */
     public static List<Map<String, Object>> readRowsAndColumnsWithMapping(String fileName, String sheetName, 
                                                                         String rowRangeStr, String columnsStr, String mappingStr) throws IOException {
-        File file = new File(fileName);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            // ตรวจสอบประเภทไฟล์และสร้าง Workbook
-            Workbook workbook;
-            if (fileName.toLowerCase().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else if (fileName.toLowerCase().endsWith(".xls")) {
-                workbook = new HSSFWorkbook(fis);
-            } else {
-                throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
+        try (WorkbookSession session = WorkbookSession.open(fileName, Collections.singleton(sheetName))) {
+            return readRowsAndColumnsWithMapping(session, sheetName, rowRangeStr, columnsStr, mappingStr);
+        }
+    }
+    
+    /**
+     * อ่านข้อมูลจากแถวและคอลัมน์ที่กำหนด จาก Workbook ใน session โดยใช้ mapping ในการแปลงชื่อคอลัมน์เป็นชื่อตัวแปร
+     * 
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการอ่าน
+     * @param rowRangeStr ช่วงแถวที่ต้องการอ่าน (เช่น "5:9" หรือ "5:EOF")
+     * @param columnsStr คอลัมน์ที่ต้องการอ่าน (เช่น "[A,F,I]")
+     * @param mappingStr การแปลงชื่อคอลัมน์เป็นชื่อตัวแปร (เช่น "[\"ITEM\",\"QTY\",\"AMOUNT\"]")
+     * @return List ของ Map ที่เก็บข้อมูลแต่ละแถว โดยแต่ละ Map มี key เป็นชื่อตัวแปรตาม mapping และ value เป็นค่าในเซลล์
+     */
+    public static List<Map<String, Object>> readRowsAndColumnsWithMapping(WorkbookSession session, String sheetName, 
+                                                                        String rowRangeStr, String columnsStr, String mappingStr) {
+        // เลือกชีท
+        SheetSnapshot sheet = session.sheet(sheetName);
+        
+        // แยกช่วงแถวจากสตริง (เช่น "5:9" หรือ "5:EOF")
+        int[] rowRange = parseRowRange(rowRangeStr);
+        int startRow = rowRange[0];
+        int endRow = rowRange[1];
+        
+        // แยกคอลัมน์จากสตริง (เช่น "[A,F,I]")
+        if (!columnsStr.startsWith("[") || !columnsStr.endsWith("]")) {
+            throw new IllegalArgumentException("รูปแบบคอลัมน์ไม่ถูกต้อง: " + columnsStr);
+        }
+        
+        String columnsContent = columnsStr.substring(1, columnsStr.length() - 1);
+        String[] columnParts = columnsContent.split(",");
+        
+        // แยก mapping จากสตริง (เช่น "[\"ITEM\",\"QTY\",\"AMOUNT\"]")
+        if (!mappingStr.startsWith("[") || !mappingStr.endsWith("]")) {
+            throw new IllegalArgumentException("รูปแบบ mapping ไม่ถูกต้อง: " + mappingStr);
+        }
+        
+        String mappingContent = mappingStr.substring(1, mappingStr.length() - 1);
+        String[] mappingParts = mappingContent.split(",");
+        
+        // ตรวจสอบว่าจำนวนคอลัมน์และ mapping ตรงกัน
+        if (columnParts.length != mappingParts.length) {
+            throw new IllegalArgumentException("จำนวนคอลัมน์และ mapping ไม่ตรงกัน: " + columnParts.length + " vs " + mappingParts.length);
+        }
+        
+        // แปลงชื่อคอลัมน์เป็น index
+        int[] columnIndices = new int[columnParts.length];
+        for (int i = 0; i < columnParts.length; i++) {
+            String colName = columnParts[i].trim();
+            CellReference cellReference = new CellReference(colName + "1");
+            columnIndices[i] = cellReference.getCol();
+        }
+        
+        // แปลง mapping เป็นชื่อตัวแปร
+        String[] variableNames = new String[mappingParts.length];
+        for (int i = 0; i < mappingParts.length; i++) {
+            String varName = mappingParts[i].trim();
+            if (varName.startsWith("\"") && varName.endsWith("\"")) {
+                varName = varName.substring(1, varName.length() - 1);
             }
-            
-            try {
-                // เลือกชีท
-                Sheet sheet = workbook.getSheet(sheetName);
-                if (sheet == null) {
-                    throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
-                }
-                
-                // แยกช่วงแถวจากสตริง (เช่น "5:9")
-                String[] rowRangeParts = rowRangeStr.split(":");
-                if (rowRangeParts.length != 2) {
-                    throw new IllegalArgumentException("รูปแบบช่วงแถวไม่ถูกต้อง: " + rowRangeStr);
-                }
-                
-                int startRow = Integer.parseInt(rowRangeParts[0]) - 1; // แปลงเป็น 0-based
-                int endRow = Integer.parseInt(rowRangeParts[1]) - 1; // แปลงเป็น 0-based
-                
-                // แยกคอลัมน์จากสตริง (เช่น "[A,F,I]")
-                if (!columnsStr.startsWith("[") || !columnsStr.endsWith("]")) {
-                    throw new IllegalArgumentException("รูปแบบคอลัมน์ไม่ถูกต้อง: " + columnsStr);
-                }
-                
-                String columnsContent = columnsStr.substring(1, columnsStr.length() - 1);
-                String[] columnParts = columnsContent.split(",");
-                
-                // แยก mapping จากสตริง (เช่น "[\"ITEM\",\"QTY\",\"AMOUNT\"]")
-                if (!mappingStr.startsWith("[") || !mappingStr.endsWith("]")) {
-                    throw new IllegalArgumentException("รูปแบบ mapping ไม่ถูกต้อง: " + mappingStr);
-                }
-                
-                String mappingContent = mappingStr.substring(1, mappingStr.length() - 1);
-                String[] mappingParts = mappingContent.split(",");
-                
-                // ตรวจสอบว่าจำนวนคอลัมน์และ mapping ตรงกัน
-                if (columnParts.length != mappingParts.length) {
-                    throw new IllegalArgumentException("จำนวนคอลัมน์และ mapping ไม่ตรงกัน: " + columnParts.length + " vs " + mappingParts.length);
-                }
-                
-                // แปลงชื่อคอลัมน์เป็น index
-                int[] columnIndices = new int[columnParts.length];
-                for (int i = 0; i < columnParts.length; i++) {
-                    String colName = columnParts[i].trim();
-                    CellReference cellReference = new CellReference(colName + "1");
-                    columnIndices[i] = cellReference.getCol();
-                }
-                
-                // แปลง mapping เป็นชื่อตัวแปร
-                String[] variableNames = new String[mappingParts.length];
-                for (int i = 0; i < mappingParts.length; i++) {
-                    String varName = mappingParts[i].trim();
-                    if (varName.startsWith("\"") && varName.endsWith("\"")) {
-                        varName = varName.substring(1, varName.length() - 1);
-                    }
-                    variableNames[i] = varName;
-                }
-                
-                // อ่านข้อมูลจากแถวและคอลัมน์ที่กำหนด
-                List<Map<String, Object>> result = new ArrayList<>();
-                
-                for (int rowIdx = startRow; rowIdx <= endRow; rowIdx++) {
-                    Row row = sheet.getRow(rowIdx);
-                    if (row == null) continue;
-                    
-                    Map<String, Object> rowData = new HashMap<>();
-                    
-                    for (int i = 0; i < columnIndices.length; i++) {
-                        int colIdx = columnIndices[i];
-                        Cell cell = row.getCell(colIdx);
-                        
-                        // ใช้ชื่อตัวแปรจาก mapping เป็น key
-                        String varName = variableNames[i];
-                        
-                        // อ่านค่าจากเซลล์
-                        Object cellValue = getCellValue(cell);
-                        
-                        // เก็บค่าลงใน Map
-                        rowData.put(varName, cellValue);
-                    }
-                    
-                    // เพิ่ม Map ของแถวนี้เข้าไปใน List ผลลัพธ์
-                    result.add(rowData);
-                }
-                
-                return result;
-            } finally {
-                workbook.close();
+            variableNames[i] = varName;
+        }
+        
+        // อ่านข้อมูลจากแถวและคอลัมน์ที่กำหนด โดยใช้ชื่อตัวแปรจาก mapping เป็น key
+        return readRows(sheet, startRow, endRow, columnIndices, variableNames);
+    }
+    
+    /**
+     * แยกช่วงแถวของ ROW (เช่น "5:9" หรือ "5:EOF")
+     * 
+     * @param rowRangeStr ช่วงแถว (เลขแถวเริ่มจาก 1)
+     * @return {แถวเริ่มต้น, แถวสุดท้าย} แบบ 0-based (กรณี EOF แถวสุดท้าย = Integer.MAX_VALUE)
+     * @throws IllegalArgumentException หากรูปแบบไม่ถูกต้อง
+     */
+    static int[] parseRowRange(String rowRangeStr) {
+        String[] rowRangeParts = rowRangeStr.split(":");
+        if (rowRangeParts.length != 2) {
+            throw new IllegalArgumentException("รูปแบบช่วงแถวไม่ถูกต้อง: " + rowRangeStr);
+        }
+        
+        int startRow = Integer.parseInt(rowRangeParts[0]) - 1; // แปลงเป็น 0-based
+        int endRow = "EOF".equalsIgnoreCase(rowRangeParts[1].trim())
+                ? Integer.MAX_VALUE
+                : Integer.parseInt(rowRangeParts[1]) - 1; // แปลงเป็น 0-based
+        return new int[]{startRow, endRow};
+    }
+    
+    /**
+     * แถวสุดท้ายของช่วง ROW: กรณี EOF (Integer.MAX_VALUE) คือแถวสุดท้ายที่ไม่ว่างในคอลัมน์ใดคอลัมน์หนึ่งที่เลือก
+     * (-1 ถ้าว่างทั้งหมด) กรณีอื่นใช้ค่าที่ระบุ
+     */
+    static int endRowOf(SheetSnapshot.Column[] columns, int endRow) {
+        if (endRow != Integer.MAX_VALUE) {
+            return endRow;
+        }
+        int last = -1;
+        for (SheetSnapshot.Column column : columns) {
+            last = Math.max(last, column.lastNonEmptyRow());
+        }
+        return last;
+    }
+    
+    /**
+     * อ่านข้อมูลจากแถวในช่วงที่กำหนด (ข้ามแถวที่ไม่มีอยู่จริง)
+     * 
+     * @param sheet ชีทที่ต้องการอ่าน
+     * @param startRow แถวเริ่มต้น (0-based)
+     * @param endRow แถวสุดท้าย (0-based, Integer.MAX_VALUE = EOF ดู endRowOf)
+     * @param columnIndices index ของคอลัมน์ที่ต้องการอ่าน
+     * @param keys ชื่อ key ของแต่ละคอลัมน์ (ลำดับเดียวกับ columnIndices)
+     * @return RowSet (List ของ Map ที่เก็บข้อมูลแต่ละแถว) ที่เก็บค่าแบบคอลัมน์
+     */
+    static List<Map<String, Object>> readRows(SheetSnapshot sheet, int startRow, int endRow, int[] columnIndices, String[] keys) {
+        RowSet result = new RowSet(keys);
+        SheetSnapshot.Column[] columns = columnsOf(sheet, columnIndices);
+        int lastRow = endRowOf(columns, endRow);
+        
+        // วนเฉพาะแถวที่มีอยู่จริงในช่วง
+        for (int rowIdx = sheet.nextPresentRow(startRow); rowIdx >= 0 && rowIdx <= lastRow;
+             rowIdx = sheet.nextPresentRow(rowIdx + 1)) {
+            int row = result.addRow();
+            for (int i = 0; i < columns.length; i++) {
+                // คัดลอกค่าจากคอลัมน์ของ snapshot โดยไม่แปลงเป็น object
+                result.set(row, i, sheet, columns[i], rowIdx);
             }
         }
+        
+        return result;
+    }
+    
+    /**
+     * คอลัมน์ของ snapshot ตาม index ที่กำหนด
+     */
+    static SheetSnapshot.Column[] columnsOf(SheetSnapshot sheet, int[] columnIndices) {
+        SheetSnapshot.Column[] columns = new SheetSnapshot.Column[columnIndices.length];
+        for (int i = 0; i < columnIndices.length; i++) {
+            columns[i] = sheet.getColumn(columnIndices[i]);
+        }
+        return columns;
+    }
+    
+    /**
+     * คอลัมน์ของ snapshot ตั้งแต่ firstCol ถึง lastCol
+     */
+    static SheetSnapshot.Column[] columnsOf(SheetSnapshot sheet, int firstCol, int lastCol) {
+        SheetSnapshot.Column[] columns = new SheetSnapshot.Column[Math.max(lastCol - firstCol + 1, 0)];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = sheet.getColumn(firstCol + i);
+        }
+        return columns;
     }
     
     /**
@@ -989,17 +723,26 @@ public class ExcelReader {
      */
     public static Map<Object, List<String>> checkDuplicateValuesInRange(Workbook workbook , String sheetName, 
                                                                        String rangeStr, Set<Object> exceptValues) throws IOException {
-            try {
-                // เลือกชีท
-                Sheet sheet = workbook.getSheet(sheetName);
-                if (sheet == null) {
-                    throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
-                }
-                
-                return checkDuplicateValuesInRange(sheet, rangeStr, exceptValues);
-            } finally {
-                workbook.close();
-            }
+        try {
+            return checkDuplicateValuesInRange(new WorkbookSession(null, workbook), sheetName, rangeStr, exceptValues);
+        } finally {
+            workbook.close();
+        }
+    }
+    
+    /**
+     * ตรวจสอบค่าซ้ำในช่วงเซลล์ที่กำหนด จาก Workbook ใน session
+     * 
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการตรวจสอบ
+     * @param rangeStr ช่วงเซลล์ที่ต้องการตรวจสอบ (เช่น "A1:A100" หรือ "B5:D20")
+     * @param exceptValues ค่าที่ยกเว้นไม่ต้องตรวจสอบการซ้ำ (สามารถเป็น null ถ้าไม่มีค่ายกเว้น)
+     * @return Map ที่มีข้อมูลเกี่ยวกับค่าซ้ำที่พบ โดยมี key เป็นค่าที่ซ้ำ และ value เป็น List ของตำแหน่งเซลล์ที่มีค่าซ้ำนั้น
+     */
+    public static Map<Object, List<String>> checkDuplicateValuesInRange(WorkbookSession session, String sheetName,
+                                                                       String rangeStr, Set<Object> exceptValues) {
+        SheetSnapshot sheet = session.sheet(sheetName);
+        return checkDuplicateValuesInRange(sheet, RangeSpec.parse(rangeStr), exceptValues);
     }
     
     /**
@@ -1014,108 +757,127 @@ public class ExcelReader {
      */
     public static List<String> getAllValuesInRange(Workbook workbook, String sheetName, 
                                                               String rangeStr, Set<Object> exceptValues) throws IOException {
-       
-            try {
-                // เลือกชีท
-                Sheet sheet = workbook.getSheet(sheetName);
-                if (sheet == null) {
-                    throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
-                }
-                
-                // แยกช่วงจากสตริง (เช่น "A1:A100")
-                String[] rangeParts = rangeStr.split(":");
-                if (rangeParts.length != 2) {
-                    throw new IllegalArgumentException("รูปแบบช่วงไม่ถูกต้อง: " + rangeStr);
-                }
-                
-                String startCellRef = rangeParts[0].trim();
-                String endCellRef = rangeParts[1].trim();
-                
-                // แยกคอลัมน์และแถวจากเซลล์เริ่มต้น
-                Matcher startMatcher = Pattern.compile("([A-Za-z]+)([0-9]+)").matcher(startCellRef);
-                if (!startMatcher.matches()) {
-                    throw new IllegalArgumentException("รูปแบบเซลล์เริ่มต้นไม่ถูกต้อง: " + startCellRef);
-                }
-                
-                String startColStr = startMatcher.group(1);
-                int startRow = Integer.parseInt(startMatcher.group(2)) - 1; // แปลงเป็น 0-based
-                CellReference startCellReference = new CellReference(startCellRef);
-                int startColIdx = startCellReference.getCol();
-                
-                int endRow;
-                int endColIdx;
+        try {
+            return getAllValuesInRange(new WorkbookSession(null, workbook), sheetName, rangeStr, exceptValues);
+        } finally {
+            workbook.close();
+        }
+    }
+    
+    /**
+     * อ่านค่าทั้งหมดในช่วงเซลล์ที่กำหนด จาก Workbook ใน session
+     * 
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการอ่าน
+     * @param rangeStr ช่วงเซลล์ที่ต้องการอ่าน (เช่น "A1:A100" หรือ "B5:D20")
+     * @param exceptValues ค่าที่ยกเว้นไม่ต้องอ่าน (สามารถเป็น null ถ้าไม่มีค่ายกเว้น)
+     * @return List ของค่าที่ไม่ซ้ำกัน ตามลำดับที่พบ
+     */
+    public static List<String> getAllValuesInRange(WorkbookSession session, String sheetName,
+                                                   String rangeStr, Set<Object> exceptValues) {
+        SheetSnapshot sheet = session.sheet(sheetName);
+        return getAllValuesInRange(sheet, RangeSpec.parse(rangeStr), exceptValues);
+    }
+    
+    /**
+     * อ่านค่าทั้งหมดในช่วงเซลล์ที่กำหนด โดยสามารถระบุค่าที่ยกเว้นได้
+     * 
+     * @param sheet ชีทที่ต้องการอ่าน
+     * @param rangeStr ช่วงเซลล์ที่ต้องการอ่าน (เช่น "A1:A100" หรือ "B5:D20")
+     * @param exceptValues ค่าที่ยกเว้นไม่ต้องอ่าน (สามารถเป็น null ถ้าไม่มีค่ายกเว้น)
+     * @return List ของค่าที่ไม่ซ้ำกัน ตามลำดับที่พบ
+     */
+    public static List<String> getAllValuesInRange(Sheet sheet, String rangeStr, Set<Object> exceptValues) {
+        // แยกช่วงจากสตริง (เช่น "A1:A100")
+        RangeSpec range = RangeSpec.parse(rangeStr);
+        return getAllValuesInRange(SheetSnapshot.of(sheet), range, exceptValues);
+    }
+    
+    /**
+     * อ่านค่าทั้งหมดในช่วงเซลล์ที่แยกแล้ว (ไม่ซ้ำ เรียงตามลำดับที่พบ)
+     */
+    static List<String> getAllValuesInRange(SheetSnapshot sheet, RangeSpec range, Set<Object> exceptValues) {
+        return new ArrayList<>(collectValuesInRange(sheet, range, exceptValues, false).values());
+    }
+
+    /**
+     * รวบรวมค่าทั้งหมดในช่วงเซลล์ จาก Workbook ใน session (ไม่ซ้ำ เรียงตามลำดับที่พบ)
+     * ค่าเป็นข้อความที่ตัดช่องว่างหัวท้ายแล้ว เหมือน getAllValuesInRange
+     *
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการอ่าน
+     * @param rangeStr ช่วงเซลล์ที่ต้องการอ่าน (เช่น "A1:A100" หรือ "B5:D20")
+     * @param exceptValues ค่าที่ยกเว้นไม่ต้องอ่าน (สามารถเป็น null ถ้าไม่มีค่ายกเว้น)
+     * @param withPositions true = เก็บตำแหน่งเซลล์ของแต่ละค่าด้วย
+     * @return ชุดของค่าที่ไม่ซ้ำกัน
+     */
+    public static ValueCollector collectValuesInRange(WorkbookSession session, String sheetName, String rangeStr,
+                                                      Set<Object> exceptValues, boolean withPositions) {
+        SheetSnapshot sheet = session.sheet(sheetName);
+        return collectValuesInRange(sheet, RangeSpec.parse(rangeStr), exceptValues, withPositions);
+    }
+
+    static ValueCollector collectValuesInRange(SheetSnapshot sheet, RangeSpec range, Set<Object> exceptValues,
+                                               boolean withPositions) {
+        int endRow = lastRowOf(sheet, range);
+        ValueCollector values = new ValueCollector(withPositions);
+        SheetSnapshot.Column[] columns = columnsOf(sheet, range.startCol, range.endCol);
+        
+        // ตรวจสอบค่าในแต่ละเซลล์ในช่วงที่กำหนด (เฉพาะแถวที่มีเซลล์ไม่ว่างในช่วงคอลัมน์)
+        for (int rowIdx = SheetSnapshot.nextNonEmptyRow(columns, range.startRow); rowIdx >= 0 && rowIdx <= endRow;
+             rowIdx = SheetSnapshot.nextNonEmptyRow(columns, rowIdx + 1)) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].isEmpty(rowIdx)) continue;
+                
+                int colIdx = range.startCol + i;
+                Object cellValueObject = columns[i].getValue(rowIdx, sheet);
+                String cellValue = cellValueObject == null ? "" : cellValueObject.toString().trim();
                 
-                if ("EOF".equalsIgnoreCase(endCellRef)) {
-                    // หาแถวสุดท้ายที่มีข้อมูลในคอลัมน์ที่กำหนด
-                    endRow = sheet.getLastRowNum();
-                    endColIdx = startColIdx; // ใช้คอลัมน์เดียวกับจุดเริ่มต้น
-                    
-                    boolean foundData = false;
-                    for (int r = endRow; r >= startRow; r--) {
-                        Row row = sheet.getRow(r);
-                        if (row != null) {
-                            Cell cell = row.getCell(startColIdx);
-                            if (cell != null && !isEmpty(cell)) {
-                                endRow = r;
-                                foundData = true;
-                                break;
-                            }
-                        }
-                    }
-                    
-                    if (!foundData) {
-                        return new ArrayList<>(); // ไม่พบข้อมูลเลย ส่งคืน Map ว่าง
-                    }
-                } else {
-                    // ใช้ค่าที่ระบุ
-                    Matcher endMatcher = Pattern.compile("([A-Za-z]+)([0-9]+)").matcher(endCellRef);
-                    if (!endMatcher.matches()) {
-                        throw new IllegalArgumentException("รูปแบบเซลล์สิ้นสุดไม่ถูกต้อง: " + endCellRef);
-                    }
-                    
-                    String endColStr = endMatcher.group(1);
-                    endRow = Integer.parseInt(endMatcher.group(2)) - 1; // แปลงเป็น 0-based
-                    CellReference endCellReference = new CellReference(endCellRef);
-                    endColIdx = endCellReference.getCol();
+                // ข้ามค่าที่อยู่ในรายการยกเว้น
+                if (exceptValues != null && exceptValues.contains(cellValue)) {
+                    continue;
                 }
                 
-                // เก็บค่าและตำแหน่งของแต่ละค่า
-                List<String> valuePositions = new ArrayList<>();
-                
-                // ตรวจสอบค่าในแต่ละเซลล์ในช่วงที่กำหนด
-                for (int rowIdx = startRow; rowIdx <= endRow; rowIdx++) {
-                    Row row = sheet.getRow(rowIdx);
-                    if (row == null) continue;
-                    
-                    for (int colIdx = startColIdx; colIdx <= endColIdx; colIdx++) {
-                        Cell cell = row.getCell(colIdx);
-                        if (cell == null || isEmpty(cell)) continue;
-                        
-                        Object cellValueObject = getCellValue(cell);
-                        String cellValue = cellValueObject == null ? "" : cellValueObject.toString().trim();
+                // ค่าที่เคยพบแล้วไม่ถูกเพิ่มซ้ำ (O(1))
+                values.add(cellValue, rowIdx, colIdx);
+            }
+        }
+        
+        return values;
+    }
+
+    /**
+     * ผลรวมของค่าตัวเลขที่ไม่ซ้ำในช่วงเซลล์ (ค่าเดียวกับผลรวมของ collectValuesInRange ที่เป็นตัวเลข)
+     * เซลล์ตัวเลขอ่านค่า double จากคอลัมน์ของ snapshot โดยตรงโดยไม่แปลงเป็นข้อความ (ดู DistinctSum)
+     *
+     * @param session WorkbookSession ที่เปิดไว้แล้ว
+     * @param sheetName ชื่อชีทที่ต้องการอ่าน
+     * @param rangeStr ช่วงเซลล์ที่ต้องการอ่าน (เช่น "A1:A100" หรือ "B5:D20")
+     * @return ผลรวมที่แม่นยำ
+     */
+    public static BigDecimal sumDistinctNumbersInRange(WorkbookSession session, String sheetName, String rangeStr) {
+        SheetSnapshot sheet = session.sheet(sheetName);
+        RangeSpec range = RangeSpec.parse(rangeStr);
+        int endRow = lastRowOf(sheet, range);
+        SheetSnapshot.Column[] columns = columnsOf(sheet, range.startCol, range.endCol);
+        DistinctSum sum = new DistinctSum();
 
-                        
-                        // ข้ามค่าที่อยู่ในรายการยกเว้น
-                        if (exceptValues != null && exceptValues.contains(cellValue)) {
-                            continue;
-                        }
-                        // สร้างตำแหน่งเซลล์ (เช่น "A1", "B5")
-                        // String cellPosition = CellReference.convertNumToColString(colIdx) + (rowIdx + 1);
-                        
-                        // เก็บตำแหน่งของแต่ละค่า
-                        if (!valuePositions.contains(cellValue)) {
-                            valuePositions.add(cellValue);
-                        }                        
-                        // valuePositions.get(cellValue).add(cellPosition);
+        for (int rowIdx = SheetSnapshot.nextNonEmptyRow(columns, range.startRow); rowIdx >= 0 && rowIdx <= endRow;
+             rowIdx = SheetSnapshot.nextNonEmptyRow(columns, rowIdx + 1)) {
+            for (SheetSnapshot.Column column : columns) {
+                if (column.isNumber(rowIdx)) {
+                    sum.add(column.getNumber(rowIdx));
+                } else {
+                    int stringId = column.getStringId(rowIdx);
+                    if (stringId >= 0) {
+                        sum.add(sheet.getString(stringId).trim());
                     }
                 }
-                
-                return valuePositions;
-            } finally {
-                workbook.close();
             }
+        }
+        return sum.sum();
     }
-    
+
     /**
      * ตรวจสอบค่าซ้ำในช่วงเซลล์ที่กำหนด โดยสามารถระบุค่าที่ยกเว้นไม่ต้องตรวจสอบได้
      * 
@@ -1125,102 +887,41 @@ public class ExcelReader {
      * @return Map ที่มีข้อมูลเกี่ยวกับค่าซ้ำที่พบ โดยมี key เป็นค่าที่ซ้ำ และ value เป็น List ของตำแหน่งเซลล์ที่มีค่าซ้ำนั้น
      */
     public static Map<Object, List<String>> checkDuplicateValuesInRange(Sheet sheet, String rangeStr, Set<Object> exceptValues) {
-        Map<Object, List<String>> duplicates = new HashMap<>();
-        Map<Object, List<String>> valuePositions = new HashMap<>();
-        
         // แยกช่วงจากสตริง (เช่น "A1:A100")
-        String[] rangeParts = rangeStr.split(":");
-        if (rangeParts.length != 2) {
-            throw new IllegalArgumentException("รูปแบบช่วงไม่ถูกต้อง: " + rangeStr);
-        }
-        
-        String startCellRef = rangeParts[0].trim();
-        String endCellRef = rangeParts[1].trim();
-        
-        // แยกคอลัมน์และแถวจากเซลล์เริ่มต้น
-        Matcher startMatcher = Pattern.compile("([A-Za-z]+)([0-9]+)").matcher(startCellRef);
-        if (!startMatcher.matches()) {
-            throw new IllegalArgumentException("รูปแบบเซลล์เริ่มต้นไม่ถูกต้อง: " + startCellRef);
-        }
-        
-        String startColStr = startMatcher.group(1);
-        int startRow = Integer.parseInt(startMatcher.group(2)) - 1; // แปลงเป็น 0-based
-        CellReference startCellReference = new CellReference(startCellRef);
-        int startColIdx = startCellReference.getCol();
-        
-        int endRow;
-        int endColIdx;
-        
-        if ("EOF".equalsIgnoreCase(endCellRef)) {
-            // หาแถวสุดท้ายที่มีข้อมูลในคอลัมน์ที่กำหนด
-            endRow = sheet.getLastRowNum();
-            endColIdx = startColIdx; // ใช้คอลัมน์เดียวกับจุดเริ่มต้น
-            
-            boolean foundData = false;
-            for (int r = endRow; r >= startRow; r--) {
-                Row row = sheet.getRow(r);
-                if (row != null) {
-                    Cell cell = row.getCell(startColIdx);
-                    if (cell != null && !isEmpty(cell)) {
-                        endRow = r;
-                        foundData = true;
-                        break;
+        RangeSpec range = RangeSpec.parse(rangeStr);
+        return checkDuplicateValuesInRange(SheetSnapshot.of(sheet), range, exceptValues);
+    }
+    
+    /**
+     * ตรวจสอบค่าซ้ำในช่วงเซลล์ที่แยกแล้ว
+     */
+    static Map<Object, List<String>> checkDuplicateValuesInRange(SheetSnapshot sheet, RangeSpec range, Set<Object> exceptValues) {
+        // เก็บตำแหน่งของแต่ละค่า (ย้ายลงไฟล์ชั่วคราวเมื่อเกินงบหน่วยความจำ)
+        // ค่าถูกเก็บเป็น primitive จากคอลัมน์ของ snapshot โดยไม่สร้าง object ของค่าทีละเซลล์
+        try (DuplicateFinder finder = new DuplicateFinder(range)) {
+        
+            int endRow = lastRowOf(sheet, range);
+            SheetSnapshot.Column[] columns = columnsOf(sheet, range.startCol, range.endCol);
+            boolean hasExcept = exceptValues != null && !exceptValues.isEmpty();
+        
+            // ตรวจสอบค่าในแต่ละเซลล์ในช่วงที่กำหนด (เฉพาะแถวที่มีเซลล์ไม่ว่างในช่วงคอลัมน์)
+            for (int rowIdx = SheetSnapshot.nextNonEmptyRow(columns, range.startRow); rowIdx >= 0 && rowIdx <= endRow;
+                 rowIdx = SheetSnapshot.nextNonEmptyRow(columns, rowIdx + 1)) {
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i].isEmpty(rowIdx)) continue;
+                
+                    // ข้ามค่าที่อยู่ในรายการยกเว้น (ข้อความได้จาก dictionary ของชีทโดยไม่สร้าง object ใหม่)
+                    if (hasExcept && exceptValues.contains(columns[i].getValue(rowIdx, sheet))) {
+                        continue;
                     }
-                }
-            }
-            
-            if (!foundData) {
-                return duplicates; // ไม่พบข้อมูลเลย ส่งคืน Map ว่าง
-            }
-        } else {
-            // ใช้ค่าที่ระบุ
-            Matcher endMatcher = Pattern.compile("([A-Za-z]+)([0-9]+)").matcher(endCellRef);
-            if (!endMatcher.matches()) {
-                throw new IllegalArgumentException("รูปแบบเซลล์สิ้นสุดไม่ถูกต้อง: " + endCellRef);
-            }
-            
-            String endColStr = endMatcher.group(1);
-            endRow = Integer.parseInt(endMatcher.group(2)) - 1; // แปลงเป็น 0-based
-            CellReference endCellReference = new CellReference(endCellRef);
-            endColIdx = endCellReference.getCol();
-        }
-        
-        // ตรวจสอบค่าในแต่ละเซลล์ในช่วงที่กำหนด
-        for (int rowIdx = startRow; rowIdx <= endRow; rowIdx++) {
-            Row row = sheet.getRow(rowIdx);
-            if (row == null) continue;
-            
-            for (int colIdx = startColIdx; colIdx <= endColIdx; colIdx++) {
-                Cell cell = row.getCell(colIdx);
-                if (cell == null || isEmpty(cell)) continue;
-                
-                Object cellValue = getCellValue(cell);
                 
-                // ข้ามค่าที่อยู่ในรายการยกเว้น
-                if (exceptValues != null && exceptValues.contains(cellValue)) {
-                    continue;
+                    finder.add(sheet, columns[i], rowIdx, range.startCol + i);
                 }
-                
-                // สร้างตำแหน่งเซลล์ (เช่น "A1", "B5")
-                String cellPosition = CellReference.convertNumToColString(colIdx) + (rowIdx + 1);
-                
-                // เก็บตำแหน่งของแต่ละค่า
-                if (!valuePositions.containsKey(cellValue)) {
-                    valuePositions.put(cellValue, new ArrayList<>());
-                }
-                valuePositions.get(cellValue).add(cellPosition);
             }
-        }
         
-        // ตรวจสอบค่าซ้ำ
-        for (Map.Entry<Object, List<String>> entry : valuePositions.entrySet()) {
-            if (entry.getValue().size() > 1) {
-                // พบค่าซ้ำ
-                duplicates.put(entry.getKey(), entry.getValue());
-            }
+            // ค่าที่พบมากกว่า 1 ครั้ง
+            return finder.duplicates();
         }
-        
-        return duplicates;
     }
     
     /**
@@ -1230,7 +931,7 @@ public class ExcelReader {
      * @param columnStr คำสั่ง COLUMN
      * @return ตำแหน่งเซลล์
      */
-    private static String extractColumnRef(String columnStr) {
+    static String extractColumnRef(String columnStr) {
         // ตรวจสอบว่าเป็นคำสั่ง COLUMN หรือไม่
         if (!columnStr.startsWith("COLUMN(")) {
             return columnStr; // ถ้าไม่ใช่ COLUMN ให้ส่งคืนค่าเดิม
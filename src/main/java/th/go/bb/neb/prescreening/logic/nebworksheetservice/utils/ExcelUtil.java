@@ -1,22 +1,50 @@
 package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.json.JSONObject;
 import org.json.JSONArray;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
 public class ExcelUtil {    
 
+    /**
+     * รูปแบบผลลัพธ์ของ exportSheetToJson
+     */
+    public enum JsonFormat {
+        /** JSON array เดียว แบบเดียวกับ readSheetToJson */
+        ARRAY,
+        /** หนึ่ง object ต่อบรรทัด (NDJSON / JSON Lines) */
+        NDJSON
+    }
+
+    /** ไม่ปิด OutputStream ของผู้เรียก และไม่ปิด array ให้เองถ้าเกิดข้อผิดพลาดระหว่างเขียน */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
     private Workbook workbook;
     private String filePath;
     private JSONObject jsonData;
+    /** snapshot แบบคอลัมน์ของชีทที่อ่านช่วงแล้ว (สร้างครั้งเดียวต่อชีท) */
+    private final Map<String, SheetSnapshot> snapshots = new HashMap<>();
 
     /**
      * สร้าง ExcelToJsonReader ด้วยไฟล์ Excel ที่ระบุ
@@ -87,7 +115,7 @@ public class ExcelUtil {
     /**
      * ดึงค่าจากเซลล์และแปลงเป็น String โดยอัตโนมัติตามประเภทข้อมูล
      */
-    private String getCellValueAsString(Cell cell) {
+    private static String getCellValueAsString(Cell cell) {
         if (cell == null) {
             return "";
         }
@@ -124,6 +152,35 @@ public class ExcelUtil {
         }
     }
     
+    /**
+     * snapshot แบบคอลัมน์ของชีท (สร้างครั้งแรกที่ใช้ แล้วใช้ซ้ำ)
+     */
+    private SheetSnapshot snapshotOf(Sheet sheet) {
+        return snapshots.computeIfAbsent(sheet.getSheetName(), name -> SheetSnapshot.of(sheet));
+    }
+    
+    /**
+     * ค่าของเซลล์ใน snapshot เป็น String แบบเดียวกับ getCellValueAsString
+     */
+    private static String getValueAsString(SheetSnapshot snapshot, SheetSnapshot.Column column, int rowIndex) {
+        switch (column.getType(rowIndex)) {
+            case SheetSnapshot.STRING:
+                return snapshot.getString(column.getStringId(rowIndex));
+            case SheetSnapshot.INTEGER:
+            case SheetSnapshot.LONG:
+                // ป้องกันการแสดงเป็นรูปแบบวิทยาศาสตร์
+                return String.format("%.0f", column.getNumber(rowIndex));
+            case SheetSnapshot.DOUBLE:
+                return String.valueOf(column.getNumber(rowIndex));
+            case SheetSnapshot.DATE:
+                return new Date((long) column.getNumber(rowIndex)).toString();
+            case SheetSnapshot.BOOLEAN:
+                return String.valueOf(column.getNumber(rowIndex) != 0);
+            default:
+                return "";
+        }
+    }
+    
     /**
      * อ่านหลายเซลล์และเก็บในรูปแบบ JSON ตามที่กำหนด
      * 
@@ -199,17 +256,16 @@ public class ExcelUtil {
             }
         }
         
-        // อ่านข้อมูล
-        for (int rowIndex = startRow; rowIndex <= endRow; rowIndex++) {
-            Row row = sheet.getRow(rowIndex);
-            if (row == null) continue;
-            
+        // อ่านข้อมูลจาก snapshot แบบคอลัมน์
+        SheetSnapshot snapshot = snapshotOf(sheet);
+        SheetSnapshot.Column[] columns = ExcelReader.columnsOf(snapshot, startCol, endCol);
+        for (int rowIndex = snapshot.nextPresentRow(startRow); rowIndex >= 0 && rowIndex <= endRow;
+             rowIndex = snapshot.nextPresentRow(rowIndex + 1)) {
             JSONObject rowData = new JSONObject();
             boolean hasData = false;
             
             for (int colIndex = startCol; colIndex <= endCol; colIndex++) {
-                Cell cell = row.getCell(colIndex);
-                String value = getCellValueAsString(cell);
+                String value = getValueAsString(snapshot, columns[colIndex - startCol], rowIndex);
                 
                 if (!value.isEmpty()) {
                     hasData = true;
@@ -219,9 +275,8 @@ public class ExcelUtil {
                     // ใช้ชื่อคอลัมน์จากส่วนหัว
                     rowData.put(headers[colIndex - startCol], value);
                 } else {
-                    // ใช้ตัวอักษรคอลัมน์เป็นคีย์
-                    char colChar = (char) ('A' + colIndex);
-                    rowData.put(String.valueOf(colChar), value);
+                    // ใช้ตัวอักษรคอลัมน์เป็นคีย์ (A, B, ..., Z, AA, AB, ...)
+                    rowData.put(CellReference.convertNumToColString(colIndex), value);
                 }
             }
             
@@ -293,9 +348,8 @@ public class ExcelUtil {
                     // ใช้ชื่อคอลัมน์จากส่วนหัว
                     rowData.put(headers[colIndex], value);
                 } else {
-                    // ใช้ตัวอักษรคอลัมน์เป็นคีย์
-                    char colChar = (char) ('A' + colIndex);
-                    rowData.put(String.valueOf(colChar), value);
+                    // ใช้ตัวอักษรคอลัมน์เป็นคีย์ (A, B, ..., Z, AA, AB, ...)
+                    rowData.put(CellReference.convertNumToColString(colIndex), value);
                 }
             }
             
@@ -307,6 +361,138 @@ public class ExcelUtil {
         return resultArray;
     }
     
+    /**
+     * เขียนข้อมูลทั้งชีทเป็น JSON ลง OutputStream ทีละแถว (ค่าและ key เหมือน readSheetToJson)
+     * 
+     * ไฟล์ .xlsx อ่านแบบ streaming (XlsxStreamingReader) โดยไม่สร้าง Workbook หน่วยความจำจึงคงที่ไม่ขึ้นกับจำนวนแถว
+     * จำนวนคอลัมน์มาจาก dimension ของชีท ซึ่งอาจไม่ตรงกับเซลล์จริง รอบแรกจึงเขียนลงไฟล์ชั่วคราวก่อน
+     * ถ้า dimension ถูกต้องจะคัดลอกไฟล์นั้นไปยังปลายทาง ถ้าไม่มี dimension หรือพบเซลล์เกิน/ไม่ถึงจำนวนคอลัมน์นั้น
+     * จะอ่านรอบที่สองด้วยจำนวนคอลัมน์ที่วัดได้และเขียนไปยังปลายทางโดยตรง
+     * 
+     * ไฟล์ .xls ไม่อ่านแบบ streaming: โหลดทั้งไฟล์ด้วย HSSFWorkbook (ไม่เกิน 65,536 แถว)
+     * หน่วยความจำจึงเพิ่มตามขนาดไฟล์เหมือน readSheetToJson
+     * 
+     * @param filePath ที่อยู่ไฟล์ Excel (.xlsx หรือ .xls)
+     * @param sheetName ชื่อของชีท (ไม่พบชีทจะได้ array ว่าง หรือไม่มีบรรทัดเลยสำหรับ NDJSON)
+     * @param hasHeader ระบุว่าแถวแรกเป็นส่วนหัวหรือไม่
+     * @param format รูปแบบผลลัพธ์ (ARRAY หรือ NDJSON)
+     * @param out ปลายทาง (UTF-8, ไม่ถูกปิด)
+     * @throws IOException หากไม่สามารถอ่านไฟล์หรือเขียนผลลัพธ์ได้
+     */
+    public static void exportSheetToJson(String filePath, String sheetName, boolean hasHeader,
+                                         JsonFormat format, OutputStream out) throws IOException {
+        if (!filePath.endsWith(".xlsx") && !filePath.endsWith(".xls")) {
+            throw new IOException("รูปแบบไฟล์ไม่รองรับ ต้องเป็น .xlsx หรือ .xls เท่านั้น");
+        }
+        boolean ndjson = format == JsonFormat.NDJSON;
+        try {
+            if (filePath.endsWith(".xlsx")) {
+                exportXlsxSheet(filePath, sheetName, hasHeader, ndjson, out);
+            } else {
+                exportXlsSheet(filePath, sheetName, hasHeader, ndjson, out);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    private static void exportXlsxSheet(String filePath, String sheetName, boolean hasHeader,
+                                        boolean ndjson, OutputStream out) throws IOException {
+        try (XlsxStreamingReader xlsx = XlsxStreamingReader.open(filePath)) {
+            String found = xlsx.findSheetName(sheetName);
+            if (found == null) {
+                endJson(startJson(out, ndjson), ndjson);
+                return;
+            }
+            
+            Path temp = Files.createTempFile("neb-sheet-json-", ".tmp");
+            try {
+                SheetJsonExporter exporter;
+                try (OutputStream buffer = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    exporter = exportXlsxRows(xlsx, found, hasHeader, ndjson, -1, buffer);
+                }
+                
+                int width = exporter.measuredWidth();
+                if (width < 0) {
+                    Files.copy(temp, out);
+                } else {
+                    // ไม่มี dimension หรือ dimension ไม่ตรงกับเซลล์จริง: อ่านอีกรอบด้วยจำนวนคอลัมน์ที่วัดได้
+                    exportXlsxRows(xlsx, found, hasHeader, ndjson, width, out);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+    
+    /**
+     * อ่านชีทหนึ่งรอบและเขียนผลลัพธ์ทั้งหมดลง out
+     * 
+     * @param width จำนวนคอลัมน์ หรือ -1 เพื่อใช้ dimension ของชีท
+     */
+    private static SheetJsonExporter exportXlsxRows(XlsxStreamingReader xlsx, String sheetName, boolean hasHeader,
+                                                    boolean ndjson, int width, OutputStream out) throws IOException {
+        JsonGenerator generator = startJson(out, ndjson);
+        SheetJsonExporter exporter = new SheetJsonExporter(generator, hasHeader, ndjson);
+        if (width >= 0) {
+            exporter.setWidth(width);
+        }
+        xlsx.scan(Collections.singletonMap(sheetName, Collections.singletonList(exporter)));
+        endJson(generator, ndjson);
+        return exporter;
+    }
+    
+    private static JsonGenerator startJson(OutputStream out, boolean ndjson) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        // NDJSON คั่นแต่ละแถวด้วยการขึ้นบรรทัดใหม่เอง (ไม่ใช้ช่องว่างระหว่างค่าระดับบนสุดของ Jackson)
+        generator.setRootValueSeparator(null);
+        if (!ndjson) {
+            generator.writeStartArray();
+        }
+        return generator;
+    }
+    
+    private static void endJson(JsonGenerator generator, boolean ndjson) throws IOException {
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
+    
+    private static void exportXlsSheet(String filePath, String sheetName, boolean hasHeader,
+                                       boolean ndjson, OutputStream out) throws IOException {
+        try (Workbook xls = WorkbookSession.createWorkbook(new File(filePath), filePath)) {
+            JsonGenerator generator = startJson(out, ndjson);
+            Sheet sheet = xls.getSheet(sheetName);
+            if (sheet == null) {
+                endJson(generator, ndjson);
+                return;
+            }
+            
+            // หาจำนวนคอลัมน์ทั้งหมด (เหมือน readSheetToJson)
+            int maxCol = 0;
+            for (Row row : sheet) {
+                maxCol = Math.max(maxCol, row.getLastCellNum());
+            }
+            
+            SheetJsonExporter exporter = new SheetJsonExporter(generator, hasHeader, ndjson);
+            exporter.setWidth(maxCol);
+            for (Row row : sheet) {
+                int rowIndex = row.getRowNum();
+                exporter.startRow(rowIndex);
+                for (int colIndex = 0; colIndex < row.getLastCellNum(); colIndex++) {
+                    Cell cell = row.getCell(colIndex);
+                    if (cell != null) {
+                        String value = getCellValueAsString(cell);
+                        exporter.cell(rowIndex, colIndex, value, value.isEmpty());
+                    }
+                }
+                exporter.endRow(rowIndex);
+            }
+            endJson(generator, ndjson);
+        }
+    }
+    
     /**
      * ตรวจสอบความซ้ำซ้อนของข้อมูลในคอลัมน์ที่กำหนด
      * 
@@ -329,8 +515,8 @@ public class ExcelUtil {
         }
         colIndex--;
         
-        // เก็บค่าและแถวที่พบ
-        Map<String, JSONArray> valueMap = new HashMap<>();
+        // เก็บเฉพาะ fingerprint และแถวที่พบ (สร้าง JSON เฉพาะแถวของค่าที่ซ้ำ)
+        FingerprintIndex index = new FingerprintIndex(0, colIndex, 1);
         
         for (int rowIndex = startRow - 1; rowIndex < endRow; rowIndex++) {
             Row row = sheet.getRow(rowIndex);
@@ -342,37 +528,41 @@ public class ExcelUtil {
             String value = getCellValueAsString(cell);
             if (value.isEmpty()) continue;
             
-            if (!valueMap.containsKey(value)) {
-                valueMap.put(value, new JSONArray());
-            }
-            
-            JSONObject rowInfo = new JSONObject();
-            rowInfo.put("row", rowIndex + 1); // แถวที่ (1-based)
-            rowInfo.put("value", value);
+            index.add(value, rowIndex, colIndex);
+        }
+        
+        // สร้าง JSONArray ของรายการที่ซ้ำกัน (มากกว่า 1 แถว) ตามลำดับที่พบค่าครั้งแรก
+        JSONArray duplicates = new JSONArray();
+        for (int group = 0; group < index.groupCount(); group++) {
+            if (index.count(group) < 2) continue;
             
-            // เก็บข้อมูลเพิ่มเติมจากแถวนี้
-            for (int i = 0; i < row.getLastCellNum(); i++) {
-                if (i == colIndex) continue; // ข้ามคอลัมน์ที่ใช้ตรวจสอบ
+            String value = (String) index.value(group);
+            JSONArray rows = new JSONArray();
+            for (int entry = index.firstCell(group); entry >= 0; entry = index.nextCell(entry)) {
+                int rowIndex = index.rowOf(entry);
+                Row row = sheet.getRow(rowIndex);
+                
+                JSONObject rowInfo = new JSONObject();
+                rowInfo.put("row", rowIndex + 1); // แถวที่ (1-based)
+                rowInfo.put("value", value);
                 
-                Cell otherCell = row.getCell(i);
-                if (otherCell != null) {
-                    char colChar = (char) ('A' + i);
-                    rowInfo.put(String.valueOf(colChar), getCellValueAsString(otherCell));
+                // เก็บข้อมูลเพิ่มเติมจากแถวนี้
+                for (int i = 0; i < row.getLastCellNum(); i++) {
+                    if (i == colIndex) continue; // ข้ามคอลัมน์ที่ใช้ตรวจสอบ
+                    
+                    Cell otherCell = row.getCell(i);
+                    if (otherCell != null) {
+                        rowInfo.put(CellReference.convertNumToColString(i), getCellValueAsString(otherCell));
+                    }
                 }
+                
+                rows.put(rowInfo);
             }
             
-            valueMap.get(value).put(rowInfo);
-        }
-        
-        // สร้าง JSONArray ของรายการที่ซ้ำกัน
-        JSONArray duplicates = new JSONArray();
-        for (Map.Entry<String, JSONArray> entry : valueMap.entrySet()) {
-            if (entry.getValue().length() > 1) { // มีมากกว่า 1 แถว = ซ้ำกัน
-                JSONObject dupGroup = new JSONObject();
-                dupGroup.put("value", entry.getKey());
-                dupGroup.put("rows", entry.getValue());
-                duplicates.put(dupGroup);
-            }
+            JSONObject dupGroup = new JSONObject();
+            dupGroup.put("value", value);
+            dupGroup.put("rows", rows);
+            duplicates.put(dupGroup);
         }
         
         return duplicates;
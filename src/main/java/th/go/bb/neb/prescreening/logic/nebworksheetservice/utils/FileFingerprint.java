@@ -0,0 +1,128 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ตัวตนของไฟล์ (path, size, mtime) และ SHA-256 ของเนื้อหา
+ *
+ * ค่า hash ถูกจำไว้ตาม (path, size, mtime) จึงคำนวณใหม่เฉพาะเมื่อไฟล์เปลี่ยน
+ * ยกเว้นเมื่อคำนวณในช่วงเวลาเดียวกับ mtime (ห่างกันไม่เกินความละเอียดของ mtime) ซึ่งไฟล์อาจถูกเขียนทับอีก
+ * โดย size และ mtime ไม่เปลี่ยน ค่าที่จำไว้แบบนี้ไม่ถูกใช้ และจะคำนวณใหม่จนกว่าเวลาจะผ่านช่วงนั้นไปแล้ว
+ *
+ * ไฟล์ที่เพิ่งอัปโหลดจึงถูกอ่านใหม่ทุกครั้งที่เรียก of ผู้เรียกที่ใช้หลายแคชในคำขอเดียวกัน
+ * (WssResultCache และ SheetSnapshotCache) ควรหาตัวตนครั้งเดียวแล้วส่งต่อ
+ */
+public final class FileFingerprint {
+
+    private static final int MAX_REMEMBERED = 1024;
+    /** ความละเอียดของ mtime ที่หยาบที่สุดที่รองรับ (FAT ละเอียด 2 วินาที) */
+    private static final long MTIME_GRANULARITY_MS = 2000L;
+
+    private static final Map<String, FileFingerprint> REMEMBERED = new LinkedHashMap<String, FileFingerprint>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileFingerprint> eldest) {
+            return size() > MAX_REMEMBERED;
+        }
+    };
+
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final String sha256;
+    /** เวลาที่เริ่มอ่านไฟล์เพื่อคำนวณ hash */
+    private final long hashedAt;
+
+    private FileFingerprint(String path, long size, long lastModified, String sha256, long hashedAt) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.sha256 = sha256;
+        this.hashedAt = hashedAt;
+    }
+
+    /**
+     * หาตัวตนของไฟล์ (คำนวณ SHA-256 ใหม่ถ้า path, size หรือ mtime เปลี่ยน หรือค่าที่จำไว้ยังไม่แน่นอน)
+     *
+     * @param file ไฟล์ที่มีอยู่จริง
+     * @return ตัวตนของไฟล์
+     * @throws IOException หากอ่านไฟล์ไม่ได้
+     */
+    public static FileFingerprint of(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        synchronized (REMEMBERED) {
+            FileFingerprint known = REMEMBERED.get(path);
+            if (known != null && known.size == size && known.lastModified == lastModified && !known.isRacy()) {
+                return known;
+            }
+        }
+
+        long hashedAt = System.currentTimeMillis();
+        FileFingerprint fingerprint = new FileFingerprint(path, size, lastModified, sha256(file), hashedAt);
+        synchronized (REMEMBERED) {
+            REMEMBERED.put(path, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * SHA-256 ของเนื้อหาไฟล์ (ตัวอักษรฐาน 16 ตัวเล็ก)
+     */
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("ไม่รองรับ SHA-256", e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * true ถ้าคำนวณ hash ในช่วงเวลาเดียวกับ mtime ไฟล์อาจถูกเขียนทับหลังจากนั้นโดย mtime ไม่เปลี่ยน
+     */
+    private boolean isRacy() {
+        return hashedAt - lastModified < MTIME_GRANULARITY_MS;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+}
@@ -0,0 +1,395 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.util.CellReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ดัชนีหาค่าซ้ำที่ใช้ fingerprint 64 บิตของค่าเป็น key
+ *
+ * แต่ละเซลล์เก็บเพียงตำแหน่งแบบ int (ลำดับเซลล์ในช่วง = แถว * ความกว้าง + คอลัมน์) ใน int[]
+ * แต่ละกลุ่มเก็บค่าเป็น primitive: ชนิด (ตามชนิดของ SheetSnapshot) และบิตของค่า (ตัวเลขใช้บิตของค่า,
+ * Date ใช้ getTime, boolean ใช้ 1/0 และข้อความจาก SheetSnapshot ใช้ลำดับใน dictionary ของชีท)
+ * ค่าที่ชนิดและบิตตรงกันจึง equals กันเสมอโดยไม่ต้องสร้าง object ของค่า
+ * ค่าถูกสร้างเป็น object เฉพาะตอนรายงานค่าซ้ำ (duplicates, value)
+ *
+ * ข้อความที่ส่งมาเป็น String (ไม่มีลำดับใน dictionary เช่นจากการอ่านแบบ streaming) ใช้ hash ของตัวอักษร
+ * จึงเก็บ String ของเซลล์แรกไว้เทียบด้วย equals เมื่อ hash ตรงกัน (hash ชนกันแต่ข้อความต่างกัน
+ * แยกเป็นกลุ่มใหม่ที่มี fingerprint เดียวกัน ผลลัพธ์จึงถูกต้องเสมอ) ชนิดอื่นที่ไม่รู้จักใช้ hashCode และ equals
+ * ข้อความจาก add(SheetSnapshot, Column) และ add(Object) เป็นคนละชนิดกัน จึงไม่ควรใช้ปนกันใน index เดียว
+ *
+ * รายการตำแหน่ง (List, String) ถูกสร้างเฉพาะค่าที่พบมากกว่า 1 ครั้ง
+ * การตรวจช่วงที่ค่าไม่ซ้ำเกือบทั้งหมดจึงแทบไม่สร้าง object เพิ่ม ไม่ thread-safe
+ */
+final class FingerprintIndex {
+
+    private static final int NONE = -1;
+
+    /** ข้อความที่ไม่มีลำดับใน dictionary (ชนิดอื่นใช้ค่าคงที่ของ SheetSnapshot) */
+    private static final byte TEXT = 7;
+    /** ชนิดอื่นที่ไม่ใช่ค่าของเซลล์ (เทียบด้วย equals) */
+    private static final byte OBJECT = 8;
+
+    private final int baseRow;
+    private final int baseCol;
+    private final int width;
+    /** ชีทของข้อความที่เพิ่มด้วย add(SheetSnapshot, Column) (null ถ้าเพิ่มเป็น Object เท่านั้น) */
+    private SheetSnapshot sheet;
+
+    /**
+     * กลุ่มของค่า: fingerprint, ชนิด, บิตของค่า, object ของค่า (เฉพาะ TEXT และ OBJECT),
+     * เซลล์แรก/สุดท้าย, จำนวนเซลล์ และกลุ่มถัดไปที่ fingerprint เดียวกัน
+     */
+    private long[] fingerprints = new long[16];
+    private byte[] types = new byte[16];
+    private long[] keys = new long[16];
+    private Object[] objects = new Object[16];
+    private int[] firstCell = new int[16];
+    private int[] lastCell = new int[16];
+    private int[] counts = new int[16];
+    private int[] sameFingerprint = new int[16];
+    private int groupCount;
+    /** ขนาดโดยประมาณของ object ที่เก็บไว้ใน objects */
+    private long objectBytes;
+
+    /** ช่องของตาราง hash เก็บ ลำดับกลุ่มแรกของ fingerprint + 1 (0 = ว่าง) */
+    private int[] slots = new int[32];
+
+    /** เซลล์ทั้งหมด: ตำแหน่งในช่วงและเซลล์ถัดไปของกลุ่มเดียวกัน */
+    private int[] cells = new int[16];
+    private int[] nextCell = new int[16];
+    private int cellCount;
+
+    /**
+     * @param baseRow แถวแรกของช่วง (0-based)
+     * @param baseCol คอลัมน์แรกของช่วง (0-based)
+     * @param width   จำนวนคอลัมน์ของช่วง
+     */
+    FingerprintIndex(int baseRow, int baseCol, int width) {
+        this.baseRow = baseRow;
+        this.baseCol = baseCol;
+        this.width = Math.max(width, 1);
+    }
+
+    /**
+     * บันทึกค่าของเซลล์จากคอลัมน์ของ SheetSnapshot โดยไม่สร้าง object ของค่า
+     * (ทุกคอลัมน์ต้องมาจากชีทเดียวกัน เพราะข้อความเทียบกันด้วยลำดับใน dictionary ของชีท)
+     *
+     * @throws IllegalArgumentException หากลำดับเซลล์เกินช่วงของ int
+     */
+    void add(SheetSnapshot sheet, SheetSnapshot.Column column, int rowIdx, int colIdx) {
+        this.sheet = sheet;
+        byte type = column.getType(rowIdx);
+        long key;
+        switch (type) {
+            case SheetSnapshot.STRING:
+                key = column.getStringId(rowIdx);
+                break;
+            case SheetSnapshot.INTEGER:
+                key = (int) column.getNumber(rowIdx);
+                break;
+            case SheetSnapshot.LONG:
+            case SheetSnapshot.DATE:
+                key = (long) column.getNumber(rowIdx);
+                break;
+            case SheetSnapshot.DOUBLE:
+                key = Double.doubleToLongBits(column.getNumber(rowIdx));
+                break;
+            case SheetSnapshot.BOOLEAN:
+                key = column.getNumber(rowIdx) != 0 ? 1 : 0;
+                break;
+            default:
+                key = 0;
+                break;
+        }
+        add(type, key, null, rowIdx, colIdx);
+    }
+
+    /**
+     * บันทึกค่าที่พบในเซลล์ (แถวและคอลัมน์ต้องอยู่ในช่วง)
+     *
+     * @throws IllegalArgumentException หากลำดับเซลล์เกินช่วงของ int
+     */
+    void add(Object value, int rowIdx, int colIdx) {
+        byte type = typeOf(value);
+        add(type, keyOf(type, value), value, rowIdx, colIdx);
+    }
+
+    private void add(byte type, long key, Object value, int rowIdx, int colIdx) {
+        long position = (long) (rowIdx - baseRow) * width + (colIdx - baseCol);
+        if (position < 0 || position > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("ตำแหน่งเซลล์อยู่นอกช่วงที่ตรวจค่าซ้ำได้: "
+                    + CellReference.convertNumToColString(colIdx) + (rowIdx + 1));
+        }
+        int group = groupOf(type, key, value);
+        int cell = cellCount;
+        if (cell == cells.length) {
+            cells = Arrays.copyOf(cells, cell * 2);
+            nextCell = Arrays.copyOf(nextCell, cell * 2);
+        }
+        cells[cell] = (int) position;
+        nextCell[cell] = NONE;
+        cellCount++;
+
+        if (firstCell[group] == NONE) {
+            firstCell[group] = cell;
+        } else {
+            nextCell[lastCell[group]] = cell;
+        }
+        lastCell[group] = cell;
+        counts[group]++;
+    }
+
+    /**
+     * ค่าที่พบมากกว่า 1 ครั้ง -> ตำแหน่งเซลล์ (เช่น "B15") ตามลำดับที่พบ
+     */
+    Map<Object, List<String>> duplicates() {
+        Map<Object, List<String>> duplicates = new HashMap<>();
+        for (int group = 0; group < groupCount; group++) {
+            if (counts[group] < 2) {
+                continue;
+            }
+            List<String> positions = new ArrayList<>(counts[group]);
+            for (int cell = firstCell[group]; cell != NONE; cell = nextCell[cell]) {
+                positions.add(CellReference.convertNumToColString(colOf(cell)) + (rowOf(cell) + 1));
+            }
+            duplicates.put(value(group), positions);
+        }
+        return duplicates;
+    }
+
+    /** จำนวนค่าที่ไม่ซ้ำกัน (ลำดับกลุ่มคือ 0 ถึง groupCount - 1 ตามลำดับที่พบค่าครั้งแรก) */
+    int groupCount() {
+        return groupCount;
+    }
+
+    /** จำนวนเซลล์ที่มีค่าของกลุ่ม */
+    int count(int group) {
+        return counts[group];
+    }
+
+    /**
+     * ค่าของกลุ่มตาม ExcelReader.getCellValue (สร้าง object ใหม่ทุกครั้ง ยกเว้นข้อความที่เก็บไว้)
+     */
+    Object value(int group) {
+        long key = keys[group];
+        switch (types[group]) {
+            case SheetSnapshot.STRING:
+                return sheet.getString((int) key);
+            case SheetSnapshot.INTEGER:
+                return (int) key;
+            case SheetSnapshot.LONG:
+                return key;
+            case SheetSnapshot.DOUBLE:
+                return Double.longBitsToDouble(key);
+            case SheetSnapshot.DATE:
+                return new Date(key);
+            case SheetSnapshot.BOOLEAN:
+                return key != 0;
+            case TEXT:
+            case OBJECT:
+                return objects[group];
+            default:
+                return null;
+        }
+    }
+
+    /** เซลล์แรกของกลุ่ม (ใช้กับ nextCell, rowOf, colOf) */
+    int firstCell(int group) {
+        return firstCell[group];
+    }
+
+    /** เซลล์ถัดไปของกลุ่มเดียวกัน หรือ -1 ถ้าเป็นเซลล์สุดท้าย */
+    int nextCell(int cell) {
+        return nextCell[cell];
+    }
+
+    int rowOf(int cell) {
+        return baseRow + cells[cell] / width;
+    }
+
+    int colOf(int cell) {
+        return baseCol + cells[cell] % width;
+    }
+
+    /** จำนวนเซลล์ทั้งหมดที่บันทึก */
+    int cellCount() {
+        return cellCount;
+    }
+
+    /**
+     * ขนาดโดยประมาณของอาร์เรย์ทั้งหมด รวมข้อความที่เก็บไว้เทียบ
+     */
+    long estimatedBytes() {
+        return 8L * cells.length + 45L * fingerprints.length + 4L * slots.length + objectBytes;
+    }
+
+    /**
+     * กลุ่มของค่า (สร้างใหม่ถ้ายังไม่เคยพบ)
+     */
+    private int groupOf(byte type, long key, Object value) {
+        long fingerprint = fingerprint(type, key);
+        int mask = slots.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            int group = slots[slot] - 1;
+            if (group < 0) {
+                break;
+            }
+            if (fingerprints[group] == fingerprint) {
+                // fingerprint ตรงกัน จึงเทียบชนิดและบิตของค่ากับทุกกลุ่มที่ใช้ fingerprint นี้
+                int last = group;
+                for (int g = group; g != NONE; g = sameFingerprint[g]) {
+                    if (types[g] == type && keys[g] == key
+                            && (type != TEXT && type != OBJECT || objects[g].equals(value))) {
+                        return g;
+                    }
+                    last = g;
+                }
+                int created = newGroup(fingerprint, type, key, value);
+                sameFingerprint[last] = created;
+                return created;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int created = newGroup(fingerprint, type, key, value);
+        slots[slot] = created + 1;
+        // ขยายตารางเมื่อใช้เกินครึ่ง
+        if (groupCount * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return created;
+    }
+
+    private int newGroup(long fingerprint, byte type, long key, Object value) {
+        int group = groupCount;
+        if (group == fingerprints.length) {
+            int capacity = group * 2;
+            fingerprints = Arrays.copyOf(fingerprints, capacity);
+            types = Arrays.copyOf(types, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+            firstCell = Arrays.copyOf(firstCell, capacity);
+            lastCell = Arrays.copyOf(lastCell, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sameFingerprint = Arrays.copyOf(sameFingerprint, capacity);
+        }
+        fingerprints[group] = fingerprint;
+        types[group] = type;
+        keys[group] = key;
+        if (type == TEXT) {
+            objects[group] = value;
+            objectBytes += 48L + 2L * ((String) value).length();
+        } else if (type == OBJECT) {
+            objects[group] = value;
+            objectBytes += 16L;
+        }
+        firstCell[group] = NONE;
+        lastCell[group] = NONE;
+        counts[group] = 0;
+        sameFingerprint[group] = NONE;
+        groupCount++;
+        return group;
+    }
+
+    /**
+     * สร้างตารางใหม่ โดยใส่เฉพาะกลุ่มแรกของแต่ละ fingerprint (กลุ่มที่ชนกันต่อกันด้วย sameFingerprint)
+     */
+    private void rehash(int capacity) {
+        int[] newSlots = new int[capacity];
+        int mask = capacity - 1;
+        for (int old : slots) {
+            if (old == 0) {
+                continue;
+            }
+            int slot = (int) fingerprints[old - 1] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = old;
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * fingerprint 64 บิตของค่า (ค่าที่ equals กันได้ค่าเดียวกันเสมอ)
+     */
+    static long fingerprint(Object value) {
+        byte type = typeOf(value);
+        return fingerprint(type, keyOf(type, value));
+    }
+
+    private static long fingerprint(byte type, long key) {
+        return mix(key ^ type * 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * ชนิดของค่า (ข้อความเป็น TEXT เพราะไม่มีลำดับใน dictionary)
+     */
+    private static byte typeOf(Object value) {
+        if (value == null) {
+            return SheetSnapshot.NONE;
+        } else if (value instanceof String) {
+            return TEXT;
+        } else if (value instanceof Integer) {
+            return SheetSnapshot.INTEGER;
+        } else if (value instanceof Long) {
+            return SheetSnapshot.LONG;
+        } else if (value instanceof Double) {
+            return SheetSnapshot.DOUBLE;
+        } else if (value instanceof Date) {
+            return SheetSnapshot.DATE;
+        } else if (value instanceof Boolean) {
+            return SheetSnapshot.BOOLEAN;
+        }
+        return OBJECT;
+    }
+
+    /**
+     * บิตของค่าตามชนิด (ข้อความใช้ FNV-1a 64 บิตทีละตัวอักษร ชนิดอื่นที่ไม่รู้จักใช้ hashCode)
+     */
+    private static long keyOf(byte type, Object value) {
+        switch (type) {
+            case TEXT:
+                String text = (String) value;
+                long h = 0xcbf29ce484222325L;
+                for (int i = 0; i < text.length(); i++) {
+                    h ^= text.charAt(i);
+                    h *= 0x100000001b3L;
+                }
+                return h;
+            case SheetSnapshot.INTEGER:
+                return (Integer) value;
+            case SheetSnapshot.LONG:
+                return (Long) value;
+            case SheetSnapshot.DOUBLE:
+                return Double.doubleToLongBits((Double) value);
+            case SheetSnapshot.DATE:
+                return ((Date) value).getTime();
+            case SheetSnapshot.BOOLEAN:
+                return (Boolean) value ? 1 : 0;
+            case OBJECT:
+                return value.hashCode();
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * กระจายบิต (fmix64 ของ MurmurHash3) ให้ใช้บิตล่างเป็นตำแหน่งในตารางได้
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,141 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * รวมคำสั่งที่อ่านชีทและคอลัมน์เดียวกัน (COUNT, CHKDUPLICATE, CHKSHEETDUPLICATE)
+ * ให้อ่านพร้อมกันในรอบเดียว แทนที่แต่ละคำสั่งจะวนอ่านคอลัมน์ของตัวเอง
+ *
+ * คำสั่งในชีทเดียวกันที่ช่วงคอลัมน์ซ้อนทับกันจะอยู่กลุ่มเดียวกัน แต่ละกลุ่มอ่านเซลล์ในช่วงคอลัมน์ของกลุ่ม
+ * ทีละแถวเพียงครั้งเดียว แปลงค่าเซลล์ครั้งเดียว แล้วส่งให้ทุก consumer ในกลุ่ม
+ * แต่ละกลุ่มอ่านถึงแถวสุดท้ายที่ไม่ว่างของคอลัมน์ในกลุ่มเท่านั้น (กรณี EOF ไม่ต้องวนแถวว่างจนถึงแถวสุดท้ายของชีท)
+ */
+final class FusedScan {
+
+    private final Map<SheetSnapshot, List<ScanConsumers.RangeConsumer>> consumers = new LinkedHashMap<>();
+
+    /**
+     * ลงทะเบียน consumer ของชีท ผลลัพธ์จะพร้อมหลังเรียก run()
+     */
+    PlanResult.Pending register(SheetSnapshot sheet, ScanConsumers.RangeConsumer consumer) {
+        consumers.computeIfAbsent(sheet, k -> new ArrayList<>()).add(consumer);
+        return consumer::result;
+    }
+
+    /**
+     * อ่านทุกกลุ่มของทุกชีทที่ลงทะเบียนไว้ แล้วปิด consumer ทุกตัว (ผลลัพธ์ยังอ่านได้หลังปิด)
+     */
+    void run() {
+        try {
+            for (Map.Entry<SheetSnapshot, List<ScanConsumers.RangeConsumer>> entry : consumers.entrySet()) {
+                for (Group group : group(entry.getValue())) {
+                    group.scan(entry.getKey());
+                }
+            }
+        } finally {
+            ScanConsumers.closeAll(consumers.values());
+        }
+    }
+
+    /**
+     * จัดกลุ่ม consumer ตามช่วงคอลัมน์ ช่วงที่ซ้อนทับกันรวมเป็นกลุ่มเดียว
+     * (ช่วงที่ไม่มีคอลัมน์ เช่น D5:B10 ไม่ต้องอ่าน)
+     */
+    static List<Group> group(List<ScanConsumers.RangeConsumer> sheetConsumers) {
+        List<ScanConsumers.RangeConsumer> sorted = new ArrayList<>(sheetConsumers);
+        sorted.sort(Comparator.comparingInt(ScanConsumers.RangeConsumer::firstColumn));
+
+        List<Group> groups = new ArrayList<>();
+        Group current = null;
+        for (ScanConsumers.RangeConsumer consumer : sorted) {
+            if (consumer.lastColumn() < consumer.firstColumn()) {
+                continue;
+            }
+            if (current == null || consumer.firstColumn() > current.lastColumn) {
+                current = new Group(consumer.firstColumn());
+                groups.add(current);
+            }
+            current.add(consumer);
+        }
+        return groups;
+    }
+
+    /**
+     * กลุ่มของ consumer ที่อ่านช่วงคอลัมน์ firstColumn..lastColumn ร่วมกัน
+     */
+    static final class Group {
+        final int firstColumn;
+        int lastColumn;
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = Integer.MIN_VALUE;
+        private final List<ScanConsumers.RangeConsumer> members = new ArrayList<>();
+
+        Group(int firstColumn) {
+            this.firstColumn = firstColumn;
+            this.lastColumn = firstColumn;
+        }
+
+        void add(ScanConsumers.RangeConsumer consumer) {
+            members.add(consumer);
+            lastColumn = Math.max(lastColumn, consumer.lastColumn());
+            firstRow = Math.min(firstRow, consumer.firstRow());
+            lastRow = Math.max(lastRow, consumer.lastRow());
+        }
+
+        void scan(SheetSnapshot sheet) {
+            ScanConsumers.RangeConsumer[] targets = members.toArray(new ScanConsumers.RangeConsumer[0]);
+            // consumer ที่อ่านคอลัมน์โดยตรงไม่ต้องสร้าง object ของค่า ส่วนที่เหลือใช้ค่าเดียวกันต่อเซลล์
+            ScanConsumers.RangeConsumer[] columnTargets = members.stream()
+                    .filter(ScanConsumers.RangeConsumer::readsColumns).toArray(ScanConsumers.RangeConsumer[]::new);
+            ScanConsumers.RangeConsumer[] valueTargets = members.stream()
+                    .filter(consumer -> !consumer.readsColumns()).toArray(ScanConsumers.RangeConsumer[]::new);
+            int startRow = Math.max(0, firstRow);
+            // หลังแถวสุดท้ายที่ไม่ว่างของคอลัมน์ในกลุ่มไม่มีเซลล์ให้ consumer แล้ว
+            int endRow = Math.min(lastRow, sheet.getLastNonEmptyRow(firstColumn, lastColumn));
+
+            SheetSnapshot.Column[] columns = ExcelReader.columnsOf(sheet, firstColumn, lastColumn);
+
+            // วนเฉพาะแถวที่มีเซลล์ไม่ว่างในช่วงคอลัมน์ของกลุ่ม
+            for (int rowIdx = SheetSnapshot.nextNonEmptyRow(columns, startRow); rowIdx >= 0 && rowIdx <= endRow;
+                 rowIdx = SheetSnapshot.nextNonEmptyRow(columns, rowIdx + 1)) {
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i].isEmpty(rowIdx)) continue;
+
+                    for (ScanConsumers.RangeConsumer target : columnTargets) {
+                        target.cell(sheet, columns[i], rowIdx, firstColumn + i);
+                    }
+                    if (valueTargets.length > 0) {
+                        Object value = columns[i].getValue(rowIdx, sheet);
+                        for (ScanConsumers.RangeConsumer target : valueTargets) {
+                            target.cell(rowIdx, firstColumn + i, value, false);
+                        }
+                    }
+                }
+
+                if (done(targets, rowIdx)) {
+                    break;
+                }
+            }
+
+            for (ScanConsumers.RangeConsumer target : targets) {
+                target.endSheet();
+            }
+        }
+
+        /**
+         * ทุก consumer ได้ผลลัพธ์แล้ว หรืออ่านเลยช่วงแถวของตัวเองแล้ว
+         */
+        private static boolean done(ScanConsumers.RangeConsumer[] targets, int rowIdx) {
+            for (ScanConsumers.RangeConsumer target : targets) {
+                if (!target.finished() && rowIdx < target.lastRow()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
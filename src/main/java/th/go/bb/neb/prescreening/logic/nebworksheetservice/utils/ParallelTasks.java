@@ -0,0 +1,127 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * รันงานหลายงานพร้อมกันบน thread pool ที่จำกัดจำนวน และส่งต่อ exception ของงานแบบเดียวกับการเรียกตรง
+ */
+public final class ParallelTasks {
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * สร้าง thread pool ขนาดคงที่ (daemon thread ชื่อ prefix-N)
+     */
+    public static ExecutorService newPool(int threads, String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * รันทุกงานพร้อมกันและรอผล (ลำดับเดียวกับ tasks)
+     * ถ้างานใดโยน IOException หรือ RuntimeException จะยกเลิกงานที่เหลือแล้วโยน exception นั้นต่อ
+     *
+     * @throws IOException หากงานใดโยน IOException หรือ thread ถูกขัดจังหวะ (InterruptedIOException)
+     */
+    public static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("การประมวลผลถูกขัดจังหวะ");
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * เหมือน invokeAll สำหรับงานที่คืนทรัพยากรที่ต้องปิด
+     * ถ้างานใดล้มเหลว ผลของงานที่สำเร็จแล้วจะถูกปิดก่อนโยน exception ต่อ
+     * ส่วนงานที่ทำเสร็จหลังจากนั้น (ยกเลิกไม่ทัน) จะปิดผลของตัวเอง จึงไม่มีทรัพยากรค้าง
+     */
+    public static <T extends Closeable> List<T> invokeAllClosing(ExecutorService pool, List<Callable<T>> tasks)
+            throws IOException {
+        List<T> opened = new ArrayList<>(tasks.size());
+        boolean[] failed = {false};
+        List<Callable<T>> guarded = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            guarded.add(() -> {
+                T result = task.call();
+                synchronized (opened) {
+                    if (!failed[0]) {
+                        opened.add(result);
+                        return result;
+                    }
+                }
+                closeQuietly(result);
+                return result;
+            });
+        }
+
+        try {
+            return invokeAll(pool, guarded);
+        } catch (IOException | RuntimeException | Error e) {
+            synchronized (opened) {
+                failed[0] = true;
+                for (T result : opened) {
+                    closeQuietly(result);
+                }
+                opened.clear();
+            }
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // ปิดระหว่างจัดการข้อผิดพลาดอื่น ไม่บดบัง exception เดิม
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
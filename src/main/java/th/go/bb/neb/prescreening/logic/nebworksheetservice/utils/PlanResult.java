@@ -0,0 +1,95 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ผลลัพธ์จากการประมวลผล ExcelPlan (ทั้งแบบ DOM และแบบ streaming)
+ * ประกอบด้วยตัวแปรที่อ่านได้ และผลของเงื่อนไขตรวจสอบที่อ่านในรอบเดียวกัน
+ */
+public class PlanResult {
+
+    private final Map<String, Object> data;
+    private final Map<Object, Pending> validations;
+
+    PlanResult(Map<String, Object> data, Map<Object, Pending> validations) {
+        this.data = data;
+        this.validations = validations;
+    }
+
+    /**
+     * ผลลัพธ์ในรูปแบบเดียวกับ ExcelReader.readExcelVariables
+     */
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    /**
+     * ผลการตรวจสอบค่าซ้ำของเงื่อนไข CHKDUPLICATE ในแผน
+     * โยน IllegalArgumentException แบบเดียวกับ ExcelReader.checkDuplicateValuesInRange
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Object, List<String>> checkDuplicateValuesInRange(ExcelPlan.DuplicateCheck check) {
+        return (Map<Object, List<String>>) lookup(check);
+    }
+
+    /**
+     * ตารางค่าของเงื่อนไข CHKSHEETDUPLICATE ที่ช่วงนี้อยู่ (ทุกช่วงของเงื่อนไขเดียวกันได้ตารางเดียวกัน)
+     * โยน IllegalArgumentException แบบเดียวกับ ExcelReader.getAllValuesInRange ถ้าไม่พบชีทหรือช่วงไม่ถูกต้อง
+     */
+    public CrossSheetIndex getCrossSheetIndex(ExcelPlan.SheetRange sheetRange) {
+        return (CrossSheetIndex) lookup(sheetRange);
+    }
+
+    private Object lookup(Object key) {
+        Pending pending = validations.get(key);
+        if (pending == null) {
+            throw new IllegalArgumentException("ไม่พบเงื่อนไขที่ลงทะเบียนไว้: " + key);
+        }
+        return pending.get();
+    }
+
+    /**
+     * ค่าที่จะได้หลังจากอ่านชีทเสร็จ
+     */
+    interface Pending {
+        Object get();
+    }
+
+    interface Preparation {
+        Pending prepare();
+    }
+
+    /**
+     * เตรียมคำสั่ง ถ้าเกิด IllegalArgumentException ให้ผลลัพธ์เป็นข้อความผิดพลาด (เหมือน readExcelVariables)
+     */
+    static Pending guard(Preparation preparation) {
+        Pending pending;
+        try {
+            pending = preparation.prepare();
+        } catch (IllegalArgumentException e) {
+            String error = "ข้อผิดพลาด: " + e.getMessage();
+            return () -> error;
+        }
+        return () -> {
+            try {
+                return pending.get();
+            } catch (IllegalArgumentException e) {
+                return "ข้อผิดพลาด: " + e.getMessage();
+            }
+        };
+    }
+
+    /**
+     * เตรียมเงื่อนไข ถ้าเกิด IllegalArgumentException ให้โยนเมื่อมีการขอผลลัพธ์
+     */
+    static Pending deferred(Preparation preparation) {
+        try {
+            return preparation.prepare();
+        } catch (IllegalArgumentException e) {
+            return () -> {
+                throw e;
+            };
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.util.CellReference;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ช่วงเซลล์ที่แยกแล้ว เช่น "B15:EOF" หรือ "B5:D20" (แยกแบบเดียวกับ ExcelReader)
+ * กรณี EOF ใช้คอลัมน์เดียวกับจุดเริ่มต้น และอ่านถึงแถวสุดท้ายที่มีข้อมูลในคอลัมน์นั้น
+ */
+final class RangeSpec {
+
+    private static final Pattern CELL_PATTERN = Pattern.compile("([A-Za-z]+)([0-9]+)");
+
+    final int startRow;
+    final int startCol;
+    final int endRow;
+    final int endCol;
+    final boolean eof;
+
+    private RangeSpec(int startRow, int startCol, int endRow, int endCol, boolean eof) {
+        this.startRow = startRow;
+        this.startCol = startCol;
+        this.endRow = endRow;
+        this.endCol = endCol;
+        this.eof = eof;
+    }
+
+    /**
+     * แยกช่วงจากสตริง
+     *
+     * @param rangeStr ช่วงเซลล์ (เช่น "B15:EOF" หรือ "B5:D20")
+     * @return ช่วงที่แยกแล้ว (กรณี EOF endRow = Integer.MAX_VALUE)
+     * @throws IllegalArgumentException หากรูปแบบไม่ถูกต้อง (ข้อความเดียวกับ ExcelReader)
+     */
+    static RangeSpec parse(String rangeStr) {
+        String[] rangeParts = rangeStr.split(":");
+        if (rangeParts.length != 2) {
+            throw new IllegalArgumentException("รูปแบบช่วงไม่ถูกต้อง: " + rangeStr);
+        }
+
+        String startCellRef = rangeParts[0].trim();
+        String endCellRef = rangeParts[1].trim();
+
+        // แยกคอลัมน์และแถวจากเซลล์เริ่มต้น
+        Matcher startMatcher = CELL_PATTERN.matcher(startCellRef);
+        if (!startMatcher.matches()) {
+            throw new IllegalArgumentException("รูปแบบเซลล์เริ่มต้นไม่ถูกต้อง: " + startCellRef);
+        }
+
+        int startRow = Integer.parseInt(startMatcher.group(2)) - 1; // แปลงเป็น 0-based
+        int startColIdx = new CellReference(startCellRef).getCol();
+
+        if ("EOF".equalsIgnoreCase(endCellRef)) {
+            return new RangeSpec(startRow, startColIdx, Integer.MAX_VALUE, startColIdx, true);
+        }
+
+        // ใช้ค่าที่ระบุ
+        Matcher endMatcher = CELL_PATTERN.matcher(endCellRef);
+        if (!endMatcher.matches()) {
+            throw new IllegalArgumentException("รูปแบบเซลล์สิ้นสุดไม่ถูกต้อง: " + endCellRef);
+        }
+
+        int endRow = Integer.parseInt(endMatcher.group(2)) - 1; // แปลงเป็น 0-based
+        int endColIdx = new CellReference(endCellRef).getCol();
+        return new RangeSpec(startRow, startColIdx, endRow, endColIdx, false);
+    }
+
+    boolean containsRow(int rowIdx) {
+        return rowIdx >= startRow && rowIdx <= endRow;
+    }
+}
@@ -0,0 +1,26 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+/**
+ * จำนวนแถวที่อ่านจากไฟล์ Excel ของแต่ละ thread (ใช้รายงาน rows/s ของงานแบบ batch)
+ *
+ * นับแถวที่มีอยู่จริงของชีทที่ถูกแปลง (SheetSnapshot.of) หรืออ่านแบบ streaming
+ * ผลลัพธ์ที่ได้จากแคชไม่ได้อ่านไฟล์จึงไม่ถูกนับ
+ */
+public final class ReadStatistics {
+
+    private static final ThreadLocal<long[]> ROWS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private ReadStatistics() {
+    }
+
+    static void addRows(long rows) {
+        ROWS.get()[0] += rows;
+    }
+
+    /**
+     * จำนวนแถวที่ thread ปัจจุบันอ่านไปแล้วทั้งหมด (ใช้หาผลต่างก่อน/หลังประมวลผลหนึ่งไฟล์)
+     */
+    public static long getRowsRead() {
+        return ROWS.get()[0];
+    }
+}
@@ -0,0 +1,349 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ดัชนีค้นหาแถวของ ROWBY ในคอลัมน์หนึ่งของชีท (สร้างครั้งเดียวต่อ session ดู WorkbookSession.rowLookup)
+ *
+ * ค่าของเซลล์ที่ไม่ว่างถูกแปลงเป็นข้อความที่ตัดช่องว่างหัวท้าย (เหมือนการค้นหาเดิม) แล้วเก็บค่าที่ไม่ซ้ำกัน
+ * พร้อมแถวแรกที่พบ ลำดับของค่าจึงเรียงตามแถวแรกที่พบด้วย
+ * EQUAL:     ตาราง hash ของค่า -> แถวแรก (O(1)) เทียบค่าตรงตัว
+ * STARTWITH: ค่าเรียงตามตัวอักษร ค่าที่ขึ้นต้นด้วยคำค้นอยู่ติดกันเป็นช่วงเดียว หาช่วงด้วย binary search
+ *            แล้วหาแถวที่น้อยที่สุดในช่วงด้วย segment tree (O(log n))
+ * ENDWITH:   แบบเดียวกับ STARTWITH บนข้อความที่กลับลำดับตัวอักษร
+ * CONTENT:   วนค่าตามลำดับแถวแรกที่พบ หยุดที่ค่าแรกที่ตรง
+ * STARTWITH/ENDWITH/CONTENT เทียบข้อความหลังปรับรูปแบบด้วย ThaiText.normalize ทั้งค่าและคำค้น
+ * ส่วนที่ใช้เฉพาะเงื่อนไขเหล่านี้สร้างเมื่อใช้ครั้งแรก ใช้ร่วมกันระหว่าง thread ได้
+ *
+ * ถ้ามีคำค้นหลายคำในคอลัมน์เดียวกัน (เช่น ROWBY หลายตัวในแผนเดียว) ให้ใช้ Batch
+ * ซึ่งรวมคำค้นทั้งหมดเป็น AhoCorasick เดียวแล้ววนค่าในคอลัมน์รอบเดียว
+ */
+final class RowLookupIndex {
+
+    /** ค่าที่ไม่ซ้ำกัน ตามลำดับแถวแรกที่พบ */
+    private final ValueCollector values = new ValueCollector(false);
+    /** แถวแรก (0-based) ของแต่ละค่า */
+    private final int[] firstRows;
+
+    /** ค่าหลังปรับรูปแบบ (ThaiText.normalize) ตามลำดับเดียวกับ values */
+    private volatile String[] normalized;
+    private volatile SortedValues prefixes;
+    private volatile SortedValues suffixes;
+
+    /**
+     * อ่านคอลัมน์จาก snapshot (เฉพาะแถวที่ไม่ว่าง)
+     */
+    RowLookupIndex(SheetSnapshot sheet, int colIdx) {
+        SheetSnapshot.Column column = sheet.getColumn(colIdx);
+        int[] rows = new int[16];
+        for (int rowIdx = column.nextNonEmptyRow(0); rowIdx >= 0; rowIdx = column.nextNonEmptyRow(rowIdx + 1)) {
+            Object value = column.getValue(rowIdx, sheet);
+            int size = values.size();
+            int ordinal = values.add(value != null ? value.toString().trim() : "");
+            if (ordinal == size) {
+                // ค่าใหม่: แถวนี้คือแถวแรกที่พบ
+                if (ordinal == rows.length) {
+                    rows = Arrays.copyOf(rows, ordinal * 2);
+                }
+                rows[ordinal] = rowIdx;
+            }
+        }
+        firstRows = Arrays.copyOf(rows, values.size());
+    }
+
+    /**
+     * true ถ้าคอลัมน์ไม่มีเซลล์ที่ไม่ว่างเลย
+     */
+    boolean isEmpty() {
+        return values.size() == 0;
+    }
+
+    /**
+     * แถวแรกที่ตรงตามเงื่อนไข
+     *
+     * @param condition     เงื่อนไข (null = ไม่รองรับ)
+     * @param conditionName ชื่อเงื่อนไขตามที่ระบุ (ใช้ในข้อความผิดพลาด)
+     * @param searchValue   คำค้น
+     * @return index ของแถว (0-based) หรือ -1 ถ้าไม่พบ
+     * @throws IllegalArgumentException หากเงื่อนไขไม่ถูกต้องและคอลัมน์มีข้อมูล (เหมือนการค้นหาเดิม)
+     */
+    int find(ExcelPlan.Condition condition, String conditionName, String searchValue) {
+        if (isEmpty()) {
+            return -1;
+        }
+        if (condition == null) {
+            throw new IllegalArgumentException("เงื่อนไขไม่ถูกต้อง: " + conditionName);
+        }
+        switch (condition) {
+            case EQUAL: {
+                int ordinal = values.indexOf(searchValue);
+                return ordinal < 0 ? -1 : firstRows[ordinal];
+            }
+            case STARTWITH:
+                return prefixes().firstRow(ThaiText.normalize(searchValue));
+            case ENDWITH:
+                return suffixes().firstRow(reverse(ThaiText.normalize(searchValue)));
+            default: {
+                String pattern = ThaiText.normalize(searchValue);
+                String[] texts = normalized();
+                for (int ordinal = 0; ordinal < texts.length; ordinal++) {
+                    if (texts[ordinal].contains(pattern)) {
+                        return firstRows[ordinal];
+                    }
+                }
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * ชุดคำค้นใหม่ของคอลัมน์นี้ (ใช้ภายใน thread เดียว)
+     */
+    Batch newBatch() {
+        return new Batch();
+    }
+
+    private String[] normalized() {
+        String[] texts = normalized;
+        if (texts == null) {
+            texts = new String[values.size()];
+            for (int ordinal = 0; ordinal < texts.length; ordinal++) {
+                texts[ordinal] = ThaiText.normalize(values.get(ordinal));
+            }
+            normalized = texts;
+        }
+        return texts;
+    }
+
+    private SortedValues prefixes() {
+        SortedValues sorted = prefixes;
+        if (sorted == null) {
+            sorted = new SortedValues(normalized(), firstRows, false);
+            prefixes = sorted;
+        }
+        return sorted;
+    }
+
+    private SortedValues suffixes() {
+        SortedValues sorted = suffixes;
+        if (sorted == null) {
+            sorted = new SortedValues(normalized(), firstRows, true);
+            suffixes = sorted;
+        }
+        return sorted;
+    }
+
+    private static String reverse(String text) {
+        return new StringBuilder(text).reverse().toString();
+    }
+
+    /**
+     * ค่าเรียงตามตัวอักษร พร้อม segment tree ของแถวแรกที่น้อยที่สุดในแต่ละช่วง
+     */
+    private static final class SortedValues {
+        private final String[] keys;
+        /** segment tree (ขนาด 2n) ใบไม้อยู่ที่ n..2n-1 */
+        private final int[] minRows;
+
+        SortedValues(String[] values, int[] firstRows, boolean reversed) {
+            int n = values.length;
+            String[] texts = new String[n];
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                texts[i] = reversed ? reverse(values[i]) : values[i];
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> texts[a].compareTo(texts[b]));
+
+            keys = new String[n];
+            minRows = new int[2 * n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = texts[order[i]];
+                minRows[n + i] = firstRows[order[i]];
+            }
+            for (int i = n - 1; i > 0; i--) {
+                minRows[i] = Math.min(minRows[2 * i], minRows[2 * i + 1]);
+            }
+        }
+
+        /**
+         * แถวแรกของค่าที่ขึ้นต้นด้วย prefix หรือ -1
+         */
+        int firstRow(String prefix) {
+            int from = lowerBound(prefix);
+            int to = from;
+            // ค่าที่ขึ้นต้นด้วย prefix เรียงติดกันตั้งแต่ from: หาค่าแรกที่ไม่ขึ้นต้นด้วย prefix
+            int hi = keys.length;
+            while (to < hi) {
+                int mid = (to + hi) >>> 1;
+                if (keys[mid].startsWith(prefix)) {
+                    to = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return from < to ? minRow(from, to) : -1;
+        }
+
+        private int lowerBound(String key) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * แถวที่น้อยที่สุดของค่าลำดับ from (รวม) ถึง to (ไม่รวม)
+         */
+        private int minRow(int from, int to) {
+            int n = keys.length;
+            int min = Integer.MAX_VALUE;
+            for (int lo = from + n, hi = to + n; lo < hi; lo >>>= 1, hi >>>= 1) {
+                if ((lo & 1) == 1) {
+                    min = Math.min(min, minRows[lo++]);
+                }
+                if ((hi & 1) == 1) {
+                    min = Math.min(min, minRows[--hi]);
+                }
+            }
+            return min;
+        }
+    }
+
+    /**
+     * ชุดคำค้นของคอลัมน์เดียวกัน: เพิ่มคำค้นทั้งหมดก่อน แล้วค้นพร้อมกันเมื่ออ่านผลครั้งแรก
+     *
+     * คำค้น STARTWITH/ENDWITH/CONTENT ที่ไม่ซ้ำกันรวมเป็น AhoCorasick เดียว แล้ววนค่าในคอลัมน์
+     * ตามลำดับแถวแรกที่พบรอบเดียว (หยุดเมื่อทุกคำค้นพบแถวแล้ว)
+     * คำค้นที่พบที่ตำแหน่ง 0 คือขึ้นต้นด้วย ที่จบที่ตัวสุดท้ายคือลงท้ายด้วย
+     * EQUAL และเงื่อนไขที่ไม่ถูกต้องใช้ find ตามปกติ ผลลัพธ์จึงเหมือนการเรียก find ทีละคำค้น
+     */
+    final class Batch {
+        private final List<Query> queries = new ArrayList<>();
+        private boolean resolved;
+
+        private Batch() {
+        }
+
+        /**
+         * เพิ่มคำค้น (ต้องเพิ่มก่อนอ่านผลของคำค้นใดในชุด)
+         */
+        Query add(ExcelPlan.Condition condition, String conditionName, String searchValue) {
+            if (resolved) {
+                throw new IllegalStateException("ค้นหาชุดนี้ไปแล้ว");
+            }
+            Query query = new Query(condition, conditionName, searchValue);
+            queries.add(query);
+            return query;
+        }
+
+        private void resolve() {
+            resolved = true;
+            if (isEmpty()) {
+                return;
+            }
+
+            // คำค้นที่ไม่ซ้ำกัน (หลังปรับรูปแบบ) -> คำค้นที่ใช้คำนั้น
+            Map<String, Integer> patternIds = new HashMap<>();
+            List<String> patterns = new ArrayList<>();
+            List<List<Query>> byPattern = new ArrayList<>();
+            int remaining = 0;
+            for (Query query : queries) {
+                if (query.condition == null || query.condition == ExcelPlan.Condition.EQUAL) {
+                    continue;
+                }
+                String pattern = ThaiText.normalize(query.searchValue);
+                if (pattern.isEmpty()) {
+                    // ข้อความใดก็ขึ้นต้น ลงท้าย และมีข้อความว่าง: ค่าแรกของคอลัมน์
+                    query.row = firstRows[0];
+                    continue;
+                }
+                Integer id = patternIds.get(pattern);
+                if (id == null) {
+                    id = patterns.size();
+                    patternIds.put(pattern, id);
+                    patterns.add(pattern);
+                    byPattern.add(new ArrayList<>());
+                }
+                byPattern.get(id).add(query);
+                remaining++;
+            }
+            if (remaining == 0) {
+                return;
+            }
+
+            AhoCorasick automaton = new AhoCorasick(patterns.toArray(new String[0]));
+            String[] texts = normalized();
+            int[] unresolved = {remaining};
+            for (int ordinal = 0; ordinal < texts.length && unresolved[0] > 0; ordinal++) {
+                String text = texts[ordinal];
+                int row = firstRows[ordinal];
+                automaton.match(text, (pattern, end) -> {
+                    boolean atStart = end + 1 == automaton.length(pattern);
+                    boolean atEnd = end == text.length() - 1;
+                    for (Query query : byPattern.get(pattern)) {
+                        if (query.row < 0 && query.accepts(atStart, atEnd)) {
+                            query.row = row;
+                            unresolved[0]--;
+                        }
+                    }
+                    return unresolved[0] > 0;
+                });
+            }
+        }
+
+        /**
+         * คำค้นหนึ่งคำในชุด
+         */
+        final class Query {
+            private final ExcelPlan.Condition condition;
+            private final String conditionName;
+            private final String searchValue;
+            private int row = -1;
+
+            private Query(ExcelPlan.Condition condition, String conditionName, String searchValue) {
+                this.condition = condition;
+                this.conditionName = conditionName;
+                this.searchValue = searchValue;
+            }
+
+            /**
+             * แถวแรกที่ตรงตามเงื่อนไข (ค้นทั้งชุดเมื่อเรียกครั้งแรก)
+             *
+             * @return index ของแถว (0-based) หรือ -1 ถ้าไม่พบ
+             * @throws IllegalArgumentException หากเงื่อนไขไม่ถูกต้องและคอลัมน์มีข้อมูล (เหมือน find)
+             */
+            int row() {
+                if (condition == null || condition == ExcelPlan.Condition.EQUAL) {
+                    return find(condition, conditionName, searchValue);
+                }
+                if (!resolved) {
+                    resolve();
+                }
+                return row;
+            }
+
+            private boolean accepts(boolean atStart, boolean atEnd) {
+                switch (condition) {
+                    case STARTWITH:
+                        return atStart;
+                    case ENDWITH:
+                        return atEnd;
+                    default:
+                        return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ผลลัพธ์ของคำสั่ง ROW แบบคอลัมน์: ชื่อ key ชุดเดียวใช้ร่วมกันทุกแถว
+ * และค่าของแต่ละคอลัมน์เก็บในอาร์เรย์ (ชนิดค่าใน byte[], ตัวเลข วันที่ และ boolean ใน double[], ข้อความใน Object[])
+ * ชนิดค่าใช้ค่าคงที่เดียวกับ SheetSnapshot จึงไม่ต้องสร้าง Map และ boxing ตัวเลขต่อแถว
+ *
+ * WssResultWriter เขียนเป็น JSON array ของ object ได้โดยตรง (ลำดับ key เหมือน new JSONObject(แถว) เดิม และไม่เขียนค่า null)
+ * ส่วนการอ่านผ่าน List (get) สร้าง HashMap ของแถวนั้นเมื่อเรียก จึงได้ค่าเหมือน List ของ Map เดิมทุกประการ
+ */
+final class RowSet extends AbstractList<Map<String, Object>> {
+
+    /** ค่าที่ไม่ใช่ชนิดของ SheetSnapshot (เก็บ object ไว้ตามเดิม) */
+    private static final byte OBJECT = 7;
+
+    private final String[] keys;
+    /** index ของคอลัมน์ตามลำดับ key ของ HashMap (key ซ้ำใช้คอลัมน์หลังสุด เหมือน HashMap.put) */
+    private final int[] fieldOrder;
+    /** ลำดับคอลัมน์ใน JSONObject ของแถว แยกตาม log2 ของ capacity (ดู jsonFieldOrder) */
+    private final int[][] jsonOrders = new int[Integer.SIZE][];
+    private final byte[][] types;
+    private final double[][] numbers;
+    private final Object[][] objects;
+    private int size;
+
+    /**
+     * @param keys ชื่อ key ของแต่ละคอลัมน์
+     */
+    RowSet(String[] keys) {
+        this.keys = keys;
+        Map<String, Integer> order = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            order.put(keys[i], i);
+        }
+        fieldOrder = new int[order.size()];
+        int field = 0;
+        for (int column : order.values()) {
+            fieldOrder[field++] = column;
+        }
+        types = new byte[keys.length][16];
+        numbers = new double[keys.length][];
+        objects = new Object[keys.length][];
+    }
+
+    /**
+     * เพิ่มแถวใหม่ (ทุกคอลัมน์ยังไม่มีค่า) แล้วคืน index ของแถว
+     */
+    int addRow() {
+        if (keys.length > 0 && size == types[0].length) {
+            int capacity = size * 2;
+            for (int i = 0; i < keys.length; i++) {
+                types[i] = Arrays.copyOf(types[i], capacity);
+                if (numbers[i] != null) {
+                    numbers[i] = Arrays.copyOf(numbers[i], capacity);
+                }
+                if (objects[i] != null) {
+                    objects[i] = Arrays.copyOf(objects[i], capacity);
+                }
+            }
+        }
+        return size++;
+    }
+
+    /**
+     * ใส่ค่าจาก snapshot โดยไม่แปลงเป็น object
+     */
+    void set(int rowIdx, int colIdx, SheetSnapshot sheet, SheetSnapshot.Column column, int sheetRowIdx) {
+        byte type = column.getType(sheetRowIdx);
+        if (type == SheetSnapshot.STRING) {
+            setObject(rowIdx, colIdx, type, sheet.getString(column.getStringId(sheetRowIdx)));
+        } else if (type != SheetSnapshot.NONE) {
+            setNumber(rowIdx, colIdx, type, column.getNumber(sheetRowIdx));
+        } else {
+            types[colIdx][rowIdx] = SheetSnapshot.NONE;
+        }
+    }
+
+    /**
+     * ใส่ค่าที่อ่านแล้ว (เช่นจากการอ่านแบบ streaming)
+     */
+    void set(int rowIdx, int colIdx, Object value) {
+        if (value == null) {
+            types[colIdx][rowIdx] = SheetSnapshot.NONE;
+        } else if (value instanceof String) {
+            setObject(rowIdx, colIdx, SheetSnapshot.STRING, value);
+        } else if (value instanceof Integer) {
+            setNumber(rowIdx, colIdx, SheetSnapshot.INTEGER, (Integer) value);
+        } else if (value instanceof Long) {
+            setNumber(rowIdx, colIdx, SheetSnapshot.LONG, (Long) value);
+        } else if (value instanceof Double) {
+            setNumber(rowIdx, colIdx, SheetSnapshot.DOUBLE, (Double) value);
+        } else if (value instanceof Date) {
+            setNumber(rowIdx, colIdx, SheetSnapshot.DATE, ((Date) value).getTime());
+        } else if (value instanceof Boolean) {
+            setNumber(rowIdx, colIdx, SheetSnapshot.BOOLEAN, (Boolean) value ? 1 : 0);
+        } else {
+            setObject(rowIdx, colIdx, OBJECT, value);
+        }
+    }
+
+    /**
+     * ตัดแถวตั้งแต่ newSize ออก (ใช้ซ้ำอาร์เรย์เดิมได้ เช่นหน้าของ RowStream)
+     */
+    void truncate(int newSize) {
+        if (newSize >= size) {
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            Arrays.fill(types[i], newSize, size, SheetSnapshot.NONE);
+            if (objects[i] != null) {
+                Arrays.fill(objects[i], newSize, size, null);
+            }
+        }
+        size = Math.max(newSize, 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * แถวเป็น HashMap ใหม่ (key -> ค่า รวมค่า null เหมือนเดิม)
+     */
+    @Override
+    public Map<String, Object> get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            row.put(keys[i], getValue(index, i));
+        }
+        return row;
+    }
+
+    /**
+     * จำนวน key ที่ไม่ซ้ำกัน
+     */
+    int fieldCount() {
+        return fieldOrder.length;
+    }
+
+    /**
+     * index ของคอลัมน์ของ key ลำดับ field (ตามลำดับของ HashMap)
+     */
+    int fieldColumn(int field) {
+        return fieldOrder[field];
+    }
+
+    /**
+     * ลำดับ index ของคอลัมน์ที่ new JSONObject(แถว) เดิมเขียนออก เมื่อแถวมีค่าที่ไม่ใช่ null อยู่ presentCount ค่า
+     *
+     * JSONObject คัดลอกแถวลง new HashMap(fieldCount) เฉพาะค่าที่ไม่ใช่ null ตามลำดับ fieldOrder
+     * ลำดับจึงขึ้นกับ capacity สุดท้ายของ HashMap นั้น: เรียงตาม bucket แล้วตามลำดับ fieldOrder ใน bucket เดียวกัน
+     * คอลัมน์ที่ไม่มีค่าในแถวยังอยู่ในลำดับที่คืน ผู้เรียกต้องข้ามเอง
+     * (ไม่รองรับ bucket ที่ชนกันตั้งแต่ 8 key ซึ่ง HashMap เปลี่ยนเป็น tree ไม่เกิดกับชื่อคอลัมน์จริง)
+     */
+    int[] jsonFieldOrder(int presentCount) {
+        int capacity = hashMapCapacity(fieldOrder.length, presentCount);
+        int bit = Integer.numberOfTrailingZeros(capacity);
+        int[] order = jsonOrders[bit];
+        if (order == null) {
+            int mask = capacity - 1;
+            Integer[] fields = new Integer[fieldOrder.length];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = i;
+            }
+            // sort ของ Arrays คงลำดับเดิมเมื่อ bucket เท่ากัน
+            Arrays.sort(fields, (a, b) -> Integer.compare(bucket(keys[fieldOrder[a]], mask),
+                    bucket(keys[fieldOrder[b]], mask)));
+            order = new int[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                order[i] = fieldOrder[fields[i]];
+            }
+            jsonOrders[bit] = order;
+        }
+        return order;
+    }
+
+    /**
+     * capacity ของ new HashMap(initialCapacity) หลัง put ไป count ค่า (load factor 0.75)
+     */
+    static int hashMapCapacity(int initialCapacity, int count) {
+        int capacity = initialCapacity <= 1 ? 1 : Integer.highestOneBit(initialCapacity - 1) << 1;
+        while (count > (int) (capacity * 0.75f)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int bucket(String key, int mask) {
+        int h = key == null ? 0 : key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    String key(int colIdx) {
+        return keys[colIdx];
+    }
+
+    byte getType(int rowIdx, int colIdx) {
+        return types[colIdx][rowIdx];
+    }
+
+    double getNumber(int rowIdx, int colIdx) {
+        return numbers[colIdx][rowIdx];
+    }
+
+    Object getObject(int rowIdx, int colIdx) {
+        return objects[colIdx][rowIdx];
+    }
+
+    /**
+     * ค่าตาม ExcelReader.getCellValue (null ถ้าไม่มีค่า)
+     */
+    Object getValue(int rowIdx, int colIdx) {
+        switch (types[colIdx][rowIdx]) {
+            case SheetSnapshot.STRING:
+            case OBJECT:
+                return objects[colIdx][rowIdx];
+            case SheetSnapshot.INTEGER:
+                return (int) numbers[colIdx][rowIdx];
+            case SheetSnapshot.LONG:
+                return (long) numbers[colIdx][rowIdx];
+            case SheetSnapshot.DOUBLE:
+                return numbers[colIdx][rowIdx];
+            case SheetSnapshot.DATE:
+                return new Date((long) numbers[colIdx][rowIdx]);
+            case SheetSnapshot.BOOLEAN:
+                return numbers[colIdx][rowIdx] != 0;
+            default:
+                return null;
+        }
+    }
+
+    private void setNumber(int rowIdx, int colIdx, byte type, double number) {
+        if (numbers[colIdx] == null) {
+            numbers[colIdx] = new double[types[colIdx].length];
+        }
+        types[colIdx][rowIdx] = type;
+        numbers[colIdx][rowIdx] = number;
+    }
+
+    private void setObject(int rowIdx, int colIdx, byte type, Object value) {
+        if (objects[colIdx] == null) {
+            objects[colIdx] = new Object[types[colIdx].length];
+        }
+        types[colIdx][rowIdx] = type;
+        objects[colIdx][rowIdx] = value;
+    }
+}
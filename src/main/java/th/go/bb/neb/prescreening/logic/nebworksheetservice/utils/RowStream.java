@@ -0,0 +1,141 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ผลลัพธ์ของคำสั่ง ROW แบบอ่านเมื่อใช้ จาก snapshot ของชีท (ไม่คัดลอกแถวทั้งหมดไว้ก่อน)
+ *
+ * WssResultWriter อ่านผ่าน Cursor ทีละหน้า (RowSet ขนาด PAGE_SIZE แถวที่ใช้อาร์เรย์ซ้ำ) แล้วเขียนทันที
+ * ตารางยาวมากจึงใช้หน่วยความจำเพิ่มเพียงหนึ่งหน้า snapshot ไม่ผูกกับ Workbook จึงอ่านได้หลังปิด session
+ * แถวที่ได้คือแถวที่มีอยู่จริงในช่วง (เหมือน ExcelReader.readRows) ข้ามไป offset แถว แล้วอ่านไม่เกิน limit แถว
+ *
+ * การอ่านผ่าน List (size, get) สร้างลำดับแถวเมื่อเรียกครั้งแรก และ get สร้าง HashMap ของแถวนั้น
+ * ได้ค่าเหมือน List ของ Map เดิม ใช้ภายใน thread เดียว
+ */
+final class RowStream extends AbstractList<Map<String, Object>> {
+
+    static final int PAGE_SIZE = 1024;
+
+    private final SheetSnapshot sheet;
+    private final SheetSnapshot.Column[] columns;
+    private final String[] keys;
+    private final int startRow;
+    private final int endRow;
+    private final int offset;
+    private final int limit;
+    /** แถวของ snapshot ตามลำดับ (สร้างเมื่ออ่านผ่าน List) */
+    private int[] rows;
+
+    /**
+     * @param startRow แถวเริ่มต้น (0-based)
+     * @param endRow   แถวสุดท้าย (0-based, Integer.MAX_VALUE = EOF ดู ExcelReader.endRowOf)
+     * @param offset   จำนวนแถวที่ข้ามจากต้นช่วง
+     * @param limit    จำนวนแถวสูงสุด (-1 = ไม่จำกัด)
+     */
+    RowStream(SheetSnapshot sheet, int startRow, int endRow, int[] columnIndices, String[] keys, int offset, int limit) {
+        this.sheet = sheet;
+        this.columns = ExcelReader.columnsOf(sheet, columnIndices);
+        this.keys = keys;
+        this.startRow = startRow;
+        this.endRow = ExcelReader.endRowOf(columns, endRow);
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * ตัวอ่านใหม่ตั้งแต่แถวแรกของผลลัพธ์
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public int size() {
+        return rows().length;
+    }
+
+    @Override
+    public Map<String, Object> get(int index) {
+        int rowIdx = rows()[index];
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            row.put(keys[i], columns[i].getValue(rowIdx, sheet));
+        }
+        return row;
+    }
+
+    private int[] rows() {
+        if (rows == null) {
+            int[] found = new int[16];
+            int count = 0;
+            Cursor cursor = new Cursor();
+            for (int rowIdx = cursor.next(); rowIdx >= 0; rowIdx = cursor.next()) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = rowIdx;
+            }
+            rows = Arrays.copyOf(found, count);
+        }
+        return rows;
+    }
+
+    /**
+     * อ่านแถวของผลลัพธ์ตามลำดับ
+     */
+    final class Cursor {
+        /** แถวถัดไปของ snapshot (-1 = หมดแล้ว) */
+        private int nextRow;
+        /** จำนวนแถวที่ยังอ่านได้ (-1 = ไม่จำกัด) */
+        private int remaining = limit;
+        private RowSet page;
+
+        private Cursor() {
+            nextRow = sheet.nextPresentRow(Math.max(startRow, 0));
+            for (int skipped = 0; skipped < offset && nextRow >= 0 && nextRow <= endRow; skipped++) {
+                nextRow = sheet.nextPresentRow(nextRow + 1);
+            }
+        }
+
+        /**
+         * แถวถัดไปของ snapshot หรือ -1 ถ้าหมดแล้ว
+         */
+        int next() {
+            if (remaining == 0 || nextRow < 0 || nextRow > endRow) {
+                return -1;
+            }
+            int rowIdx = nextRow;
+            nextRow = sheet.nextPresentRow(rowIdx + 1);
+            if (remaining > 0) {
+                remaining--;
+            }
+            return rowIdx;
+        }
+
+        /**
+         * หน้าถัดไป (ไม่เกิน PAGE_SIZE แถว) หรือ null ถ้าหมดแล้ว
+         * หน้าก่อนหน้าถูกเขียนทับ จึงต้องใช้ให้เสร็จก่อนเรียกครั้งถัดไป
+         */
+        RowSet nextPage() {
+            if (page == null) {
+                page = new RowSet(keys);
+            } else {
+                page.truncate(0);
+            }
+            while (page.size() < PAGE_SIZE) {
+                int rowIdx = next();
+                if (rowIdx < 0) {
+                    break;
+                }
+                int row = page.addRow();
+                for (int i = 0; i < columns.length; i++) {
+                    page.set(row, i, sheet, columns[i], rowIdx);
+                }
+            }
+            return page.size() > 0 ? page : null;
+        }
+    }
+}
@@ -0,0 +1,613 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * consumer ของค่าเซลล์ที่ใช้ร่วมกันระหว่างการอ่านแบบ streaming (StreamingExcelReader)
+ * และการอ่านแบบรวมรอบจาก Workbook (FusedScan)
+ */
+final class ScanConsumers {
+
+    private ScanConsumers() {
+    }
+
+    /**
+     * consumer ที่ให้ผลลัพธ์หลังอ่านชีทจบ
+     * ผู้อ่านเรียก close() หลังอ่านจบเสมอ (แม้อ่านไม่สำเร็จ) เพื่อคืนทรัพยากรชั่วคราว เช่น ไฟล์ของ DuplicateFinder
+     */
+    abstract static class ResultConsumer implements XlsxStreamingReader.SheetConsumer, AutoCloseable {
+        abstract Object result();
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * ปิด consumer ทุกตัว
+     */
+    static void closeAll(Iterable<? extends List<? extends XlsxStreamingReader.SheetConsumer>> consumers) {
+        for (List<? extends XlsxStreamingReader.SheetConsumer> sheetConsumers : consumers) {
+            for (XlsxStreamingReader.SheetConsumer consumer : sheetConsumers) {
+                if (consumer instanceof ResultConsumer) {
+                    ((ResultConsumer) consumer).close();
+                }
+            }
+        }
+    }
+
+    /**
+     * consumer ที่อ่านเฉพาะเซลล์ที่ไม่ว่างในช่วงคอลัมน์และแถวที่แน่นอน
+     * ใช้จัดกลุ่มคำสั่งที่อ่านคอลัมน์เดียวกันให้อ่านพร้อมกันในรอบเดียว (ดู FusedScan)
+     */
+    abstract static class RangeConsumer extends ResultConsumer {
+        abstract int firstColumn();
+
+        abstract int lastColumn();
+
+        abstract int firstRow();
+
+        /**
+         * แถวสุดท้ายที่ต้องอ่าน (Integer.MAX_VALUE = ถึงแถวสุดท้ายของชีท)
+         */
+        abstract int lastRow();
+
+        /**
+         * true = ได้ผลลัพธ์แล้ว ไม่ต้องอ่านแถวต่อไปอีก
+         */
+        boolean finished() {
+            return false;
+        }
+
+        /**
+         * true = รับเซลล์ของ SheetSnapshot ผ่าน cell(SheetSnapshot, Column, ...) ในโหมด DOM
+         * โดยไม่ต้องสร้าง object ของค่าทุกเซลล์
+         */
+        boolean readsColumns() {
+            return false;
+        }
+
+        /**
+         * เซลล์ที่ไม่ว่างจากคอลัมน์ของ SheetSnapshot (FusedScan เรียกแทน cell เมื่อ readsColumns เป็น true)
+         */
+        void cell(SheetSnapshot sheet, SheetSnapshot.Column column, int rowIdx, int colIdx) {
+            cell(rowIdx, colIdx, column.getValue(rowIdx, sheet), false);
+        }
+    }
+
+    /**
+     * อ่านค่าเซลล์เดียว (COLUMN)
+     */
+    static final class CellConsumer extends ResultConsumer {
+        private final int row;
+        private final int col;
+        private Object value;
+
+        CellConsumer(int row, int col) {
+            this.row = row;
+            this.col = col;
+        }
+
+        @Override
+        public void cell(int rowIdx, int colIdx, Object cellValue, boolean empty) {
+            if (rowIdx == row && colIdx == col) {
+                value = cellValue;
+            }
+        }
+
+        @Override
+        Object result() {
+            return value;
+        }
+    }
+
+    /**
+     * นับจำนวนเซลล์ที่ไม่ว่างในคอลัมน์เริ่มต้นของช่วง (COUNT)
+     * กรณี EOF จำนวนเซลล์ที่ไม่ว่างถึงแถวสุดท้ายที่มีข้อมูล เท่ากับจำนวนเซลล์ที่ไม่ว่างทั้งหมดตั้งแต่แถวเริ่มต้น
+     */
+    static final class CountConsumer extends RangeConsumer {
+        private final RangeSpec range;
+        private int count;
+
+        CountConsumer(RangeSpec range) {
+            this.range = range;
+        }
+
+        @Override
+        public void cell(int rowIdx, int colIdx, Object value, boolean empty) {
+            if (colIdx == range.startCol && !empty && range.containsRow(rowIdx)) {
+                count++;
+            }
+        }
+
+        @Override
+        boolean readsColumns() {
+            return true;
+        }
+
+        @Override
+        void cell(SheetSnapshot sheet, SheetSnapshot.Column column, int rowIdx, int colIdx) {
+            if (colIdx == range.startCol && range.containsRow(rowIdx)) {
+                count++;
+            }
+        }
+
+        @Override
+        Object result() {
+            return count;
+        }
+
+        @Override
+        int firstColumn() {
+            return range.startCol;
+        }
+
+        @Override
+        int lastColumn() {
+            return range.startCol;
+        }
+
+        @Override
+        int firstRow() {
+            return range.startRow;
+        }
+
+        @Override
+        int lastRow() {
+            return range.endRow;
+        }
+    }
+
+    /**
+     * เก็บตำแหน่งของแต่ละค่าในช่วง และคืนเฉพาะค่าที่ซ้ำ (CHKDUPLICATE)
+     */
+    static final class DuplicateConsumer extends RangeConsumer {
+        private final RangeSpec range;
+        private final Set<Object> exceptValues;
+        private final DuplicateFinder finder;
+        private Map<Object, List<String>> duplicates;
+
+        DuplicateConsumer(RangeSpec range, Set<Object> exceptValues) {
+            this.range = range;
+            this.exceptValues = exceptValues;
+            this.finder = new DuplicateFinder(range);
+        }
+
+        @Override
+        public void cell(int rowIdx, int colIdx, Object value, boolean empty) {
+            if (empty || colIdx < range.startCol || colIdx > range.endCol || !range.containsRow(rowIdx)) {
+                return;
+            }
+            if (exceptValues != null && exceptValues.contains(value)) {
+                return;
+            }
+            finder.add(value, rowIdx, colIdx);
+        }
+
+        @Override
+        boolean readsColumns() {
+            return true;
+        }
+
+        /**
+         * โหมด DOM: เก็บค่าเป็น primitive จากคอลัมน์ (สร้างค่าเฉพาะเมื่อต้องเทียบกับค่ายกเว้น)
+         */
+        @Override
+        void cell(SheetSnapshot sheet, SheetSnapshot.Column column, int rowIdx, int colIdx) {
+            if (colIdx < range.startCol || colIdx > range.endCol || !range.containsRow(rowIdx)) {
+                return;
+            }
+            if (exceptValues != null && !exceptValues.isEmpty()
+                    && exceptValues.contains(column.getValue(rowIdx, sheet))) {
+                return;
+            }
+            finder.add(sheet, column, rowIdx, colIdx);
+        }
+
+        /**
+         * หาค่าซ้ำทันทีที่อ่านชีทจบ ไฟล์ชั่วคราวจึงไม่ค้างอยู่จนกว่าจะอ่านผลลัพธ์
+         */
+        @Override
+        public void endSheet() {
+            if (duplicates == null) {
+                try (DuplicateFinder closing = finder) {
+                    duplicates = closing.duplicates();
+                }
+            }
+        }
+
+        @Override
+        Object result() {
+            endSheet();
+            return duplicates;
+        }
+
+        @Override
+        public void close() {
+            finder.close();
+        }
+
+        @Override
+        int firstColumn() {
+            return range.startCol;
+        }
+
+        @Override
+        int lastColumn() {
+            return range.endCol;
+        }
+
+        @Override
+        int firstRow() {
+            return range.startRow;
+        }
+
+        @Override
+        int lastRow() {
+            return range.endRow;
+        }
+    }
+
+    /**
+     * บันทึกค่าทั้งหมดในช่วงลง CrossSheetIndex ของเงื่อนไข CHKSHEETDUPLICATE
+     */
+    static final class CrossSheetConsumer extends RangeConsumer {
+        private final RangeSpec range;
+        private final Set<Object> exceptValues;
+        private final CrossSheetIndex index;
+        private final int sheetIdx;
+
+        CrossSheetConsumer(RangeSpec range, Set<Object> exceptValues, CrossSheetIndex index, int sheetIdx) {
+            this.range = range;
+            this.exceptValues = exceptValues;
+            this.index = index;
+            this.sheetIdx = sheetIdx;
+        }
+
+        @Override
+        public void cell(int rowIdx, int colIdx, Object value, boolean empty) {
+            if (empty || colIdx < range.startCol || colIdx > range.endCol || !range.containsRow(rowIdx)) {
+                return;
+            }
+            String cellValue = value == null ? "" : value.toString().trim();
+            if (exceptValues != null && exceptValues.contains(cellValue)) {
+                return;
+            }
+            index.add(sheetIdx, cellValue, rowIdx, colIdx);
+        }
+
+        @Override
+        Object result() {
+            return index;
+        }
+
+        @Override
+        int firstColumn() {
+            return range.startCol;
+        }
+
+        @Override
+        int lastColumn() {
+            return range.endCol;
+        }
+
+        @Override
+        int firstRow() {
+            return range.startRow;
+        }
+
+        @Override
+        int lastRow() {
+            return range.endRow;
+        }
+    }
+
+    /**
+     * อ่านแถวในช่วงที่กำหนด (ROW) ทุกแถวที่มีอยู่จริงจะได้ค่าของคอลัมน์ที่เลือก (เก็บใน RowSet)
+     * ข้าม offset แถวแรกและเก็บไม่เกิน limit แถวเหมือน RowStream
+     * กรณี EOF ตัดแถวท้ายที่อยู่หลังแถวสุดท้ายที่ไม่ว่างในคอลัมน์ที่เลือกออกตอนจบ (เหมือน ExcelReader.endRowOf)
+     */
+    static final class RowsConsumer extends ResultConsumer {
+        private final int startRow;
+        private final int endRow;
+        private final int[] columnIndices;
+        private final int offset;
+        private final int limit;
+        private final RowSet rows;
+        private boolean inRange;
+        /** แถวปัจจุบันใน rows (-1 = ไม่เก็บแถวนี้) */
+        private int current = -1;
+        private int skipped;
+        /** จำนวนแถวที่เก็บไว้จนถึงแถวล่าสุดที่มีเซลล์ไม่ว่างในคอลัมน์ที่เลือก (ใช้กรณี EOF) */
+        private int keep;
+
+        RowsConsumer(int startRow, int endRow, int[] columnIndices, String[] keys, int offset, int limit) {
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.columnIndices = columnIndices;
+            this.offset = offset;
+            this.limit = limit;
+            this.rows = new RowSet(keys);
+        }
+
+        @Override
+        public void startRow(int rowIdx) {
+            inRange = rowIdx >= startRow && rowIdx <= endRow;
+            current = -1;
+            if (!inRange) {
+                return;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else if (limit < 0 || rows.size() < limit) {
+                current = rows.addRow();
+            }
+        }
+
+        @Override
+        public void cell(int rowIdx, int colIdx, Object value, boolean empty) {
+            if (!inRange) {
+                return;
+            }
+            for (int i = 0; i < columnIndices.length; i++) {
+                if (columnIndices[i] == colIdx) {
+                    if (current >= 0) {
+                        rows.set(current, i, value);
+                    }
+                    if (!empty) {
+                        keep = rows.size();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void endRow(int rowIdx) {
+            inRange = false;
+            current = -1;
+        }
+
+        @Override
+        Object result() {
+            if (endRow == Integer.MAX_VALUE) {
+                rows.truncate(keep);
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * ค้นหาแถวแรกที่ตรงตามเงื่อนไขในคอลัมน์ที่กำหนด (ROWBY แบบ streaming ส่วน Workbook ใน session ใช้ RowLookupIndex)
+     */
+    static final class RowBySearchConsumer extends RangeConsumer {
+        private final ExcelPlan.RowByStep step;
+        private int foundRowIdx = -1;
+        private IllegalArgumentException failure;
+        private boolean sheetEnded;
+
+        RowBySearchConsumer(ExcelPlan.RowByStep step) {
+            this.step = step;
+        }
+
+        @Override
+        public void endSheet() {
+            sheetEnded = true;
+        }
+
+        /**
+         * true = รู้ผลการค้นหาแล้ว (พบแถว เงื่อนไขไม่ถูกต้อง หรืออ่านชีทที่ค้นหาจบแล้ว)
+         */
+        boolean done() {
+            return sheetEnded || finished();
+        }
+
+        @Override
+        public void cell(int rowIdx, int colIdx, Object value, boolean empty) {
+            if (foundRowIdx >= 0 || failure != null || colIdx != step.searchColIdx || empty) {
+                return;
+            }
+
+            if (step.condition == null) {
+                failure = new IllegalArgumentException("เงื่อนไขไม่ถูกต้อง: " + step.conditionName);
+                return;
+            }
+
+            String cellStrValue = value != null ? value.toString().trim() : "";
+            if (step.condition.matches(cellStrValue, step.searchPattern)) {
+                foundRowIdx = rowIdx;
+            }
+        }
+
+        @Override
+        Object result() {
+            return foundRowIdx;
+        }
+
+        /**
+         * index ของแถวที่พบ (0-based) หรือ -1 ถ้าไม่พบ
+         * โยน IllegalArgumentException ถ้าเงื่อนไขไม่ถูกต้อง
+         */
+        int foundRow() {
+            if (failure != null) {
+                throw failure;
+            }
+            return foundRowIdx;
+        }
+
+        /**
+         * อ่านค่าจากคอลัมน์ที่กำหนด โดยแทนที่ ? ด้วยเลขแถวที่พบ
+         */
+        List<Object> resolve(ProjectionConsumer projection, ExcelPlan.ColumnRef[] columnRefs) {
+            List<Object> result = new ArrayList<>();
+            int rowIdx = foundRow();
+            if (rowIdx == -1) {
+                return result;
+            }
+
+            for (int i = 0; i < columnRefs.length; i++) {
+                if (!columnRefs[i].compiled) {
+                    // ตรวจรูปแบบตำแหน่งเหมือนเดิม (โยน IllegalArgumentException ถ้าไม่ถูกต้อง)
+                    columnRefs[i].resolve(rowIdx);
+                }
+                result.add(projection.get(i, rowIdx));
+            }
+            return result;
+        }
+
+        @Override
+        int firstColumn() {
+            return step.searchColIdx;
+        }
+
+        @Override
+        int lastColumn() {
+            return step.searchColIdx;
+        }
+
+        @Override
+        int firstRow() {
+            return 0;
+        }
+
+        @Override
+        int lastRow() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        boolean finished() {
+            return foundRowIdx >= 0 || failure != null;
+        }
+    }
+
+    /**
+     * เก็บค่าของเซลล์ที่ columnRefs ของ ROWBY อ้างถึง เพื่อใช้หลังการค้นหา
+     *
+     * ตำแหน่งแถวคงที่ (เช่น B5) เก็บเฉพาะเซลล์นั้น ส่วนตำแหน่งที่ใช้แถวที่พบ (เช่น C?) เก็บค่าของแถวปัจจุบันไว้
+     * แล้วเก็บเป็นผลเมื่อแถวนั้นคือแถวที่ค้นพบ ถ้าชีทที่อ่านเป็นชีทเดียวกับชีทที่ค้นหาจะพบแถวระหว่างอ่านแถวนั้นเสมอ
+     * จึงไม่ต้องเก็บแถวอื่น ถ้าเป็นคนละชีทและชีทที่อ่านถูกอ่านก่อนการค้นหาจบ จะเก็บค่าทุกแถวในอาร์เรย์ตามแถว
+     * (RowSet: ชนิดค่าใน byte[] ตัวเลขใน double[]) ไม่ต้องสร้าง Map และ key ต่อเซลล์
+     */
+    static final class ProjectionConsumer extends ResultConsumer {
+        private final ExcelPlan.ColumnRef[] refs;
+        private final RowBySearchConsumer search;
+        /** true = ชีทเดียวกับชีทที่ค้นหา */
+        private final boolean sameSheet;
+        /** ช่องของคอลัมน์ (index = คอลัมน์, -1 = ไม่ได้ใช้กับแถวที่พบ) */
+        private final int[] slotOfColumn;
+        /** ช่องของ ref ที่ใช้แถวที่พบ (-1 = ไม่ใช่) */
+        private final int[] refSlots;
+        /** ค่าของ ref ที่แถวคงที่ */
+        private final Object[] fixedValues;
+        /** ค่าของแถวปัจจุบันและของแถวที่พบ ตามช่อง */
+        private final Object[] current;
+        private Object[] found;
+        /** ค่าทุกแถวตามช่อง (เฉพาะคนละชีทและยังค้นหาไม่จบ) */
+        private RowSet rows;
+
+        ProjectionConsumer(ExcelPlan.ColumnRef[] refs, RowBySearchConsumer search, boolean sameSheet) {
+            this.refs = refs;
+            this.search = search;
+            this.sameSheet = sameSheet;
+            this.fixedValues = new Object[refs.length];
+            this.refSlots = new int[refs.length];
+
+            int maxCol = -1;
+            for (ExcelPlan.ColumnRef ref : refs) {
+                if (ref.compiled) {
+                    maxCol = Math.max(maxCol, ref.col);
+                }
+            }
+            slotOfColumn = new int[maxCol + 1];
+            Arrays.fill(slotOfColumn, -1);
+            int slots = 0;
+            for (int i = 0; i < refs.length; i++) {
+                refSlots[i] = -1;
+                if (refs[i].compiled && refs[i].relative) {
+                    if (slotOfColumn[refs[i].col] < 0) {
+                        slotOfColumn[refs[i].col] = slots++;
+                    }
+                    refSlots[i] = slotOfColumn[refs[i].col];
+                }
+            }
+            current = new Object[slots];
+        }
+
+        @Override
+        public void startRow(int rowIdx) {
+            Arrays.fill(current, null);
+        }
+
+        @Override
+        public void cell(int rowIdx, int colIdx, Object value, boolean empty) {
+            if (value == null || colIdx >= slotOfColumn.length) {
+                return;
+            }
+            int slot = slotOfColumn[colIdx];
+            if (slot >= 0) {
+                current[slot] = value;
+            }
+            for (int i = 0; i < refs.length; i++) {
+                ExcelPlan.ColumnRef ref = refs[i];
+                if (ref.compiled && !ref.relative && ref.row == rowIdx && ref.col == colIdx) {
+                    fixedValues[i] = value;
+                }
+            }
+        }
+
+        @Override
+        public void endRow(int rowIdx) {
+            if (current.length == 0 || found != null) {
+                return;
+            }
+            if (search.foundRowIdx == rowIdx) {
+                found = current.clone();
+            } else if (!sameSheet && !search.done()) {
+                // ยังไม่รู้แถวที่พบ: เก็บแถวนี้ไว้ก่อน
+                if (rows == null) {
+                    String[] keys = new String[current.length];
+                    for (int slot = 0; slot < keys.length; slot++) {
+                        keys[slot] = String.valueOf(slot);
+                    }
+                    rows = new RowSet(keys);
+                }
+                while (rows.size() <= rowIdx) {
+                    rows.addRow();
+                }
+                for (int slot = 0; slot < current.length; slot++) {
+                    rows.set(rowIdx, slot, current[slot]);
+                }
+            }
+        }
+
+        /**
+         * ค่าของ refs[refIdx] เมื่อพบแถว foundRowIdx (null ถ้าไม่มีค่า หรือ ref ที่แปลงตำแหน่งตอนอ่าน)
+         */
+        Object get(int refIdx, int foundRowIdx) {
+            ExcelPlan.ColumnRef ref = refs[refIdx];
+            if (!ref.compiled) {
+                return null;
+            }
+            if (!ref.relative) {
+                return fixedValues[refIdx];
+            }
+            int slot = refSlots[refIdx];
+            if (found != null) {
+                return found[slot];
+            }
+            if (rows != null && foundRowIdx < rows.size()) {
+                return rows.getValue(foundRowIdx, slot);
+            }
+            return null;
+        }
+
+        @Override
+        Object result() {
+            return null;
+        }
+    }
+}
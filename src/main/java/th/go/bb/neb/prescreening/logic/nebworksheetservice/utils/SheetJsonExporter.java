@@ -0,0 +1,181 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.poi.ss.util.CellReference;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * เขียนแถวของชีทเป็น JSON ทันทีที่อ่านจบแต่ละแถว (ใช้โดย ExcelUtil.exportSheetToJson)
+ *
+ * ผลลัพธ์ของแต่ละแถวเหมือน ExcelUtil.readSheetToJson: ทุกคอลัมน์ตั้งแต่ A ถึงคอลัมน์สุดท้ายของชีท
+ * ค่าเป็นข้อความตาม getCellValueAsString, key เป็นหัวตาราง (แถวแรก) หรือชื่อคอลัมน์ (A, B, ..., Z, AA, AB, ...)
+ * ข้ามแถวที่ไม่มีค่าเลย และลำดับ key เหมือน JSONObject (HashMap)
+ * จำนวนคอลัมน์มาจาก setWidth หรือ dimension ของชีท ถ้าไม่รู้จำนวนคอลัมน์ก่อนแถวแรก หรือพบเซลล์เกินจำนวนนั้น
+ * จะหยุดเขียนและวัดจำนวนคอลัมน์จนจบชีทแทน ผู้เรียกต้องตรวจ measuredWidth แล้วอ่านใหม่ด้วย setWidth
+ * เก็บเฉพาะค่าของแถวปัจจุบัน หน่วยความจำจึงคงที่ไม่ขึ้นกับจำนวนแถว
+ */
+final class SheetJsonExporter implements XlsxStreamingReader.SheetConsumer {
+
+    private final JsonGenerator generator;
+    private final boolean hasHeader;
+    private final boolean ndjson;
+
+    private int width;
+    private boolean widthKnown;
+    /** จำนวนคอลัมน์จริงของชีท (คอลัมน์สุดท้ายที่มีเซลล์ + 1) เหมือน getLastCellNum ที่มากที่สุด */
+    private int dataWidth;
+    /** true = จำนวนคอลัมน์ไม่ถูกต้อง: วัดจำนวนคอลัมน์อย่างเดียว */
+    private boolean measuring;
+    /** หัวตาราง (null = ยังไม่อ่านแถวแรกหรือไม่มีหัวตาราง) และคอลัมน์ที่มีเซลล์ในแถวหัวตาราง */
+    private String[] headers;
+    private boolean[] headerPresent;
+    private boolean firstRow = true;
+    /** คอลัมน์ของแต่ละ key ตามลำดับของ HashMap (key ซ้ำใช้คอลัมน์หลังสุด) */
+    private int[] fieldOrder;
+    private String[] keys;
+
+    private String[] values = new String[0];
+    private boolean[] present = new boolean[0];
+    private boolean hasData;
+
+    /**
+     * @param generator ปลายทาง (ผู้เรียกเขียน [ ] ของ array และปิดเอง)
+     * @param hasHeader true = แถวแรกเป็นหัวตาราง
+     * @param ndjson    true = ขึ้นบรรทัดใหม่หลังแต่ละแถว (JSON Lines)
+     */
+    SheetJsonExporter(JsonGenerator generator, boolean hasHeader, boolean ndjson) {
+        this.generator = generator;
+        this.hasHeader = hasHeader;
+        this.ndjson = ndjson;
+    }
+
+    /**
+     * กำหนดจำนวนคอลัมน์ (ใช้แทน dimension ของชีท)
+     */
+    void setWidth(int width) {
+        widthKnown = true;
+        ensureWidth(width);
+    }
+
+    /**
+     * จำนวนคอลัมน์จริงเมื่อผลลัพธ์ที่เขียนไม่ถูกต้อง (ชีทไม่มี dimension หรือ dimension ไม่ตรงกับเซลล์)
+     * ต้องอ่านใหม่ด้วย setWidth หรือ -1 ถ้าผลลัพธ์ถูกต้อง
+     */
+    int measuredWidth() {
+        return measuring || dataWidth != width ? dataWidth : -1;
+    }
+
+    @Override
+    public void dimension(int firstRow, int firstCol, int lastRow, int lastCol) {
+        if (!widthKnown) {
+            setWidth(lastCol + 1);
+        }
+    }
+
+    @Override
+    public void startRow(int rowIdx) {
+        if (!widthKnown) {
+            measuring = true;
+        }
+        Arrays.fill(values, null);
+        Arrays.fill(present, false);
+        hasData = false;
+    }
+
+    @Override
+    public void cell(int rowIdx, int colIdx, Object value, boolean empty) {
+        dataWidth = Math.max(dataWidth, colIdx + 1);
+        if (measuring) {
+            return;
+        }
+        if (colIdx >= width) {
+            // dimension แคบกว่าข้อมูลจริง: แถวที่เขียนแล้วขาด key ของคอลัมน์นี้
+            measuring = true;
+            return;
+        }
+        // ค่าตาม ExcelReader.getCellValue: จำนวนเต็มของเซลล์ตัวเลขมาเป็น Integer/Long ส่วน Double คือทศนิยม
+        // หรือผลของสูตร (เช่น "5.0") toString จึงได้ข้อความเดียวกับ ExcelUtil.getCellValueAsString
+        String text = value != null ? value.toString() : "";
+        values[colIdx] = text;
+        present[colIdx] = true;
+        if (!text.isEmpty()) {
+            hasData = true;
+        }
+    }
+
+    @Override
+    public void endRow(int rowIdx) {
+        if (measuring) {
+            return;
+        }
+        if (firstRow) {
+            firstRow = false;
+            if (hasHeader) {
+                headers = values.clone();
+                headerPresent = present.clone();
+                fieldOrder = null;
+                return;
+            }
+        }
+        if (!hasData) {
+            return;
+        }
+        try {
+            writeRow();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeRow() throws IOException {
+        if (fieldOrder == null) {
+            buildFields();
+        }
+        generator.writeStartObject();
+        for (int col : fieldOrder) {
+            String value = values[col];
+            generator.writeStringField(keys[col], value != null ? value : "");
+        }
+        generator.writeEndObject();
+        if (ndjson) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    /**
+     * key ของแต่ละคอลัมน์และลำดับตาม HashMap (สร้างใหม่เมื่อจำนวนคอลัมน์เปลี่ยน)
+     */
+    private void buildFields() {
+        keys = new String[width];
+        Map<String, Integer> order = new HashMap<>();
+        for (int col = 0; col < width; col++) {
+            if (headers == null) {
+                keys[col] = CellReference.convertNumToColString(col);
+            } else if (col < headers.length && headerPresent[col]) {
+                keys[col] = headers[col];
+            } else {
+                keys[col] = "Column" + (col + 1);
+            }
+            order.put(keys[col], col);
+        }
+        fieldOrder = new int[order.size()];
+        int field = 0;
+        for (int col : order.values()) {
+            fieldOrder[field++] = col;
+        }
+    }
+
+    private void ensureWidth(int newWidth) {
+        if (newWidth <= width) {
+            return;
+        }
+        width = newWidth;
+        values = Arrays.copyOf(values, newWidth);
+        present = Arrays.copyOf(present, newWidth);
+    }
+}
@@ -0,0 +1,275 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.internal.ZipHelper;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+import org.apache.poi.openxml4j.util.ZipFileZipEntrySource;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * เปิดไฟล์ .xlsx เป็น XSSFWorkbook โดยแปลงเฉพาะชีทที่ระบุ
+ *
+ * อ่าน workbook.xml และ workbook.xml.rels เพื่อหาว่าแต่ละชื่อชีทอยู่ใน part ไหน
+ * ชีทที่ไม่ได้ระบุจะถูกแทนด้วยชีทว่างตอนโหลด โดยไม่คลายการบีบอัด part เดิมในไฟล์เลย
+ * รายชื่อและลำดับชีทใน Workbook ยังเหมือนเดิม (getSheet ของชีทที่ไม่มีในไฟล์ยังได้ null)
+ * เวลาและหน่วยความจำที่ใช้จึงขึ้นกับขนาดของชีทที่ใช้จริงเท่านั้น
+ */
+final class SheetSelectiveLoader {
+
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String OFFICE_DOCUMENT_REL = RELATIONSHIPS_NS + "/officeDocument";
+    private static final String WORKSHEET_REL = RELATIONSHIPS_NS + "/worksheet";
+
+    /** ชีทว่างที่ใช้แทน part ของชีทที่ไม่ได้ระบุ */
+    private static final byte[] EMPTY_WORKSHEET = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+            + " xmlns:r=\"" + RELATIONSHIPS_NS + "\"><sheetData/></worksheet>").getBytes(StandardCharsets.UTF_8);
+
+    private SheetSelectiveLoader() {
+    }
+
+    /**
+     * เปิดไฟล์ .xlsx โดยแปลงเฉพาะชีทในรายการ (ไม่สนตัวพิมพ์เล็ก/ใหญ่ เหมือน Workbook.getSheet)
+     *
+     * @param file       ไฟล์ .xlsx
+     * @param sheetNames ชื่อชีทที่ต้องใช้
+     * @return XSSFWorkbook ที่ต้องปิดเมื่อใช้งานเสร็จ
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
+     */
+    static XSSFWorkbook open(File file, Set<String> sheetNames) throws IOException {
+        if (!file.isFile()) {
+            // ข้อความเดียวกับ FileInputStream ใน WorkbookSession.createWorkbook
+            throw new FileNotFoundException(file.getPath() + " (No such file or directory)");
+        }
+
+        ZipFileZipEntrySource zip = new ZipFileZipEntrySource(ZipHelper.openZipFile(file));
+        try {
+            Set<String> skipped = unreferencedSheetParts(zip, sheetNames);
+            OPCPackage pkg = OPCPackage.open(new SelectiveEntrySource(zip, skipped));
+            try {
+                return new XSSFWorkbook(pkg);
+            } catch (IOException | RuntimeException e) {
+                pkg.revert();
+                throw e;
+            }
+        } catch (InvalidFormatException e) {
+            zip.close();
+            throw new IOException("ไม่สามารถอ่านไฟล์ .xlsx: " + file.getName(), e);
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    /**
+     * ชื่อ entry ใน zip ของชีทที่ไม่อยู่ในรายการ
+     */
+    static Set<String> unreferencedSheetParts(ZipEntrySource zip, Set<String> sheetNames) throws IOException {
+        Set<String> wanted = new HashSet<>();
+        for (String sheetName : sheetNames) {
+            wanted.add(sheetName.toLowerCase());
+        }
+
+        // หา part ของ workbook จาก _rels/.rels (ปกติคือ xl/workbook.xml)
+        String workbookPart = null;
+        for (Relationship rel : readRelationships(zip, "", "_rels/.rels").values()) {
+            if (OFFICE_DOCUMENT_REL.equals(rel.type)) {
+                workbookPart = rel.target;
+                break;
+            }
+        }
+        if (workbookPart == null) {
+            return new HashSet<>();
+        }
+
+        int slash = workbookPart.lastIndexOf('/');
+        String workbookDir = slash >= 0 ? workbookPart.substring(0, slash + 1) : "";
+        String relsPart = workbookDir + "_rels/" + workbookPart.substring(slash + 1) + ".rels";
+        Map<String, Relationship> rels = readRelationships(zip, workbookDir, relsPart);
+
+        // ชื่อชีทและ r:id จาก workbook.xml
+        SheetListHandler sheetList = new SheetListHandler();
+        parse(zip, workbookPart, sheetList);
+
+        Set<String> skipped = new HashSet<>();
+        for (Map.Entry<String, String> sheet : sheetList.sheets.entrySet()) {
+            Relationship rel = rels.get(sheet.getValue());
+            if (rel == null || !WORKSHEET_REL.equals(rel.type) || wanted.contains(sheet.getKey().toLowerCase())) {
+                continue;
+            }
+            if (zip.getEntry(rel.target) != null) {
+                skipped.add(rel.target);
+            }
+        }
+        return skipped;
+    }
+
+    private static Map<String, Relationship> readRelationships(ZipEntrySource zip, String baseDir, String relsPart)
+            throws IOException {
+        RelationshipHandler handler = new RelationshipHandler(baseDir);
+        parse(zip, relsPart, handler);
+        return handler.relationships;
+    }
+
+    private static void parse(ZipEntrySource zip, String partName, DefaultHandler handler) throws IOException {
+        ZipArchiveEntry entry = zip.getEntry(partName);
+        if (entry == null) {
+            return;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(in));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("ไม่สามารถอ่าน " + partName, e);
+        }
+    }
+
+    /**
+     * แปลง Target ของ relationship เป็นชื่อ entry ใน zip (ไม่มี / นำหน้า)
+     */
+    static String resolveTarget(String baseDir, String target) {
+        String path = target.startsWith("/") ? target.substring(1) : baseDir + target;
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment)) {
+                segments.pollLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    private static String elementName(String localName, String qName) {
+        if (localName != null && !localName.isEmpty()) {
+            return localName;
+        }
+        int idx = qName.indexOf(':');
+        return idx >= 0 ? qName.substring(idx + 1) : qName;
+    }
+
+    private static final class Relationship {
+        final String type;
+        final String target;
+
+        Relationship(String type, String target) {
+            this.type = type;
+            this.target = target;
+        }
+    }
+
+    /**
+     * อ่าน Relationship (Id, Type, Target) จากไฟล์ .rels
+     */
+    private static final class RelationshipHandler extends DefaultHandler {
+        private final String baseDir;
+        private final Map<String, Relationship> relationships = new LinkedHashMap<>();
+
+        RelationshipHandler(String baseDir) {
+            this.baseDir = baseDir;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!"Relationship".equals(elementName(localName, qName))) {
+                return;
+            }
+            String id = attributes.getValue("Id");
+            String target = attributes.getValue("Target");
+            if (id == null || target == null || "External".equals(attributes.getValue("TargetMode"))) {
+                return;
+            }
+            relationships.put(id, new Relationship(attributes.getValue("Type"), resolveTarget(baseDir, target)));
+        }
+    }
+
+    /**
+     * อ่านชื่อชีทและ r:id จาก workbook.xml
+     */
+    private static final class SheetListHandler extends DefaultHandler {
+        private final Map<String, String> sheets = new LinkedHashMap<>();
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!"sheet".equals(elementName(localName, qName))) {
+                return;
+            }
+            String relId = attributes.getValue(RELATIONSHIPS_NS, "id");
+            if (relId == null) {
+                relId = attributes.getValue("r:id");
+            }
+            String name = attributes.getValue("name");
+            if (name != null && relId != null) {
+                sheets.put(name, relId);
+            }
+        }
+    }
+
+    /**
+     * ZipEntrySource ที่คืนชีทว่างแทน part ของชีทที่ไม่ได้ระบุ (part เดิมไม่ถูกคลายการบีบอัด)
+     */
+    private static final class SelectiveEntrySource implements ZipEntrySource {
+        private final ZipEntrySource delegate;
+        private final Set<String> skipped;
+
+        SelectiveEntrySource(ZipEntrySource delegate, Set<String> skipped) {
+            this.delegate = delegate;
+            this.skipped = skipped;
+        }
+
+        @Override
+        public Enumeration<? extends ZipArchiveEntry> getEntries() {
+            return delegate.getEntries();
+        }
+
+        @Override
+        public ZipArchiveEntry getEntry(String path) {
+            return delegate.getEntry(path);
+        }
+
+        @Override
+        public InputStream getInputStream(ZipArchiveEntry entry) throws IOException {
+            if (skipped.contains(entry.getName())) {
+                return new ByteArrayInputStream(EMPTY_WORKSHEET);
+            }
+            return delegate.getInputStream(entry);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return delegate.isClosed();
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * สำเนาค่าของชีทแบบอ่านอย่างเดียว ที่แปลงค่าเซลล์ไว้แล้วตาม ExcelReader.getCellValue และ ExcelReader.isEmpty
+ *
+ * เก็บแบบคอลัมน์ (Column): ชนิดค่าต่อแถวใน byte[], ตัวเลข (รวมวันที่และ boolean) ใน double[],
+ * ข้อความเป็นลำดับใน dictionary ของชีทใน int[] (ข้อความเดียวกันเก็บครั้งเดียว) และเซลล์ที่ไม่ว่างเป็น bitmap
+ * อาร์เรย์ของแต่ละคอลัมน์ยาวถึงแถวสุดท้ายที่มีค่าในคอลัมน์นั้นเท่านั้น และ double[]/int[] ถูกสร้างเมื่อมีค่าชนิดนั้น
+ * การอ่านช่วงจึงเป็นการวนอาร์เรย์ของคอลัมน์โดยไม่ต้องผ่าน Row/Cell ของ POI
+ * และข้ามแถวว่างทีละ 64 แถวด้วย bitmap (nextNonEmptyRow, nextPresentRow) แทนการตรวจทุกแถวในช่วง
+ * แถวสุดท้ายที่ไม่ว่างของแต่ละคอลัมน์คำนวณไว้ตอนสร้าง การหาจุดสิ้นสุดของช่วง EOF จึงเป็น O(1)
+ * แม้ชีทจะมีแถวที่จัดรูปแบบไว้ถึงแถวที่ 1,048,576
+ *
+ * ไม่ผูกกับ Workbook ของ POI จึงปิดไฟล์ได้ทันทีหลังสร้าง และใช้ร่วมกันระหว่าง thread ได้ (ดู SheetSnapshotCache)
+ * ทุกคำสั่งที่อ่านผ่าน WorkbookSession ใช้ค่าจาก snapshot นี้
+ */
+final class SheetSnapshot {
+
+    /** ชนิดค่าของเซลล์ (NONE = ไม่มีค่า เช่น ไม่มีเซลล์, BLANK หรือ ERROR) */
+    static final byte NONE = 0;
+    static final byte STRING = 1;
+    static final byte INTEGER = 2;
+    static final byte LONG = 3;
+    static final byte DOUBLE = 4;
+    static final byte DATE = 5;
+    static final byte BOOLEAN = 6;
+
+    private static final Column EMPTY_COLUMN = new Column(new byte[0], null, null, new long[0], -1);
+
+    private final String sheetName;
+    private final int lastRowNum;
+    /** แถวที่มีอยู่ในไฟล์ (bitmap ตาม index 0-based) */
+    private final long[] presentRows;
+    private final Column[] columns;
+    private final String[] strings;
+    private final long estimatedBytes;
+
+    private SheetSnapshot(String sheetName, int lastRowNum, long[] presentRows, Column[] columns,
+                          String[] strings, long estimatedBytes) {
+        this.sheetName = sheetName;
+        this.lastRowNum = lastRowNum;
+        this.presentRows = presentRows;
+        this.columns = columns;
+        this.strings = strings;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * อ่านค่าทุกเซลล์ในชีท
+     */
+    static SheetSnapshot of(Sheet sheet) {
+        int lastRowNum = sheet.getLastRowNum();
+        int rowLimit = Math.max(lastRowNum + 1, 0);
+        long[] presentRows = new long[(rowLimit + 63) >>> 6];
+        List<ColumnBuilder> builders = new ArrayList<>();
+        ValueCollector dictionary = new ValueCollector(false);
+        long rowCount = 0;
+
+        for (Row row : sheet) {
+            int rowIdx = row.getRowNum();
+            if (rowIdx < 0 || rowIdx >= rowLimit) {
+                continue;
+            }
+            presentRows[rowIdx >>> 6] |= 1L << rowIdx;
+            rowCount++;
+
+            for (Cell cell : row) {
+                int colIdx = cell.getColumnIndex();
+                if (colIdx < 0) {
+                    continue;
+                }
+                while (builders.size() <= colIdx) {
+                    builders.add(null);
+                }
+                ColumnBuilder builder = builders.get(colIdx);
+                if (builder == null) {
+                    builder = new ColumnBuilder();
+                    builders.set(colIdx, builder);
+                }
+                builder.add(rowIdx, cell, dictionary);
+            }
+        }
+        ReadStatistics.addRows(rowCount);
+
+        long bytes = 64L + 8L * presentRows.length;
+        Column[] columns = new Column[builders.size()];
+        for (int colIdx = 0; colIdx < columns.length; colIdx++) {
+            ColumnBuilder builder = builders.get(colIdx);
+            columns[colIdx] = builder == null ? EMPTY_COLUMN : builder.build();
+            bytes += 16L + columns[colIdx].estimatedBytes();
+        }
+        String[] strings = dictionary.values().toArray(new String[0]);
+        for (String text : strings) {
+            bytes += 48L + 2L * text.length();
+        }
+
+        return new SheetSnapshot(sheet.getSheetName(), lastRowNum, presentRows, columns, strings, bytes);
+    }
+
+    String getSheetName() {
+        return sheetName;
+    }
+
+    /**
+     * index ของแถวสุดท้ายในชีท (เหมือน Sheet.getLastRowNum)
+     */
+    int getLastRowNum() {
+        return lastRowNum;
+    }
+
+    /**
+     * true ถ้ามีแถวนี้ในไฟล์ (แถวที่ไม่มีเซลล์เลยแต่มีในไฟล์ถือว่ามี)
+     */
+    boolean hasRow(int rowIdx) {
+        return rowIdx >= 0 && rowIdx <= lastRowNum && (presentRows[rowIdx >>> 6] & (1L << rowIdx)) != 0;
+    }
+
+    /**
+     * แถวแรกที่มีอยู่ในไฟล์ตั้งแต่ fromRow หรือ -1 ถ้าไม่มีแล้ว
+     */
+    int nextPresentRow(int fromRow) {
+        return nextSetBit(presentRows, fromRow, lastRowNum + 1);
+    }
+
+    /**
+     * แถวแรกตั้งแต่ fromRow ที่มีเซลล์ไม่ว่างในคอลัมน์ใดคอลัมน์หนึ่ง หรือ -1 ถ้าไม่มีแล้ว
+     */
+    static int nextNonEmptyRow(Column[] columns, int fromRow) {
+        int next = -1;
+        for (Column column : columns) {
+            int row = column.nextNonEmptyRow(fromRow);
+            if (row >= 0 && (next < 0 || row < next)) {
+                next = row;
+                if (row == fromRow) {
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * บิตแรกที่ตั้งไว้ตั้งแต่ from (ไม่เกิน limit) หรือ -1
+     */
+    private static int nextSetBit(long[] bits, int from, int limit) {
+        if (from < 0) {
+            from = 0;
+        }
+        if (from >= limit) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long current = bits[word] & (-1L << from);
+        while (true) {
+            if (current != 0) {
+                int bit = (word << 6) + Long.numberOfTrailingZeros(current);
+                return bit < limit ? bit : -1;
+            }
+            if (++word >= bits.length) {
+                return -1;
+            }
+            current = bits[word];
+        }
+    }
+
+    /**
+     * แถวตาม index (0-based) หรือ null ถ้าไม่มีแถวนั้น
+     * เป็นเพียงมุมมองของคอลัมน์ การอ่านหลายแถวควรใช้ getColumn โดยตรง
+     */
+    SnapshotRow getRow(int rowIdx) {
+        return hasRow(rowIdx) ? new SnapshotRow(this, rowIdx) : null;
+    }
+
+    /**
+     * จำนวนคอลัมน์ (index ของคอลัมน์สุดท้ายที่มีเซลล์ + 1)
+     */
+    int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * คอลัมน์ตาม index (0-based) คอลัมน์ที่ไม่มีเซลล์เลยได้คอลัมน์ว่าง (ไม่เป็น null)
+     */
+    Column getColumn(int colIdx) {
+        return colIdx >= 0 && colIdx < columns.length ? columns[colIdx] : EMPTY_COLUMN;
+    }
+
+    /**
+     * แถวสุดท้าย (0-based) ที่ไม่ว่างในคอลัมน์ หรือ -1 ถ้าทั้งคอลัมน์ว่าง
+     */
+    int getLastNonEmptyRow(int colIdx) {
+        return getColumn(colIdx).lastNonEmptyRow();
+    }
+
+    /**
+     * แถวสุดท้าย (0-based) ที่ไม่ว่างในคอลัมน์ใดคอลัมน์หนึ่งตั้งแต่ firstCol ถึง lastCol หรือ -1 ถ้าว่างทั้งหมด
+     */
+    int getLastNonEmptyRow(int firstCol, int lastCol) {
+        int last = -1;
+        for (int colIdx = Math.max(firstCol, 0); colIdx <= lastCol && colIdx < columns.length; colIdx++) {
+            last = Math.max(last, columns[colIdx].lastNonEmptyRow());
+        }
+        return last;
+    }
+
+    /**
+     * ข้อความตามลำดับใน dictionary (จาก Column.getStringId)
+     */
+    String getString(int stringId) {
+        return strings[stringId];
+    }
+
+    /**
+     * จำนวนข้อความที่ไม่ซ้ำกันในชีท
+     */
+    int getStringCount() {
+        return strings.length;
+    }
+
+    /**
+     * ค่าเซลล์ตาม ExcelReader.getCellValue (null ถ้าไม่มีค่า)
+     */
+    Object getValue(int rowIdx, int colIdx) {
+        return getColumn(colIdx).getValue(rowIdx, this);
+    }
+
+    /**
+     * ขนาดโดยประมาณบน heap (ไบต์)
+     */
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * ค่าของคอลัมน์หนึ่ง ทุกเมธอดรับแถวเกินความยาวได้ (ถือว่าว่าง)
+     */
+    static final class Column {
+        private final byte[] types;
+        /** ตัวเลขตามที่อ่านจากเซลล์ (DATE = getTime, BOOLEAN = 1/0) null ถ้าไม่มีค่าชนิดตัวเลข */
+        private final double[] numbers;
+        /** ลำดับข้อความใน dictionary null ถ้าไม่มีข้อความ */
+        private final int[] stringIds;
+        /** เซลล์ที่ไม่ว่างตาม ExcelReader.isEmpty */
+        private final long[] nonEmpty;
+        private final int lastNonEmptyRow;
+
+        private Column(byte[] types, double[] numbers, int[] stringIds, long[] nonEmpty, int lastNonEmptyRow) {
+            this.types = types;
+            this.numbers = numbers;
+            this.stringIds = stringIds;
+            this.nonEmpty = nonEmpty;
+            this.lastNonEmptyRow = lastNonEmptyRow;
+        }
+
+        /**
+         * จำนวนแถวที่เก็บ (แถวตั้งแต่นี้ไปว่างทั้งหมด)
+         */
+        int length() {
+            return types.length;
+        }
+
+        /**
+         * true ถ้าเซลล์ว่างตาม ExcelReader.isEmpty (รวมกรณีไม่มีเซลล์หรือไม่มีแถว)
+         */
+        boolean isEmpty(int rowIdx) {
+            return rowIdx < 0 || rowIdx >= types.length || (nonEmpty[rowIdx >>> 6] & (1L << rowIdx)) == 0;
+        }
+
+        /**
+         * แถวสุดท้าย (0-based) ที่ไม่ว่าง หรือ -1 ถ้าทั้งคอลัมน์ว่าง
+         */
+        int lastNonEmptyRow() {
+            return lastNonEmptyRow;
+        }
+
+        /**
+         * แถวแรกที่ไม่ว่างตั้งแต่ fromRow หรือ -1 ถ้าไม่มีแล้ว
+         */
+        int nextNonEmptyRow(int fromRow) {
+            return nextSetBit(nonEmpty, fromRow, lastNonEmptyRow + 1);
+        }
+
+        /**
+         * จำนวนเซลล์ที่ไม่ว่างตั้งแต่ fromRow ถึง toRow (นับทีละ 64 แถวด้วย bitCount)
+         */
+        int countNonEmpty(int fromRow, int toRow) {
+            fromRow = Math.max(fromRow, 0);
+            toRow = Math.min(toRow, lastNonEmptyRow);
+            if (fromRow > toRow) {
+                return 0;
+            }
+            int firstWord = fromRow >>> 6;
+            int lastWord = toRow >>> 6;
+            int count = 0;
+            for (int word = firstWord; word <= lastWord; word++) {
+                long bits = nonEmpty[word];
+                if (word == firstWord) {
+                    bits &= -1L << fromRow;
+                }
+                if (word == lastWord) {
+                    bits &= -1L >>> (63 - (toRow & 63));
+                }
+                count += Long.bitCount(bits);
+            }
+            return count;
+        }
+
+        byte getType(int rowIdx) {
+            return rowIdx < 0 || rowIdx >= types.length ? NONE : types[rowIdx];
+        }
+
+        /**
+         * true ถ้าเป็นตัวเลข (INTEGER, LONG, DOUBLE) ไม่รวมวันที่
+         */
+        boolean isNumber(int rowIdx) {
+            byte type = getType(rowIdx);
+            return type == INTEGER || type == LONG || type == DOUBLE;
+        }
+
+        /**
+         * ค่าตัวเลขของเซลล์ (ใช้ได้เมื่อชนิดเป็นตัวเลข, DATE หรือ BOOLEAN)
+         */
+        double getNumber(int rowIdx) {
+            return numbers[rowIdx];
+        }
+
+        /**
+         * ลำดับข้อความใน dictionary ของชีท หรือ -1 ถ้าไม่ใช่ข้อความ
+         */
+        int getStringId(int rowIdx) {
+            return getType(rowIdx) == STRING ? stringIds[rowIdx] : -1;
+        }
+
+        /**
+         * ค่าเซลล์ตาม ExcelReader.getCellValue (null ถ้าไม่มีค่า)
+         */
+        Object getValue(int rowIdx, SheetSnapshot sheet) {
+            switch (getType(rowIdx)) {
+                case STRING:
+                    return sheet.strings[stringIds[rowIdx]];
+                case INTEGER:
+                    return (int) numbers[rowIdx];
+                case LONG:
+                    return (long) numbers[rowIdx];
+                case DOUBLE:
+                    return numbers[rowIdx];
+                case DATE:
+                    return new Date((long) numbers[rowIdx]);
+                case BOOLEAN:
+                    return numbers[rowIdx] != 0;
+                default:
+                    return null;
+            }
+        }
+
+        long estimatedBytes() {
+            return types.length
+                    + (numbers == null ? 0 : 8L * numbers.length)
+                    + (stringIds == null ? 0 : 4L * stringIds.length)
+                    + 8L * nonEmpty.length;
+        }
+    }
+
+    /**
+     * สร้าง Column ทีละเซลล์ (แถวเรียงจากน้อยไปมาก)
+     */
+    private static final class ColumnBuilder {
+        private byte[] types = new byte[16];
+        private double[] numbers;
+        private int[] stringIds;
+        private long[] nonEmpty = new long[1];
+        /** แถวสุดท้ายที่มีค่าหรือไม่ว่าง + 1 */
+        private int length;
+
+        /**
+         * แปลงค่าแบบเดียวกับ ExcelReader.getCellValue และ ExcelReader.isEmpty
+         */
+        void add(int rowIdx, Cell cell, ValueCollector dictionary) {
+            byte type = NONE;
+            double number = 0;
+            String text = null;
+            boolean empty = false;
+
+            switch (cell.getCellType()) {
+                case STRING:
+                    text = cell.getStringCellValue();
+                    empty = text.trim().isEmpty();
+                    break;
+                case NUMERIC:
+                    if (DateUtil.isCellDateFormatted(cell)) {
+                        Date date = cell.getDateCellValue();
+                        if (date != null) {
+                            type = DATE;
+                            number = date.getTime();
+                        }
+                    } else {
+                        number = cell.getNumericCellValue();
+                        if (number == Math.floor(number)) {
+                            type = number <= Integer.MAX_VALUE && number >= Integer.MIN_VALUE ? INTEGER : LONG;
+                        } else {
+                            type = DOUBLE;
+                        }
+                    }
+                    break;
+                case BOOLEAN:
+                    type = BOOLEAN;
+                    number = cell.getBooleanCellValue() ? 1 : 0;
+                    break;
+                case FORMULA:
+                    try {
+                        number = cell.getNumericCellValue();
+                        type = DOUBLE;
+                    } catch (Exception e) {
+                        try {
+                            text = cell.getStringCellValue();
+                        } catch (Exception ex) {
+                            text = cell.getCellFormula();
+                        }
+                    }
+                    break;
+                case BLANK:
+                    empty = true;
+                    break;
+                default:
+                    // ERROR และอื่นๆ ไม่มีค่าแต่ไม่ถือว่าว่าง
+                    break;
+            }
+            if (text != null) {
+                type = STRING;
+            }
+            if (type == NONE && empty) {
+                return;
+            }
+
+            ensureCapacity(rowIdx + 1);
+            types[rowIdx] = type;
+            if (text != null) {
+                if (stringIds == null) {
+                    stringIds = new int[types.length];
+                }
+                stringIds[rowIdx] = dictionary.add(text);
+            } else if (type != NONE) {
+                if (numbers == null) {
+                    numbers = new double[types.length];
+                }
+                numbers[rowIdx] = number;
+            }
+            if (!empty) {
+                nonEmpty[rowIdx >>> 6] |= 1L << rowIdx;
+            }
+            length = rowIdx + 1;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= types.length) {
+                return;
+            }
+            int newLength = Math.max(capacity, types.length * 2);
+            types = Arrays.copyOf(types, newLength);
+            if (numbers != null) {
+                numbers = Arrays.copyOf(numbers, newLength);
+            }
+            if (stringIds != null) {
+                stringIds = Arrays.copyOf(stringIds, newLength);
+            }
+            nonEmpty = Arrays.copyOf(nonEmpty, (newLength + 63) >>> 6);
+        }
+
+        Column build() {
+            long[] bits = Arrays.copyOf(nonEmpty, (length + 63) >>> 6);
+            // แถวสุดท้ายที่ไม่ว่าง: word สุดท้ายที่มีบิต แล้วหาบิตสูงสุดในนั้น
+            int lastNonEmptyRow = -1;
+            for (int word = bits.length - 1; word >= 0; word--) {
+                if (bits[word] != 0) {
+                    lastNonEmptyRow = (word << 6) + 63 - Long.numberOfLeadingZeros(bits[word]);
+                    break;
+                }
+            }
+            return new Column(
+                    Arrays.copyOf(types, length),
+                    numbers == null ? null : Arrays.copyOf(numbers, length),
+                    stringIds == null ? null : Arrays.copyOf(stringIds, length),
+                    bits,
+                    lastNonEmptyRow);
+        }
+    }
+
+    /**
+     * ค่าของเซลล์ในแถวหนึ่ง (มุมมองของคอลัมน์ ไม่คัดลอกค่า)
+     */
+    static final class SnapshotRow {
+        private final SheetSnapshot sheet;
+        private final int rowIdx;
+
+        SnapshotRow(SheetSnapshot sheet, int rowIdx) {
+            this.sheet = sheet;
+            this.rowIdx = rowIdx;
+        }
+
+        /**
+         * ค่าเซลล์ตาม ExcelReader.getCellValue (null ถ้าไม่มีเซลล์)
+         */
+        Object getValue(int colIdx) {
+            return sheet.getColumn(colIdx).getValue(rowIdx, sheet);
+        }
+
+        /**
+         * true ถ้าเซลล์ว่างตาม ExcelReader.isEmpty (รวมกรณีไม่มีเซลล์)
+         */
+        boolean isEmpty(int colIdx) {
+            return sheet.getColumn(colIdx).isEmpty(rowIdx);
+        }
+    }
+}
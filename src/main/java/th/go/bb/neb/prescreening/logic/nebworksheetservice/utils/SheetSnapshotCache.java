@@ -0,0 +1,252 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * แคชของชีทที่แปลงค่าแล้ว (SheetSnapshot) ใช้ร่วมกันทั้ง process
+ *
+ * key คือ SHA-256 ของเนื้อหาไฟล์ (ผ่าน FileFingerprint ที่จำค่า hash ตาม path, size และ mtime)
+ * ไฟล์เดิมที่ไม่ถูกแก้ไขจึงไม่ต้องแปลงใหม่ ส่วนไฟล์ที่ถูกแก้ไขจะได้ key ใหม่ และ entry เก่าของ path เดียวกันถูกลบทิ้ง
+ * ชีทที่ยังไม่เคยโหลดจะโหลดเพิ่มเฉพาะชีทนั้น (.xlsx ผ่าน SheetSelectiveLoader)
+ *
+ * จำกัดขนาดรวมบน heap (ประมาณจาก SheetSnapshot.getEstimatedBytes) และลบ entry ที่ใช้ล่าสุดนานที่สุดก่อน (LRU)
+ * ค่าเริ่มต้นคือ 1/4 ของ heap สูงสุด กำหนดเองได้ด้วย system property {@value #MAX_BYTES_PROPERTY} หรือ setMaxBytes
+ * (0 = ไม่ใช้แคช)
+ */
+public final class SheetSnapshotCache {
+
+    public static final String MAX_BYTES_PROPERTY = "neb.sheetSnapshotCache.maxBytes";
+
+    /** entry ตาม SHA-256 เรียงตามการใช้งานล่าสุด */
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static long maxBytes = Long.getLong(MAX_BYTES_PROPERTY, Runtime.getRuntime().maxMemory() / 4);
+    private static long totalBytes;
+    private static long hitCount;
+    private static long missCount;
+    private static long evictionCount;
+
+    private SheetSnapshotCache() {
+    }
+
+    /**
+     * หา snapshot ของชีทที่ระบุ ชีทที่ยังไม่อยู่ในแคชจะโหลดจากไฟล์พร้อมกันในครั้งเดียว
+     *
+     * @param file       ไฟล์ Excel
+     * @param fileName   ชื่อไฟล์ (ใช้ตรวจนามสกุล)
+     * @param fingerprint ตัวตนของ file ที่หาไว้แล้ว (null = หาใหม่)
+     * @param sheetNames ชื่อชีทที่ต้องใช้ (ไม่สนตัวพิมพ์เล็ก/ใหญ่ เหมือน Workbook.getSheet)
+     * @return Map จากชื่อที่ขอไปยัง snapshot ชื่อที่ไม่มีในไฟล์จะไม่อยู่ใน Map
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
+     */
+    static Map<String, SheetSnapshot> get(File file, String fileName, FileFingerprint fingerprint,
+                                          Collection<String> sheetNames) throws IOException {
+        if (!file.isFile()) {
+            // ข้อความเดียวกับ FileInputStream ใน WorkbookSession.createWorkbook
+            throw new FileNotFoundException(file.getPath() + " (No such file or directory)");
+        }
+        String lowerName = fileName.toLowerCase();
+        if (!lowerName.endsWith(".xlsx") && !lowerName.endsWith(".xls")) {
+            throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
+        }
+
+        if (fingerprint == null) {
+            fingerprint = FileFingerprint.of(file);
+        }
+        Map<String, SheetSnapshot> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+
+        synchronized (SheetSnapshotCache.class) {
+            Entry entry = ENTRIES.get(fingerprint.getSha256());
+            for (String sheetName : sheetNames) {
+                if (sheetName == null) {
+                    continue;
+                }
+                if (entry == null) {
+                    missing.add(sheetName);
+                    continue;
+                }
+                String actualName = entry.findSheetName(sheetName);
+                SheetSnapshot snapshot = actualName == null ? null : entry.sheets.get(actualName);
+                if (actualName == null || snapshot != null) {
+                    // รู้รายชื่อชีทแล้ว ไม่ต้องเปิดไฟล์ (ชีทที่ไม่มีในไฟล์ก็นับเป็น hit)
+                    hitCount++;
+                    if (snapshot != null) {
+                        found.put(sheetName, snapshot);
+                    }
+                } else {
+                    missing.add(sheetName);
+                }
+            }
+            missCount += missing.size();
+        }
+
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        List<String> allSheetNames = new ArrayList<>();
+        Map<String, SheetSnapshot> loaded = new LinkedHashMap<>();
+        try (Workbook workbook = WorkbookSession.createWorkbook(file, fileName, missing)) {
+            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+                allSheetNames.add(workbook.getSheetName(i));
+            }
+            for (String sheetName : missing) {
+                Sheet sheet = workbook.getSheet(sheetName);
+                if (sheet != null) {
+                    SheetSnapshot snapshot = SheetSnapshot.of(sheet);
+                    loaded.put(sheet.getSheetName(), snapshot);
+                    found.put(sheetName, snapshot);
+                }
+            }
+        }
+
+        store(fingerprint, allSheetNames, loaded);
+        return found;
+    }
+
+    /**
+     * เพิ่มชีทที่โหลดใหม่เข้า entry ของไฟล์ แล้วลบ entry ตาม LRU จนขนาดรวมไม่เกินที่กำหนด
+     */
+    private static synchronized void store(FileFingerprint fingerprint, List<String> allSheetNames,
+                                           Map<String, SheetSnapshot> loaded) {
+        if (maxBytes <= 0) {
+            return;
+        }
+
+        // ไฟล์เดิมที่เนื้อหาเปลี่ยนไปแล้ว ไม่ต้องเก็บ entry เก่าไว้อีก
+        Iterator<Map.Entry<String, Entry>> it = ENTRIES.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry other = it.next().getValue();
+            if (other.path.equals(fingerprint.getPath()) && !other.sha256.equals(fingerprint.getSha256())) {
+                totalBytes -= other.bytes;
+                it.remove();
+            }
+        }
+
+        Entry entry = ENTRIES.get(fingerprint.getSha256());
+        if (entry == null) {
+            entry = new Entry(fingerprint.getPath(), fingerprint.getSha256(), allSheetNames);
+            ENTRIES.put(entry.sha256, entry);
+        }
+        for (Map.Entry<String, SheetSnapshot> sheet : loaded.entrySet()) {
+            SheetSnapshot previous = entry.sheets.put(sheet.getKey(), sheet.getValue());
+            long delta = sheet.getValue().getEstimatedBytes() - (previous == null ? 0 : previous.getEstimatedBytes());
+            entry.bytes += delta;
+            totalBytes += delta;
+        }
+
+        // ลบ entry ที่ใช้ล่าสุดนานที่สุดก่อน (entry ที่ใหญ่เกินขนาดรวมจะถูกลบทิ้งเองในรอบนี้)
+        it = ENTRIES.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            totalBytes -= eldest.bytes;
+            it.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * ล้างแคชทั้งหมด (ไม่รีเซ็ตสถิติ)
+     */
+    public static synchronized void clear() {
+        ENTRIES.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * กำหนดขนาดรวมสูงสุดบน heap (ไบต์) 0 = ไม่ใช้แคช
+     */
+    public static synchronized void setMaxBytes(long bytes) {
+        maxBytes = Math.max(bytes, 0);
+        Iterator<Map.Entry<String, Entry>> it = ENTRIES.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            totalBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictionCount++;
+        }
+    }
+
+    public static synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * ขนาดรวมโดยประมาณของ snapshot ในแคช (ไบต์)
+     */
+    public static synchronized long getEstimatedBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * จำนวนไฟล์ที่อยู่ในแคช
+     */
+    public static synchronized int size() {
+        return ENTRIES.size();
+    }
+
+    /**
+     * จำนวนชีทที่ได้จากแคชโดยไม่ต้องเปิดไฟล์
+     */
+    public static synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * จำนวนชีทที่ต้องโหลดจากไฟล์
+     */
+    public static synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * จำนวนไฟล์ที่ถูกลบออกเพราะขนาดรวมเกินที่กำหนด
+     */
+    public static synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * ชีทที่โหลดแล้วของไฟล์หนึ่ง (ตามเนื้อหา)
+     */
+    private static final class Entry {
+        final String path;
+        final String sha256;
+        /** รายชื่อชีททั้งหมดในไฟล์ ตามลำดับ */
+        final List<String> sheetNames;
+        final Map<String, SheetSnapshot> sheets = new HashMap<>();
+        long bytes;
+
+        Entry(String path, String sha256, List<String> sheetNames) {
+            this.path = path;
+            this.sha256 = sha256;
+            this.sheetNames = sheetNames;
+        }
+
+        /**
+         * ชื่อชีทจริงในไฟล์ (ไม่สนตัวพิมพ์เล็ก/ใหญ่) หรือ null ถ้าไม่มี
+         */
+        String findSheetName(String sheetName) {
+            for (String name : sheetNames) {
+                if (name.equalsIgnoreCase(sheetName)) {
+                    return name;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ประมวลผล ExcelPlan (COLUMN, COUNT, ROW, ROWBY, CHKDUPLICATE และ CHKSHEETDUPLICATE)
+ * จากไฟล์ .xlsx แบบ streaming โดยอ่านแต่ละชีทที่ถูกอ้างถึงเพียงรอบเดียว
+ *
+ * ผลลัพธ์และข้อความผิดพลาดตรงกับ ExcelPlan.evaluate (แบบ DOM)
+ */
+public class StreamingExcelReader {
+
+    /**
+     * อ่านข้อมูลจากไฟล์ .xlsx ตาม variables (รูปแบบเดียวกับ ExcelReader.readExcelVariables)
+     *
+     * @param fileName  ชื่อไฟล์ Excel (.xlsx)
+     * @param sheetName ชื่อชีทหลัก
+     * @param variables Map ของตัวแปรและคำสั่ง
+     * @return ผลลัพธ์การอ่าน
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
+     */
+    public static PlanResult evaluate(String fileName, String sheetName, Map<String, Object> variables) throws IOException {
+        return evaluate(fileName, ExcelPlan.compile(sheetName, variables));
+    }
+
+    /**
+     * ประมวลผลแผนกับไฟล์ .xlsx รวมถึงเงื่อนไขตรวจสอบในแผนในรอบการอ่านเดียวกัน
+     *
+     * @param fileName ชื่อไฟล์ Excel (.xlsx)
+     * @param plan     แผนการประมวลผล
+     * @return ผลลัพธ์การอ่าน
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
+     */
+    public static PlanResult evaluate(String fileName, ExcelPlan plan) throws IOException {
+        try (XlsxStreamingReader xlsx = XlsxStreamingReader.open(fileName)) {
+            return evaluate(xlsx, fileName, plan);
+        }
+    }
+
+    static PlanResult evaluate(XlsxStreamingReader xlsx, String fileName, ExcelPlan plan) throws IOException {
+        Map<String, List<XlsxStreamingReader.SheetConsumer>> consumers = new LinkedHashMap<>();
+
+        // เลือกชีทหลัก (ถ้ามีการระบุชื่อชีท)
+        String mainSheet = plan.getSheetName().isEmpty() ? null : requireSheet(xlsx, plan.getSheetName());
+
+        // เตรียมตัวแปรตามลำดับของแผน
+        StepPreparer preparer = new StepPreparer(xlsx, mainSheet, consumers);
+        List<ExcelPlan.Step> steps = plan.getSteps();
+        List<PlanResult.Pending> pendings = new ArrayList<>();
+        for (ExcelPlan.Step step : steps) {
+            pendings.add(step.guarded ? PlanResult.guard(() -> step.accept(preparer)) : step.accept(preparer));
+        }
+
+        // เตรียมเงื่อนไขตรวจสอบ
+        Map<Object, PlanResult.Pending> validations = new IdentityHashMap<>();
+        for (ExcelPlan.Check check : plan.getChecks()) {
+            if (check instanceof ExcelPlan.DuplicateCheck) {
+                ExcelPlan.DuplicateCheck duplicateCheck = (ExcelPlan.DuplicateCheck) check;
+                validations.put(duplicateCheck, PlanResult.deferred(() -> {
+                    String targetSheet = requireSheet(xlsx, duplicateCheck.getSheetName());
+                    if (duplicateCheck.error != null) {
+                        throw new IllegalArgumentException(duplicateCheck.error);
+                    }
+                    return register(consumers, targetSheet,
+                            new ScanConsumers.DuplicateConsumer(duplicateCheck.range, duplicateCheck.exceptValues));
+                }));
+            } else if (check instanceof ExcelPlan.SheetDuplicateCheck) {
+                // ทุกช่วงของเงื่อนไขบันทึกลงตารางเดียวกัน
+                CrossSheetIndex index = new CrossSheetIndex();
+                for (ExcelPlan.SheetRange sheetRange : ((ExcelPlan.SheetDuplicateCheck) check).getRanges()) {
+                    int sheetIdx = index.addSheet(sheetRange.getSheetName());
+                    validations.put(sheetRange, PlanResult.deferred(() -> {
+                        String targetSheet = requireSheet(xlsx, sheetRange.getSheetName());
+                        if (sheetRange.error != null) {
+                            throw new IllegalArgumentException(sheetRange.error);
+                        }
+                        return register(consumers, targetSheet,
+                                new ScanConsumers.CrossSheetConsumer(sheetRange.range, sheetRange.exceptValues, index, sheetIdx));
+                    }));
+                }
+            }
+        }
+
+        try {
+            xlsx.scan(consumers);
+        } finally {
+            ScanConsumers.closeAll(consumers.values());
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("agencyCode", ExcelPlan.agencyCode(fileName));
+        for (int i = 0; i < steps.size(); i++) {
+            result.put(steps.get(i).name, pendings.get(i).get());
+        }
+
+        return new PlanResult(result, validations);
+    }
+
+    /**
+     * ลงทะเบียน consumer ของแต่ละขั้นตอนในแผน โดยตรวจชีทและข้อผิดพลาดตามลำดับเดียวกับ ExcelPlan.evaluate
+     */
+    private static final class StepPreparer implements ExcelPlan.StepVisitor<PlanResult.Pending> {
+        private final XlsxStreamingReader xlsx;
+        private final String mainSheet;
+        private final Map<String, List<XlsxStreamingReader.SheetConsumer>> consumers;
+
+        StepPreparer(XlsxStreamingReader xlsx, String mainSheet,
+                     Map<String, List<XlsxStreamingReader.SheetConsumer>> consumers) {
+            this.xlsx = xlsx;
+            this.mainSheet = mainSheet;
+            this.consumers = consumers;
+        }
+
+        @Override
+        public PlanResult.Pending visitConstant(ExcelPlan.ConstantStep step) {
+            Object value = step.value;
+            return () -> value;
+        }
+
+        @Override
+        public PlanResult.Pending visitCell(ExcelPlan.CellStep step) {
+            String targetSheet = targetSheet(step.sheetName, step.error);
+            return register(consumers, targetSheet, new ScanConsumers.CellConsumer(step.row, step.col));
+        }
+
+        @Override
+        public PlanResult.Pending visitCount(ExcelPlan.CountStep step) {
+            String targetSheet = targetSheet(step.sheetName, step.error);
+            return register(consumers, targetSheet, new ScanConsumers.CountConsumer(step.range));
+        }
+
+        @Override
+        public PlanResult.Pending visitRowBy(ExcelPlan.RowByStep step) {
+            if (step.refsError != null) {
+                throw new IllegalArgumentException(step.refsError);
+            }
+            String searchSheet = requireSheet(xlsx, step.searchSheetName);
+            String readSheet = requireSheet(xlsx, step.readSheetName);
+            if (step.searchColumnError != null) {
+                throw new IllegalArgumentException(step.searchColumnError);
+            }
+
+            // เก็บเฉพาะเซลล์ที่ columnRefs อ้างถึง (ชีทเดียวกันเก็บเฉพาะแถวที่พบ)
+            ScanConsumers.RowBySearchConsumer search = new ScanConsumers.RowBySearchConsumer(step);
+            ScanConsumers.ProjectionConsumer projection = new ScanConsumers.ProjectionConsumer(step.columnRefs, search,
+                    searchSheet.equals(readSheet));
+            register(consumers, searchSheet, search);
+            register(consumers, readSheet, projection);
+
+            return () -> search.resolve(projection, step.columnRefs);
+        }
+
+        @Override
+        public PlanResult.Pending visitRow(ExcelPlan.RowStep step) {
+            String targetSheet = requireSheet(xlsx, step.sheetName);
+            if (step.error != null) {
+                throw new IllegalArgumentException(step.error);
+            }
+            return register(consumers, targetSheet, new ScanConsumers.RowsConsumer(step.startRow, step.endRow, step.columnIndices, step.keys,
+                    step.offset, step.limit));
+        }
+
+        /**
+         * ชีทที่ระบุ หรือชีทหลัก (ตรวจข้อผิดพลาดด้านรูปแบบหลังตรวจชีทที่ระบุ เหมือนแบบ DOM)
+         */
+        private String targetSheet(String sheetName, String error) {
+            String targetSheet = sheetName != null ? requireSheet(xlsx, sheetName) : null;
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+            return targetSheet != null ? targetSheet : requireMainSheet(mainSheet);
+        }
+    }
+
+    private static PlanResult.Pending register(Map<String, List<XlsxStreamingReader.SheetConsumer>> consumers,
+                                               String sheetName, ScanConsumers.ResultConsumer consumer) {
+        consumers.computeIfAbsent(sheetName, k -> new ArrayList<>()).add(consumer);
+        return consumer::result;
+    }
+
+    private static String requireSheet(XlsxStreamingReader xlsx, String sheetName) {
+        String found = xlsx.findSheetName(sheetName);
+        if (found == null) {
+            throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
+        }
+        return found;
+    }
+
+    private static String requireMainSheet(String mainSheet) {
+        if (mainSheet == null) {
+            throw new IllegalArgumentException("ไม่ได้ระบุชีทหลัก (SHEET)");
+        }
+        return mainSheet;
+    }
+}
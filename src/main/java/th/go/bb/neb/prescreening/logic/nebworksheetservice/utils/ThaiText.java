@@ -0,0 +1,63 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import java.text.Normalizer;
+
+/**
+ * ปรับข้อความภาษาไทยให้อยู่ในรูปเดียวกันก่อนค้นหาบางส่วนของข้อความ (ROWBY แบบ CONTENT, STARTWITH, ENDWITH)
+ *
+ * ข้อความที่พิมพ์ต่างกันแต่แสดงผลเหมือนกันจะได้ผลเดียวกัน:
+ * Unicode NFC, นิคหิต + สระอา (ํา) เป็นสระอำ (ำ), สระเอสองตัว (เเ) เป็นสระแอ (แ),
+ * ตัดอักขระความกว้างศูนย์ (ZWSP, ZWNJ, ZWJ, BOM), non-breaking space เป็นช่องว่าง แล้วตัดช่องว่างหัวท้าย
+ */
+final class ThaiText {
+
+    private ThaiText() {
+    }
+
+    static String normalize(String text) {
+        if (text.isEmpty()) {
+            return text;
+        }
+        String normalized = Normalizer.isNormalized(text, Normalizer.Form.NFC)
+                ? text : Normalizer.normalize(text, Normalizer.Form.NFC);
+
+        // ข้อความส่วนใหญ่ไม่ต้องแก้ไข จึงตรวจก่อนสร้างข้อความใหม่
+        boolean plain = true;
+        for (int i = 0; i < normalized.length() && plain; i++) {
+            char c = normalized.charAt(i);
+            plain = !isZeroWidth(c) && c != '\u00A0'
+                    && !(i + 1 < normalized.length() && isPair(c, normalized.charAt(i + 1)));
+        }
+        if (plain) {
+            return normalized.trim();
+        }
+
+        StringBuilder result = new StringBuilder(normalized.length());
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (isZeroWidth(c)) {
+                continue;
+            }
+            if (c == '\u00A0') {
+                result.append(' ');
+            } else if (i + 1 < normalized.length() && isPair(c, normalized.charAt(i + 1))) {
+                result.append(c == 'ํ' ? 'ำ' : 'แ');
+                i++;
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString().trim();
+    }
+
+    private static boolean isZeroWidth(char c) {
+        return c == '\u200B' || c == '\u200C' || c == '\u200D' || c == '\uFEFF';
+    }
+
+    /**
+     * คู่อักขระที่ต้องรวมเป็นตัวเดียว (ํา -> ำ, เเ -> แ)
+     */
+    private static boolean isPair(char c, char next) {
+        return (c == 'ํ' && next == 'า') || (c == 'เ' && next == 'เ');
+    }
+}
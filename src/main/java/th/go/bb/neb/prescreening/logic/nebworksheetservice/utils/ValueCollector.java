@@ -0,0 +1,247 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.util.CellReference;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * ชุดของค่าข้อความที่ไม่ซ้ำ เรียงตามลำดับที่พบครั้งแรก
+ *
+ * ใช้ตาราง hash แบบ open addressing (linear probing) เก็บลำดับของค่าใน int[] จึงตรวจค่าซ้ำได้ใน O(1)
+ * โดยไม่ต้องสร้าง object ต่อค่าเหมือน LinkedHashSet และถ้าต้องการตำแหน่งเซลล์ของแต่ละค่า
+ * ตำแหน่งจะถูกเก็บเป็น linked list ใน int[] ที่ใช้ร่วมกันทุกค่า
+ *
+ * ใช้กับ getAllValuesInRange (CROSSFILECOMPARE, CROSSFILEDUPLICATED) และ CHKSHEETDUPLICATE (CrossSheetIndex)
+ * ไม่ thread-safe
+ */
+public final class ValueCollector {
+
+    private static final int NONE = -1;
+
+    private final boolean withPositions;
+
+    /** ค่าตามลำดับที่พบ */
+    private String[] values = new String[16];
+    private int[] hashes = new int[16];
+    private int size;
+
+    /** ช่องของตาราง hash เก็บ ลำดับของค่า + 1 (0 = ว่าง) */
+    private int[] slots = new int[32];
+
+    /** ตำแหน่งแรกและสุดท้ายของแต่ละค่า (index ใน posRows) */
+    private int[] firstPos;
+    private int[] lastPos;
+    /** ตำแหน่งทั้งหมด: แถว, คอลัมน์ และตำแหน่งถัดไปของค่าเดียวกัน */
+    private int[] posRows;
+    private int[] posCols;
+    private int[] posNext;
+    private int posCount;
+
+    /**
+     * @param withPositions true = เก็บตำแหน่งเซลล์ของทุกค่าด้วย
+     */
+    public ValueCollector(boolean withPositions) {
+        this.withPositions = withPositions;
+        if (withPositions) {
+            firstPos = new int[16];
+            lastPos = new int[16];
+            posRows = new int[16];
+            posCols = new int[16];
+            posNext = new int[16];
+        }
+    }
+
+    /**
+     * เพิ่มค่า (ไม่เก็บตำแหน่ง)
+     *
+     * @return ลำดับของค่า (ค่าที่เคยพบแล้วได้ลำดับเดิม)
+     */
+    public int add(String value) {
+        int hash = hash(value);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int ordinal = slots[slot] - 1;
+            if (ordinal < 0) {
+                break;
+            }
+            if (hashes[ordinal] == hash && values[ordinal].equals(value)) {
+                return ordinal;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int ordinal = size;
+        if (ordinal == values.length) {
+            values = Arrays.copyOf(values, ordinal * 2);
+            hashes = Arrays.copyOf(hashes, ordinal * 2);
+            if (withPositions) {
+                firstPos = Arrays.copyOf(firstPos, ordinal * 2);
+                lastPos = Arrays.copyOf(lastPos, ordinal * 2);
+            }
+        }
+        values[ordinal] = value;
+        hashes[ordinal] = hash;
+        if (withPositions) {
+            firstPos[ordinal] = NONE;
+            lastPos[ordinal] = NONE;
+        }
+        slots[slot] = ordinal + 1;
+        size++;
+
+        // ขยายตารางเมื่อใช้เกินครึ่ง
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return ordinal;
+    }
+
+    /**
+     * เพิ่มค่าพร้อมตำแหน่งเซลล์ (ต้องสร้างด้วย withPositions = true)
+     *
+     * @return ลำดับของค่า
+     */
+    public int add(String value, int rowIdx, int colIdx) {
+        int ordinal = add(value);
+        if (!withPositions) {
+            return ordinal;
+        }
+
+        if (posCount == posRows.length) {
+            posRows = Arrays.copyOf(posRows, posCount * 2);
+            posCols = Arrays.copyOf(posCols, posCount * 2);
+            posNext = Arrays.copyOf(posNext, posCount * 2);
+        }
+        int pos = posCount++;
+        posRows[pos] = rowIdx;
+        posCols[pos] = colIdx;
+        posNext[pos] = NONE;
+        if (firstPos[ordinal] == NONE) {
+            firstPos[ordinal] = pos;
+        } else {
+            posNext[lastPos[ordinal]] = pos;
+        }
+        lastPos[ordinal] = pos;
+        return ordinal;
+    }
+
+    /**
+     * ลำดับของค่า หรือ -1 ถ้าไม่เคยพบ
+     */
+    public int indexOf(String value) {
+        if (value == null) {
+            return -1;
+        }
+        int hash = hash(value);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int ordinal = slots[slot] - 1;
+            if (ordinal < 0) {
+                return -1;
+            }
+            if (hashes[ordinal] == hash && values[ordinal].equals(value)) {
+                return ordinal;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean contains(String value) {
+        return indexOf(value) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String get(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("ลำดับไม่ถูกต้อง: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * ค่าทั้งหมดตามลำดับที่พบ (อ่านอย่างเดียว และเห็นค่าที่เพิ่มภายหลัง)
+     */
+    public List<String> values() {
+        return new ValueList();
+    }
+
+    /**
+     * จำนวนตำแหน่งของค่า (0 ถ้าไม่ได้เก็บตำแหน่ง)
+     */
+    public int positionCount(int ordinal) {
+        int count = 0;
+        if (withPositions) {
+            for (int pos = firstPos[ordinal]; pos != NONE; pos = posNext[pos]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * ตำแหน่งเซลล์ของค่า (เช่น "B15") ตามลำดับที่พบ
+     */
+    public List<String> positions(int ordinal) {
+        List<String> positions = new ArrayList<>();
+        if (withPositions) {
+            for (int pos = firstPos[ordinal]; pos != NONE; pos = posNext[pos]) {
+                positions.add(CellReference.convertNumToColString(posCols[pos]) + (posRows[pos] + 1));
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * ค่าทั้งหมดพร้อมตำแหน่งเซลล์ ตามลำดับที่พบ
+     */
+    public Map<String, List<String>> toPositionMap() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            map.put(values[ordinal], positions(ordinal));
+        }
+        return map;
+    }
+
+    private void rehash(int capacity) {
+        int[] newSlots = new int[capacity];
+        int mask = capacity - 1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int slot = hashes[ordinal] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = ordinal + 1;
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * กระจายบิตของ String.hashCode ให้ใช้บิตล่างเป็นตำแหน่งในตารางได้
+     */
+    private static int hash(String value) {
+        int h = value.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private final class ValueList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return ValueCollector.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
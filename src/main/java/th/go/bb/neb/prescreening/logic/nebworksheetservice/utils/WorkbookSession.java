@@ -0,0 +1,245 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Workbook ที่เปิดครั้งเดียวต่อหนึ่งคำขอ และใช้ร่วมกันทุกคำสั่ง (COLUMN, COUNT, ROW, ROWBY, CHKDUPLICATE ฯลฯ)
+ * ปิดเพียงครั้งเดียวเมื่อเรียก close()
+ *
+ * ทุกคำสั่งอ่านค่าจาก SheetSnapshot ของชีท session ที่เปิดจากชื่อไฟล์ (open) ใช้ snapshot จาก SheetSnapshotCache
+ * จึงไม่ต้องแปลงไฟล์เดิมซ้ำระหว่างคำขอ ส่วน session ที่สร้างจาก Workbook สร้าง snapshot เองเมื่อใช้ชีทครั้งแรก
+ */
+public class WorkbookSession implements Closeable {
+
+    private final String fileName;
+    /** ไฟล์ที่อ่านผ่านแคช (null ถ้าสร้างจาก Workbook) */
+    private final File file;
+    /** ตัวตนของ file ที่ผู้เปิดหาไว้แล้ว (null = ให้ SheetSnapshotCache หาเอง) */
+    private final FileFingerprint fingerprint;
+    /** Workbook ที่เปิดไว้แล้ว (null ถ้าอ่านผ่านแคช) */
+    private final Workbook workbook;
+    /** snapshot ตามชื่อชีทที่ขอ (ค่า null = ไม่พบชีทในไฟล์) */
+    private final Map<String, SheetSnapshot> snapshots = new HashMap<>();
+    /** ดัชนีค้นหาแถวของ ROWBY ตามชีทและคอลัมน์ */
+    private final Map<String, Map<Integer, RowLookupIndex>> rowLookups = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * สร้าง session จาก Workbook ที่เปิดไว้แล้ว
+     *
+     * @param fileName ชื่อไฟล์ Excel (ใช้สำหรับ agency code)
+     * @param workbook Workbook ที่เปิดแล้ว
+     */
+    public WorkbookSession(String fileName, Workbook workbook) {
+        this.fileName = fileName;
+        this.file = null;
+        this.fingerprint = null;
+        this.workbook = workbook;
+    }
+
+    private WorkbookSession(String fileName, File file, FileFingerprint fingerprint) {
+        this.fileName = fileName;
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.workbook = null;
+    }
+
+    /**
+     * เปิดไฟล์ Excel และสร้าง session (โหลดแต่ละชีทเมื่อใช้ครั้งแรก)
+     *
+     * @param fileName ชื่อไฟล์ Excel
+     * @return WorkbookSession ที่ต้องปิดเมื่อใช้งานเสร็จ
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
+     */
+    public static WorkbookSession open(String fileName) throws IOException {
+        return open(fileName, Collections.emptySet());
+    }
+
+    /**
+     * เปิดไฟล์ Excel โดยเตรียมชีทที่ระบุไว้ล่วงหน้า (เช่น ExcelPlan.getSheetNames)
+     * ชีทที่ยังไม่อยู่ใน SheetSnapshotCache จะโหลดพร้อมกันในครั้งเดียว
+     * ไฟล์ .xlsx จะไม่คลายการบีบอัดและไม่แปลงชีทอื่น ส่วน .xls โหลดทั้งไฟล์ตามปกติ
+     *
+     * @param fileName   ชื่อไฟล์ Excel
+     * @param sheetNames ชื่อชีทที่ต้องใช้
+     * @return WorkbookSession ที่ต้องปิดเมื่อใช้งานเสร็จ
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
+     */
+    public static WorkbookSession open(String fileName, Set<String> sheetNames) throws IOException {
+        return open(fileName, null, sheetNames);
+    }
+
+    /**
+     * เปิดไฟล์ Excel โดยใช้ตัวตนของไฟล์ที่หาไว้แล้ว (เช่นตัวเดียวกับ key ของ WssResultCache)
+     * SheetSnapshotCache จึงไม่ต้องอ่านไฟล์เพื่อคำนวณ SHA-256 อีกรอบ
+     *
+     * @param fileName    ชื่อไฟล์ Excel
+     * @param fingerprint ตัวตนของไฟล์ fileName (null = หาใหม่)
+     * @param sheetNames  ชื่อชีทที่ต้องใช้
+     * @return WorkbookSession ที่ต้องปิดเมื่อใช้งานเสร็จ
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
+     */
+    public static WorkbookSession open(String fileName, FileFingerprint fingerprint, Set<String> sheetNames)
+            throws IOException {
+        WorkbookSession session = new WorkbookSession(fileName, new File(fileName), fingerprint);
+        session.load(sheetNames);
+        return session;
+    }
+
+    /**
+     * เปิดหลายไฟล์พร้อมกันบน thread pool โดยเตรียมชีทที่ระบุของแต่ละไฟล์ไว้ล่วงหน้า
+     * ใช้เวลาใกล้เคียงกับไฟล์ที่แปลงนานที่สุดแทนผลรวมของทุกไฟล์
+     *
+     * @param fileNames  ชื่อไฟล์ Excel
+     * @param sheetNames ชื่อชีทที่ต้องใช้ของแต่ละไฟล์ (ลำดับเดียวกับ fileNames)
+     * @param pool       thread pool ที่ใช้โหลด
+     * @return session ของแต่ละไฟล์ ตามลำดับของ fileNames (ผู้เรียกต้องปิดด้วย closeAll)
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์ใดไฟล์หนึ่ง (session ที่เปิดได้แล้วจะถูกปิดก่อนโยนต่อ)
+     */
+    public static List<WorkbookSession> openAll(List<String> fileNames, List<Set<String>> sheetNames,
+                                                ExecutorService pool) throws IOException {
+        List<Callable<WorkbookSession>> tasks = new ArrayList<>();
+        for (int i = 0; i < fileNames.size(); i++) {
+            String fileName = fileNames.get(i);
+            Set<String> names = sheetNames.get(i);
+            tasks.add(() -> open(fileName, names));
+        }
+        return ParallelTasks.invokeAllClosing(pool, tasks);
+    }
+
+    /**
+     * ปิดทุก session โดยไม่หยุดที่ session ที่ปิดไม่สำเร็จ (exception แรกถูกโยนต่อ ที่เหลือแนบเป็น suppressed)
+     */
+    public static void closeAll(List<WorkbookSession> sessions) throws IOException {
+        IOException failure = null;
+        for (WorkbookSession session : sessions) {
+            try {
+                session.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * โหลด snapshot ของชีทจากแคช (ตรวจไฟล์และนามสกุลเสมอ แม้ไม่ได้ระบุชีท)
+     */
+    private synchronized void load(Set<String> sheetNames) throws IOException {
+        Map<String, SheetSnapshot> found = SheetSnapshotCache.get(file, fileName, fingerprint, sheetNames);
+        for (String sheetName : sheetNames) {
+            snapshots.put(sheetName, found.get(sheetName));
+        }
+    }
+
+    /**
+     * สร้าง Workbook ตามนามสกุลไฟล์ (.xlsx หรือ .xls)
+     */
+    public static Workbook createWorkbook(File file, String fileName) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            // ตรวจสอบประเภทไฟล์และสร้าง Workbook
+            Workbook workbook;
+            if (fileName.toLowerCase().endsWith(".xlsx")) {
+                workbook = new XSSFWorkbook(fis);
+            } else if (fileName.toLowerCase().endsWith(".xls")) {
+                workbook = new HSSFWorkbook(fis);
+            } else {
+                throw new IllegalArgumentException("ไฟล์ไม่ใช่รูปแบบ Excel (.xls หรือ .xlsx)");
+            }
+            return workbook;
+        }
+    }
+
+    /**
+     * สร้าง Workbook ที่โหลดเฉพาะชีทที่ระบุ (.xlsx) หรือทั้งไฟล์ (.xls)
+     */
+    public static Workbook createWorkbook(File file, String fileName, Set<String> sheetNames) throws IOException {
+        if (fileName.toLowerCase().endsWith(".xlsx")) {
+            return SheetSelectiveLoader.open(file, sheetNames);
+        }
+        return createWorkbook(file, fileName);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Workbook ที่ใช้สร้าง session (null ถ้าเปิดจากชื่อไฟล์ผ่าน SheetSnapshotCache)
+     */
+    public Workbook getWorkbook() {
+        return workbook;
+    }
+
+    /**
+     * เลือกชีทตามชื่อ
+     *
+     * @param sheetName ชื่อชีท
+     * @return snapshot ของชีทที่พบ
+     * @throws IllegalArgumentException หากไม่พบชีท
+     */
+    synchronized SheetSnapshot sheet(String sheetName) {
+        if (!snapshots.containsKey(sheetName)) {
+            if (workbook != null) {
+                Sheet sheet = sheetName == null ? null : workbook.getSheet(sheetName);
+                snapshots.put(sheetName, sheet == null ? null : SheetSnapshot.of(sheet));
+            } else {
+                try {
+                    load(Collections.singleton(sheetName));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        SheetSnapshot snapshot = snapshots.get(sheetName);
+        if (snapshot == null) {
+            throw new IllegalArgumentException("ไม่พบชีท '" + sheetName + "' ในไฟล์");
+        }
+        return snapshot;
+    }
+
+    /**
+     * ดัชนีค้นหาแถวของคอลัมน์ในชีท (สร้างครั้งแรกที่ใช้ แล้วใช้ซ้ำทุก ROWBY ใน session)
+     *
+     * @throws IllegalArgumentException หากไม่พบชีท
+     */
+    synchronized RowLookupIndex rowLookup(String sheetName, int colIdx) {
+        SheetSnapshot sheet = sheet(sheetName);
+        return rowLookups.computeIfAbsent(sheetName, k -> new HashMap<>())
+                .computeIfAbsent(colIdx, k -> new RowLookupIndex(sheet, colIdx));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (workbook != null) {
+                workbook.close();
+            }
+        }
+    }
+}
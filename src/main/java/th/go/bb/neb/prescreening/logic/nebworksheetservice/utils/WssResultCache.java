@@ -0,0 +1,541 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * แคชของผลลัพธ์ wssResult ตามเนื้อหาไฟล์และแผนการประมวลผล
+ *
+ * key คือ SHA-256 ของไฟล์ (FileFingerprint) + hash ของพารามิเตอร์ + agency code (ได้จากชื่อไฟล์และอยู่ในผลลัพธ์)
+ * ไฟล์เดิมที่ส่งซ้ำจึงได้ผลลัพธ์เดิมทันทีโดยไม่ต้องเปิด Workbook
+ * SHA-256 ถูกจำไว้ตาม path, size และ mtime แต่จะอ่านไฟล์ใหม่ถ้าไฟล์ถูกแก้ไขในช่วงเวลาเดียวกับที่คำนวณ
+ * (ดู FileFingerprint) ไฟล์ที่ถูกเขียนทับภายใน mtime เดียวกันจึงไม่ได้ผลลัพธ์เก่า
+ *
+ * เก็บในหน่วยความจำไม่เกิน {@value #MAX_ENTRIES_PROPERTY} รายการ (ค่าเริ่มต้น 1024, 0 = ไม่ใช้แคช)
+ * และรวมกันไม่เกิน {@value #MAX_BYTES_PROPERTY} ไบต์ (ค่าเริ่มต้น 64MB คิด 2 ไบต์ต่อตัวอักษร)
+ * เมื่อเกินอย่างใดอย่างหนึ่งจะลบรายการที่ใช้ล่าสุดนานที่สุดก่อน
+ * ถ้ากำหนด {@value #DIR_PROPERTY} จะเก็บลงดิสก์ด้วย (ไม่เกิน {@value #MAX_DISK_ENTRIES_PROPERTY} ไฟล์
+ * ค่าเริ่มต้น 10000) เพื่อให้ใช้ได้หลังเริ่มระบบใหม่
+ * ผลลัพธ์ที่ใหญ่กว่า {@value #MAX_RESULT_BYTES_PROPERTY} ไบต์ (ค่าเริ่มต้น 4MB) ไม่ถูกเก็บ
+ * เพื่อให้การเขียนผลลัพธ์แบบ streaming (WssResultWriter) ไม่ต้องเก็บผลลัพธ์ใหญ่ทั้งก้อนไว้
+ *
+ * ผลลัพธ์ของแผนเดิมไม่ถูกใช้อีกเมื่อพารามิเตอร์เปลี่ยน (hash ของแผนเปลี่ยน) และเมื่อ template ถูกแก้ไข
+ * (TEMPLATE_ID เดิมแต่พารามิเตอร์ต่างไป) ผลลัพธ์ของแผนเดิมจะถูกลบเมื่อเก็บผลลัพธ์ของแผนใหม่
+ * หรือลบเองได้ด้วย invalidateTemplate
+ *
+ * ไฟล์บนดิสก์ชื่อ {tag ของ template}_{hash ของแผน}_{key}.wss และมีเพียง wssResult
+ * การลบตาม template จึงดูจากชื่อไฟล์อย่างเดียวโดยไม่ต้องอ่านเนื้อหา
+ */
+public final class WssResultCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WssResultCache.class);
+
+    public static final String MAX_ENTRIES_PROPERTY = "neb.wssResultCache.maxEntries";
+    public static final String DIR_PROPERTY = "neb.wssResultCache.dir";
+    public static final String MAX_DISK_ENTRIES_PROPERTY = "neb.wssResultCache.maxDiskEntries";
+    public static final String MAX_RESULT_BYTES_PROPERTY = "neb.wssResultCache.maxResultBytes";
+    public static final String MAX_BYTES_PROPERTY = "neb.wssResultCache.maxBytes";
+
+    /** เปลี่ยนเมื่อรูปแบบของ wssResult เปลี่ยน เพื่อไม่ให้ใช้ผลลัพธ์เก่าบนดิสก์ */
+    private static final String FORMAT_VERSION = "wssResult-3";
+    private static final String FILE_SUFFIX = ".wss";
+    /** tag ของผลลัพธ์ที่ไม่มี TEMPLATE_ID (ไม่ใช่ตัวเลขฐาน 16 จึงไม่ซ้ำกับ tag ของ template) */
+    private static final String NO_TEMPLATE = "none";
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    /** hash ของแผนล่าสุดของแต่ละ TEMPLATE_ID ที่พบใน process นี้ */
+    private static final Map<String, String> TEMPLATE_PLANS = new HashMap<>();
+
+    private static int maxEntries = Integer.getInteger(MAX_ENTRIES_PROPERTY, 1024);
+    private static Path directory = directoryOf(System.getProperty(DIR_PROPERTY));
+    private static int maxDiskEntries = Integer.getInteger(MAX_DISK_ENTRIES_PROPERTY, 10000);
+    private static int maxResultBytes = Integer.getInteger(MAX_RESULT_BYTES_PROPERTY, 4 * 1024 * 1024);
+    private static long maxBytes = Long.getLong(MAX_BYTES_PROPERTY, 64L * 1024 * 1024);
+    /** ขนาดรวมของผลลัพธ์ในหน่วยความจำ (ใช้ร่วมกับ ENTRIES) */
+    private static long memoryBytes;
+    /** จำนวนไฟล์บนดิสก์โดยประมาณ (-1 = ยังไม่ได้นับ) */
+    private static int diskEntries = -1;
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong DISK_HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private WssResultCache() {
+    }
+
+    /**
+     * สร้าง key ของไฟล์และแผน (อ่านไฟล์เพื่อหา SHA-256 เฉพาะเมื่อ path, size หรือ mtime เปลี่ยน)
+     *
+     * @param fileName ชื่อไฟล์ Excel
+     * @param params   พารามิเตอร์ในรูปแบบเดียวกับ NEBWorkSheetService.processExcelToWssResult
+     * @param plan     แผนที่คอมไพล์จาก params
+     * @return key ของผลลัพธ์
+     * @throws IOException หากอ่านไฟล์ไม่ได้
+     */
+    public static Key key(String fileName, String[] params, ExcelPlan plan) throws IOException {
+        return key(FileFingerprint.of(new File(fileName)), fileName, params, plan);
+    }
+
+    /**
+     * สร้าง key จากตัวตนของไฟล์ที่หาไว้แล้ว (ใช้ตัวเดียวกับ WorkbookSession.open ในคำขอเดียวกัน)
+     *
+     * @param fingerprint ตัวตนของไฟล์ fileName
+     * @param fileName    ชื่อไฟล์ Excel (ใช้หา agency code)
+     * @param params      พารามิเตอร์ในรูปแบบเดียวกับ NEBWorkSheetService.processExcelToWssResult
+     * @param plan        แผนที่คอมไพล์จาก params
+     * @return key ของผลลัพธ์
+     */
+    public static Key key(FileFingerprint fingerprint, String fileName, String[] params, ExcelPlan plan) {
+        return new Key(fingerprint.getSha256(), planHash(params), ExcelPlan.agencyCode(fileName), plan.getTemplateId());
+    }
+
+    /**
+     * hash ของพารามิเตอร์ (ตามลำดับ แต่ละตัวมีความยาวนำหน้าเพื่อไม่ให้ต่อกันแล้วกำกวม)
+     */
+    static String planHash(String[] params) {
+        MessageDigest digest = sha256();
+        digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+        for (String param : params) {
+            digest.update(("\n" + param.length() + ":" + param).getBytes(StandardCharsets.UTF_8));
+        }
+        return FileFingerprint.toHex(digest.digest());
+    }
+
+    /**
+     * ผลลัพธ์ที่เก็บไว้ (หน่วยความจำก่อน แล้วจึงดิสก์) หรือ null ถ้าไม่มี
+     */
+    public static String get(Key key) {
+        if (getMaxEntries() <= 0) {
+            return null;
+        }
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key.id);
+            if (entry != null) {
+                HITS.incrementAndGet();
+                return entry.wssResult;
+            }
+        }
+
+        String stored = readFromDisk(key);
+        if (stored != null) {
+            DISK_HITS.incrementAndGet();
+            remember(key.id, new Entry(key.templateTag, key.planHash, stored));
+            return stored;
+        }
+
+        MISSES.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * เก็บผลลัพธ์ และลบผลลัพธ์ของแผนเก่าของ template เดียวกัน
+     */
+    public static void put(Key key, String wssResult) {
+        if (getMaxEntries() <= 0) {
+            return;
+        }
+        Entry entry = new Entry(key.templateTag, key.planHash, wssResult);
+        if (key.templateId != null) {
+            String previousPlan;
+            synchronized (TEMPLATE_PLANS) {
+                previousPlan = TEMPLATE_PLANS.put(key.templateId, key.planHash);
+            }
+            if (previousPlan != null && !previousPlan.equals(key.planHash)) {
+                // template ถูกแก้ไข ผลลัพธ์ของแผนเดิมใช้ไม่ได้อีก
+                removeIf((templateTag, planHash) -> key.templateTag.equals(templateTag) && !key.planHash.equals(planHash));
+            }
+        }
+        remember(key.id, entry);
+        writeToDisk(key, entry);
+    }
+
+    /**
+     * ลบผลลัพธ์ทั้งหมดของ template (เช่น เมื่อแก้ไข template)
+     */
+    public static void invalidateTemplate(String templateId) {
+        synchronized (TEMPLATE_PLANS) {
+            TEMPLATE_PLANS.remove(templateId);
+        }
+        String tag = templateTag(templateId);
+        removeIf((templateTag, planHash) -> tag.equals(templateTag));
+    }
+
+    /**
+     * ล้างผลลัพธ์ทั้งหมด ทั้งในหน่วยความจำและบนดิสก์
+     */
+    public static void clear() {
+        synchronized (TEMPLATE_PLANS) {
+            TEMPLATE_PLANS.clear();
+        }
+        removeIf((templateTag, planHash) -> true);
+    }
+
+    public static synchronized void setMaxEntries(int entries) {
+        maxEntries = Math.max(entries, 0);
+        synchronized (ENTRIES) {
+            trimMemory();
+        }
+    }
+
+    public static synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * กำหนดขนาดรวมสูงสุดของผลลัพธ์ในหน่วยความจำ (ไบต์ คิด 2 ไบต์ต่อตัวอักษร)
+     */
+    public static synchronized void setMaxBytes(long bytes) {
+        maxBytes = Math.max(bytes, 0);
+        synchronized (ENTRIES) {
+            trimMemory();
+        }
+    }
+
+    public static synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * กำหนดโฟลเดอร์ที่เก็บผลลัพธ์บนดิสก์ (null = ไม่เก็บลงดิสก์)
+     */
+    public static synchronized void setDirectory(String dir) {
+        directory = directoryOf(dir);
+        diskEntries = -1;
+    }
+
+    public static synchronized void setMaxDiskEntries(int entries) {
+        maxDiskEntries = Math.max(entries, 0);
+    }
+
+    /**
+     * ขนาดสูงสุดของผลลัพธ์ที่จะเก็บ (ไบต์ UTF-8) หรือ 0 ถ้าไม่ใช้แคช
+     */
+    public static synchronized int getMaxResultBytes() {
+        return maxEntries <= 0 ? 0 : maxResultBytes;
+    }
+
+    public static synchronized void setMaxResultBytes(int bytes) {
+        maxResultBytes = Math.max(bytes, 0);
+    }
+
+    public static int size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    /**
+     * ขนาดรวมของผลลัพธ์ในหน่วยความจำ (ไบต์ คิด 2 ไบต์ต่อตัวอักษร)
+     */
+    public static long memoryBytes() {
+        synchronized (ENTRIES) {
+            return memoryBytes;
+        }
+    }
+
+    /**
+     * จำนวนครั้งที่พบในหน่วยความจำ
+     */
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * จำนวนครั้งที่พบบนดิสก์
+     */
+    public static long getDiskHitCount() {
+        return DISK_HITS.get();
+    }
+
+    public static long getMissCount() {
+        return MISSES.get();
+    }
+
+    /**
+     * เก็บผลลัพธ์ในหน่วยความจำ (ผลลัพธ์ที่ใหญ่กว่างบทั้งหมดเก็บบนดิสก์อย่างเดียว)
+     */
+    private static void remember(String id, Entry entry) {
+        long budget = getMaxBytes();
+        synchronized (ENTRIES) {
+            Entry previous = entry.bytes > budget ? ENTRIES.remove(id) : ENTRIES.put(id, entry);
+            if (previous != null) {
+                memoryBytes -= previous.bytes;
+            }
+            if (entry.bytes <= budget) {
+                memoryBytes += entry.bytes;
+            }
+            trimMemory();
+        }
+    }
+
+    /**
+     * ลบรายการที่ใช้ล่าสุดนานที่สุดจนจำนวนและขนาดรวมไม่เกินที่กำหนด (เรียกภายใต้ ENTRIES)
+     */
+    private static void trimMemory() {
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while ((ENTRIES.size() > maxEntries || memoryBytes > maxBytes) && it.hasNext()) {
+            memoryBytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    private interface EntryFilter {
+        boolean matches(String templateTag, String planHash);
+    }
+
+    /**
+     * ลบผลลัพธ์ที่ตรงเงื่อนไข ทั้งในหน่วยความจำและบนดิสก์ (บนดิสก์ดูจากชื่อไฟล์เท่านั้น)
+     * ไฟล์ที่ชื่อไม่ตรงรูปแบบ (เช่นจากรุ่นก่อน) ถูกลบด้วย
+     */
+    private static void removeIf(EntryFilter filter) {
+        synchronized (ENTRIES) {
+            Iterator<Entry> it = ENTRIES.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (filter.matches(entry.templateTag, entry.planHash)) {
+                    memoryBytes -= entry.bytes;
+                    it.remove();
+                }
+            }
+        }
+
+        Path dir = currentDirectory();
+        if (dir == null) {
+            return;
+        }
+        for (Path file : listDisk(dir)) {
+            String[] parts = file.getFileName().toString().split("_");
+            if (parts.length != 3 || filter.matches(parts[0], parts[1])) {
+                deleteQuietly(file);
+            }
+        }
+        synchronized (WssResultCache.class) {
+            diskEntries = -1;
+        }
+    }
+
+    private static synchronized Path currentDirectory() {
+        return directory;
+    }
+
+    private static Path directoryOf(String dir) {
+        return dir == null || dir.trim().isEmpty() ? null : Paths.get(dir.trim());
+    }
+
+    /**
+     * ชื่อไฟล์ของผลลัพธ์บนดิสก์
+     */
+    private static String diskName(Key key) {
+        return key.templateTag + "_" + key.planHash + "_" + key.id + FILE_SUFFIX;
+    }
+
+    /**
+     * tag ของ TEMPLATE_ID ที่ใช้ในชื่อไฟล์ (16 ตัวแรกของ SHA-256 ตัวอักษรฐาน 16)
+     */
+    static String templateTag(String templateId) {
+        if (templateId == null) {
+            return NO_TEMPLATE;
+        }
+        MessageDigest digest = sha256();
+        return FileFingerprint.toHex(digest.digest(templateId.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+    }
+
+    private static String readFromDisk(Key key) {
+        Path dir = currentDirectory();
+        if (dir == null) {
+            return null;
+        }
+        Path file = dir.resolve(diskName(key));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.warn("ไม่สามารถอ่านแคชผลลัพธ์: {} ({})", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * เขียนไฟล์ผลลัพธ์ผ่านไฟล์ชั่วคราว แล้วย้ายแทนที่ (ผู้อ่านจึงไม่เห็นไฟล์ที่เขียนไม่ครบ)
+     */
+    private static void writeToDisk(Key key, Entry entry) {
+        Path dir = currentDirectory();
+        if (dir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            Path target = dir.resolve(diskName(key));
+            boolean existed = Files.exists(target);
+            Path temp = Files.createTempFile(dir, key.id, ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    writer.write(entry.wssResult);
+                }
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            if (!existed) {
+                trimDisk(dir);
+            }
+        } catch (IOException e) {
+            LOG.warn("ไม่สามารถเขียนแคชผลลัพธ์: {} ({})", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * ลบไฟล์ที่เก่าที่สุดเมื่อจำนวนไฟล์เกินที่กำหนด (นับไฟล์ทั้งโฟลเดอร์เฉพาะครั้งแรกและเมื่อเกิน)
+     */
+    private static synchronized void trimDisk(Path dir) {
+        if (diskEntries < 0) {
+            diskEntries = listDisk(dir).size();
+        } else {
+            diskEntries++;
+        }
+        if (diskEntries <= maxDiskEntries) {
+            return;
+        }
+
+        List<Path> files = listDisk(dir);
+        files.sort(Comparator.comparingLong(WssResultCache::lastModified));
+        int excess = files.size() - maxDiskEntries;
+        for (int i = 0; i < excess; i++) {
+            deleteQuietly(files.get(i));
+        }
+        diskEntries = Math.min(files.size(), maxDiskEntries);
+    }
+
+    private static List<Path> listDisk(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            LOG.warn("ไม่สามารถอ่านโฟลเดอร์แคชผลลัพธ์: {} ({})", dir, e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("ไม่สามารถลบแคชผลลัพธ์: {} ({})", file, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("ไม่รองรับ SHA-256", e);
+        }
+    }
+
+    /**
+     * key ของผลลัพธ์หนึ่งรายการ
+     */
+    public static final class Key {
+        private final String fileSha256;
+        private final String planHash;
+        private final String agencyCode;
+        private final String templateId;
+        private final String templateTag;
+        /** ชื่อของผลลัพธ์ (เป็นส่วนหนึ่งของชื่อไฟล์บนดิสก์ด้วย) */
+        private final String id;
+
+        Key(String fileSha256, String planHash, String agencyCode, String templateId) {
+            this.fileSha256 = fileSha256;
+            this.planHash = planHash;
+            this.agencyCode = agencyCode;
+            this.templateId = templateId;
+            this.templateTag = templateTag(templateId);
+
+            MessageDigest digest = sha256();
+            digest.update((fileSha256 + "\n" + planHash + "\n" + agencyCode).getBytes(StandardCharsets.UTF_8));
+            this.id = FileFingerprint.toHex(digest.digest());
+        }
+
+        public String getFileSha256() {
+            return fileSha256;
+        }
+
+        public String getPlanHash() {
+            return planHash;
+        }
+
+        public String getAgencyCode() {
+            return agencyCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && id.equals(((Key) o).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id);
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+
+    private static final class Entry {
+        final String templateTag;
+        final String planHash;
+        final String wssResult;
+        /** ขนาดโดยประมาณในหน่วยความจำ (2 ไบต์ต่อตัวอักษร) */
+        final long bytes;
+
+        Entry(String templateTag, String planHash, String wssResult) {
+            this.templateTag = templateTag;
+            this.planHash = planHash;
+            this.wssResult = wssResult;
+            this.bytes = 2L * wssResult.length();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * เขียน wssResult ลง OutputStream โดยตรงด้วย JsonGenerator ของ Jackson (UTF-8)
+ * ไม่ต้องสร้าง JSONObject ซ้อนกันและ String ของผลลัพธ์ทั้งก้อนไว้ในหน่วยความจำ
+ * ค่าใน data ต้องอ่านเสร็จก่อนเขียน (ยกเว้น RowStream ที่อ่านทีละหน้าระหว่างเขียน)
+ *
+ * ได้ byte เหมือน toString ของ JSONObject เดิมทุกประการ:
+ * {"wssResult":{"data":{...},"errorMessage":{...},"status":"..."}}
+ * - ลำดับ key เหมือน HashMap ภายใน JSONObject: data, errorMessage, status ตามลำดับนี้,
+ *   Map เขียนตามลำดับของ new JSONObject(Map) ซึ่งคัดลอกค่าที่ไม่ใช่ null ลง new HashMap(size)
+ *   และ object ที่สร้างด้วย put (newObject) เขียนตามลำดับของ HashMap นั้นเอง
+ * - แปลงค่าแบบเดียวกับ JSONObject (ค่า null ใน Map ไม่ถูกเขียน, ตัวเลขทศนิยมที่ลงท้ายด้วย .0 เขียนเป็นจำนวนเต็ม,
+ *   Date และ object อื่นของ java.* เขียนเป็นข้อความจาก toString)
+ * - escape ข้อความแบบ JSONObject.quote (เช่น &lt;/ เป็น &lt;\/ และอักขระ U+0080-U+009F, U+2000-U+20FF เป็น \\uxxxx ตัวเล็ก)
+ *
+ * ลำดับการเรียก: writeData, writeErrorMessage, writeStatus แล้ว close
+ */
+public final class WssResultWriter implements Closeable {
+
+    /** JsonFactory ใช้ร่วมกันได้ทุก thread และไม่ปิด OutputStream ของผู้เรียก */
+    private static final JsonFactory FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final JsonGenerator generator;
+
+    /**
+     * เริ่มเขียน {"wssResult":{
+     *
+     * @param out ปลายทาง (ไม่ถูกปิดเมื่อ close)
+     * @throws IOException หากเขียนไม่ได้
+     */
+    public WssResultWriter(OutputStream out) throws IOException {
+        generator = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        writeName("wssResult");
+        generator.writeStartObject();
+    }
+
+    /**
+     * เขียนผลลัพธ์ที่ผิดพลาด (data ว่าง, status = fail) เหมือนกรณีอ่านไฟล์ไม่ได้ใน processExcelToWssResult
+     */
+    public static void writeError(OutputStream out, String errorCode, String errorMessage) throws IOException {
+        Map<String, Object> error = newObject();
+        error.put("errorCode", errorCode);
+        error.put("errorMessage", errorMessage);
+        try (WssResultWriter writer = new WssResultWriter(out)) {
+            writer.writeData(Collections.emptyMap());
+            writer.writeErrorMessage(error);
+            writer.writeStatus("fail");
+        }
+    }
+
+    /**
+     * object ว่างที่เขียนตามลำดับ key เหมือน new JSONObject() แล้ว put ทีละค่า
+     * (put ค่า null คือลบ key นั้น เหมือน JSONObject.put)
+     */
+    public static Map<String, Object> newObject() {
+        return new PutObject();
+    }
+
+    /**
+     * เขียน data (ค่า null ไม่ถูกเขียน เหมือน new JSONObject(Map))
+     */
+    public void writeData(Map<String, ?> data) throws IOException {
+        writeName("data");
+        writeValue(data);
+    }
+
+    /**
+     * เขียน errorMessage (ปกติสร้างด้วย newObject)
+     */
+    public void writeErrorMessage(Map<String, ?> errorMessage) throws IOException {
+        writeName("errorMessage");
+        writeValue(errorMessage);
+    }
+
+    public void writeStatus(String status) throws IOException {
+        writeName("status");
+        writeString(status);
+    }
+
+    /**
+     * ปิด wssResult และ object นอกสุด แล้ว flush (ไม่ปิด OutputStream)
+     */
+    @Override
+    public void close() throws IOException {
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    /**
+     * เขียนค่าตามการแปลงของ JSONObject.wrap
+     */
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte || value instanceof BigInteger) {
+            generator.writeNumber(value.toString());
+        } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            writeDecimal((Number) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Enum) {
+            writeString(((Enum<?>) value).name());
+        } else if (value instanceof PutObject) {
+            writeObject((Map<?, ?>) value);
+        } else if (value instanceof Map) {
+            // new JSONObject(Map) คัดลอกค่าที่ไม่ใช่ null ลง HashMap ขนาดเท่า Map เดิม ลำดับ key จึงตาม HashMap นั้น
+            Map<?, ?> map = (Map<?, ?>) value;
+            Map<String, Object> copy = new HashMap<>(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getValue() != null) {
+                    copy.put(String.valueOf(entry.getKey()), entry.getValue());
+                }
+            }
+            writeObject(copy);
+        } else if (value instanceof RowSet) {
+            generator.writeStartArray();
+            writeRows((RowSet) value);
+            generator.writeEndArray();
+        } else if (value instanceof RowStream) {
+            // อ่านและเขียนทีละหน้า ไม่ต้องมีทุกแถวในหน่วยความจำพร้อมกัน
+            generator.writeStartArray();
+            RowStream.Cursor cursor = ((RowStream) value).cursor();
+            for (RowSet page = cursor.nextPage(); page != null; page = cursor.nextPage()) {
+                writeRows(page);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object item : (Collection<?>) value) {
+                writeValue(item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Object[]) {
+            generator.writeStartArray();
+            for (Object item : (Object[]) value) {
+                writeValue(item);
+            }
+            generator.writeEndArray();
+        } else {
+            // Date, Character และอื่นๆ เขียนเป็นข้อความ
+            writeString(value.toString());
+        }
+    }
+
+    /**
+     * เขียน object ตามลำดับของ map (ข้ามค่า null)
+     */
+    private void writeObject(Map<?, ?> map) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                writeName(String.valueOf(entry.getKey()));
+                writeValue(entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * เขียนแถวของ RowSet เป็น object ใน array จากอาร์เรย์ของคอลัมน์โดยตรง
+     * ได้ JSON เหมือนการเขียน List ของ HashMap ด้วย JSONObject (ลำดับ key เดียวกัน และข้ามค่า null)
+     */
+    private void writeRows(RowSet rows) throws IOException {
+        for (int row = 0; row < rows.size(); row++) {
+            int present = 0;
+            for (int field = 0; field < rows.fieldCount(); field++) {
+                if (rows.getType(row, rows.fieldColumn(field)) != SheetSnapshot.NONE) {
+                    present++;
+                }
+            }
+
+            generator.writeStartObject();
+            for (int col : rows.jsonFieldOrder(present)) {
+                byte type = rows.getType(row, col);
+                if (type == SheetSnapshot.NONE) {
+                    continue;
+                }
+                writeName(rows.key(col));
+                switch (type) {
+                    case SheetSnapshot.STRING:
+                        writeString((String) rows.getObject(row, col));
+                        break;
+                    case SheetSnapshot.INTEGER:
+                    case SheetSnapshot.LONG:
+                        generator.writeNumber((long) rows.getNumber(row, col));
+                        break;
+                    case SheetSnapshot.DOUBLE:
+                        writeDecimal(rows.getNumber(row, col));
+                        break;
+                    case SheetSnapshot.DATE:
+                        writeString(new Date((long) rows.getNumber(row, col)).toString());
+                        break;
+                    case SheetSnapshot.BOOLEAN:
+                        generator.writeBoolean(rows.getNumber(row, col) != 0);
+                        break;
+                    default:
+                        writeValue(rows.getObject(row, col));
+                        break;
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * เขียนข้อความ ข้อความที่ Jackson escape ต่างจาก JSONObject.quote เขียนเป็น UTF-8 ที่ escape เองแล้ว
+     */
+    private void writeString(String text) throws IOException {
+        if (needsQuote(text)) {
+            byte[] quoted = quote(text).getBytes(StandardCharsets.UTF_8);
+            generator.writeRawUTF8String(quoted, 0, quoted.length);
+        } else {
+            generator.writeString(text);
+        }
+    }
+
+    private void writeName(String name) throws IOException {
+        if (needsQuote(name)) {
+            generator.writeFieldName(new QuotedName(name, quote(name)));
+        } else {
+            generator.writeFieldName(name);
+        }
+    }
+
+    /**
+     * เขียนทศนิยมแบบ JSONObject.numberToString (ตัด 0 ท้ายทศนิยม เช่น 5.0 เป็น 5)
+     * ค่าที่ไม่ใช่ตัวเลขจริง (NaN, Infinity) เขียนเป็นข้อความ
+     */
+    private void writeDecimal(Number number) throws IOException {
+        if ((number instanceof Double && !Double.isFinite(number.doubleValue()))
+                || (number instanceof Float && !Float.isFinite(number.floatValue()))) {
+            generator.writeString(number.toString());
+            return;
+        }
+        writeDecimal(number.toString());
+    }
+
+    private void writeDecimal(double number) throws IOException {
+        if (!Double.isFinite(number)) {
+            generator.writeString(Double.toString(number));
+            return;
+        }
+        writeDecimal(Double.toString(number));
+    }
+
+    private void writeDecimal(String text) throws IOException {
+        if (text.indexOf('.') > 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+            int end = text.length();
+            while (text.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (text.charAt(end - 1) == '.') {
+                end--;
+            }
+            text = text.substring(0, end);
+        }
+        generator.writeNumber(text);
+    }
+
+    /**
+     * true ถ้า JSONObject.quote escape ข้อความนี้ต่างจาก Jackson
+     * (Jackson escape " \\ และอักขระควบคุมด้วยรูปแบบสั้นเหมือนกัน แต่ใช้ hex ตัวใหญ่ ไม่ escape / หรืออักขระตั้งแต่ U+0080
+     * และเขียน surrogate pair เป็น \\uXXXX สองตัวแทน UTF-8 4 byte)
+     */
+    private static boolean needsQuote(String text) {
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < ' ') {
+                if (c != '\b' && c != '\t' && c != '\n' && c != '\f' && c != '\r') {
+                    return true;
+                }
+            } else if ((c == '/' && previous == '<') || escapedAsUnicode(c) || Character.isSurrogate(c)) {
+                return true;
+            }
+            previous = c;
+        }
+        return false;
+    }
+
+    /**
+     * ข้อความที่ escape แล้วแบบ JSONObject.quote (ไม่รวมเครื่องหมายคำพูด)
+     */
+    private static String quote(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    sb.append('\\').append(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        sb.append('\\');
+                    }
+                    sb.append(c);
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    if (c < ' ' || escapedAsUnicode(c)) {
+                        sb.append("\\u").append(HEX[c >>> 12]).append(HEX[(c >>> 8) & 0xF])
+                                .append(HEX[(c >>> 4) & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+            previous = c;
+        }
+        return sb.toString();
+    }
+
+    private static boolean escapedAsUnicode(char c) {
+        return (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100');
+    }
+
+    /**
+     * object ที่สร้างด้วย put แบบ JSONObject (ลำดับ key ตาม HashMap เริ่มต้น)
+     */
+    private static final class PutObject extends HashMap<String, Object> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object put(String key, Object value) {
+            return value == null ? remove(key) : super.put(key, value);
+        }
+    }
+
+    /**
+     * ชื่อ key ที่ escape แล้วแบบ JSONObject.quote (Jackson ใช้ค่าที่ escape ไว้แล้วแทนการ escape เอง)
+     */
+    private static final class QuotedName extends SerializedString {
+        private static final long serialVersionUID = 1L;
+
+        QuotedName(String name, String quoted) {
+            super(name);
+            _quotedChars = quoted.toCharArray();
+            _quotedUTF8Ref = quoted.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
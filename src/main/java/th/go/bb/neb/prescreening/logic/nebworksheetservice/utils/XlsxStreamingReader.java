@@ -0,0 +1,752 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * อ่านไฟล์ .xlsx ด้วย XSSF event model (XSSFReader + SAX) โดยไม่สร้าง XSSFWorkbook
+ *
+ * แต่ละชีทถูกอ่านเพียงรอบเดียว และส่งค่าเซลล์ให้ SheetConsumer ทุกตัวที่ลงทะเบียนไว้กับชีทนั้น
+ * ค่าที่ส่งให้ consumer แปลงตามกติกาเดียวกับ ExcelReader.getCellValue และ ExcelReader.isEmpty
+ * เพื่อให้ผลลัพธ์ตรงกับการอ่านแบบ DOM
+ */
+public class XlsxStreamingReader implements Closeable {
+
+    /** ตำแหน่งเซลล์ในสูตร เช่น A1, $B$2 (คอลัมน์ไม่เกิน 3 ตัวอักษร) */
+    private static final Pattern CELL_REF = Pattern.compile("(\\$?)([A-Za-z]{1,3})(\\$?)([0-9]+)");
+    /** คอลัมน์ทั้งคอลัมน์ (A ใน A:C) หรือแถวทั้งแถว (1 ใน 1:3) */
+    private static final Pattern COLUMN_REF = Pattern.compile("(\\$?)([A-Za-z]{1,3})");
+    private static final Pattern ROW_REF = Pattern.compile("(\\$?)([0-9]+)");
+    private static final int MAX_COLUMN = 16383;
+    private static final int MAX_ROW = 1048575;
+
+    /**
+     * ตัวรับข้อมูลจากการอ่านชีทแบบ streaming
+     */
+    public interface SheetConsumer {
+
+        /**
+         * ขนาดของชีทตาม dimension ในไฟล์ (เช่น ref="A1:AB100") เรียกก่อนแถวแรก
+         * เฉพาะไฟล์ที่มี dimension (ค่าทั้งหมดเป็น 0-based)
+         */
+        default void dimension(int firstRow, int firstCol, int lastRow, int lastCol) {
+        }
+
+        /**
+         * เริ่มแถวใหม่ (rowIdx เป็น 0-based) เรียกเฉพาะแถวที่มีอยู่จริงในไฟล์
+         */
+        default void startRow(int rowIdx) {
+        }
+
+        /**
+         * ค่าของเซลล์หนึ่งเซลล์
+         *
+         * @param rowIdx แถว (0-based)
+         * @param colIdx คอลัมน์ (0-based)
+         * @param value  ค่าเซลล์ในรูปแบบเดียวกับ ExcelReader.getCellValue
+         * @param empty  true ถ้าเซลล์ว่างตามกติกาของ ExcelReader.isEmpty
+         */
+        void cell(int rowIdx, int colIdx, Object value, boolean empty);
+
+        /**
+         * จบแถว
+         */
+        default void endRow(int rowIdx) {
+        }
+
+        /**
+         * อ่านชีทจบแล้ว
+         */
+        default void endSheet() {
+        }
+    }
+
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final ReadOnlySharedStringsTable sharedStrings;
+    private final StylesTable styles;
+    private final List<String> sheetNames;
+    private final boolean date1904;
+
+    private XlsxStreamingReader(OPCPackage pkg) throws IOException, OpenXML4JException, SAXException {
+        this.pkg = pkg;
+        this.reader = new XSSFReader(pkg);
+        this.sharedStrings = new ReadOnlySharedStringsTable(pkg, false);
+        this.styles = reader.getStylesTable();
+
+        WorkbookHandler workbookHandler = new WorkbookHandler();
+        try (InputStream in = reader.getWorkbookData()) {
+            parse(in, workbookHandler);
+        }
+        this.sheetNames = workbookHandler.sheetNames;
+        this.date1904 = workbookHandler.date1904;
+    }
+
+    /**
+     * เปิดไฟล์ .xlsx แบบอ่านอย่างเดียว (ไม่คลายการบีบอัดชีทจนกว่าจะถูกอ่าน)
+     *
+     * @param fileName ชื่อไฟล์ Excel
+     * @return XlsxStreamingReader ที่ต้องปิดเมื่อใช้งานเสร็จ
+     * @throws IOException หากเปิดไฟล์ไม่ได้หรือไม่ใช่ไฟล์ .xlsx
+     */
+    public static XlsxStreamingReader open(String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(fileName + " (No such file or directory)");
+        }
+
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            return new XlsxStreamingReader(pkg);
+        } catch (OpenXML4JException | SAXException e) {
+            if (pkg != null) {
+                pkg.revert();
+            }
+            throw new IOException("ไม่สามารถอ่านไฟล์ .xlsx: " + fileName, e);
+        } catch (IOException | RuntimeException e) {
+            if (pkg != null) {
+                pkg.revert();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * รายชื่อชีทตามลำดับใน workbook.xml
+     */
+    public List<String> getSheetNames() {
+        return sheetNames;
+    }
+
+    /**
+     * ค้นหาชื่อชีทแบบไม่สนตัวพิมพ์เล็ก/ใหญ่ เหมือน Workbook.getSheet
+     *
+     * @return ชื่อชีทตามที่อยู่ในไฟล์ หรือ null ถ้าไม่พบ
+     */
+    public String findSheetName(String sheetName) {
+        if (sheetName == null) {
+            return null;
+        }
+        for (String name : sheetNames) {
+            if (name.equalsIgnoreCase(sheetName)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * อ่านชีทที่มี consumer ลงทะเบียนไว้ ชีทละหนึ่งรอบ
+     *
+     * @param consumersBySheet Map ของชื่อชีท (ตามที่ได้จาก findSheetName) และรายการ consumer
+     * @throws IOException หากมีข้อผิดพลาดในการอ่านไฟล์
+     */
+    public void scan(Map<String, List<SheetConsumer>> consumersBySheet) throws IOException {
+        if (consumersBySheet.isEmpty()) {
+            return;
+        }
+
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            Set<String> scanned = new HashSet<>();
+            while (sheets.hasNext()) {
+                try (InputStream in = sheets.next()) {
+                    String name = sheets.getSheetName();
+                    List<SheetConsumer> consumers = consumersBySheet.get(name);
+                    if (consumers == null || consumers.isEmpty() || !scanned.add(name)) {
+                        continue;
+                    }
+
+                    SheetConsumer consumer = consumers.size() == 1 ? consumers.get(0) : new CompositeConsumer(consumers);
+                    SheetHandler handler = new SheetHandler(consumer);
+                    parse(in, handler);
+                    ReadStatistics.addRows(handler.rowCount);
+                    consumer.endSheet();
+                }
+            }
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("ไม่สามารถอ่านชีทจากไฟล์ .xlsx", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // เปิดแบบ READ จึงไม่ต้องบันทึกกลับ
+        pkg.revert();
+    }
+
+    private static void parse(InputStream in, DefaultHandler handler) throws IOException, SAXException {
+        try {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(in));
+        } catch (ParserConfigurationException e) {
+            throw new IOException("ไม่สามารถสร้าง SAX parser", e);
+        }
+    }
+
+    private static String elementName(String localName, String qName) {
+        if (localName != null && !localName.isEmpty()) {
+            return localName;
+        }
+        int idx = qName.indexOf(':');
+        return idx >= 0 ? qName.substring(idx + 1) : qName;
+    }
+
+    /**
+     * แปลงตัวอักษรคอลัมน์ของตำแหน่งเซลล์ (เช่น "AB12") เป็น index (0-based)
+     */
+    private static int columnIndex(String cellRef) {
+        int col = 0;
+        for (int i = 0; i < cellRef.length(); i++) {
+            char c = cellRef.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                col = col * 26 + (c - 'A' + 1);
+            } else if (c >= 'a' && c <= 'z') {
+                col = col * 26 + (c - 'a' + 1);
+            } else {
+                break;
+            }
+        }
+        return col - 1;
+    }
+
+    /**
+     * แปลงเลขแถวของตำแหน่งเซลล์ (เช่น "AB12") เป็น index (0-based) หรือ -1 ถ้าไม่มีเลขแถว
+     */
+    private static int rowIndex(String cellRef) {
+        int start = 0;
+        while (start < cellRef.length() && Character.isLetter(cellRef.charAt(start))) {
+            start++;
+        }
+        try {
+            return Integer.parseInt(cellRef.substring(start)) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * เลื่อนตำแหน่งเซลล์แบบ relative ในสูตรไป rowDelta แถวและ colDelta คอลัมน์ แบบเดียวกับ SharedFormula
+     * ที่ XSSFCell.getCellFormula ใช้ขยาย shared formula (ตำแหน่งที่มี $ ไม่เลื่อน ตำแหน่งที่เลื่อนออกนอกชีทเป็น #REF!)
+     * ข้อความในเครื่องหมายคำพูด ชื่อชีท ชื่อฟังก์ชัน และ [..] ไม่ถูกแก้ไข
+     */
+    static String shiftFormula(String formula, int rowDelta, int colDelta) {
+        StringBuilder out = new StringBuilder(formula.length() + 8);
+        int n = formula.length();
+        int i = 0;
+        while (i < n) {
+            char c = formula.charAt(i);
+            if (c == '"' || c == '\'' || c == '[') {
+                // ข้อความ "..." หรือชื่อชีท '...' (เครื่องหมายซ้อนเขียนเป็นสองตัว) หรือ [..]
+                char close = c == '[' ? ']' : c;
+                int end = i + 1;
+                while (end < n) {
+                    if (formula.charAt(end) == close) {
+                        if (close != ']' && end + 1 < n && formula.charAt(end + 1) == close) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, n);
+                out.append(formula, i, end);
+                i = end;
+            } else if (isNameChar(c)) {
+                int end = tokenEnd(formula, i);
+                String token = formula.substring(i, end);
+                if (end < n && (formula.charAt(end) == '(' || formula.charAt(end) == '!')) {
+                    // ชื่อฟังก์ชันหรือชื่อชีท
+                    out.append(token);
+                } else if (end + 1 < n && formula.charAt(end) == ':' && isNameChar(formula.charAt(end + 1))) {
+                    int secondEnd = tokenEnd(formula, end + 1);
+                    String second = formula.substring(end + 1, secondEnd);
+                    String area = shiftWholeArea(token, second, rowDelta, colDelta);
+                    if (area != null) {
+                        out.append(area);
+                        i = secondEnd;
+                        continue;
+                    }
+                    out.append(shiftCellRef(token, rowDelta, colDelta));
+                } else {
+                    out.append(shiftCellRef(token, rowDelta, colDelta));
+                }
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+    }
+
+    private static int tokenEnd(String formula, int start) {
+        int end = start;
+        while (end < formula.length() && isNameChar(formula.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * เลื่อนตำแหน่งเซลล์เดียว (คืน token เดิมถ้าไม่ใช่ตำแหน่งเซลล์ เช่น ตัวเลขหรือชื่อ)
+     */
+    private static String shiftCellRef(String token, int rowDelta, int colDelta) {
+        Matcher m = CELL_REF.matcher(token);
+        if (!m.matches()) {
+            return token;
+        }
+        int col = columnIndex(m.group(2));
+        int row;
+        try {
+            row = Integer.parseInt(m.group(4)) - 1;
+        } catch (NumberFormatException e) {
+            return token;
+        }
+        if (col > MAX_COLUMN || row < 0 || row > MAX_ROW) {
+            return token;
+        }
+        boolean absCol = !m.group(1).isEmpty();
+        boolean absRow = !m.group(3).isEmpty();
+        col += absCol ? 0 : colDelta;
+        row += absRow ? 0 : rowDelta;
+        if (col < 0 || col > MAX_COLUMN || row < 0 || row > MAX_ROW) {
+            return "#REF!";
+        }
+        return m.group(1) + CellReference.convertNumToColString(col) + m.group(3) + (row + 1);
+    }
+
+    /**
+     * เลื่อนช่วงทั้งคอลัมน์ (A:C) หรือทั้งแถว (1:3) หรือ null ถ้าไม่ใช่ช่วงแบบนั้น
+     */
+    private static String shiftWholeArea(String first, String last, int rowDelta, int colDelta) {
+        Matcher firstCol = COLUMN_REF.matcher(first);
+        Matcher lastCol = COLUMN_REF.matcher(last);
+        if (firstCol.matches() && lastCol.matches()) {
+            String a = shiftWholeLine(firstCol, columnIndex(firstCol.group(2)), colDelta, MAX_COLUMN, true);
+            String b = shiftWholeLine(lastCol, columnIndex(lastCol.group(2)), colDelta, MAX_COLUMN, true);
+            return a == null || b == null ? "#REF!" : a + ":" + b;
+        }
+        Matcher firstRow = ROW_REF.matcher(first);
+        Matcher lastRow = ROW_REF.matcher(last);
+        if (firstRow.matches() && lastRow.matches()) {
+            try {
+                String a = shiftWholeLine(firstRow, Integer.parseInt(firstRow.group(2)) - 1, rowDelta, MAX_ROW, false);
+                String b = shiftWholeLine(lastRow, Integer.parseInt(lastRow.group(2)) - 1, rowDelta, MAX_ROW, false);
+                return a == null || b == null ? "#REF!" : a + ":" + b;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static String shiftWholeLine(Matcher m, int index, int delta, int max, boolean column) {
+        int shifted = m.group(1).isEmpty() ? index + delta : index;
+        if (shifted < 0 || shifted > max) {
+            return null;
+        }
+        return m.group(1) + (column ? CellReference.convertNumToColString(shifted) : String.valueOf(shifted + 1));
+    }
+
+    /**
+     * ถอดรหัส _xHHHH_ ในข้อความแบบเดียวกับ XSSFRichTextString.getString
+     */
+    private static String decode(CharSequence raw) {
+        return new XSSFRichTextString(raw.toString()).getString();
+    }
+
+    /**
+     * อ่านรายชื่อชีทและการตั้งค่า date1904 จาก workbook.xml
+     */
+    private static final class WorkbookHandler extends DefaultHandler {
+        private final List<String> sheetNames = new ArrayList<>();
+        private boolean date1904;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = elementName(localName, qName);
+            if ("sheet".equals(name)) {
+                sheetNames.add(attributes.getValue("name"));
+            } else if ("workbookPr".equals(name)) {
+                String value = attributes.getValue("date1904");
+                date1904 = "1".equals(value) || "true".equalsIgnoreCase(value);
+            }
+        }
+    }
+
+    /**
+     * ส่งเหตุการณ์ให้ consumer หลายตัวในรอบการอ่านเดียว
+     */
+    private static final class CompositeConsumer implements SheetConsumer {
+        private final SheetConsumer[] consumers;
+
+        CompositeConsumer(List<SheetConsumer> consumers) {
+            this.consumers = consumers.toArray(new SheetConsumer[0]);
+        }
+
+        @Override
+        public void dimension(int firstRow, int firstCol, int lastRow, int lastCol) {
+            for (SheetConsumer consumer : consumers) {
+                consumer.dimension(firstRow, firstCol, lastRow, lastCol);
+            }
+        }
+
+        @Override
+        public void startRow(int rowIdx) {
+            for (SheetConsumer consumer : consumers) {
+                consumer.startRow(rowIdx);
+            }
+        }
+
+        @Override
+        public void cell(int rowIdx, int colIdx, Object value, boolean empty) {
+            for (SheetConsumer consumer : consumers) {
+                consumer.cell(rowIdx, colIdx, value, empty);
+            }
+        }
+
+        @Override
+        public void endRow(int rowIdx) {
+            for (SheetConsumer consumer : consumers) {
+                consumer.endRow(rowIdx);
+            }
+        }
+
+        @Override
+        public void endSheet() {
+            for (SheetConsumer consumer : consumers) {
+                consumer.endSheet();
+            }
+        }
+    }
+
+    /**
+     * สูตรต้นแบบของ shared formula (เซลล์แรกของกลุ่มที่มีข้อความสูตร)
+     */
+    private static final class SharedFormula {
+        private final String formula;
+        /** ตำแหน่งอ้างอิงของการเลื่อน: เซลล์แรกของ ref (เหมือน XSSFCell) หรือเซลล์ต้นแบบถ้าไม่มี ref */
+        private final int firstRow;
+        private final int firstCol;
+
+        SharedFormula(String formula, int firstRow, int firstCol) {
+            this.formula = formula;
+            this.firstRow = firstRow;
+            this.firstCol = firstCol;
+        }
+
+        String at(int rowIdx, int colIdx) {
+            return shiftFormula(formula, rowIdx - firstRow, colIdx - firstCol);
+        }
+    }
+
+    /**
+     * SAX handler สำหรับ sheetN.xml ทำงานแบบเดียวกับ XSSFSheetXMLHandler
+     * แต่ส่งค่าตามชนิดข้อมูล (ไม่ใช่ข้อความที่จัดรูปแบบแล้ว)
+     */
+    private final class SheetHandler extends DefaultHandler {
+        private final SheetConsumer consumer;
+        /** shared formula ของชีทนี้ตาม si */
+        private final Map<String, SharedFormula> sharedFormulas = new HashMap<>();
+
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+        private final StringBuilder inlineText = new StringBuilder();
+
+        private int rowIdx = -1;
+        private int colIdx = -1;
+        private long rowCount;
+        private String cellType;
+        private int styleIdx;
+        /** si ของ shared formula ในเซลล์ปัจจุบัน (null = ไม่ใช่ shared formula) และ ref ของเซลล์ต้นแบบ */
+        private String sharedIndex;
+        private String sharedRef;
+
+        private boolean hasValue;
+        private boolean hasFormula;
+        private boolean hasInline;
+        private boolean inValue;
+        private boolean inFormula;
+        private boolean inInlineText;
+        private boolean inPhonetic;
+
+        SheetHandler(SheetConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = elementName(localName, qName);
+            switch (name) {
+                case "dimension":
+                    emitDimension(attributes.getValue("ref"));
+                    break;
+                case "row": {
+                    String r = attributes.getValue("r");
+                    rowIdx = r != null ? Integer.parseInt(r) - 1 : rowIdx + 1;
+                    colIdx = -1;
+                    consumer.startRow(rowIdx);
+                    break;
+                }
+                case "c": {
+                    String r = attributes.getValue("r");
+                    colIdx = r != null ? columnIndex(r) : colIdx + 1;
+                    cellType = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    styleIdx = s != null ? Integer.parseInt(s) : 0;
+
+                    value.setLength(0);
+                    formula.setLength(0);
+                    inlineText.setLength(0);
+                    hasValue = false;
+                    hasFormula = false;
+                    hasInline = false;
+                    sharedIndex = null;
+                    sharedRef = null;
+                    break;
+                }
+                case "v":
+                    hasValue = true;
+                    inValue = true;
+                    break;
+                case "f":
+                    // สูตรแบบ dataTable ไม่นับเป็นเซลล์สูตร (เหมือน XSSFCell.isFormulaCell)
+                    hasFormula = !"dataTable".equals(attributes.getValue("t"));
+                    if ("shared".equals(attributes.getValue("t"))) {
+                        sharedIndex = attributes.getValue("si");
+                        sharedRef = attributes.getValue("ref");
+                    }
+                    inFormula = true;
+                    break;
+                case "is":
+                    hasInline = true;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                case "t":
+                    inInlineText = hasInline && !inPhonetic;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String name = elementName(localName, qName);
+            switch (name) {
+                case "v":
+                    inValue = false;
+                    break;
+                case "f":
+                    inFormula = false;
+                    if (sharedIndex != null && formula.length() > 0) {
+                        registerSharedFormula();
+                    }
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "t":
+                    inInlineText = false;
+                    break;
+                case "c":
+                    emitCell();
+                    break;
+                case "row":
+                    consumer.endRow(rowIdx);
+                    rowCount++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            } else if (inFormula) {
+                formula.append(ch, start, length);
+            } else if (inInlineText) {
+                inlineText.append(ch, start, length);
+            }
+        }
+
+        /**
+         * แยก ref ของ dimension (เช่น "A1:AB100" หรือ "A1") ถ้ารูปแบบไม่ถูกต้องจะไม่แจ้ง consumer
+         */
+        private void emitDimension(String ref) {
+            if (ref == null || ref.isEmpty()) {
+                return;
+            }
+            int colon = ref.indexOf(':');
+            String first = colon >= 0 ? ref.substring(0, colon) : ref;
+            String last = colon >= 0 ? ref.substring(colon + 1) : ref;
+            int firstRow = rowIndex(first);
+            int lastRow = rowIndex(last);
+            int firstCol = columnIndex(first);
+            int lastCol = columnIndex(last);
+            if (firstRow >= 0 && lastRow >= firstRow && firstCol >= 0 && lastCol >= firstCol) {
+                consumer.dimension(firstRow, firstCol, lastRow, lastCol);
+            }
+        }
+
+        /**
+         * เก็บสูตรของเซลล์ต้นแบบไว้ขยายให้เซลล์อื่นในกลุ่ม (เซลล์อื่นมีเพียง si ไม่มีข้อความสูตร)
+         */
+        private void registerSharedFormula() {
+            int firstRow = rowIdx;
+            int firstCol = colIdx;
+            if (sharedRef != null && !sharedRef.isEmpty()) {
+                int colon = sharedRef.indexOf(':');
+                String first = colon >= 0 ? sharedRef.substring(0, colon) : sharedRef;
+                int refRow = rowIndex(first);
+                int refCol = columnIndex(first);
+                if (refRow >= 0 && refCol >= 0) {
+                    firstRow = refRow;
+                    firstCol = refCol;
+                }
+            }
+            sharedFormulas.put(sharedIndex, new SharedFormula(formula.toString(), firstRow, firstCol));
+        }
+
+        /**
+         * ข้อความสูตรตาม XSSFCell.getCellFormula: shared formula ถูกขยายตามตำแหน่งของเซลล์นี้
+         */
+        private String formulaText() {
+            if (sharedIndex == null) {
+                return formula.toString();
+            }
+            SharedFormula shared = sharedFormulas.get(sharedIndex);
+            return shared != null ? shared.at(rowIdx, colIdx) : formula.toString();
+        }
+
+        private void emitCell() {
+            String type = cellType == null ? "n" : cellType;
+
+            if (hasFormula) {
+                // เซลล์สูตรไม่ถือว่าว่าง (ExcelReader.isEmpty)
+                consumer.cell(rowIdx, colIdx, formulaValue(type), false);
+                return;
+            }
+
+            switch (type) {
+                case "b":
+                    consumer.cell(rowIdx, colIdx, hasValue && "1".equals(value.toString()), false);
+                    break;
+                case "e":
+                    consumer.cell(rowIdx, colIdx, null, false);
+                    break;
+                case "s": {
+                    String text = "";
+                    if (hasValue) {
+                        int idx = Integer.parseInt(value.toString().trim());
+                        text = sharedStrings.getItemAt(idx).getString();
+                    }
+                    consumer.cell(rowIdx, colIdx, text, text.trim().isEmpty());
+                    break;
+                }
+                case "inlineStr": {
+                    String text = hasInline ? decode(inlineText) : hasValue ? decode(value) : "";
+                    consumer.cell(rowIdx, colIdx, text, text.trim().isEmpty());
+                    break;
+                }
+                case "n": {
+                    if (!hasValue) {
+                        // ไม่มีค่า = BLANK
+                        consumer.cell(rowIdx, colIdx, null, true);
+                        break;
+                    }
+                    consumer.cell(rowIdx, colIdx, numericValue(), false);
+                    break;
+                }
+                default: {
+                    String text = hasValue ? decode(value) : "";
+                    consumer.cell(rowIdx, colIdx, text, text.trim().isEmpty());
+                    break;
+                }
+            }
+        }
+
+        /**
+         * ค่าของเซลล์ NUMERIC ตาม ExcelReader.getCellValue (วันที่, int/long หรือ double)
+         */
+        private Object numericValue() {
+            String raw = value.toString();
+            double numValue = raw.isEmpty() ? 0.0 : Double.parseDouble(raw);
+
+            if (DateUtil.isValidExcelDate(numValue) && styles != null && styles.getNumCellStyles() > 0) {
+                XSSFCellStyle style = styles.getStyleAt(styleIdx);
+                if (style != null && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString())) {
+                    return DateUtil.getJavaDate(numValue, date1904);
+                }
+            }
+            return ExcelReader.toCellNumber(numValue);
+        }
+
+        /**
+         * ค่าของเซลล์สูตรตาม ExcelReader.getCellValue:
+         * ลองอ่านเป็นตัวเลขก่อน ถ้าไม่ได้อ่านเป็นข้อความ ถ้าไม่ได้คืนสูตร
+         */
+        private Object formulaValue(String type) {
+            switch (type) {
+                case "n": {
+                    String raw = value.toString();
+                    if (!hasValue || raw.isEmpty()) {
+                        return 0.0d;
+                    }
+                    try {
+                        return Double.parseDouble(raw);
+                    } catch (NumberFormatException e) {
+                        return formulaText();
+                    }
+                }
+                case "str":
+                case "s":
+                case "inlineStr":
+                    return hasValue ? decode(value) : "";
+                default:
+                    return formulaText();
+            }
+        }
+    }
+}
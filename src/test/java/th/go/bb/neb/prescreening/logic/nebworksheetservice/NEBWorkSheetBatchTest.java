@@ -0,0 +1,149 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.WssResultCache;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * NEBWorkSheetBatch.run เขียน NDJSON หนึ่งบรรทัดต่อไฟล์: wssResult ของไฟล์ที่ประมวลผลได้ (รวมผลลัพธ์ E001)
+ * หรือ error ของไฟล์ที่โยน exception โดยไฟล์อื่นยังทำต่อ
+ */
+class NEBWorkSheetBatchTest {
+
+    private static final String[] PARAMS = {
+            "SHEET(\"Data\")",
+            "FIX(\"TEMPLATE_ID\", \"batch-test\")",
+            "COLUMN(\"NAME\", \"A2\", \"Data\")",
+            "COUNT(\"CNT\", \"A2:EOF\", \"Data\")"
+    };
+
+    private static int maxEntries;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void disableResultCache() {
+        maxEntries = WssResultCache.getMaxEntries();
+        WssResultCache.setMaxEntries(0);
+    }
+
+    @AfterAll
+    static void restoreResultCache() {
+        WssResultCache.setMaxEntries(maxEntries);
+    }
+
+    @Test
+    void writesOneLinePerFile() throws IOException {
+        List<String> good = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Object[][] rows = {{"name"}, {"agency-" + i}, {"x"}};
+            good.add(TestWorkbooks.write(tempDir.resolve("0000" + i + "_ok.xlsx"), "Data", rows).toString());
+        }
+        String missing = tempDir.resolve("00009_missing.xlsx").toString();
+        String notExcel = Files.write(tempDir.resolve("00010_note.txt"), "x".getBytes(StandardCharsets.UTF_8)).toString();
+
+        List<String> fileNames = new ArrayList<>(good);
+        fileNames.add(missing);
+        fileNames.add(notExcel);
+
+        for (ExcelReadMode mode : ExcelReadMode.values()) {
+            StringWriter out = new StringWriter();
+            NEBWorkSheetBatch.Summary summary = NEBWorkSheetBatch.run(fileNames, PARAMS, mode, 2, out);
+
+            Map<String, String> rawLines = new HashMap<>();
+            Map<String, JSONObject> lines = parseLines(out.toString(), rawLines);
+            assertEquals(fileNames.size(), lines.size(), mode.name());
+            assertEquals(fileNames.size(), summary.getFiles());
+            assertEquals(1, summary.getErrors());
+            assertEquals(2, summary.getThreads());
+
+            for (String fileName : good) {
+                JSONObject line = lines.get(fileName);
+                assertFalse(line.has("error"));
+                assertTrue(line.getLong("rows") >= 0);
+                assertTrue(line.getLong("elapsedMs") >= 0);
+                String expected = NEBWorkSheetService.processExcelToWssResult(fileName, PARAMS, mode);
+                // wssResult อยู่ในบรรทัดตรงๆ ทุกไบต์ ไม่ได้แปลงซ้ำ
+                assertTrue(rawLines.get(fileName).endsWith(",\"wssResult\":" + expected + "}"), fileName);
+            }
+
+            // ไฟล์ที่ไม่มีอยู่ได้ผลลัพธ์ E001 ตามปกติ
+            JSONObject errorMessage = lines.get(missing).getJSONObject("wssResult")
+                    .getJSONObject("wssResult").getJSONObject("errorMessage");
+            assertEquals("E001", errorMessage.getString("errorCode"));
+
+            // ไฟล์ที่ไม่ใช่ Excel โยน exception: บรรทัดมี error แทน wssResult
+            JSONObject failed = lines.get(notExcel);
+            assertFalse(failed.has("wssResult"));
+            assertTrue(failed.getString("error").startsWith("IllegalArgumentException: "), failed.toString());
+        }
+    }
+
+    @Test
+    void emptyBatchWritesNothing() throws IOException {
+        StringWriter out = new StringWriter();
+        NEBWorkSheetBatch.Summary summary = NEBWorkSheetBatch.run(Collections.emptyList(), PARAMS,
+                ExcelReadMode.DOM, 1, out);
+
+        assertEquals("", out.toString());
+        assertEquals(0, summary.getFiles());
+        assertEquals(0, summary.getErrors());
+    }
+
+    @Test
+    void listsExcelFilesFromFoldersAndLists() throws IOException {
+        Path dir = Files.createDirectory(tempDir.resolve("in"));
+        Files.createFile(dir.resolve("b.xlsx"));
+        Files.createFile(dir.resolve("a.XLS"));
+        Files.createFile(dir.resolve("~$a.xlsx"));
+        Files.createFile(dir.resolve("notes.txt"));
+        Files.createDirectory(dir.resolve("sub.xlsx"));
+        Path list = Files.write(tempDir.resolve("list.txt"),
+                Arrays.asList("", "  other.xlsx  "), StandardCharsets.UTF_8);
+
+        List<String> fileNames = NEBWorkSheetBatch.listExcelFiles(Arrays.asList(dir.toString(), "@" + list));
+
+        assertEquals(Arrays.asList(dir.resolve("a.XLS").toString(), dir.resolve("b.xlsx").toString(), "other.xlsx"),
+                fileNames);
+    }
+
+    @Test
+    void paramsSkipBlankLinesAndComments() {
+        String[] params = NEBWorkSheetBatch.parseParams(Arrays.asList(
+                "  SHEET(\"Data\")  ", "", "// comment", "COLUMN(\"A\", \"A1\", \"Data\")"));
+
+        assertEquals(Arrays.asList("SHEET(\"Data\")", "COLUMN(\"A\", \"A1\", \"Data\")"), Arrays.asList(params));
+    }
+
+    private static Map<String, JSONObject> parseLines(String ndjson, Map<String, String> rawLines) {
+        assertTrue(ndjson.endsWith("\n"));
+        Map<String, JSONObject> lines = new HashMap<>();
+        for (String line : ndjson.split("\n")) {
+            JSONObject json = new JSONObject(line);
+            lines.put(json.getString("file"), json);
+            rawLines.put(json.getString("file"), line);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,92 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CROSSFILECOMPARE ของ processMutiFileExcelToWssResult ทุกเงื่อนไข (EQUAL, ROW, KEY) และเงื่อนไขที่ไม่รองรับ
+ */
+class NEBWorkSheetServiceCrossFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void equalComparesSums() throws IOException {
+        List<String> same = files(new Object[][]{{"a", 10}, {"b", 20}, {"c", 30}},
+                new Object[][]{{"c", 30}, {"a", 10}, {"b", 20}});
+        assertEquals("{}", compare("EQUAL", same, "B1:EOF"));
+
+        List<String> different = files(new Object[][]{{"a", 10}, {"b", 20}, {"c", 30}},
+                new Object[][]{{"a", 10}, {"b", 20}, {"c", 31}});
+        assertEquals(1, mismatches(compare("EQUAL", different, "B1:EOF")).length());
+    }
+
+    @Test
+    void rowComparesByPosition() throws IOException {
+        List<String> fileNames = files(new Object[][]{{"a", 10}, {"b", 20}},
+                new Object[][]{{"a", 10}, {"b", 21}});
+
+        JSONArray mismatches = mismatches(compare("ROW", fileNames, "A1:EOF"));
+
+        assertEquals(1, mismatches.length());
+        assertEquals("a.xlsx!Data!B2 = 20 ไม่เท่ากับ b.xlsx!Data!B2 = 21", mismatches.getString(0));
+    }
+
+    @Test
+    void keyMatchesRowsInAnyOrder() throws IOException {
+        List<String> reordered = files(new Object[][]{{"a", 10}, {"b", 20}, {"c", 30}},
+                new Object[][]{{"c", 30}, {"a", 10}, {"b", 20}});
+        assertEquals("{}", compare("KEY", reordered, "A1:EOF"));
+
+        List<String> fileNames = files(new Object[][]{{"a", 10}, {"b", 20}, {"c", 30}},
+                new Object[][]{{"c", 31}, {"a", 10}, {"d", 40}});
+        JSONArray mismatches = mismatches(compare("KEY", fileNames, "A1:EOF"));
+
+        assertEquals(3, mismatches.length(), mismatches.toString());
+        assertEquals("KEY 'b' (a.xlsx!Data!A2) ไม่พบใน b.xlsx!Data", mismatches.getString(0));
+        assertEquals("KEY 'c': a.xlsx!Data!B3 = 30 ไม่เท่ากับ b.xlsx!Data!B1 = 31", mismatches.getString(1));
+        assertEquals("KEY 'd' (b.xlsx!Data!A3) ไม่พบใน a.xlsx!Data", mismatches.getString(2));
+    }
+
+    @Test
+    void unknownModeIsRejected() throws IOException {
+        List<String> fileNames = files(new Object[][]{{"a", 10}}, new Object[][]{{"a", 11}});
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> compare("SUM", fileNames, "A1:EOF"));
+        assertTrue(e.getMessage().contains("SUM"), e.getMessage());
+    }
+
+    private List<String> files(Object[][] first, Object[][] second) throws IOException {
+        return Arrays.asList(
+                TestWorkbooks.write(tempDir.resolve("a.xlsx"), "Data", first).toString(),
+                TestWorkbooks.write(tempDir.resolve("b.xlsx"), "Data", second).toString());
+    }
+
+    private static String compare(String mode, List<String> fileNames, String range) {
+        String param = "CROSSFILECOMPARE(" + mode + ", [[\"a.xlsx\", \"Data\", \"" + range + "\"],"
+                + " [\"b.xlsx\", \"Data\", \"" + range + "\"]])";
+        return NEBWorkSheetService.processMutiFileExcelToWssResult(fileNames, new String[]{param});
+    }
+
+    private static JSONArray mismatches(String result) {
+        JSONObject wssResult = new JSONObject(result).getJSONObject("wssResult");
+        assertEquals("fail", wssResult.getString("status"), result);
+        JSONObject error = wssResult.getJSONObject("errorMessage");
+        assertEquals("CROSS_FILE_COMPARE", error.getString("errorCode"));
+        assertEquals("ข้อมูลในไฟล์ a.xlsx, b.xlsx มีค่าไม่เท่ากัน", error.getString("errorMessage"));
+        return error.getJSONArray("notMatchedValues");
+    }
+}
@@ -0,0 +1,197 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelPlan;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReader;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.SheetSnapshotCache;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.WorkbookSession;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.WssResultCache;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.WssResultWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * ผลลัพธ์ของ processExcelToWssResult (เขียนด้วย WssResultWriter) ต้องเหมือน JSON ที่สร้างด้วย org.json แบบเดิมทุกไบต์
+ * ทั้งลำดับ key, การแปลงค่า และการ escape ข้อความ (ไม่รวม crossSheetDuplicateLocations ที่เพิ่มภายหลัง)
+ */
+class NEBWorkSheetServiceJsonTest {
+
+    private static final String[] PARAMS = {
+            "SHEET(\"Data\")",
+            "FIX(\"TEMPLATE_ID\", \"json-test\")",
+            "COLUMN(\"NAME\", \"A2\", \"Data\")",
+            "COLUMN(\"PRICE\", \"C2\", \"Data\")",
+            "COLUMN(\"DAY\", \"D2\", \"Data\")",
+            "COLUMN(\"NOTE\", \"E3\", \"Data\")",
+            "COUNT(\"CNT\", \"A2:EOF\", \"Data\")",
+            "ROW(\"ROWS\", \"Data\", \"2:EOF\", \"[A,B,C,D,E,F,G]\","
+                    + " [\"NAME\",\"QTY\",\"PRICE\",\"DAY\",\"NOTE\",\"CODE\",\"FLAG\"])"
+    };
+
+    private static int maxEntries;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void disableResultCache() {
+        // ทุกโหมดต้องเขียนผลลัพธ์เอง ไม่ใช้ผลลัพธ์จากแคช
+        maxEntries = WssResultCache.getMaxEntries();
+        WssResultCache.setMaxEntries(0);
+        SheetSnapshotCache.clear();
+    }
+
+    @AfterAll
+    static void restoreResultCache() {
+        WssResultCache.setMaxEntries(maxEntries);
+        SheetSnapshotCache.clear();
+    }
+
+    @Test
+    void successMatchesOrgJson() throws IOException {
+        String fileName = writeFixture();
+
+        assertMatchesOrgJson(fileName, PARAMS, Collections.emptyList());
+    }
+
+    @Test
+    void duplicatesMatchOrgJson() throws IOException {
+        String fileName = writeFixture();
+        String[] params = with(PARAMS, "CHKDUPLICATE(\"Data\", A2:EOF, NULL)");
+
+        Map<Object, List<String>> duplicates = new HashMap<>();
+        try (WorkbookSession session = WorkbookSession.open(fileName)) {
+            duplicates.putAll(ExcelReader.checkDuplicateValuesInRange(session, "Data", "A2:EOF", null));
+        }
+        assertEquals(1, duplicates.size());
+
+        assertMatchesOrgJson(fileName, params, duplicates, Collections.emptyList());
+    }
+
+    @Test
+    void sheetNotFoundMatchesOrgJson() throws IOException {
+        String fileName = writeFixture();
+        String[] params = with(PARAMS, "CHKDUPLICATE(\"Missing\", A2:EOF, NULL)");
+
+        assertMatchesOrgJson(fileName, params, Collections.singletonList("ไม่พบชีท 'Missing' ในไฟล์"));
+    }
+
+    @Test
+    void errorMatchesOrgJson() throws IOException {
+        String message = "อ่านไฟล์ไม่ได้: </x> \u2028 \"q\"";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WssResultWriter.writeError(out, "E001", message);
+
+        // รูปแบบเดิมใน catch (IOException) ของ processExcelToWssResult
+        JSONObject wssResult = new JSONObject();
+        JSONObject wssResultObj = new JSONObject();
+        wssResultObj.put("data", new JSONObject());
+        wssResultObj.put("status", "fail");
+        JSONObject errorMessage = new JSONObject();
+        errorMessage.put("errorCode", "E001");
+        errorMessage.put("errorMessage", message);
+        wssResultObj.put("errorMessage", errorMessage);
+        wssResult.put("wssResult", wssResultObj);
+
+        assertEquals(wssResult.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private void assertMatchesOrgJson(String fileName, String[] params, List<String> sheetNotFoundErrors)
+            throws IOException {
+        assertMatchesOrgJson(fileName, params, Collections.emptyMap(), sheetNotFoundErrors);
+    }
+
+    private void assertMatchesOrgJson(String fileName, String[] params, Map<Object, List<String>> duplicates,
+            List<String> sheetNotFoundErrors) throws IOException {
+        String expected;
+        try (WorkbookSession session = WorkbookSession.open(fileName)) {
+            Map<String, Object> data = ExcelPlan.compile(params).execute(session);
+            expected = legacyWssResult(data, duplicates, sheetNotFoundErrors);
+        }
+
+        assertEquals(expected, NEBWorkSheetService.processExcelToWssResult(fileName, params, ExcelReadMode.DOM));
+        assertEquals(expected, NEBWorkSheetService.processExcelToWssResult(fileName, params, ExcelReadMode.STREAMING));
+    }
+
+    /**
+     * สร้าง wssResult ด้วย org.json แบบเดียวกับ processExcelToWssResult เดิม
+     */
+    private static String legacyWssResult(Map<String, Object> data, Map<Object, List<String>> duplicates,
+            List<String> sheetNotFoundErrors) {
+        JSONObject wssResult = new JSONObject();
+        JSONObject wssResultObj = new JSONObject();
+
+        wssResultObj.put("data", new JSONObject(data));
+
+        if (!sheetNotFoundErrors.isEmpty()) {
+            wssResultObj.put("status", "fail");
+
+            JSONObject errorMessage = new JSONObject();
+            errorMessage.put("errorCode", "SHEET_NOT_FOUND");
+            errorMessage.put("errorMessage", String.join(", ", sheetNotFoundErrors));
+
+            wssResultObj.put("errorMessage", errorMessage);
+        } else if (duplicates.isEmpty()) {
+            wssResultObj.put("status", "success");
+            wssResultObj.put("errorMessage", new JSONObject());
+        } else {
+            wssResultObj.put("status", "fail");
+
+            JSONObject errorMessage = new JSONObject();
+            errorMessage.put("errorCode", "DUPLICATE");
+            errorMessage.put("errorMessage", "พบค่าซ้ำในข้อมูล");
+
+            JSONObject duplicateValues = new JSONObject();
+            for (Map.Entry<Object, List<String>> entry : duplicates.entrySet()) {
+                String key = entry.getKey() != null ? entry.getKey().toString() : "null";
+                duplicateValues.put(key, entry.getValue());
+            }
+            errorMessage.put("duplicateValues", duplicateValues);
+
+            wssResultObj.put("errorMessage", errorMessage);
+        }
+
+        wssResult.put("wssResult", wssResultObj);
+        return wssResult.toString();
+    }
+
+    /**
+     * ชีท Data 7 คอลัมน์: ข้อความที่ org.json escape ต่างจาก Jackson (&lt;/, U+2028, U+0085, อักขระควบคุม),
+     * จำนวนเต็ม, ตัวเลขเกินช่วง int, ทศนิยม, วันที่, boolean และแถวที่มีเซลล์ว่างต่างกัน
+     * (แถวที่มีค่าครบ 7 คอลัมน์ทำให้ HashMap ของ JSONObject ขยายขนาด ลำดับ key จึงต่างจากแถวอื่น)
+     */
+    private String writeFixture() throws IOException {
+        Date day = new Date(1700000000000L);
+        Object[][] rows = {
+                {"name", "qty", "price", "day", "note", "code", "flag"},
+                {"ก</b>", 5, 1.5, day, "a\u2028b", "C-1", true},
+                {"x\"y\\z", 3000000000L, 2.0, null, "\u0085\t\u0001", null, false},
+                {"ก</b>", null, null, null, null, "ข้อ\u2013ความ", null},
+                {"\uD83D\uDE00 / <", 7, 0.25, day, "ok", "C-4", true}
+        };
+        return TestWorkbooks.write(tempDir.resolve("00001_json.xlsx"), "Data", rows).toString();
+    }
+
+    private static String[] with(String[] params, String param) {
+        List<String> all = new ArrayList<>(Arrays.asList(params));
+        all.add(param);
+        return all.toArray(new String[0]);
+    }
+}
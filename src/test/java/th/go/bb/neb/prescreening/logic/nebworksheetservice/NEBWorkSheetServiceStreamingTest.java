@@ -0,0 +1,179 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.ExcelReadMode;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.SheetSnapshotCache;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.utils.WssResultCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ผลลัพธ์ของ processExcelToWssResult โหมด STREAMING ต้องเหมือนโหมด DOM ทุกไบต์
+ */
+class NEBWorkSheetServiceStreamingTest {
+
+    private static final String[] PARAMS = {
+            "SHEET(\"Data\")",
+            "FIX(\"TEMPLATE_ID\", \"streaming-test\")",
+            "COLUMN(\"FLAG3\", \"E3\", \"Data\")",
+            "COLUMN(\"FLAG4\", \"E4\", \"Data\")",
+            "COLUMN(\"TEXT4\", \"C4\", \"Data\")",
+            "COLUMN(\"DAY\", \"D2\", \"Data\")",
+            "COLUMN(\"BLANK\", \"B3\", \"Data\")",
+            "COLUMN(\"INLINE\", \"A3\", \"Data\")",
+            "COUNT(\"CNT\", \"A2:EOF\", \"Data\")",
+            "ROW(\"ROWS\", \"Data\", \"1:EOF\", \"[A,B,C,D,E]\", [\"NAME\",\"QTY\",\"TOTAL\",\"DAY\",\"FLAG\"])",
+            "CHKDUPLICATE(\"Data\", A2:EOF, NULL)"
+    };
+
+    private static int maxEntries;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void disableResultCache() {
+        // ผลลัพธ์ของโหมดแรกต้องไม่ถูกใช้ซ้ำในโหมดที่สอง
+        maxEntries = WssResultCache.getMaxEntries();
+        WssResultCache.setMaxEntries(0);
+        SheetSnapshotCache.clear();
+    }
+
+    @AfterAll
+    static void restoreResultCache() {
+        WssResultCache.setMaxEntries(maxEntries);
+        SheetSnapshotCache.clear();
+    }
+
+    @Test
+    void streamingMatchesDom() throws IOException {
+        String fileName = writeFixture(tempDir.resolve("00001_streaming.xlsx"));
+
+        String dom = NEBWorkSheetService.processExcelToWssResult(fileName, PARAMS, ExcelReadMode.DOM);
+        String streaming = NEBWorkSheetService.processExcelToWssResult(fileName, PARAMS, ExcelReadMode.STREAMING);
+
+        assertEquals(dom, streaming);
+        // shared formula ที่ค่าแคชไม่ใช่ตัวเลขหรือข้อความ ได้สูตรที่ขยายตามตำแหน่งของเซลล์
+        assertTrue(dom.contains("\"B3>2\""), dom);
+        assertTrue(dom.contains("\"B4>2\""), dom);
+    }
+
+    /**
+     * ไฟล์ .xlsx ขนาดเล็ก: shared string, inline string, วันที่, เซลล์ว่าง, สูตรปกติ
+     * และ shared formula ที่ค่าแคชเป็น boolean, ข้อความ และ error
+     */
+    private static String writeFixture(Path file) throws IOException {
+        String sheet = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<dimension ref=\"A1:E6\"/><sheetData>"
+                + "<row r=\"1\">"
+                + "<c r=\"A1\" t=\"s\"><v>0</v></c>"
+                + "<c r=\"B1\" t=\"inlineStr\"><is><t>qty</t></is></c>"
+                + "<c r=\"C1\" t=\"s\"><v>1</v></c>"
+                + "<c r=\"D1\" t=\"inlineStr\"><is><t>day</t></is></c>"
+                + "<c r=\"E1\" t=\"inlineStr\"><is><t>flag</t></is></c>"
+                + "</row>"
+                + "<row r=\"2\">"
+                + "<c r=\"A2\" t=\"s\"><v>2</v></c>"
+                + "<c r=\"B2\"><v>3</v></c>"
+                + "<c r=\"C2\"><f>B2*2</f><v>6</v></c>"
+                + "<c r=\"D2\" s=\"1\"><v>45000</v></c>"
+                + "<c r=\"E2\" t=\"b\"><f t=\"shared\" ref=\"E2:E4\" si=\"0\">B2&gt;2</f><v>1</v></c>"
+                + "</row>"
+                + "<row r=\"3\">"
+                + "<c r=\"A3\" t=\"inlineStr\"><is><t>ข</t></is></c>"
+                + "<c r=\"B3\" s=\"0\"/>"
+                + "<c r=\"C3\" t=\"str\"><f t=\"shared\" ref=\"C3:C4\" si=\"1\">A3&amp;\"x\"</f><v>ขx</v></c>"
+                + "<c r=\"E3\" t=\"b\"><f t=\"shared\" si=\"0\"/><v>0</v></c>"
+                + "</row>"
+                + "<row r=\"4\">"
+                + "<c r=\"A4\" t=\"s\"><v>2</v></c>"
+                + "<c r=\"B4\"><v>1.5</v></c>"
+                + "<c r=\"C4\" t=\"str\"><f t=\"shared\" si=\"1\"/><v>กx</v></c>"
+                + "<c r=\"D4\" s=\"1\"><v>45001.5</v></c>"
+                + "<c r=\"E4\" t=\"e\"><f t=\"shared\" si=\"0\"/><v>#VALUE!</v></c>"
+                + "</row>"
+                + "<row r=\"6\">"
+                + "<c r=\"A6\" t=\"inlineStr\"><is><t xml:space=\"preserve\">  </t></is></c>"
+                + "<c r=\"B6\"><f>SUM(B2:B4)</f></c>"
+                + "<c r=\"E6\" t=\"b\"><v>0</v></c>"
+                + "</row>"
+                + "</sheetData></worksheet>";
+
+        String sharedStrings = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+                + " count=\"4\" uniqueCount=\"3\">"
+                + "<si><t>name</t></si><si><t>total</t></si><si><t>ก</t></si></sst>";
+
+        // สไตล์ 1 เป็นรูปแบบวันที่ (numFmtId 14)
+        String styles = "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+                + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+                + "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+                + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+                + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+                + "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+                + "<xf numFmtId=\"14\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"
+                + "</cellXfs></styleSheet>";
+
+        String workbook = "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+                + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+                + "<sheets><sheet name=\"Data\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>";
+
+        String workbookRels = "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\""
+                + " Target=\"worksheets/sheet1.xml\"/>"
+                + "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\""
+                + " Target=\"styles.xml\"/>"
+                + "<Relationship Id=\"rId3\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\""
+                + " Target=\"sharedStrings.xml\"/>"
+                + "</Relationships>";
+
+        String rootRels = "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\""
+                + " Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>";
+
+        String contentTypes = "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\""
+                + " ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                + "<Override PartName=\"/xl/worksheets/sheet1.xml\""
+                + " ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                + "<Override PartName=\"/xl/styles.xml\""
+                + " ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+                + "<Override PartName=\"/xl/sharedStrings.xml\""
+                + " ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>"
+                + "</Types>";
+
+        try (OutputStream out = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(out)) {
+            writeEntry(zip, "[Content_Types].xml", contentTypes);
+            writeEntry(zip, "_rels/.rels", rootRels);
+            writeEntry(zip, "xl/workbook.xml", workbook);
+            writeEntry(zip, "xl/_rels/workbook.xml.rels", workbookRels);
+            writeEntry(zip, "xl/styles.xml", styles);
+            writeEntry(zip, "xl/sharedStrings.xml", sharedStrings);
+            writeEntry(zip, "xl/worksheets/sheet1.xml", sheet);
+        }
+        return file.toString();
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, String xml) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" + xml)
+                .getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,93 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * สร้างไฟล์ .xlsx สำหรับการทดสอบด้วย POI
+ *
+ * ค่าในแต่ละแถว: String, Number, Boolean, Date (รูปแบบวันที่) หรือ Formula
+ * ค่า null คือไม่มีเซลล์ และแถวที่เป็น null คือไม่มีแถว
+ */
+public final class TestWorkbooks {
+
+    private TestWorkbooks() {
+    }
+
+    /**
+     * สูตรของเซลล์ (ไม่มีค่าแคช)
+     */
+    public static final class Formula {
+        private final String formula;
+
+        private Formula(String formula) {
+            this.formula = formula;
+        }
+    }
+
+    public static Formula formula(String formula) {
+        return new Formula(formula);
+    }
+
+    /**
+     * เขียนไฟล์ที่มีชีทเดียว
+     */
+    public static Path write(Path file, String sheetName, Object[][] rows) throws IOException {
+        return write(file, Collections.singletonMap(sheetName, rows));
+    }
+
+    /**
+     * เขียนไฟล์ตามลำดับชีทของ map
+     */
+    public static Path write(Path file, Map<String, Object[][]> sheets) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             OutputStream out = Files.newOutputStream(file)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+            for (Map.Entry<String, Object[][]> entry : sheets.entrySet()) {
+                fill(workbook.createSheet(entry.getKey()), entry.getValue(), dateStyle);
+            }
+            workbook.write(out);
+        }
+        return file;
+    }
+
+    private static void fill(Sheet sheet, Object[][] rows, CellStyle dateStyle) {
+        for (int rowIdx = 0; rowIdx < rows.length; rowIdx++) {
+            if (rows[rowIdx] == null) {
+                continue;
+            }
+            Row row = sheet.createRow(rowIdx);
+            for (int colIdx = 0; colIdx < rows[rowIdx].length; colIdx++) {
+                Object value = rows[rowIdx][colIdx];
+                if (value == null) {
+                    continue;
+                }
+                Cell cell = row.createCell(colIdx);
+                if (value instanceof Number) {
+                    cell.setCellValue(((Number) value).doubleValue());
+                } else if (value instanceof Boolean) {
+                    cell.setCellValue((Boolean) value);
+                } else if (value instanceof Date) {
+                    cell.setCellValue((Date) value);
+                    cell.setCellStyle(dateStyle);
+                } else if (value instanceof Formula) {
+                    cell.setCellFormula(((Formula) value).formula);
+                } else {
+                    cell.setCellValue(value.toString());
+                }
+            }
+        }
+    }
+}
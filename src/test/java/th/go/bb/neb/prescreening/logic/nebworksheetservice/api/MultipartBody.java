@@ -0,0 +1,48 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * เนื้อหา multipart/form-data สำหรับเรียก API ในการทดสอบ
+ */
+final class MultipartBody {
+
+    private final String boundary = "neb-" + UUID.randomUUID();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    MultipartBody field(String name, String value) {
+        write("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n\r\n"
+                + value + "\r\n");
+        return this;
+    }
+
+    MultipartBody file(String name, Path file) throws IOException {
+        write("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + file.getFileName() + "\"\r\n"
+                + "Content-Type: application/vnd.openxmlformats-officedocument.spreadsheetml.sheet\r\n\r\n");
+        body.write(Files.readAllBytes(file));
+        write("\r\n");
+        return this;
+    }
+
+    HttpRequest post(URI uri) {
+        write("--" + boundary + "--\r\n");
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private void write(String text) {
+        body.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,109 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.TestWorkbooks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * เรียก POST /worksheet/validate ผ่าน HTTP จริง (Spring Boot + Jersey บนพอร์ตสุ่ม)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class NEBWorkSheetResourceTest {
+
+    private static final String PARAMS = String.join("\n",
+            "SHEET(\"Data\")",
+            "FIX(\"TEMPLATE_ID\", \"api-test\")",
+            "COLUMN(\"FIRST\", \"A2\", \"Data\")",
+            "COUNT(\"CNT\", \"A2:EOF\", \"Data\")");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    int port;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void validatesUploadedWorkbook() throws Exception {
+        Path file = writeWorkbook();
+
+        HttpResponse<String> response = send(new MultipartBody()
+                .file("file", file)
+                .field("params", PARAMS));
+
+        assertEquals(200, response.statusCode(), response.body());
+        JSONObject wssResult = new JSONObject(response.body()).getJSONObject("wssResult");
+        assertEquals("success", wssResult.getString("status"));
+        JSONObject data = wssResult.getJSONObject("data");
+        assertEquals("api-test", data.getString("TEMPLATE_ID"));
+        assertEquals("ก", data.getString("FIRST"));
+        assertEquals(3, data.getInt("CNT"));
+    }
+
+    @Test
+    void streamingModeGivesSameResult() throws Exception {
+        Path file = writeWorkbook();
+
+        HttpResponse<String> dom = send(new MultipartBody()
+                .file("file", file)
+                .field("params", PARAMS));
+        HttpResponse<String> streaming = send(new MultipartBody()
+                .file("file", file)
+                .field("params", PARAMS)
+                .field("mode", "streaming"));
+
+        assertEquals(200, streaming.statusCode(), streaming.body());
+        assertEquals(dom.body(), streaming.body());
+    }
+
+    @Test
+    void missingFileIsBadRequest() throws Exception {
+        HttpResponse<String> response = send(new MultipartBody().field("params", PARAMS));
+
+        assertEquals(400, response.statusCode(), response.body());
+        assertErrorCode("E400", response.body());
+    }
+
+    @Test
+    void unknownModeIsBadRequest() throws Exception {
+        HttpResponse<String> response = send(new MultipartBody()
+                .file("file", writeWorkbook())
+                .field("params", PARAMS)
+                .field("mode", "FAST"));
+
+        assertEquals(400, response.statusCode(), response.body());
+        assertErrorCode("E400", response.body());
+    }
+
+    private Path writeWorkbook() throws IOException {
+        return TestWorkbooks.write(tempDir.resolve("00001_api.xlsx"), "Data", new Object[][]{
+                {"name", "qty"},
+                {"ก", 1},
+                {"ข", 2},
+                {"ค", 3},
+        });
+    }
+
+    private HttpResponse<String> send(MultipartBody body) throws IOException, InterruptedException {
+        URI uri = URI.create("http://localhost:" + port + "/worksheet/validate");
+        return client.send(body.post(uri), HttpResponse.BodyHandlers.ofString());
+    }
+
+    static void assertErrorCode(String errorCode, String body) {
+        JSONObject wssResult = new JSONObject(body).getJSONObject("wssResult");
+        assertEquals("fail", wssResult.getString("status"));
+        assertEquals(errorCode, wssResult.getJSONObject("errorMessage").getString("errorCode"));
+    }
+}
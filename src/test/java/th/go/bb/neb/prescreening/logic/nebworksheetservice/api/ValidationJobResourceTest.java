@@ -0,0 +1,170 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.api;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * วงจรของงานผ่าน HTTP: ส่งงาน (202), คิวเต็ม (429), ถามสถานะจนเป็น DONE หรือ FAILED และงานที่ไม่มี (404)
+ *
+ * ใช้คิว 1 worker ความจุ 1 งาน และตัวประมวลผลจำลองที่ควบคุมเวลาเสร็จได้
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ValidationJobResourceTest {
+
+    private static final String RESULT = "{\"wssResult\":{\"data\":{},\"status\":\"success\"}}";
+
+    /** งานของไฟล์ที่ชื่อมี "slow" รอจนกว่าจะปลด latch */
+    private static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TestConfiguration
+    static class QueueConfig {
+
+        @Bean
+        @Primary
+        ValidationJobQueue testQueue() {
+            return new ValidationJobQueue(1, 1, TimeUnit.HOURS.toMillis(1), (fileName, params, mode) -> {
+                if (fileName.contains("slow")) {
+                    try {
+                        RELEASE.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException(e);
+                    }
+                } else if (fileName.contains("error")) {
+                    throw new OutOfMemoryError("หน่วยความจำไม่พอ");
+                }
+                return RESULT;
+            });
+        }
+    }
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    int port;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void jobLifecycle() throws Exception {
+        // งานแรกครอง worker งานที่สองเต็มคิว งานที่สามถูกปฏิเสธ
+        String slow = submitted(submit("slow.xlsx"));
+        assertEquals("RUNNING", awaitStatus(slow, "RUNNING").getString("status"));
+        String queued = submitted(submit("queued.xlsx"));
+        assertEquals("QUEUED", status(queued).getString("status"));
+
+        HttpResponse<String> rejected = submit("rejected.xlsx");
+        assertEquals(429, rejected.statusCode(), rejected.body());
+        assertEquals("5", rejected.headers().firstValue("Retry-After").orElse(null));
+        NEBWorkSheetResourceTest.assertErrorCode("E429", rejected.body());
+
+        RELEASE.countDown();
+        for (String jobId : new String[]{slow, queued}) {
+            JSONObject job = awaitStatus(jobId, "DONE");
+            assertTrue(job.getLong("finishedAt") >= job.getLong("startedAt"), job.toString());
+            assertEquals("success", job.getJSONObject("wssResult").getString("status"));
+        }
+
+        // Error ระหว่างประมวลผลต้องทำให้งานเป็น FAILED ไม่ค้างที่ RUNNING
+        JSONObject failed = awaitStatus(submitted(submit("error.xlsx")), "FAILED");
+        assertEquals("หน่วยความจำไม่พอ", failed.getString("error"));
+        assertTrue(failed.getLong("finishedAt") > 0, failed.toString());
+
+        // worker ที่หยุดเพราะ Error ถูกแทนที่ คิวยังรับงานได้
+        awaitStatus(submitted(submit("after.xlsx")), "DONE");
+    }
+
+    @Test
+    void unknownJobIsNotFound() throws Exception {
+        HttpResponse<String> response = get("no-such-job");
+
+        assertEquals(404, response.statusCode(), response.body());
+        NEBWorkSheetResourceTest.assertErrorCode("E404", response.body());
+    }
+
+    @Test
+    void missingParamsIsBadRequest() throws Exception {
+        HttpResponse<String> response = client.send(new MultipartBody()
+                        .file("file", upload("noparams.xlsx"))
+                        .post(uri("")),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(400, response.statusCode(), response.body());
+        NEBWorkSheetResourceTest.assertErrorCode("E400", response.body());
+    }
+
+    private HttpResponse<String> submit(String fileName) throws IOException, InterruptedException {
+        return client.send(new MultipartBody()
+                        .file("file", upload(fileName))
+                        .field("params", "SHEET(\"Data\")")
+                        .post(uri("")),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * jobId ของงานที่ได้รับแล้ว (202 พร้อม Location)
+     */
+    private static String submitted(HttpResponse<String> response) {
+        assertEquals(202, response.statusCode(), response.body());
+        String jobId = new JSONObject(response.body()).getString("jobId");
+        String location = response.headers().firstValue("Location").orElse("");
+        assertTrue(location.endsWith("/worksheet/jobs/" + jobId), location);
+        return jobId;
+    }
+
+    private JSONObject awaitStatus(String jobId, String expected) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        JSONObject job = status(jobId);
+        while (!expected.equals(job.getString("status"))) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("งาน " + jobId + " ไม่เป็น " + expected + ": " + job);
+            }
+            Thread.sleep(20);
+            job = status(jobId);
+        }
+        return job;
+    }
+
+    private JSONObject status(String jobId) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(jobId);
+        assertEquals(200, response.statusCode(), response.body());
+        return new JSONObject(response.body());
+    }
+
+    private HttpResponse<String> get(String jobId) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri("/" + jobId)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/worksheet/jobs" + path);
+    }
+
+    private Path upload(String fileName) throws IOException {
+        return Files.write(tempDir.resolve(fileName), "xlsx".getBytes(StandardCharsets.UTF_8));
+    }
+}
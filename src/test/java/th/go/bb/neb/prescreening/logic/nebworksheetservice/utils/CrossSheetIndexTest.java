@@ -0,0 +1,118 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.TestWorkbooks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * CHKSHEETDUPLICATE: ค่าที่พบในตั้งแต่ 2 ช่วงขึ้นไปเป็นค่าซ้ำ ตามลำดับที่พบครั้งแรก พร้อมตำแหน่งแยกตามชีท
+ */
+class CrossSheetIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void valuesInTwoRangesAreDuplicates() {
+        CrossSheetIndex index = new CrossSheetIndex();
+        int first = index.addSheet("One");
+        int second = index.addSheet("Two");
+        int third = index.addSheet("Three");
+
+        index.add(first, "a", 0, 0);
+        index.add(first, "b", 1, 0);
+        index.add(first, "b", 2, 0); // ซ้ำในช่วงเดียวกันไม่นับ
+        index.add(second, "c", 0, 1);
+        index.add(second, "a", 4, 1);
+        index.add(third, "c", 9, 27);
+        index.add(third, "a", 0, 0);
+
+        assertEquals(Arrays.asList("a", "c"), index.getDuplicateValues());
+
+        Map<String, Map<String, List<String>>> expected = new LinkedHashMap<>();
+        Map<String, List<String>> a = new LinkedHashMap<>();
+        a.put("One", Collections.singletonList("A1"));
+        a.put("Two", Collections.singletonList("B5"));
+        a.put("Three", Collections.singletonList("A1"));
+        expected.put("a", a);
+        Map<String, List<String>> c = new LinkedHashMap<>();
+        c.put("Two", Collections.singletonList("B1"));
+        c.put("Three", Collections.singletonList("AB10"));
+        expected.put("c", c);
+        assertEquals(expected, index.getDuplicateLocations());
+    }
+
+    @Test
+    void sameSheetTwiceCountsAsTwoRanges() {
+        CrossSheetIndex index = new CrossSheetIndex();
+        int left = index.addSheet("Data");
+        int right = index.addSheet("Data");
+
+        index.add(left, "x", 0, 0);
+        index.add(right, "x", 0, 2);
+
+        assertEquals(Collections.singletonList("x"), index.getDuplicateValues());
+        assertEquals(Collections.singletonMap("Data", Arrays.asList("A1", "C1")),
+                index.getDuplicateLocations().get("x"));
+    }
+
+    @Test
+    void planMatchesInDomAndStreaming() throws IOException {
+        Map<String, Object[][]> sheets = new LinkedHashMap<>();
+        sheets.put("S1", new Object[][]{{"a"}, {" b "}, {"skip"}, {"only1"}, {"   "}});
+        sheets.put("S2", new Object[][]{{"b"}, {"skip"}, {"c"}, {"a"}});
+        sheets.put("S3", new Object[][]{{"head", "head"}, {null, "c"}, {"x", "only3"}, {"b", null}});
+        String fileName = TestWorkbooks.write(tempDir.resolve("sheets.xlsx"), sheets).toString();
+
+        ExcelPlan plan = ExcelPlan.compile(new String[]{
+                "SHEET(\"S1\")",
+                "CHKSHEETDUPLICATE([(\"S1\", A1:EOF, []), (\"S2\", A1:EOF, [\"skip\"]), (\"S3\", A2:B10, [])])"
+        });
+
+        CrossSheetIndex dom;
+        try (WorkbookSession session = WorkbookSession.open(fileName)) {
+            dom = indexOf(plan, plan.evaluate(session, true));
+        }
+        CrossSheetIndex streaming = indexOf(plan, StreamingExcelReader.evaluate(fileName, plan));
+
+        // "skip" ยกเว้นเฉพาะใน S2 และ " b " ตัดช่องว่างแล้วเท่ากับ "b"
+        List<String> expected = Arrays.asList("a", "b", "c");
+        assertEquals(expected, dom.getDuplicateValues());
+        assertEquals(expected, streaming.getDuplicateValues());
+
+        Map<String, List<String>> b = new LinkedHashMap<>();
+        b.put("S1", Collections.singletonList("A2"));
+        b.put("S2", Collections.singletonList("A1"));
+        b.put("S3", Collections.singletonList("A4"));
+        assertEquals(b, dom.getDuplicateLocations().get("b"));
+        assertEquals(dom.getDuplicateLocations(), streaming.getDuplicateLocations());
+    }
+
+    private static CrossSheetIndex indexOf(ExcelPlan plan, PlanResult result) {
+        List<ExcelPlan.SheetRange> ranges = new ArrayList<>();
+        for (ExcelPlan.Check check : plan.getChecks()) {
+            if (check instanceof ExcelPlan.SheetDuplicateCheck) {
+                ranges.addAll(((ExcelPlan.SheetDuplicateCheck) check).getRanges());
+            }
+        }
+        assertEquals(3, ranges.size());
+        CrossSheetIndex index = result.getCrossSheetIndex(ranges.get(0));
+        // ทุกช่วงของเงื่อนไขใช้ตารางเดียวกัน
+        for (ExcelPlan.SheetRange range : ranges) {
+            assertSame(index, result.getCrossSheetIndex(range));
+        }
+        return index;
+    }
+}
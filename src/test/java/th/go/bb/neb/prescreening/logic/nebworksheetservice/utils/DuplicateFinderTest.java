@@ -0,0 +1,230 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ผลลัพธ์ของ DuplicateFinder ต้องเหมือนกันไม่ว่าจะอยู่ในหน่วยความจำหรือย้ายลงไฟล์ชั่วคราว
+ */
+class DuplicateFinderTest {
+
+    private static final RangeSpec RANGE = RangeSpec.parse("A1:C2000");
+
+    @TempDir
+    Path spillDir;
+
+    private String previousSpillDir;
+
+    @BeforeEach
+    void useTempSpillDir() {
+        previousSpillDir = System.getProperty(DuplicateFinder.SPILL_DIR_PROPERTY);
+        System.setProperty(DuplicateFinder.SPILL_DIR_PROPERTY, spillDir.toString());
+    }
+
+    @AfterEach
+    void restoreSpillDir() {
+        if (previousSpillDir == null) {
+            System.clearProperty(DuplicateFinder.SPILL_DIR_PROPERTY);
+        } else {
+            System.setProperty(DuplicateFinder.SPILL_DIR_PROPERTY, previousSpillDir);
+        }
+    }
+
+    @Test
+    void spilledMatchesInMemory() throws IOException {
+        Map<Object, List<String>> inMemory = find(Long.MAX_VALUE);
+
+        // งบ 1 ไบต์: ย้ายลงไฟล์ตั้งแต่ค่าแรก และทุก partition ต้องแบ่งต่อจนเหลือค่าเดียวต่อไฟล์
+        for (long maxBytes : new long[]{1, 4 * 1024}) {
+            Map<Object, List<String>> spilled = find(maxBytes);
+
+            // ตำแหน่งเซลล์ตามลำดับที่พบ
+            assertEquals(inMemory, spilled);
+            // ค่าที่อ่านกลับจากไฟล์เป็นชนิดเดิม (เช่น Integer 1 กับ Long 1 เป็นคนละค่า)
+            assertEquals(typesOf(inMemory), typesOf(spilled));
+            assertTrue(isEmpty(spillDir), "ไฟล์ชั่วคราวต้องถูกลบหลังอ่านผลลัพธ์");
+        }
+
+        assertTrue(inMemory.containsKey(1));
+        assertTrue(inMemory.containsKey(1L));
+        assertTrue(inMemory.containsKey("ก"));
+        assertTrue(inMemory.containsKey(null));
+    }
+
+    @Test
+    void closeDeletesSpillFilesWithoutReadingResult() throws IOException {
+        try (DuplicateFinder finder = new DuplicateFinder(RANGE, 1)) {
+            finder.add("ก", 0, 0);
+            finder.add("ก", 1, 0);
+            assertFalse(isEmpty(spillDir), "งบ 1 ไบต์ต้องย้ายลงไฟล์ชั่วคราว");
+        }
+        assertTrue(isEmpty(spillDir));
+    }
+
+    @Test
+    void snapshotColumnsMatchCellValues() throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            SheetSnapshot sheet = SheetSnapshot.of(fill(workbook));
+            SheetSnapshot.Column[] columns = {sheet.getColumn(0), sheet.getColumn(1), sheet.getColumn(2)};
+
+            for (long maxBytes : new long[]{Long.MAX_VALUE, 1, 4 * 1024}) {
+                Map<Object, List<String>> fromValues;
+                try (DuplicateFinder finder = new DuplicateFinder(RANGE, maxBytes)) {
+                    forEachCell(columns, (rowIdx, colIdx) ->
+                            finder.add(sheet.getValue(rowIdx, colIdx), rowIdx, colIdx));
+                    fromValues = finder.duplicates();
+                }
+                Map<Object, List<String>> fromColumns;
+                try (DuplicateFinder finder = new DuplicateFinder(RANGE, maxBytes)) {
+                    forEachCell(columns, (rowIdx, colIdx) ->
+                            finder.add(sheet, columns[colIdx], rowIdx, colIdx));
+                    fromColumns = finder.duplicates();
+                }
+
+                assertEquals(fromValues, fromColumns);
+                assertEquals(typesOf(fromValues), typesOf(fromColumns));
+                assertTrue(isEmpty(spillDir));
+            }
+        }
+    }
+
+    /**
+     * ชีทที่มีค่าทุกชนิดของ SheetSnapshot สุ่มซ้ำกันใน 3 คอลัมน์
+     */
+    private static Sheet fill(XSSFWorkbook workbook) {
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+        Sheet sheet = workbook.createSheet("Data");
+        Random random = new Random(7);
+        for (int rowIdx = 0; rowIdx < 2000; rowIdx++) {
+            Row row = sheet.createRow(rowIdx);
+            for (int colIdx = 0; colIdx < 3; colIdx++) {
+                int n = random.nextInt(40);
+                switch (random.nextInt(7)) {
+                    case 0:
+                        row.createCell(colIdx).setCellValue("ค่า" + n);
+                        break;
+                    case 1:
+                        row.createCell(colIdx).setCellValue(n);
+                        break;
+                    case 2:
+                        row.createCell(colIdx).setCellValue(3_000_000_000d + n);
+                        break;
+                    case 3:
+                        row.createCell(colIdx).setCellValue(n + 0.5);
+                        break;
+                    case 4:
+                        Cell date = row.createCell(colIdx);
+                        date.setCellValue(new Date(1_700_000_000_000L + n * 86_400_000L));
+                        date.setCellStyle(dateStyle);
+                        break;
+                    case 5:
+                        row.createCell(colIdx).setCellValue(n % 2 == 0);
+                        break;
+                    default:
+                        // ไม่มีเซลล์
+                        break;
+                }
+            }
+        }
+        return sheet;
+    }
+
+    private interface CellVisitor {
+        void visit(int rowIdx, int colIdx);
+    }
+
+    private static void forEachCell(SheetSnapshot.Column[] columns, CellVisitor visitor) {
+        for (int rowIdx = 0; rowIdx < 2000; rowIdx++) {
+            for (int colIdx = 0; colIdx < columns.length; colIdx++) {
+                if (!columns[colIdx].isEmpty(rowIdx)) {
+                    visitor.visit(rowIdx, colIdx);
+                }
+            }
+        }
+    }
+
+    private static Map<Object, List<String>> find(long maxBytes) {
+        Object[] values = values();
+        Random random = new Random(42);
+        try (DuplicateFinder finder = new DuplicateFinder(RANGE, maxBytes)) {
+            for (int row = 0; row < 2000; row++) {
+                for (int col = 0; col < 3; col++) {
+                    finder.add(values[random.nextInt(values.length)], row, col);
+                }
+            }
+            return finder.duplicates();
+        }
+    }
+
+    /**
+     * ค่าทุกชนิดที่ ExcelReader.getCellValue คืนได้ รวมถึงค่าที่ equals ต่างกันแต่แสดงผลเหมือนกัน
+     */
+    private static Object[] values() {
+        Object[] values = new Object[400];
+        for (int i = 0; i < values.length; i++) {
+            switch (i % 8) {
+                case 0:
+                    values[i] = "ค่า" + i;
+                    break;
+                case 1:
+                    values[i] = i / 8;
+                    break;
+                case 2:
+                    values[i] = (long) (i / 8);
+                    break;
+                case 3:
+                    values[i] = i / 8 + 0.5;
+                    break;
+                case 4:
+                    values[i] = new Date(1_700_000_000_000L + i / 8 * 86_400_000L);
+                    break;
+                case 5:
+                    values[i] = i % 16 == 5;
+                    break;
+                case 6:
+                    values[i] = i < 8 ? null : "ก";
+                    break;
+                default:
+                    values[i] = Integer.toString(i / 8);
+                    break;
+            }
+        }
+        return values;
+    }
+
+    private static Map<Object, Class<?>> typesOf(Map<Object, List<String>> duplicates) {
+        Map<Object, Class<?>> types = new HashMap<>();
+        for (Object value : duplicates.keySet()) {
+            types.put(value, value == null ? null : value.getClass());
+        }
+        return types;
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return !files.findAny().isPresent();
+        }
+    }
+}
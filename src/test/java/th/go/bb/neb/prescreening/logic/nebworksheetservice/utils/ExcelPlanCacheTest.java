@@ -0,0 +1,61 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * แคชของแผนใช้พารามิเตอร์ทั้งชุดเป็น key: template เดียวกันที่พารามิเตอร์ต่างกันได้แผนแยกกันและไม่แทนที่กัน
+ */
+class ExcelPlanCacheTest {
+
+    private static final String[] FIRST = {
+            "SHEET(\"Data\")",
+            "FIX(\"TEMPLATE_ID\", \"plan-cache-test\")",
+            "COLUMN(\"NAME\", \"A2\", \"Data\")"
+    };
+
+    private static final String[] SECOND = {
+            "SHEET(\"Data\")",
+            "FIX(\"TEMPLATE_ID\", \"plan-cache-test\")",
+            "COLUMN(\"NAME\", \"B2\", \"Data\")"
+    };
+
+    @BeforeEach
+    void clearCache() {
+        ExcelPlanCache.clear();
+    }
+
+    @Test
+    void equalParamsReuseThePlan() {
+        ExcelPlan plan = ExcelPlanCache.get(FIRST);
+        long hits = ExcelPlanCache.getHitCount();
+
+        assertSame(plan, ExcelPlanCache.get(FIRST.clone()));
+        assertEquals(hits + 1, ExcelPlanCache.getHitCount());
+    }
+
+    @Test
+    void sameTemplateKeepsOnePlanPerParams() {
+        ExcelPlan first = ExcelPlanCache.get(FIRST);
+        ExcelPlan second = ExcelPlanCache.get(SECOND);
+
+        assertNotSame(first, second);
+        assertEquals(2, ExcelPlanCache.size());
+        assertSame(first, ExcelPlanCache.get(FIRST));
+        assertSame(second, ExcelPlanCache.get(SECOND));
+    }
+
+    @Test
+    void callerChangesDoNotAffectTheCache() {
+        String[] params = FIRST.clone();
+        ExcelPlan plan = ExcelPlanCache.get(params);
+        params[2] = "COLUMN(\"NAME\", \"C2\", \"Data\")";
+
+        assertNotSame(plan, ExcelPlanCache.get(params));
+        assertSame(plan, ExcelPlanCache.get(FIRST));
+    }
+}
@@ -0,0 +1,139 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.json.JSONArray;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.TestWorkbooks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * exportSheetToJson ต้องได้ผลลัพธ์เหมือน readSheetToJson ทุกไบต์ (ทั้ง ARRAY และ NDJSON)
+ * รวมถึงไฟล์ที่ dimension ของชีทไม่ตรงกับเซลล์จริง
+ */
+class ExcelUtilExportTest {
+
+    /**
+     * หัวตารางขาดคอลัมน์ C, แถวว่าง, แถวที่มีแต่ข้อความว่าง และแถวที่กว้างกว่าแถวอื่น
+     */
+    private static final Object[][] ROWS = {
+            {"id", "name", null, "day"},
+            {1, "ก", 1.5, new Date(1700000000000L)},
+            null,
+            {2, null, true},
+            {"", ""},
+            {3, "ข", 2.0, null, "extra", 3000000000L}
+    };
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void headeredSheetMatchesReadSheetToJson() throws IOException {
+        Path file = TestWorkbooks.write(tempDir.resolve("headered.xlsx"), "Data", ROWS);
+
+        assertMatchesReadSheetToJson(file, true);
+    }
+
+    @Test
+    void sheetWithoutHeaderMatchesReadSheetToJson() throws IOException {
+        Path file = TestWorkbooks.write(tempDir.resolve("plain.xlsx"), "Data", ROWS);
+
+        assertMatchesReadSheetToJson(file, false);
+    }
+
+    @Test
+    void narrowDimensionIsNotTrusted() throws IOException {
+        Path file = TestWorkbooks.write(tempDir.resolve("narrow.xlsx"), "Data", ROWS);
+        replaceDimension(file, "A1:B2");
+
+        assertMatchesReadSheetToJson(file, true);
+        assertMatchesReadSheetToJson(file, false);
+    }
+
+    @Test
+    void wideDimensionIsNotTrusted() throws IOException {
+        Path file = TestWorkbooks.write(tempDir.resolve("wide.xlsx"), "Data", ROWS);
+        replaceDimension(file, "A1:Z99");
+
+        assertMatchesReadSheetToJson(file, true);
+        assertMatchesReadSheetToJson(file, false);
+    }
+
+    @Test
+    void missingSheetIsEmpty() throws IOException {
+        Path file = TestWorkbooks.write(tempDir.resolve("missing.xlsx"), "Data", ROWS);
+
+        assertEquals("[]", export(file, "Other", true, ExcelUtil.JsonFormat.ARRAY));
+        assertEquals("", export(file, "Other", true, ExcelUtil.JsonFormat.NDJSON));
+    }
+
+    private static void assertMatchesReadSheetToJson(Path file, boolean hasHeader) throws IOException {
+        JSONArray expected;
+        ExcelUtil reader = new ExcelUtil(file.toString());
+        try {
+            expected = reader.readSheetToJson("Data", hasHeader);
+        } finally {
+            reader.close();
+        }
+        assertTrue(expected.length() > 0);
+
+        assertEquals(expected.toString(), export(file, "Data", hasHeader, ExcelUtil.JsonFormat.ARRAY));
+
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < expected.length(); i++) {
+            lines.append(expected.getJSONObject(i).toString()).append('\n');
+        }
+        assertEquals(lines.toString(), export(file, "Data", hasHeader, ExcelUtil.JsonFormat.NDJSON));
+    }
+
+    private static String export(Path file, String sheetName, boolean hasHeader, ExcelUtil.JsonFormat format)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelUtil.exportSheetToJson(file.toString(), sheetName, hasHeader, format, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * เขียน dimension ของชีทใหม่ (POI สร้าง dimension จากเซลล์จริงเสมอ)
+     */
+    private static void replaceDimension(Path file, String ref) throws IOException {
+        Path copy = file.resolveSibling(file.getFileName() + ".tmp");
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(file));
+             ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(copy))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                byte[] data = readAll(in);
+                if (entry.getName().startsWith("xl/worksheets/")) {
+                    String xml = new String(data, StandardCharsets.UTF_8);
+                    String replaced = xml.replaceFirst("<dimension ref=\"[^\"]*\"/>", "<dimension ref=\"" + ref + "\"/>");
+                    assertFalse(replaced.equals(xml), "ไม่พบ dimension ใน " + entry.getName());
+                    data = replaced.getBytes(StandardCharsets.UTF_8);
+                }
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+        Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        in.transferTo(buffer);
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,140 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * การค้นหาพร้อมกันทั้งชุด (Batch / AhoCorasick) ต้องได้แถวเดียวกับ find ทีละคำค้น
+ * และเดียวกับการเทียบทีละเซลล์ของ ROWBY แบบ streaming (Condition.matches)
+ */
+class RowLookupIndexTest {
+
+    /** ค่าในคอลัมน์ A ตามแถว (null = ไม่มีแถว) */
+    private static final String[] COLUMN = {
+            "abcab",
+            "xabcx",
+            null,
+            // นิคหิต + สระอา แทนสระอำ
+            "ค่าน\u0E49\u0E4D\u0E32ประปา",
+            // สระเอสองตัวแทนสระแอ
+            "\u0E40\u0E40ม่น้ำ",
+            "ab\u200Bcd",
+            "  ต้นทาง  ",
+            "abc",
+            "bcab",
+            "น้ำ",
+    };
+
+    private static final Object[][] QUERIES = {
+            {ExcelPlan.Condition.STARTWITH, "ab"},
+            {ExcelPlan.Condition.STARTWITH, "abc"},
+            {ExcelPlan.Condition.STARTWITH, "b"},
+            {ExcelPlan.Condition.STARTWITH, "bca"},
+            {ExcelPlan.Condition.STARTWITH, "\u0E40\u0E40ม่"},
+            {ExcelPlan.Condition.STARTWITH, "แม่"},
+            {ExcelPlan.Condition.STARTWITH, "ab\u200Bc"},
+            {ExcelPlan.Condition.STARTWITH, "ต้น"},
+            {ExcelPlan.Condition.STARTWITH, "x"},
+            {ExcelPlan.Condition.STARTWITH, ""},
+            {ExcelPlan.Condition.STARTWITH, "ไม่มี"},
+            {ExcelPlan.Condition.ENDWITH, "ab"},
+            {ExcelPlan.Condition.ENDWITH, "cab"},
+            {ExcelPlan.Condition.ENDWITH, "b"},
+            {ExcelPlan.Condition.ENDWITH, "น\u0E49\u0E4D\u0E32"},
+            {ExcelPlan.Condition.ENDWITH, "ประปา"},
+            {ExcelPlan.Condition.ENDWITH, "cd"},
+            {ExcelPlan.Condition.ENDWITH, "x"},
+            {ExcelPlan.Condition.ENDWITH, "ไม่มี"},
+            {ExcelPlan.Condition.CONTENT, "ab"},
+            {ExcelPlan.Condition.CONTENT, "bc"},
+            {ExcelPlan.Condition.CONTENT, "bca"},
+            {ExcelPlan.Condition.CONTENT, "cab"},
+            {ExcelPlan.Condition.CONTENT, "น้ำ"},
+            {ExcelPlan.Condition.CONTENT, "น\u0E49\u0E4D\u0E32"},
+            {ExcelPlan.Condition.CONTENT, "\u0E40\u0E40ม"},
+            {ExcelPlan.Condition.CONTENT, "b\u200Bc"},
+            {ExcelPlan.Condition.CONTENT, "ทา"},
+            {ExcelPlan.Condition.CONTENT, "ไม่มี"},
+            {ExcelPlan.Condition.EQUAL, "abc"},
+            {ExcelPlan.Condition.EQUAL, "น้ำ"},
+            {ExcelPlan.Condition.EQUAL, "ต้นทาง"},
+            {ExcelPlan.Condition.EQUAL, "ไม่มี"},
+    };
+
+    private static RowLookupIndex index;
+
+    @BeforeAll
+    static void buildIndex() throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Data");
+            for (int rowIdx = 0; rowIdx < COLUMN.length; rowIdx++) {
+                if (COLUMN[rowIdx] != null) {
+                    sheet.createRow(rowIdx).createCell(0).setCellValue(COLUMN[rowIdx]);
+                }
+            }
+            index = new RowLookupIndex(SheetSnapshot.of(sheet), 0);
+        }
+    }
+
+    @Test
+    void batchMatchesFindAndStreaming() {
+        RowLookupIndex.Batch batch = index.newBatch();
+        List<RowLookupIndex.Batch.Query> queries = new ArrayList<>();
+        for (Object[] query : QUERIES) {
+            ExcelPlan.Condition condition = (ExcelPlan.Condition) query[0];
+            queries.add(batch.add(condition, condition.name(), (String) query[1]));
+        }
+
+        for (int i = 0; i < QUERIES.length; i++) {
+            ExcelPlan.Condition condition = (ExcelPlan.Condition) QUERIES[i][0];
+            String searchValue = (String) QUERIES[i][1];
+            String description = condition + " \"" + searchValue + "\"";
+
+            int expected = streamingRow(condition, searchValue);
+            assertEquals(expected, index.find(condition, condition.name(), searchValue), description);
+            assertEquals(expected, queries.get(i).row(), description);
+        }
+    }
+
+    @Test
+    void normalizesThaiAndZeroWidth() {
+        assertEquals(4, index.find(ExcelPlan.Condition.STARTWITH, "STARTWITH", "แม่"));
+        assertEquals(3, index.find(ExcelPlan.Condition.CONTENT, "CONTENT", "น้ำ"));
+        assertEquals(0, index.find(ExcelPlan.Condition.STARTWITH, "STARTWITH", "ab\u200Bc"));
+        assertEquals(5, index.find(ExcelPlan.Condition.ENDWITH, "ENDWITH", "cd"));
+        // EQUAL เทียบค่าตรงตัว (ตัดช่องว่างหัวท้ายของค่าเซลล์เท่านั้น)
+        assertEquals(-1, index.find(ExcelPlan.Condition.EQUAL, "EQUAL", "abcd"));
+    }
+
+    @Test
+    void invalidConditionFailsLikeFind() {
+        RowLookupIndex.Batch batch = index.newBatch();
+        RowLookupIndex.Batch.Query query = batch.add(ExcelPlan.Condition.of("LIKE"), "LIKE", "ab");
+        batch.add(ExcelPlan.Condition.CONTENT, "CONTENT", "ab");
+
+        assertThrows(IllegalArgumentException.class, query::row);
+        assertThrows(IllegalArgumentException.class, () -> index.find(null, "LIKE", "ab"));
+    }
+
+    /**
+     * แถวแรกที่ตรงเงื่อนไขแบบ ROWBY streaming: เทียบทีละเซลล์ตามลำดับแถว
+     */
+    private static int streamingRow(ExcelPlan.Condition condition, String searchValue) {
+        String pattern = condition.pattern(searchValue);
+        for (int rowIdx = 0; rowIdx < COLUMN.length; rowIdx++) {
+            if (COLUMN[rowIdx] != null && condition.matches(COLUMN[rowIdx].trim(), pattern)) {
+                return rowIdx;
+            }
+        }
+        return -1;
+    }
+}
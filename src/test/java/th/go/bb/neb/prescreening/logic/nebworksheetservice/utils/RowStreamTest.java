@@ -0,0 +1,168 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.TestWorkbooks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ROW แบบช่วง EOF และการแบ่งหน้าด้วย offset / limit ให้ผลเหมือนกันทั้งโหมด DOM (RowStream) และ STREAMING (RowSet)
+ * และตรงกับแถวที่อ่านผ่าน POI โดยตรง
+ */
+class RowStreamTest {
+
+    /** แถวข้อมูลมากกว่าสองหน้าของ RowStream */
+    private static final int DATA_ROWS = 2600;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void eofEndsAtLastSelectedValue() throws IOException {
+        String fileName = writeFixture();
+
+        List<Map<String, Object>> expected = expectedRows(fileName, 1, Integer.MAX_VALUE, 0, -1);
+        // แถวท้ายที่มีค่าเฉพาะคอลัมน์ D ไม่อยู่ในผลลัพธ์
+        assertEquals(DATA_ROWS - 1, expected.get(expected.size() - 1).get("A"));
+
+        assertRows(fileName, "ROW(\"ROWS\", \"Data\", \"2:EOF\", \"[A,B]\")", expected);
+    }
+
+    @Test
+    void offsetAndLimitPageTheRange() throws IOException {
+        String fileName = writeFixture();
+        int[][] pages = {{0, 10}, {5, 1024}, {1000, 2000}, {2100, 500}, {5000, 10}, {0, 0}};
+
+        for (int[] page : pages) {
+            List<Map<String, Object>> expected = expectedRows(fileName, 1, Integer.MAX_VALUE, page[0], page[1]);
+            assertRows(fileName,
+                    "ROW(\"ROWS\", \"Data\", \"2:EOF\", \"[A,B]\", NULL, " + page[0] + ", " + page[1] + ")", expected);
+        }
+    }
+
+    @Test
+    void fixedRangeWithOffsetOnly() throws IOException {
+        String fileName = writeFixture();
+
+        List<Map<String, Object>> expected = expectedRows(fileName, 2, 39, 3, -1);
+        assertRows(fileName, "ROW(\"ROWS\", \"Data\", \"3:40\", \"[A,B]\", NULL, 3)", expected);
+    }
+
+    @Test
+    void cursorReadsWholePages() throws IOException {
+        String fileName = writeFixture();
+        ExcelPlan plan = ExcelPlan.compile(params("ROW(\"ROWS\", \"Data\", \"2:EOF\", \"[A,B]\")"));
+
+        RowStream stream;
+        try (WorkbookSession session = WorkbookSession.open(fileName)) {
+            stream = (RowStream) plan.execute(session).get("ROWS");
+        }
+
+        // อ่านได้หลังปิด session และแต่ละหน้าไม่เกิน PAGE_SIZE แถว
+        List<Map<String, Object>> paged = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        RowStream.Cursor cursor = stream.cursor();
+        for (RowSet page = cursor.nextPage(); page != null; page = cursor.nextPage()) {
+            pageSizes.add(page.size());
+            paged.addAll(page);
+        }
+        assertTrue(pageSizes.size() > 2, pageSizes.toString());
+        for (int i = 0; i < pageSizes.size() - 1; i++) {
+            assertEquals(RowStream.PAGE_SIZE, (int) pageSizes.get(i));
+        }
+        assertEquals(new ArrayList<>(stream), paged);
+    }
+
+    private static void assertRows(String fileName, String rowParam, List<Map<String, Object>> expected)
+            throws IOException {
+        ExcelPlan plan = ExcelPlan.compile(params(rowParam));
+
+        Object dom;
+        try (WorkbookSession session = WorkbookSession.open(fileName)) {
+            dom = plan.execute(session).get("ROWS");
+        }
+        Object streaming = StreamingExcelReader.evaluate(fileName, plan).getData().get("ROWS");
+
+        assertEquals(expected, new ArrayList<>((List<?>) dom), rowParam);
+        assertEquals(expected, new ArrayList<>((List<?>) streaming), rowParam);
+    }
+
+    /**
+     * แถวที่มีอยู่ในช่วง (EOF = แถวสุดท้ายที่คอลัมน์ A หรือ B ไม่ว่าง) อ่านผ่าน POI
+     */
+    private static List<Map<String, Object>> expectedRows(String fileName, int startRow, int endRow, int offset,
+                                                          int limit) throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (Workbook workbook = WorkbookSession.createWorkbook(new File(fileName), fileName)) {
+            Sheet sheet = workbook.getSheet("Data");
+            int lastRow = endRow;
+            if (endRow == Integer.MAX_VALUE) {
+                lastRow = -1;
+                for (Row row : sheet) {
+                    if (!ExcelReader.isEmpty(row.getCell(0)) || !ExcelReader.isEmpty(row.getCell(1))) {
+                        lastRow = row.getRowNum();
+                    }
+                }
+            }
+            int skipped = 0;
+            for (Row row : sheet) {
+                int rowIdx = row.getRowNum();
+                if (rowIdx < startRow || rowIdx > lastRow) {
+                    continue;
+                }
+                if (skipped++ < offset) {
+                    continue;
+                }
+                if (limit >= 0 && rows.size() >= limit) {
+                    break;
+                }
+                Map<String, Object> values = new HashMap<>();
+                values.put("A", ExcelReader.getCellValue(row.getCell(0)));
+                values.put("B", ExcelReader.getCellValue(row.getCell(1)));
+                rows.add(values);
+            }
+        }
+        return rows;
+    }
+
+    private static String[] params(String rowParam) {
+        return new String[]{
+                "SHEET(\"Data\")",
+                rowParam
+        };
+    }
+
+    /**
+     * ชีท Data: หัวตาราง, แถวที่ไม่มี (ทุก 7 แถว), แถวที่มีค่าเฉพาะคอลัมน์ D (ทุก 11 แถว)
+     * และแถวท้ายที่มีค่าเฉพาะคอลัมน์ D หลังแถวสุดท้ายของ A/B
+     */
+    private String writeFixture() throws IOException {
+        Object[][] rows = new Object[DATA_ROWS + 5][];
+        rows[0] = new Object[]{"id", "name", null, "other"};
+        for (int i = 1; i < DATA_ROWS; i++) {
+            if (i % 7 == 0) {
+                continue;
+            }
+            rows[i] = i % 11 == 0 ? new Object[]{null, null, null, "d" + i} : new Object[]{i, "n" + i, null, "x"};
+        }
+        for (int i = DATA_ROWS; i < rows.length; i++) {
+            rows[i] = new Object[]{null, "   ", null, "tail"};
+        }
+        // แถวสุดท้ายของ A/B ต้องเป็นแถวข้อมูล
+        rows[DATA_ROWS - 1] = new Object[]{DATA_ROWS - 1, "last", null, "x"};
+        return TestWorkbooks.write(tempDir.resolve("rows.xlsx"), "Data", rows).toString();
+    }
+}
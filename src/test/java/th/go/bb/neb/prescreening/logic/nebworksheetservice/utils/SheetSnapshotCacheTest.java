@@ -0,0 +1,117 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.TestWorkbooks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * แคชของ snapshot ใช้ซ้ำเมื่อไฟล์ไม่เปลี่ยน และแปลงใหม่เมื่อเนื้อหาไฟล์เปลี่ยน (entry เก่าของไฟล์ถูกลบ)
+ */
+class SheetSnapshotCacheTest {
+
+    private long maxBytes;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void resetCache() {
+        maxBytes = SheetSnapshotCache.getMaxBytes();
+        SheetSnapshotCache.setMaxBytes(Long.MAX_VALUE);
+        SheetSnapshotCache.clear();
+    }
+
+    @AfterEach
+    void restoreCache() {
+        SheetSnapshotCache.setMaxBytes(maxBytes);
+        SheetSnapshotCache.clear();
+    }
+
+    @Test
+    void unchangedFileIsServedFromCache() throws IOException {
+        Path file = TestWorkbooks.write(tempDir.resolve("same.xlsx"), "Data", new Object[][]{{"a", 1}});
+
+        SheetSnapshot first = load(file, "Data").get("Data");
+        long hits = SheetSnapshotCache.getHitCount();
+        long misses = SheetSnapshotCache.getMissCount();
+        SheetSnapshot second = load(file, "data").get("data");
+
+        assertSame(first, second);
+        assertEquals(hits + 1, SheetSnapshotCache.getHitCount());
+        assertEquals(misses, SheetSnapshotCache.getMissCount());
+        assertEquals(1, SheetSnapshotCache.size());
+    }
+
+    @Test
+    void missingSheetIsRememberedWithTheFile() throws IOException {
+        Path file = TestWorkbooks.write(tempDir.resolve("missing.xlsx"), "Data", new Object[][]{{"a"}});
+        load(file, "Data");
+        long misses = SheetSnapshotCache.getMissCount();
+
+        assertFalse(load(file, "Other").containsKey("Other"));
+        assertEquals(misses, SheetSnapshotCache.getMissCount());
+    }
+
+    @Test
+    void changedFileIsLoadedAgain() throws IOException {
+        Path file = TestWorkbooks.write(tempDir.resolve("changed.xlsx"), "Data", new Object[][]{{"before"}});
+        SheetSnapshot before = load(file, "Data").get("Data");
+        assertEquals("before", before.getValue(0, 0));
+
+        TestWorkbooks.write(file, "Data", new Object[][]{{"after"}});
+        long misses = SheetSnapshotCache.getMissCount();
+        SheetSnapshot after = load(file, "Data").get("Data");
+
+        assertNotSame(before, after);
+        assertEquals("after", after.getValue(0, 0));
+        assertEquals(misses + 1, SheetSnapshotCache.getMissCount());
+        // entry ของเนื้อหาเดิมถูกลบ ไม่ค้างอยู่ในแคช
+        assertEquals(1, SheetSnapshotCache.size());
+    }
+
+    @Test
+    void sheetsAreAddedToTheFileEntry() throws IOException {
+        Map<String, Object[][]> sheets = new LinkedHashMap<>();
+        sheets.put("One", new Object[][]{{"1"}});
+        sheets.put("Two", new Object[][]{{"2"}});
+        Path file = TestWorkbooks.write(tempDir.resolve("two.xlsx"), sheets);
+
+        SheetSnapshot one = load(file, "One").get("One");
+        SheetSnapshot two = load(file, "Two").get("Two");
+        Map<String, SheetSnapshot> both = SheetSnapshotCache.get(file.toFile(), file.toString(), null,
+                Arrays.asList("One", "Two"));
+
+        assertSame(one, both.get("One"));
+        assertSame(two, both.get("Two"));
+        assertEquals(1, SheetSnapshotCache.size());
+        assertTrue(SheetSnapshotCache.getEstimatedBytes() > 0);
+    }
+
+    @Test
+    void disabledCacheKeepsNothing() throws IOException {
+        SheetSnapshotCache.setMaxBytes(0);
+        Path file = TestWorkbooks.write(tempDir.resolve("disabled.xlsx"), "Data", new Object[][]{{"a"}});
+
+        assertNotSame(load(file, "Data").get("Data"), load(file, "Data").get("Data"));
+        assertEquals(0, SheetSnapshotCache.size());
+    }
+
+    private static Map<String, SheetSnapshot> load(Path file, String sheetName) throws IOException {
+        return SheetSnapshotCache.get(file.toFile(), file.toString(), null, Collections.singletonList(sheetName));
+    }
+}
@@ -0,0 +1,206 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * snapshot ต้องให้ค่า, ชนิด, เซลล์ว่าง, แถวที่มี และจุดสิ้นสุด EOF เหมือนการอ่านผ่าน Row/Cell ของ POI
+ */
+class SheetSnapshotTest {
+
+    private static final int COLUMNS = 8;
+    /** แถวที่อยู่ห่างออกไป (ข้ามหลาย word ของ bitmap) */
+    private static final int[] FAR_ROWS = {130, 1000, 70000};
+
+    private Workbook workbook;
+    private Sheet sheet;
+    private SheetSnapshot snapshot;
+
+    @BeforeEach
+    void createSheet() {
+        workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet("Data");
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+
+        Random random = new Random(42);
+        for (int rowIdx = 0; rowIdx < 120; rowIdx++) {
+            if (random.nextInt(5) == 0) {
+                continue; // ไม่มีแถว
+            }
+            fillRow(sheet.createRow(rowIdx), random, dateStyle);
+        }
+        for (int rowIdx : FAR_ROWS) {
+            fillRow(sheet.createRow(rowIdx), random, dateStyle);
+        }
+        // แถวท้ายชีทที่จัดรูปแบบไว้แต่ไม่มีค่า ต้องไม่ขยาย EOF
+        Row formatted = sheet.createRow(80000);
+        for (int colIdx = 0; colIdx < COLUMNS; colIdx++) {
+            formatted.createCell(colIdx).setCellStyle(dateStyle);
+        }
+        formatted.createCell(COLUMNS).setCellValue("   ");
+
+        snapshot = SheetSnapshot.of(sheet);
+    }
+
+    @AfterEach
+    void closeWorkbook() throws IOException {
+        workbook.close();
+    }
+
+    @Test
+    void valuesAndTypesMatchPoi() {
+        assertEquals(sheet.getLastRowNum(), snapshot.getLastRowNum());
+        assertEquals("Data", snapshot.getSheetName());
+
+        int columnCount = 0;
+        for (int rowIdx = 0; rowIdx <= sheet.getLastRowNum(); rowIdx++) {
+            Row row = sheet.getRow(rowIdx);
+            assertEquals(row != null, snapshot.hasRow(rowIdx), "แถว " + rowIdx);
+            if (row == null) {
+                continue;
+            }
+            columnCount = Math.max(columnCount, row.getLastCellNum());
+            for (int colIdx = 0; colIdx <= COLUMNS + 1; colIdx++) {
+                Cell cell = row.getCell(colIdx);
+                String at = "แถว " + rowIdx + " คอลัมน์ " + colIdx;
+                assertEquals(ExcelReader.getCellValue(cell), snapshot.getValue(rowIdx, colIdx), at);
+                assertEquals(ExcelReader.isEmpty(cell), snapshot.getColumn(colIdx).isEmpty(rowIdx), at);
+            }
+        }
+        assertEquals(columnCount, snapshot.getColumnCount());
+    }
+
+    @Test
+    void eofIsTheLastNonEmptyCellOfTheColumn() {
+        WorkbookSession session = new WorkbookSession(null, workbook);
+        int lastOfAll = -1;
+        for (int colIdx = 0; colIdx <= COLUMNS; colIdx++) {
+            int last = -1;
+            int count = 0;
+            for (Row row : sheet) {
+                if (!ExcelReader.isEmpty(row.getCell(colIdx))) {
+                    last = row.getRowNum();
+                    if (last >= 1) {
+                        count++;
+                    }
+                }
+            }
+            String column = String.valueOf((char) ('A' + colIdx));
+
+            assertEquals(last, snapshot.getLastNonEmptyRow(colIdx), column);
+            assertEquals(count, ExcelReader.countCells(session, "Data", column + "2:EOF"), column);
+            lastOfAll = Math.max(lastOfAll, last);
+        }
+        assertEquals(lastOfAll, snapshot.getLastNonEmptyRow(0, COLUMNS));
+    }
+
+    @Test
+    void populatedRowsMatchPoi() {
+        List<Integer> present = new ArrayList<>();
+        for (int rowIdx = snapshot.nextPresentRow(0); rowIdx >= 0; rowIdx = snapshot.nextPresentRow(rowIdx + 1)) {
+            present.add(rowIdx);
+        }
+        List<Integer> expectedPresent = new ArrayList<>();
+        for (Row row : sheet) {
+            expectedPresent.add(row.getRowNum());
+        }
+        assertEquals(expectedPresent, present);
+
+        SheetSnapshot.Column[] columns = {snapshot.getColumn(2), snapshot.getColumn(5)};
+        List<Integer> nonEmpty = new ArrayList<>();
+        for (int rowIdx = SheetSnapshot.nextNonEmptyRow(columns, 0); rowIdx >= 0;
+             rowIdx = SheetSnapshot.nextNonEmptyRow(columns, rowIdx + 1)) {
+            nonEmpty.add(rowIdx);
+        }
+        List<Integer> expectedNonEmpty = new ArrayList<>();
+        for (Row row : sheet) {
+            if (!ExcelReader.isEmpty(row.getCell(2)) || !ExcelReader.isEmpty(row.getCell(5))) {
+                expectedNonEmpty.add(row.getRowNum());
+            }
+        }
+        assertEquals(expectedNonEmpty, nonEmpty);
+    }
+
+    @Test
+    void countNonEmptyMatchesPoi() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            int colIdx = random.nextInt(COLUMNS);
+            int from = random.nextInt(200);
+            int to = from + random.nextInt(i % 2 == 0 ? 100 : 80000);
+            int expected = 0;
+            for (Row row : sheet) {
+                int rowIdx = row.getRowNum();
+                if (rowIdx >= from && rowIdx <= to && !ExcelReader.isEmpty(row.getCell(colIdx))) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, snapshot.getColumn(colIdx).countNonEmpty(from, to), colIdx + " " + from + ":" + to);
+        }
+    }
+
+    /**
+     * เซลล์ทุกชนิดที่ ExcelReader.getCellValue แยกแยะ
+     */
+    private static void fillRow(Row row, Random random, CellStyle dateStyle) {
+        for (int colIdx = 0; colIdx < COLUMNS; colIdx++) {
+            switch (random.nextInt(12)) {
+                case 0:
+                    break; // ไม่มีเซลล์
+                case 1:
+                    row.createCell(colIdx); // BLANK
+                    break;
+                case 2:
+                    row.createCell(colIdx).setCellValue("   ");
+                    break;
+                case 3:
+                    row.createCell(colIdx).setCellValue("v" + random.nextInt(20));
+                    break;
+                case 4:
+                    row.createCell(colIdx).setCellValue(random.nextInt(1000));
+                    break;
+                case 5:
+                    row.createCell(colIdx).setCellValue(3000000000.0 + random.nextInt(1000));
+                    break;
+                case 6:
+                    row.createCell(colIdx).setCellValue(random.nextInt(1000) / 8.0);
+                    break;
+                case 7: {
+                    Cell cell = row.createCell(colIdx);
+                    cell.setCellValue(new Date(1700000000000L + random.nextInt(1000) * 86400000L));
+                    cell.setCellStyle(dateStyle);
+                    break;
+                }
+                case 8:
+                    row.createCell(colIdx).setCellValue(random.nextBoolean());
+                    break;
+                case 9:
+                    row.createCell(colIdx).setCellFormula("1+" + random.nextInt(10));
+                    break;
+                case 10:
+                    row.createCell(colIdx).setCellErrorValue(FormulaError.DIV0.getCode());
+                    break;
+                default:
+                    row.createCell(colIdx).setCellValue("");
+                    break;
+            }
+        }
+    }
+}
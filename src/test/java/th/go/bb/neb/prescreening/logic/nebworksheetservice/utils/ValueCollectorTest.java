@@ -0,0 +1,87 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.apache.poi.ss.util.CellReference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ValueCollector ต้องให้ผลเหมือน LinkedHashMap: ลำดับที่พบครั้งแรก ลำดับของค่า และตำแหน่งเซลล์ของแต่ละค่า
+ */
+class ValueCollectorTest {
+
+    @Test
+    void matchesLinkedHashMap() {
+        Random random = new Random(13);
+        ValueCollector collector = new ValueCollector(true);
+        Map<String, List<String>> expected = new LinkedHashMap<>();
+        Map<String, Integer> ordinals = new HashMap<>();
+
+        for (int i = 0; i < 20000; i++) {
+            String value = "v" + random.nextInt(3000);
+            int rowIdx = random.nextInt(1000);
+            int colIdx = random.nextInt(30);
+            expected.computeIfAbsent(value, k -> new ArrayList<>())
+                    .add(CellReference.convertNumToColString(colIdx) + (rowIdx + 1));
+
+            int ordinal = collector.add(value, rowIdx, colIdx);
+            ordinals.putIfAbsent(value, ordinals.size());
+            assertEquals(ordinals.get(value).intValue(), ordinal);
+        }
+
+        assertEquals(expected.size(), collector.size());
+        assertEquals(new ArrayList<>(expected.keySet()), collector.values());
+        assertEquals(expected, collector.toPositionMap());
+        int ordinal = 0;
+        for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+            assertEquals(ordinal, collector.indexOf(entry.getKey()));
+            assertEquals(entry.getValue().size(), collector.positionCount(ordinal));
+            ordinal++;
+        }
+    }
+
+    @Test
+    void equalHashCodesAreDifferentValues() {
+        // "Aa" และ "BB" มี hashCode เดียวกัน
+        ValueCollector collector = new ValueCollector(false);
+
+        assertEquals(0, collector.add("Aa"));
+        assertEquals(1, collector.add("BB"));
+        assertEquals(0, collector.add("Aa"));
+        assertEquals(1, collector.indexOf("BB"));
+        assertFalse(collector.contains("AaBB"));
+        assertFalse(collector.contains(null));
+    }
+
+    @Test
+    void withoutPositionsKeepsValuesOnly() {
+        ValueCollector collector = new ValueCollector(false);
+        collector.add("a", 0, 0);
+        collector.add("a", 1, 0);
+
+        assertEquals(1, collector.size());
+        assertEquals(0, collector.positionCount(0));
+        assertTrue(collector.positions(0).isEmpty());
+    }
+
+    @Test
+    void valuesViewSeesLaterValues() {
+        ValueCollector collector = new ValueCollector(false);
+        List<String> values = collector.values();
+        collector.add("x");
+        collector.add("y");
+
+        assertEquals(List.of("x", "y"), values);
+        assertThrows(IndexOutOfBoundsException.class, () -> collector.get(2));
+    }
+}
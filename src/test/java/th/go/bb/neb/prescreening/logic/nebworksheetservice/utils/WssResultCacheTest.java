@@ -0,0 +1,149 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.NEBWorkSheetService;
+import th.go.bb.neb.prescreening.logic.nebworksheetservice.TestWorkbooks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * แคชผลลัพธ์ใช้ key จากเนื้อหาไฟล์และแผน: ไฟล์หรือ template ที่เปลี่ยนไม่ได้ผลลัพธ์เดิม
+ */
+class WssResultCacheTest {
+
+    private static final String[] PARAMS = {
+            "SHEET(\"Data\")",
+            "FIX(\"TEMPLATE_ID\", \"result-cache-test\")",
+            "COLUMN(\"NAME\", \"A1\", \"Data\")"
+    };
+
+    /** template เดียวกันที่ถูกแก้ไข */
+    private static final String[] EDITED = {
+            "SHEET(\"Data\")",
+            "FIX(\"TEMPLATE_ID\", \"result-cache-test\")",
+            "COLUMN(\"NAME\", \"B1\", \"Data\")"
+    };
+
+    private int maxEntries;
+    private long maxBytes;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void resetCache() {
+        maxEntries = WssResultCache.getMaxEntries();
+        maxBytes = WssResultCache.getMaxBytes();
+        WssResultCache.setMaxEntries(16);
+        WssResultCache.setDirectory(tempDir.resolve("cache").toString());
+        WssResultCache.clear();
+    }
+
+    @AfterEach
+    void restoreCache() {
+        WssResultCache.clear();
+        WssResultCache.setMaxEntries(maxEntries);
+        WssResultCache.setMaxBytes(maxBytes);
+        WssResultCache.setDirectory(System.getProperty(WssResultCache.DIR_PROPERTY));
+    }
+
+    @Test
+    void sameFileAndPlanHit() throws IOException {
+        String fileName = write("00001_same.xlsx", "first");
+        WssResultCache.Key key = key(fileName, PARAMS);
+        WssResultCache.put(key, "{\"r\":1}");
+        long hits = WssResultCache.getHitCount();
+
+        assertEquals(key, key(fileName, PARAMS));
+        assertEquals("{\"r\":1}", WssResultCache.get(key(fileName, PARAMS)));
+        assertEquals(hits + 1, WssResultCache.getHitCount());
+    }
+
+    @Test
+    void changedFileMisses() throws IOException {
+        String fileName = write("00001_changed.xlsx", "first");
+        WssResultCache.Key before = key(fileName, PARAMS);
+        WssResultCache.put(before, "{\"r\":1}");
+
+        write("00001_changed.xlsx", "second");
+        WssResultCache.Key after = key(fileName, PARAMS);
+        long misses = WssResultCache.getMissCount();
+
+        assertNotEquals(before, after);
+        assertNull(WssResultCache.get(after));
+        assertEquals(misses + 1, WssResultCache.getMissCount());
+    }
+
+    @Test
+    void editedTemplateDropsResultsOfTheOldPlan() throws IOException {
+        String first = write("00001_a.xlsx", "first");
+        String second = write("00002_b.xlsx", "second");
+        WssResultCache.Key oldFirst = key(first, PARAMS);
+        WssResultCache.Key oldSecond = key(second, PARAMS);
+        WssResultCache.put(oldFirst, "{\"r\":1}");
+        WssResultCache.put(oldSecond, "{\"r\":2}");
+
+        WssResultCache.put(key(first, EDITED), "{\"r\":3}");
+
+        assertNull(WssResultCache.get(oldFirst));
+        assertNull(WssResultCache.get(oldSecond));
+        assertEquals("{\"r\":3}", WssResultCache.get(key(first, EDITED)));
+    }
+
+    @Test
+    void invalidateTemplateRemovesItsResults() throws IOException {
+        String fileName = write("00001_invalidate.xlsx", "first");
+        WssResultCache.Key key = key(fileName, PARAMS);
+        WssResultCache.put(key, "{\"r\":1}");
+
+        WssResultCache.invalidateTemplate("result-cache-test");
+
+        assertNull(WssResultCache.get(key));
+        assertEquals(0, WssResultCache.size());
+    }
+
+    @Test
+    void resultsTooLargeForMemoryAreReadFromDisk() throws IOException {
+        WssResultCache.setMaxBytes(0);
+        String fileName = write("00001_disk.xlsx", "first");
+        WssResultCache.Key key = key(fileName, PARAMS);
+        WssResultCache.put(key, "{\"r\":1}");
+        long diskHits = WssResultCache.getDiskHitCount();
+
+        assertEquals(0, WssResultCache.size());
+        assertEquals("{\"r\":1}", WssResultCache.get(key));
+        assertEquals(diskHits + 1, WssResultCache.getDiskHitCount());
+    }
+
+    @Test
+    void serviceReusesResultUntilFileChanges() throws IOException {
+        String fileName = write("00001_service.xlsx", "first");
+        String first = NEBWorkSheetService.processExcelToWssResult(fileName, PARAMS);
+        long hits = WssResultCache.getHitCount();
+
+        assertEquals(first, NEBWorkSheetService.processExcelToWssResult(fileName, PARAMS));
+        assertEquals(hits + 1, WssResultCache.getHitCount());
+
+        write("00001_service.xlsx", "second");
+        String changed = NEBWorkSheetService.processExcelToWssResult(fileName, PARAMS);
+        assertEquals(hits + 1, WssResultCache.getHitCount());
+        assertTrue(changed.contains("\"NAME\":\"second\""), changed);
+    }
+
+    private String write(String name, String value) throws IOException {
+        return TestWorkbooks.write(tempDir.resolve(name), "Data", new Object[][]{{value, value + "-b"}}).toString();
+    }
+
+    private static WssResultCache.Key key(String fileName, String[] params) throws IOException {
+        return WssResultCache.key(fileName, params, ExcelPlanCache.get(params));
+    }
+}
@@ -0,0 +1,38 @@
+package th.go.bb.neb.prescreening.logic.nebworksheetservice.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * การขยาย shared formula ตามตำแหน่งเซลล์ (แบบเดียวกับ XSSFCell.getCellFormula)
+ */
+class XlsxStreamingReaderTest {
+
+    @Test
+    void shiftsRelativeReferencesOnly() {
+        assertEquals("B4>1", XlsxStreamingReader.shiftFormula("A2>1", 2, 1));
+        assertEquals("SUM($A$1:B4)", XlsxStreamingReader.shiftFormula("SUM($A$1:A2)", 2, 1));
+        assertEquals("A$1+$B3", XlsxStreamingReader.shiftFormula("A$1+$B1", 2, 0));
+        assertEquals("AA11", XlsxStreamingReader.shiftFormula("Z9", 2, 1));
+    }
+
+    @Test
+    void keepsTextSheetNamesAndFunctions() {
+        assertEquals("A3&\"A1\"", XlsxStreamingReader.shiftFormula("A1&\"A1\"", 2, 0));
+        assertEquals("'A1 Sheet'!B3+Sheet2!C3", XlsxStreamingReader.shiftFormula("'A1 Sheet'!B1+Sheet2!C1", 2, 0));
+        assertEquals("LOG10(A3)", XlsxStreamingReader.shiftFormula("LOG10(A1)", 2, 0));
+        assertEquals("IF(TRUE,A3,1.5)", XlsxStreamingReader.shiftFormula("IF(TRUE,A1,1.5)", 2, 0));
+    }
+
+    @Test
+    void shiftsWholeColumnsAndRows() {
+        assertEquals("SUM(B:B)", XlsxStreamingReader.shiftFormula("SUM(A:A)", 5, 1));
+        assertEquals("SUM($1:4)", XlsxStreamingReader.shiftFormula("SUM($1:2)", 2, 3));
+    }
+
+    @Test
+    void referencesOutsideSheetBecomeRefError() {
+        assertEquals("#REF!+1", XlsxStreamingReader.shiftFormula("A1+1", -1, 0));
+    }
+}